@@ -17,18 +17,41 @@ CREATE TABLE IF NOT EXISTS public.event_journal(
   meta_payload BYTEA,
 
   PRIMARY KEY(persistence_id, sequence_number)
-);
+) PARTITION BY LIST (persistence_id);
+
+-- The unique indexes of a partitioned table must include the partition keys. The ordering is unique as it comes
+-- from a sequence
+CREATE INDEX event_journal_ordering_idx ON public.event_journal(ordering);
+
+-- The registry has its own partitions by ranges of sequence numbers, so inserts and replays only touch the small
+-- indexes of the latest ones. The journal maintenance creates the next partitions ahead of the last event and
+-- archives the ones before the latest snapshot, see case-search-engine-index.journal
+CREATE TABLE IF NOT EXISTS public.event_journal_registry
+  PARTITION OF public.event_journal FOR VALUES IN ('DocumentRegistry')
+  PARTITION BY RANGE (sequence_number);
+
+CREATE TABLE IF NOT EXISTS public.event_journal_registry_0
+  PARTITION OF public.event_journal_registry FOR VALUES FROM (0) TO (1000000);
+CREATE TABLE IF NOT EXISTS public.event_journal_registry_1000000
+  PARTITION OF public.event_journal_registry FOR VALUES FROM (1000000) TO (2000000);
+CREATE TABLE IF NOT EXISTS public.event_journal_registry_2000000
+  PARTITION OF public.event_journal_registry FOR VALUES FROM (2000000) TO (3000000);
+
+-- The events written before the journal maintenance created their partition, e.g. while it was not running. It
+-- moves them to their partition when it creates it
+CREATE TABLE IF NOT EXISTS public.event_journal_registry_default
+  PARTITION OF public.event_journal_registry DEFAULT;
 
-CREATE UNIQUE INDEX event_journal_ordering_idx ON public.event_journal(ordering);
+-- The events of the rest of the persistent actors, the outbox offset and the reindex, are few. The registries of the
+-- tenants get their own partitions, like the one above, from the journal maintenance, which moves their events out of it
+CREATE TABLE IF NOT EXISTS public.event_journal_default
+  PARTITION OF public.event_journal DEFAULT;
 
+-- Without a unique ordering in the journal the tags cannot reference it. No event is tagged
 CREATE TABLE IF NOT EXISTS public.event_tag(
     event_id BIGINT,
     tag VARCHAR(256),
-    PRIMARY KEY(event_id, tag),
-    CONSTRAINT fk_event_journal
-      FOREIGN KEY(event_id)
-      REFERENCES event_journal(ordering)
-      ON DELETE CASCADE
+    PRIMARY KEY(event_id, tag)
 );
 
 CREATE TABLE IF NOT EXISTS public.snapshot (
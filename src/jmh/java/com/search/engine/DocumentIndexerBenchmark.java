@@ -0,0 +1,128 @@
+package com.search.engine;
+
+import akka.actor.typed.ActorRef;
+import akka.actor.typed.ActorSystem;
+import akka.actor.typed.Props;
+import akka.actor.typed.javadsl.Behaviors;
+import com.search.engine.dispatchers.VirtualThreadExecutorServiceConfigurator;
+import com.search.engine.models.DataSource;
+import com.search.engine.solr.SolrIndexer;
+import com.typesafe.config.Config;
+import com.typesafe.config.ConfigFactory;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Throughput of a {@link DocumentIndexer} calling a search engine that blocks for the configured latency, with its
+ * calls run one at a time as when the actor blocked on them, on thread pools of the indexer dispatcher with as many
+ * calls in flight as threads, and on a virtual thread per call.
+ * <p>
+ * Every operation sends a batch of documents to the indexer and waits until all of them are indexed. The virtual
+ * threads need Java 21+, build.gradle leaves their case out on older JVMs.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 2, time = 5)
+@Measurement(iterations = 3, time = 5)
+@Fork(1)
+public class DocumentIndexerBenchmark {
+    private static final int BATCH_SIZE = 1_000;
+    // Parallelism of the indexer and size of the thread pool of its dispatcher
+    private static final Map<String, Integer> PARALLELISM = Map.of(
+            "serial", 1,
+            "thread-pool-8", 8,
+            "thread-pool-64", 64,
+            "virtual-threads", BATCH_SIZE);
+
+    @Param({"serial", "thread-pool-8", "thread-pool-64", "virtual-threads"})
+    public String dispatcher;
+
+    @Param({"1", "10"})
+    public int solrLatencyMillis;
+
+    private ActorSystem<Void> system;
+    private ActorRef<DocumentIndexer.Command> indexer;
+    private ActorRef<DocumentRegistry.DocumentStatusToIndexed> indexed;
+    private volatile CountDownLatch remaining;
+    private String[] ids;
+
+    @Setup
+    public void setUp() {
+        system = ActorSystem.create(Behaviors.empty(), "DocumentIndexerBenchmark", config());
+        indexed = system.systemActorOf(Behaviors.receive(DocumentRegistry.DocumentStatusToIndexed.class)
+                .onAnyMessage(status -> {
+                    remaining.countDown();
+                    return Behaviors.same();
+                })
+                .build(), "indexed", Props.empty());
+        indexer = system.systemActorOf(DocumentIndexer.create(new SleepingSolrIndexer(solrLatencyMillis)), "indexer", Props.empty());
+
+        ids = new String[BATCH_SIZE];
+        for (int i = 0; i < BATCH_SIZE; i++) ids[i] = UUID.randomUUID().toString();
+    }
+
+    private Config config() {
+        var parallelism = PARALLELISM.get(dispatcher);
+        var executor = dispatcher.equals("virtual-threads")
+                ? "executor = \"" + VirtualThreadExecutorServiceConfigurator.class.getName() + "\""
+                : "thread-pool-executor.fixed-pool-size = " + parallelism;
+
+        return ConfigFactory.parseString(
+                        "case-search-engine-index.indexer.parallelism = " + parallelism + "\n"
+                                + "case-search-engine-index.dispatchers.indexer." + executor + "\n")
+                .withFallback(ConfigFactory.load());
+    }
+
+    @TearDown
+    public void tearDown() {
+        system.terminate();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BATCH_SIZE)
+    public long indexBatch() throws InterruptedException {
+        remaining = new CountDownLatch(BATCH_SIZE);
+        for (String id : ids) {
+            indexer.tell(new DocumentIndexer.IndexDocument(id, DataSource.PRICES, DocumentIndexer.UNVERSIONED, indexed));
+        }
+
+        remaining.await();
+        return remaining.getCount();
+    }
+
+    /**
+     * Stands for a search engine answering after a fixed latency
+     */
+    private static final class SleepingSolrIndexer implements SolrIndexer {
+        private final long latencyMillis;
+
+        private SleepingSolrIndexer(long latencyMillis) {
+            this.latencyMillis = latencyMillis;
+        }
+
+        @Override
+        public boolean indexDocument(String id) {
+            return sleep();
+        }
+
+        @Override
+        public boolean deleteDocument(String id) {
+            return sleep();
+        }
+
+        private boolean sleep() {
+            try {
+                Thread.sleep(latencyMillis);
+                return true;
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+                return false;
+            }
+        }
+    }
+}
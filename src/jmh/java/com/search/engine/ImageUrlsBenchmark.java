@@ -0,0 +1,82 @@
+package com.search.engine;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of merging the image URLs of an update into the ones of a document with the dictionary, against the
+ * previous merge which scanned the stored list for every URL added. The heap used per URL by the dictionary and by
+ * plain strings is printed at the end
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ImageUrlsBenchmark {
+    private static final int DOCUMENTS = 10_000;
+
+    @Param({"4", "32", "256"})
+    public int urls;
+
+    private ImageUrls imageUrls;
+    private List<String> stored;
+    private List<String> storedStrings;
+    private List<String> added;
+
+    @Setup
+    public void setUp() {
+        imageUrls = new ImageUrls();
+        storedStrings = urls(0, urls);
+        stored = imageUrls.intern(storedStrings);
+        // Half of them already stored
+        added = urls(urls / 2, urls);
+    }
+
+    @Benchmark
+    public List<String> dictionaryMerge() {
+        // Released afterwards, so the dictionary is the same for every invocation
+        var merged = imageUrls.merge(imageUrls.intern(stored), added);
+        imageUrls.release(merged);
+        return merged;
+    }
+
+    @Benchmark
+    public List<String> listContainsMerge() {
+        var merged = new ArrayList<>(storedStrings);
+        added.forEach(url -> {
+            if (!merged.contains(url)) merged.add(url);
+        });
+        return merged;
+    }
+
+    @TearDown
+    public void bytesPerUrl() {
+        // Every document shares a few CDN prefixes and some of its images with other documents
+        var dictionary = new ImageUrls();
+        long stringBytes = 0;
+        long references = 0;
+        for (int i = 0; i < DOCUMENTS; i++) {
+            var documentUrls = urls(i * urls / 2, urls);
+            dictionary.intern(documentUrls);
+            for (String url : documentUrls) stringBytes += ImageUrls.stringBytes(url);
+            references += documentUrls.size();
+        }
+
+        System.out.printf("%nURLs: %d, distinct: %d, prefixes: %d, bytes per URL: %.1f with the dictionary, %.1f as strings%n",
+                references, dictionary.size(), dictionary.prefixes(),
+                (double) dictionary.estimatedBytes() / references, (double) stringBytes / references);
+    }
+
+    private static List<String> urls(int from, int count) {
+        var urls = new ArrayList<String>(count);
+        for (int i = from; i < from + count; i++) {
+            urls.add("https://cdn" + i % 4 + ".example.org/images/products/" + i + ".png");
+        }
+        return urls;
+    }
+}
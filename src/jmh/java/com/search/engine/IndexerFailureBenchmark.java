@@ -0,0 +1,234 @@
+package com.search.engine;
+
+import akka.actor.typed.ActorRef;
+import akka.actor.typed.ActorSystem;
+import akka.actor.typed.Props;
+import akka.actor.typed.javadsl.Adapter;
+import akka.actor.typed.javadsl.Behaviors;
+import com.search.engine.models.DataSource;
+import com.search.engine.solr.SimulatedSolrIndexer;
+import com.search.engine.solr.SolrIndexer;
+import com.typesafe.config.ConfigFactory;
+import org.openjdk.jmh.annotations.*;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Indexing lag, queue growth and recovery time of the indexer while the search engine fails, following the
+ * scenarios of a {@link SimulatedSolrIndexer} with its virtual clock.
+ * <p>
+ * The documents arrive at a fixed rate in the time of the simulation. Each one is sent to the indexer once the
+ * previous one has been handled, and the clock is moved to its arrival when the indexer is idle, so the requests to
+ * the search engine, their outcomes and their times are the same in every run. The indexer has no retry timer, the
+ * documents that failed are retried when the next one arrives, as the timer would make the order of the requests
+ * depend on the wall clock. The metrics, in the time of the simulation, are printed at the end; the time measured
+ * by JMH is the cost of running the scenario.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 1)
+@Measurement(iterations = 3)
+@Fork(1)
+public class IndexerFailureBenchmark {
+    private static final int DOCUMENTS = 20_000;
+    private static final Duration INTERARRIVAL = Duration.ofMillis(1);
+    private static final Duration TIMEOUT = Duration.ofSeconds(10);
+    private static final String BASELINE = "seed = 42, clock = virtual, latency { median = 500us, p99 = 5ms }, failure-rate = 0.001, partial-batch-failure-rate = 0";
+    private static final Map<String, String> SCENARIOS = Map.of(
+            "steady", "phases = []",
+            "error-burst", "phases = [{ start = 5s, duration = 2s, failure-rate = 0.5, latency-factor = 4 }]",
+            "outage", "phases = [{ start = 5s, duration = 3s, failure-rate = 1 }]",
+            "slow-recovery", "phases = [{ start = 5s, duration = 3s, failure-rate = 1 }, { start = 8s, duration = 5s, failure-rate = 0.9, latency-factor = 3, recovery = true }]",
+            "partial-batches", "partial-batch-failure-rate = 0.01, phases = []");
+    // Documents sent at once in an IndexDocuments batch
+    private static final Map<String, Integer> BATCH_SIZES = Map.of("partial-batches", 20);
+
+    @Param({"steady", "error-burst", "outage", "slow-recovery", "partial-batches"})
+    public String scenario;
+
+    private ActorSystem<Void> system;
+    private ActorRef<DocumentRegistry.DocumentStatusToIndexed> ignored;
+    private SimulatedSolrIndexer simulator;
+    private RecordingSolrIndexer solrIndexer;
+    private ActorRef<DocumentIndexer.Command> indexer;
+    private Metrics metrics;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        // One call to the search engine at a time, so the requests follow the virtual clock
+        system = ActorSystem.create(Behaviors.empty(), "IndexerFailureBenchmark",
+                ConfigFactory.parseString("case-search-engine-index.indexer.parallelism = 1").withFallback(ConfigFactory.load()));
+        ignored = system.systemActorOf(Behaviors.ignore(), "ignored", Props.empty());
+    }
+
+    @Setup(Level.Invocation)
+    public void startIndexer() {
+        simulator = new SimulatedSolrIndexer(ConfigFactory.parseString(SCENARIOS.get(scenario)).withFallback(ConfigFactory.parseString(BASELINE)));
+        solrIndexer = new RecordingSolrIndexer(simulator);
+        indexer = system.systemActorOf(DocumentIndexer.create(solrIndexer), "indexer-" + System.nanoTime(), Props.empty());
+    }
+
+    @TearDown(Level.Invocation)
+    public void stopIndexer() {
+        Adapter.toClassic(system).stop(Adapter.toClassic(indexer));
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        System.out.printf("%n%s: %s%n", scenario, metrics);
+        system.terminate();
+    }
+
+    @Benchmark
+    public Metrics run() throws InterruptedException {
+        var batchSize = BATCH_SIZES.getOrDefault(scenario, 1);
+        var arrivals = new HashMap<String, Duration>();
+        var maxPending = 0;
+        var lastFailure = Duration.ZERO;
+        Duration caughtUp = null;
+
+        for (int i = 0; i < DOCUMENTS; i += batchSize) {
+            var arrival = INTERARRIVAL.multipliedBy(i);
+            simulator.advanceTo(arrival);
+
+            var ids = new ArrayList<String>(batchSize);
+            for (int j = i; j < Math.min(DOCUMENTS, i + batchSize); j++) {
+                ids.add("document-" + j);
+                arrivals.put("document-" + j, arrival);
+            }
+            if (ids.size() == 1) {
+                indexer.tell(new DocumentIndexer.IndexDocument(ids.get(0), DataSource.PRICES, DocumentIndexer.UNVERSIONED, ignored));
+            } else {
+                indexer.tell(new DocumentIndexer.IndexDocuments(ids, DataSource.PROMOTIONS, DocumentIndexer.UNVERSIONED, ignored));
+            }
+            solrIndexer.awaitRequest(ids.get(ids.size() - 1));
+
+            var pending = arrivals.size() - solrIndexer.indexed();
+            maxPending = Math.max(maxPending, pending);
+            if (solrIndexer.lastFailure.compareTo(lastFailure) > 0) {
+                lastFailure = solrIndexer.lastFailure;
+                caughtUp = null;
+            }
+            if (pending == 0 && caughtUp == null) caughtUp = simulator.now();
+        }
+
+        metrics = new Metrics(arrivals, solrIndexer.indexedAt, maxPending, simulator.requests(), simulator.failures(),
+                caughtUp == null ? null : caughtUp.minus(lastFailure));
+        return metrics;
+    }
+
+    /**
+     * The lags are from the arrival of a document until it is indexed. The recovery is from the last failure until
+     * no document is left to index
+     */
+    public static final class Metrics {
+        final long[] lagsMicros;
+        final int unindexed;
+        final int maxPending;
+        final long requests;
+        final long failures;
+        final Duration recovery;
+
+        Metrics(Map<String, Duration> arrivals, Map<String, Duration> indexedAt, int maxPending, long requests, long failures, Duration recovery) {
+            this.lagsMicros = indexedAt.entrySet().stream()
+                    .mapToLong(indexed -> indexed.getValue().minus(arrivals.get(indexed.getKey())).toNanos() / 1_000)
+                    .sorted()
+                    .toArray();
+            this.unindexed = arrivals.size() - indexedAt.size();
+            this.maxPending = maxPending;
+            this.requests = requests;
+            this.failures = failures;
+            this.recovery = recovery;
+        }
+
+        private long percentile(double percentile) {
+            return lagsMicros.length == 0 ? 0 : lagsMicros[(int) Math.min(lagsMicros.length - 1, Math.floor(percentile * lagsMicros.length))];
+        }
+
+        @Override
+        public String toString() {
+            return String.format("lag p50 %dus, p99 %dus, max %dus, max pending %d, unindexed %d, requests %d, failed %d, recovery %s",
+                    percentile(0.5), percentile(0.99), lagsMicros.length == 0 ? 0 : lagsMicros[lagsMicros.length - 1],
+                    maxPending, unindexed, requests, failures, recovery == null ? "never" : recovery.toMillis() + "ms");
+        }
+    }
+
+    /**
+     * Records when every document was first indexed, in the time of the simulation, and which documents the
+     * requests were for, so the benchmark knows when the indexer has handled a document
+     */
+    private static final class RecordingSolrIndexer implements SolrIndexer {
+        private final SimulatedSolrIndexer simulator;
+        private final Map<String, Duration> indexedAt = new HashMap<>();
+        private final BlockingQueue<List<String>> requests = new LinkedBlockingQueue<>();
+        private volatile Duration lastFailure = Duration.ZERO;
+
+        private RecordingSolrIndexer(SimulatedSolrIndexer simulator) {
+            this.simulator = simulator;
+        }
+
+        @Override
+        public boolean indexDocument(String id) {
+            return indexDocument(id, 0);
+        }
+
+        @Override
+        public boolean indexDocument(String id, long fingerprint) {
+            var indexed = simulator.indexDocument(id, fingerprint);
+            record(List.of(id), indexed);
+            return indexed;
+        }
+
+        @Override
+        public boolean indexDocuments(Map<String, Long> fingerprints) {
+            var indexed = simulator.indexDocuments(fingerprints);
+            // The documents of a partially failed batch stored by the search engine count as indexed
+            var stored = simulator.fingerprints("document-");
+            var ids = new ArrayList<>(fingerprints.keySet());
+            synchronized (indexedAt) {
+                ids.stream().filter(stored::containsKey).forEach(id -> indexedAt.putIfAbsent(id, simulator.now()));
+            }
+            if (!indexed) lastFailure = simulator.now();
+            requests.add(ids);
+            return indexed;
+        }
+
+        @Override
+        public boolean deleteDocument(String id) {
+            return simulator.deleteDocument(id);
+        }
+
+        int indexed() {
+            synchronized (indexedAt) {
+                return indexedAt.size();
+            }
+        }
+
+        private void record(List<String> ids, boolean indexed) {
+            synchronized (indexedAt) {
+                if (indexed) ids.forEach(id -> indexedAt.putIfAbsent(id, simulator.now()));
+            }
+            if (!indexed) lastFailure = simulator.now();
+            requests.add(ids);
+        }
+
+        /**
+         * Waits until a request for the document has been made, the last thing the indexer does with a new document
+         */
+        void awaitRequest(String id) throws InterruptedException {
+            while (true) {
+                var ids = requests.poll(TIMEOUT.toMillis(), TimeUnit.MILLISECONDS);
+                if (ids == null) throw new IllegalStateException("The indexer did not request " + id + " in time");
+                if (ids.contains(id)) return;
+            }
+        }
+    }
+}
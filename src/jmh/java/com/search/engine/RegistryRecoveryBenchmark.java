@@ -0,0 +1,122 @@
+package com.search.engine;
+
+import akka.actor.typed.ActorRef;
+import akka.actor.typed.ActorSystem;
+import akka.actor.typed.Props;
+import akka.actor.typed.javadsl.Adapter;
+import akka.actor.typed.javadsl.AskPattern;
+import akka.actor.typed.javadsl.Behaviors;
+import akka.pattern.StatusReply;
+import akka.persistence.testkit.PersistenceTestKitPlugin;
+import akka.persistence.testkit.PersistenceTestKitSnapshotPlugin;
+import akka.persistence.testkit.query.javadsl.PersistenceTestKitReadJournal;
+import akka.persistence.typed.PersistenceId;
+import com.search.engine.models.DataSource;
+import com.search.engine.models.Document;
+import com.search.engine.models.DocumentCreatedResponse;
+import com.search.engine.models.DocumentUpdatedResponse;
+import com.search.engine.models.DocumentsPage;
+import com.typesafe.config.ConfigFactory;
+import org.openjdk.jmh.annotations.*;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the startup of the registry, with its bodies recovered eagerly or hydrated lazily.
+ * <p>
+ * The journal, in memory, is filled once with the given number of documents. Every operation starts a new
+ * registry and measures the time until it answers its first request: a read that needs no bodies, the time to
+ * first request, and an update, that needs the body of the document updated.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 10)
+@Fork(1)
+public class RegistryRecoveryBenchmark {
+    private static final Duration TIMEOUT = Duration.ofMinutes(1);
+    private static final PersistenceId PERSISTENCE_ID = PersistenceId.ofUniqueId("RegistryRecoveryBenchmark");
+
+    @Param({"false", "true"})
+    public boolean lazyHydration;
+
+    @Param({"10000", "100000"})
+    public int documents;
+
+    private ActorSystem<Void> system;
+    private List<String> ids;
+    private ActorRef<DocumentRegistry.Command> registry;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        var config = ConfigFactory.parseString(
+                        "akka.actor.serialization-bindings { \"com.search.engine.JacksonSerializable\" = jackson-json }\n"
+                                + "case-search-engine-index.registry.lazy-hydration {\n"
+                                + "  enabled = " + lazyHydration + "\n"
+                                + "  read-journal = \"" + PersistenceTestKitReadJournal.Identifier() + "\"\n"
+                                + "  snapshot-every = 1000\n"
+                                + "  parallelism = 8\n"
+                                + "}")
+                .withFallback(PersistenceTestKitPlugin.getInstance().config())
+                .withFallback(PersistenceTestKitSnapshotPlugin.config())
+                .withFallback(ConfigFactory.load());
+        system = ActorSystem.create(Behaviors.empty(), "RegistryRecoveryBenchmark", config);
+
+        var writer = start();
+        ids = new ArrayList<>(documents);
+        for (int i = 0; i < documents; i += 1000) {
+            var created = new ArrayList<CompletableFuture<StatusReply<DocumentCreatedResponse>>>();
+            for (int j = i; j < Math.min(documents, i + 1000); j++) {
+                var document = new Document("Document " + j, "Document used to measure the recovery",
+                        new ArrayList<>(List.of("http://www.example.org/" + j)), null, null, DataSource.PRODUCTS);
+                created.add(AskPattern.<DocumentRegistry.Command, StatusReply<DocumentCreatedResponse>>ask(
+                        writer, ref -> new DocumentRegistry.CreateDocument(document, ref), TIMEOUT, system.scheduler()).toCompletableFuture());
+            }
+            created.forEach(reply -> ids.add(reply.join().getValue().id));
+        }
+        stop(writer);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        system.terminate();
+    }
+
+    @TearDown(Level.Invocation)
+    public void stopRegistry() {
+        stop(registry);
+    }
+
+    @Benchmark
+    public DocumentsPage timeToFirstRequest() {
+        registry = start();
+        return AskPattern.<DocumentRegistry.Command, DocumentsPage>ask(
+                registry, ref -> new DocumentRegistry.GetDocumentsPage(Optional.empty(), 1, ref), TIMEOUT, system.scheduler())
+                .toCompletableFuture()
+                .join();
+    }
+
+    @Benchmark
+    public StatusReply<DocumentUpdatedResponse> timeToFirstUpdate() {
+        registry = start();
+        var id = ids.get(ids.size() / 2);
+        return AskPattern.<DocumentRegistry.Command, StatusReply<DocumentUpdatedResponse>>ask(
+                registry, ref -> new DocumentRegistry.UpdateDocument(id, new Document(null, null, null, 9.99, null, DataSource.PRICES), ref), TIMEOUT, system.scheduler())
+                .toCompletableFuture()
+                .join();
+    }
+
+    private ActorRef<DocumentRegistry.Command> start() {
+        return system.systemActorOf(DocumentRegistry.create(PERSISTENCE_ID), "registry-" + System.nanoTime(), Props.empty());
+    }
+
+    private void stop(ActorRef<DocumentRegistry.Command> ref) {
+        Adapter.toClassic(system).stop(Adapter.toClassic(ref));
+    }
+}
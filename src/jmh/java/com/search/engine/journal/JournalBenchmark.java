@@ -0,0 +1,160 @@
+package com.search.engine.journal;
+
+import akka.Done;
+import akka.actor.typed.ActorRef;
+import akka.actor.typed.ActorSystem;
+import akka.actor.typed.Behavior;
+import akka.actor.typed.Props;
+import akka.actor.typed.javadsl.Adapter;
+import akka.actor.typed.javadsl.AskPattern;
+import akka.actor.typed.javadsl.Behaviors;
+import akka.persistence.typed.PersistenceId;
+import akka.persistence.typed.javadsl.CommandHandler;
+import akka.persistence.typed.javadsl.EventHandler;
+import akka.persistence.typed.javadsl.EventSourcedBehavior;
+import com.typesafe.config.ConfigFactory;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Time to persist events with the file journal and with the JDBC journal. The JDBC journal needs the Postgres of
+ * docker-compose.yml running; run only the file journal with e.g. -p journal=file-journal.
+ * <p>
+ * Every writer is a persistent actor persisting its events one after the other, each waiting for the previous one
+ * to be stored, as the registry does. With more writers the file journal syncs their writes to disk together. The
+ * writes per sync of the file journal are printed at the end.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+@Fork(1)
+public class JournalBenchmark {
+    private static final Duration TIMEOUT = Duration.ofMinutes(1);
+    private static final String EVENT = "{\"id\":\"1f0e3dad99908345f7439f8ffabdffc4\",\"price\":42.5,\"dataSource\":\"PRICES\"}";
+
+    @Param({"file-journal", "jdbc-journal"})
+    public String journal;
+
+    @Param({"1", "64"})
+    public int writers;
+
+    @Param({"10000"})
+    public int events;
+
+    private Path directory;
+    private ActorSystem<Void> system;
+    private List<ActorRef<Append>> started;
+
+    public static final class Append {
+        final ActorRef<Done> replyTo;
+
+        Append(ActorRef<Done> replyTo) {
+            this.replyTo = replyTo;
+        }
+    }
+
+    private static final class Writer extends EventSourcedBehavior<Append, String, Integer> {
+        private final String journalPluginId;
+
+        Writer(PersistenceId persistenceId, String journalPluginId) {
+            super(persistenceId);
+            this.journalPluginId = journalPluginId;
+        }
+
+        @Override
+        public String journalPluginId() {
+            return journalPluginId;
+        }
+
+        // The snapshot store of the same kind, so the file journal runs without Postgres
+        @Override
+        public String snapshotPluginId() {
+            return journalPluginId.replace("-journal", "-snapshot-store");
+        }
+
+        @Override
+        public Integer emptyState() {
+            return 0;
+        }
+
+        @Override
+        public CommandHandler<Append, String, Integer> commandHandler() {
+            return newCommandHandlerBuilder().forAnyState()
+                    .onCommand(Append.class, (state, command) -> Effect().persist(EVENT).thenRun(newState -> command.replyTo.tell(Done.getInstance())))
+                    .build();
+        }
+
+        @Override
+        public EventHandler<Integer, String> eventHandler() {
+            return newEventHandlerBuilder().forAnyState()
+                    .onAnyEvent((state, event) -> state + 1);
+        }
+    }
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        directory = Files.createTempDirectory("JournalBenchmark");
+        var config = ConfigFactory.parseString(
+                        "file-journal.directory = \"" + directory.resolve("journal") + "\"\n"
+                                + "file-snapshot-store.directory = \"" + directory.resolve("snapshots") + "\"\n"
+                                + "akka.persistence.journal.auto-start-journals = [\"" + journal + "\"]\n"
+                                + "akka.persistence.snapshot-store.auto-start-snapshot-stores = []")
+                .withFallback(ConfigFactory.load());
+        system = ActorSystem.create(Behaviors.empty(), "JournalBenchmark", config);
+    }
+
+    /**
+     * New persistence ids every time, recovered before measuring
+     */
+    @Setup(Level.Invocation)
+    public void startWriters() {
+        started = new ArrayList<>(writers);
+        for (int i = 0; i < writers; i++) {
+            Behavior<Append> writer = new Writer(PersistenceId.ofUniqueId("JournalBenchmark-" + UUID.randomUUID()), journal);
+            started.add(system.systemActorOf(writer, "writer-" + UUID.randomUUID(), Props.empty()));
+        }
+        started.forEach(writer -> append(writer, 1).toCompletableFuture().join());
+    }
+
+    @TearDown(Level.Invocation)
+    public void stopWriters() {
+        started.forEach(writer -> Adapter.toClassic(system).stop(Adapter.toClassic(writer)));
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        if (journal.equals("file-journal")) {
+            var storage = FileJournals.get(system).storage(system.settings().config().getConfig("file-journal"));
+            System.out.printf("%nWrites: %d, syncs: %d, %.1f writes per sync%n",
+                    storage.writes(), storage.syncs(), (double) storage.writes() / Math.max(1, storage.syncs()));
+        }
+        system.terminate();
+    }
+
+    @Benchmark
+    public void persist() {
+        var appended = new ArrayList<CompletableFuture<Done>>(writers);
+        for (ActorRef<Append> writer : started) {
+            appended.add(append(writer, events / writers).toCompletableFuture());
+        }
+        CompletableFuture.allOf(appended.toArray(CompletableFuture[]::new)).join();
+    }
+
+    private CompletionStage<Done> append(ActorRef<Append> writer, int remaining) {
+        if (remaining == 0) return CompletableFuture.completedFuture(Done.getInstance());
+        return AskPattern.<Append, Done>ask(writer, Append::new, TIMEOUT, system.scheduler())
+                .thenCompose(done -> append(writer, remaining - 1));
+    }
+}
@@ -0,0 +1,83 @@
+package com.search.engine.routes;
+
+import akka.util.ByteString;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.datatype.jdk8.Jdk8Module;
+import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
+import com.fasterxml.jackson.module.afterburner.AfterburnerModule;
+import com.fasterxml.jackson.module.paramnames.ParameterNamesModule;
+import com.search.engine.models.DataSource;
+import com.search.engine.models.Document;
+import com.search.engine.models.DocumentUpdatedResponse;
+import org.openjdk.jmh.annotations.*;
+
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Parse and serialize cost per document of the shared reader and writer, against the previous path of the routes
+ * which decoded the body to a String and wrote the response to a String before encoding it
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class JsonMarshallingBenchmark {
+    @Param({"false", "true"})
+    public boolean afterburner;
+
+    private ObjectMapper objectMapper;
+    private JsonMarshalling jsonMarshalling;
+    private ObjectReader documentReader;
+    private ByteString requestBody;
+    private DocumentUpdatedResponse response;
+
+    @Setup
+    public void setUp() {
+        objectMapper = new ObjectMapper()
+                .registerModule(new Jdk8Module())
+                .registerModule(new JavaTimeModule())
+                .registerModule(new ParameterNamesModule());
+        if (afterburner) objectMapper.registerModule(new AfterburnerModule());
+
+        jsonMarshalling = new JsonMarshalling(objectMapper);
+        documentReader = objectMapper.readerFor(Document.class);
+
+        requestBody = ByteString.fromString("{\"name\": \"My beloved product\", "
+                + "\"description\": \"It's the best product in the market\", "
+                + "\"imagesUrls\": [\"https://cdn.example.org/images/1.png\", \"https://cdn.example.org/images/2.png\"], "
+                + "\"price\": 12.95, \"promotion\": \"Black Friday\", \"dataSource\": \"PRODUCTS\"}");
+
+        var document = new Document("My beloved product", "It's the best product in the market", List.of(
+                "https://cdn.example.org/images/1.png",
+                "https://cdn.example.org/images/2.png"
+        ), 12.95, "Black Friday", DataSource.PRODUCTS);
+        document.setId(UUID.randomUUID().toString());
+        response = new DocumentUpdatedResponse(document);
+    }
+
+    @Benchmark
+    public Document parse() {
+        return jsonMarshalling.read(documentReader, requestBody);
+    }
+
+    @Benchmark
+    public Document parseThroughString() throws Exception {
+        return objectMapper.readValue(requestBody.decodeString(StandardCharsets.UTF_8), Document.class);
+    }
+
+    @Benchmark
+    public ByteString serialize() {
+        return jsonMarshalling.write(response);
+    }
+
+    @Benchmark
+    public ByteString serializeThroughString() throws Exception {
+        return ByteString.fromString(objectMapper.writeValueAsString(response));
+    }
+}
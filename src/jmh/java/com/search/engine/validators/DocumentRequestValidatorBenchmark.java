@@ -0,0 +1,126 @@
+package com.search.engine.validators;
+
+import com.search.engine.exceptions.CaseSearchEngineException;
+import com.search.engine.models.DataSource;
+import com.search.engine.models.Document;
+import com.search.engine.models.Violation;
+import org.openjdk.jmh.annotations.*;
+
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares the cost of validating a request with the scanners against the previous validator, which parsed the
+ * URLs and UUIDs with the JDK classes and failed on the first violation with an exception
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class DocumentRequestValidatorBenchmark {
+    private final DocumentRequestValidator validator = new DocumentRequestValidator();
+    private final PreviousDocumentRequestValidator previousValidator = new PreviousDocumentRequestValidator();
+
+    private Document validDocument;
+    private Document invalidDocument;
+    private String validId;
+    private String invalidId;
+
+    @Setup
+    public void setUp() {
+        validDocument = new Document("My beloved product", "It's the best product in the market", List.of(
+                "https://cdn.example.org/images/products/1.png",
+                "https://cdn.example.org/images/products/2.png",
+                "https://cdn.example.org/images/products/3.png"
+        ), 12.95, "Black Friday", DataSource.PRODUCTS);
+        invalidDocument = new Document("My beloved product", "It's the best product in the market", List.of(
+                "https://cdn.example.org/images/products/1.png",
+                "cdn.example.org/images/products/2.png"
+        ), 12.95, "Black Friday", DataSource.PRODUCTS);
+        validId = UUID.randomUUID().toString();
+        invalidId = "not-a-valid-id";
+    }
+
+    @Benchmark
+    public List<Violation> validDocument() {
+        return validator.postEntityViolations(validDocument);
+    }
+
+    @Benchmark
+    public Document validDocumentPrevious() {
+        previousValidator.validatePostEntity(validDocument);
+        return validDocument;
+    }
+
+    @Benchmark
+    public List<Violation> invalidDocument() {
+        return validator.postEntityViolations(invalidDocument);
+    }
+
+    @Benchmark
+    public Object invalidDocumentPrevious() {
+        try {
+            previousValidator.validatePostEntity(invalidDocument);
+            return invalidDocument;
+        } catch (CaseSearchEngineException ex) {
+            return ex;
+        }
+    }
+
+    @Benchmark
+    public List<Violation> validId() {
+        return validator.idViolations(validId);
+    }
+
+    @Benchmark
+    public String validIdPrevious() {
+        previousValidator.validateId(validId);
+        return validId;
+    }
+
+    @Benchmark
+    public List<Violation> invalidId() {
+        return validator.idViolations(invalidId);
+    }
+
+    @Benchmark
+    public Object invalidIdPrevious() {
+        try {
+            previousValidator.validateId(invalidId);
+            return invalidId;
+        } catch (CaseSearchEngineException ex) {
+            return ex;
+        }
+    }
+
+    /**
+     * The URL and id checks of the validator before the scanners
+     */
+    private static final class PreviousDocumentRequestValidator {
+        void validatePostEntity(Document entity) {
+            if (entity.getName() == null) throw new CaseSearchEngineException("The field name is mandatory");
+            if (entity.getDataSource() == null) throw new CaseSearchEngineException("The field dataSource is mandatory");
+
+            if (entity.getImagesUrls() != null) {
+                try {
+                    for (String s : entity.getImagesUrls()) { new URL(s); }
+                } catch (MalformedURLException ex) {
+                    throw new CaseSearchEngineException("The imageUrls field contains malformed URLs");
+                }
+            }
+        }
+
+        void validateId(String id) {
+            try {
+                UUID.fromString(id);
+            } catch (IllegalArgumentException ex) {
+                throw new CaseSearchEngineException("The id provided is invalid");
+            }
+        }
+    }
+}
@@ -0,0 +1,73 @@
+package com.search.engine;
+
+import akka.actor.typed.ActorSystem;
+import akka.japi.Pair;
+import akka.persistence.query.EventEnvelope;
+import akka.persistence.query.PersistenceQuery;
+import akka.persistence.query.javadsl.CurrentEventsByPersistenceIdQuery;
+import akka.stream.javadsl.Sink;
+import akka.stream.javadsl.Source;
+import com.search.engine.exceptions.CaseSearchEngineException;
+import com.search.engine.models.Document;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.CompletionStage;
+import java.util.stream.Collectors;
+
+/**
+ * Rebuilds the bodies of the documents from the events of the journal of the registry, see {@link DocumentBodies}.
+ * <p>
+ * The events are read by sequence number, which the journal reads by its primary key.
+ */
+final class BodyLoader {
+    private final ActorSystem<?> system;
+    private final CurrentEventsByPersistenceIdQuery readJournal;
+    private final String persistenceId;
+    private final int parallelism;
+
+    BodyLoader(ActorSystem<?> system, String readJournalPluginId, String persistenceId, int parallelism) {
+        this.system = system;
+        this.readJournal = PersistenceQuery.get(system).getReadJournalFor(CurrentEventsByPersistenceIdQuery.class, readJournalPluginId);
+        this.persistenceId = persistenceId;
+        this.parallelism = parallelism;
+    }
+
+    /**
+     * @param events sequence numbers of the events with the body of every document, by id
+     * @return the bodies of the documents, by id
+     */
+    CompletionStage<Map<String, Document>> load(Map<String, long[]> events) {
+        return Source.from(events.entrySet())
+                .mapAsyncUnordered(parallelism, entry -> load(entry.getKey(), entry.getValue()).thenApply(body -> Pair.create(entry.getKey(), body)))
+                .runWith(Sink.fold(new HashMap<String, Document>(), (bodies, body) -> {
+                    bodies.put(body.first(), body.second());
+                    return bodies;
+                }), system)
+                .thenApply(bodies -> bodies);
+    }
+
+    private CompletionStage<Document> load(String id, long[] sequenceNumbers) {
+        // The events of a document are not contiguous in the journal, every one is read on its own
+        return Source.from(Arrays.stream(sequenceNumbers).boxed().collect(Collectors.toList()))
+                .flatMapConcat(sequenceNumber -> readJournal.currentEventsByPersistenceId(persistenceId, sequenceNumber, sequenceNumber))
+                .map(EventEnvelope::event)
+                .runWith(Sink.fold(Optional.<Document>empty(), (body, event) -> Optional.of(apply(id, body, event))), system)
+                .thenApply(body -> body.orElseThrow(() -> new CaseSearchEngineException("The body of the document " + id + " is not in the journal")));
+    }
+
+    private Document apply(String id, Optional<Document> body, Object event) {
+        if (event instanceof DocumentRegistry.DocumentCreated) {
+            return ((DocumentRegistry.DocumentCreated) event).document;
+        } else if (event instanceof DocumentRegistry.DocumentUpdated && body.isPresent()) {
+            DocumentRegistry.State.mergeBody(body.get(), ((DocumentRegistry.DocumentUpdated) event).document);
+        } else if (event instanceof DocumentRegistry.PromotionsExpired && body.isPresent()
+                && ((DocumentRegistry.PromotionsExpired) event).ids.contains(id)) {
+            body.get().setPromotion(null);
+        }
+
+        return body.orElseThrow(() -> new CaseSearchEngineException("The body of a document does not start with its creation"));
+    }
+}
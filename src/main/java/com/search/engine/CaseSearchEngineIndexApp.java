@@ -1,52 +1,202 @@
 package com.search.engine;
 
+import akka.Done;
 import akka.NotUsed;
+import akka.actor.CoordinatedShutdown;
 import akka.actor.typed.ActorRef;
 import akka.actor.typed.ActorSystem;
 import akka.actor.typed.Behavior;
+import akka.actor.typed.javadsl.ActorContext;
+import akka.actor.typed.javadsl.AskPattern;
 import akka.actor.typed.javadsl.Behaviors;
+import akka.actor.typed.receptionist.ServiceKey;
 import akka.http.javadsl.Http;
 import akka.http.javadsl.ServerBinding;
 import akka.http.javadsl.server.Route;
 import akka.persistence.typed.PersistenceId;
+import akka.stream.ActorAttributes;
+import com.search.engine.cluster.Deployment;
+import com.search.engine.journal.JournalMaintenance;
 import com.search.engine.models.Document;
+import com.search.engine.outbox.DocumentOutbox;
+import com.search.engine.outbox.OutboxOffsetStore;
+import com.search.engine.reconciliation.Reconciler;
+import com.search.engine.reindex.ReindexJob;
+import com.search.engine.routes.AdminRoutes;
+import com.search.engine.routes.ChangeFeedRoutes;
+import com.search.engine.routes.DeltaRoutes;
 import com.search.engine.routes.DocumentRoutes;
-import com.search.engine.solr.MockSolrIndexer;
+import com.search.engine.routes.OperationRoutes;
+import com.search.engine.routes.OperationStore;
+import com.search.engine.routes.TenantRoutes;
+import com.search.engine.solr.FingerprintStore;
 import com.search.engine.solr.SolrIndexer;
+import com.search.engine.tenants.TenantMetrics;
+import com.search.engine.tenants.Tenants;
 import com.search.engine.validators.DocumentRequestValidator;
 import com.search.engine.validators.RequestValidator;
+import com.typesafe.config.ConfigFactory;
 
 import java.net.InetSocketAddress;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.CompletionStage;
+import java.util.stream.Collectors;
+
+import static akka.http.javadsl.server.Directives.concat;
 
 public class CaseSearchEngineIndexApp {
 
     public static void main(String[] args) {
         Behavior<NotUsed> rootBehavior = Behaviors.setup(context -> {
-            SolrIndexer solrIndexer = new MockSolrIndexer(context.getSystem());
-            ActorRef<DocumentIndexer.Command> documentIndexer = context.spawn(DocumentIndexer.create(solrIndexer), "DocumentIndexer");
-            ActorRef<DocumentRegistry.Command> documentRegistry = context.spawn(
-                    DocumentRegistry.create(PersistenceId.ofUniqueId("DocumentRegistry"), documentIndexer), "DocumentRegistry");
+            var config = context.getSystem().settings().config();
+            Deployment deployment = config.getBoolean("case-search-engine-index.cluster.enabled")
+                    ? Deployment.cluster(context)
+                    : Deployment.local(context);
+
+            Catalogue catalogue = startCatalogue(context, deployment, "", DocumentIndexer.SERVICE_KEY, new TenantMetrics(),
+                    SearchDocuments.get(context.getSystem()), config.getString("case-search-engine-index.journal.partitioned-table"));
 
             RequestValidator<Document> validator = new DocumentRequestValidator();
-            DocumentRoutes documentRoutes = new DocumentRoutes(context.getSystem(), documentRegistry, validator);
-            startHttpServer(documentRoutes.documentRoutes(), context.getSystem());
+            OperationStore operations = new OperationStore(context.getSystem());
+            DocumentRoutes documentRoutes = new DocumentRoutes(context.getSystem(), catalogue.registry, validator, operations);
+            OperationRoutes operationRoutes = new OperationRoutes(context.getSystem(), operations);
+            ChangeFeedRoutes changeFeedRoutes = new ChangeFeedRoutes(context.getSystem(), catalogue.persistenceId);
+            DeltaRoutes deltaRoutes = new DeltaRoutes(context.getSystem(), catalogue.registry);
+            AdminRoutes adminRoutes = new AdminRoutes(context.getSystem(), catalogue.reindexJob);
+
+            // Every tenant has its own catalogue, with its own registry, indexers, reindex, journal partitions and limits
+            var tenants = Tenants.get(context.getSystem());
+            TenantRoutes tenantRoutes = new TenantRoutes(context.getSystem(), validator, operations);
+            var catalogues = new ArrayList<>(List.of(catalogue));
+            var allDocumentRoutes = new ArrayList<>(List.of(documentRoutes));
+            for (String tenant : tenants.ids()) {
+                var tenantCatalogue = startCatalogue(context, deployment, Tenants.suffix(tenant), DocumentIndexer.serviceKey(tenant), tenants.metrics(tenant),
+                        SearchDocuments.get(context.getSystem(), tenant), JournalMaintenance.tenantTable(config, tenant));
+                catalogues.add(tenantCatalogue);
+                allDocumentRoutes.add(tenantRoutes.add(tenant, tenantCatalogue.registry, tenantCatalogue.reindexJob));
+            }
+
+            // The change feed and the delta go first, the document routes are sealed and would reject them
+            startHttpServer(concat(adminRoutes.adminRoutes(), tenantRoutes.tenantRoutes(), changeFeedRoutes.changeFeedRoutes(), deltaRoutes.deltaRoutes(), operationRoutes.operationRoutes(), documentRoutes.documentRoutes()), context.getSystem());
+            // In a cluster the outboxes may run in another node, they stop when handed over to the next one
+            addShutdownTasks(context.getSystem(), allDocumentRoutes,
+                    catalogues.stream().map(started -> started.indexer).collect(Collectors.toList()),
+                    deployment.isClustered() ? List.of() : catalogues.stream().flatMap(started -> started.outbox.stream()).collect(Collectors.toList()));
 
             return Behaviors.empty();
         });
 
+        // The singleton registry with distributed indexers adds the settings of cluster.conf
+        var config = ConfigFactory.load();
+        if (config.getBoolean("case-search-engine-index.cluster.enabled")) {
+            config = ConfigFactory.load("cluster");
+        }
+
         // boot up server using the route as defined below
-        ActorSystem.create(rootBehavior, "CaseSearchEngineIndexHttpServer");
+        ActorSystem.create(rootBehavior, "CaseSearchEngineIndexHttpServer", config);
     }
 
+    /**
+     * The registry of a catalogue, the one without tenant or the one of a tenant, with the indexer of this node, its
+     * reindex, the maintenance of its journal partitions with the JDBC journal, and the outbox and the reconciliation
+     * when enabled. The names of its actors, and its persistence ids, end with the suffix, and so does its collection
+     * in the search engine. Every catalogue has its own search documents
+     */
+    static Catalogue startCatalogue(ActorContext<?> context, Deployment deployment, String suffix,
+                                    ServiceKey<DocumentIndexer.Command> indexerKey, TenantMetrics metrics, SearchDocuments searchDocuments,
+                                    String journalTable) {
+        var config = context.getSystem().settings().config();
+        var registryPersistenceId = PersistenceId.ofUniqueId("DocumentRegistry" + suffix);
+
+        var collection = config.getString("case-search-engine-index.solrIndexer.collection") + suffix;
+        SolrIndexer solrIndexer = SolrIndexer.create(context.getSystem(), collection);
+        context.getLog().info("{} indexes into the collection {}", registryPersistenceId.id(), collection);
+        // The indexer runs its calls to the search engine on their own dispatcher
+        ActorRef<DocumentIndexer.Command> documentIndexer = context.spawn(
+                DocumentIndexer.create(solrIndexer, config.getDuration("case-search-engine-index.indexer.retry-interval"), metrics, searchDocuments), "DocumentIndexer" + suffix);
+        ActorRef<DocumentIndexer.Command> documentIndexers = deployment.indexers(indexerKey, documentIndexer);
+
+        ActorRef<DocumentRegistry.Command> documentRegistry;
+        Optional<ActorRef<DocumentOutbox.Command>> documentOutbox = Optional.empty();
+        Optional<ActorRef<OutboxOffsetStore.Command>> outboxOffsetStore = Optional.empty();
+        if (config.getBoolean("case-search-engine-index.outbox.enabled")) {
+            documentRegistry = deployment.registry(registryPersistenceId, DocumentRegistry.create(registryPersistenceId, Optional.empty(), searchDocuments));
+            ActorRef<OutboxOffsetStore.Command> offsetStore = deployment.singleton(
+                    OutboxOffsetStore.create(PersistenceId.ofUniqueId("DocumentOutboxOffset" + suffix)), "DocumentOutboxOffset" + suffix);
+            outboxOffsetStore = Optional.of(offsetStore);
+            documentOutbox = Optional.of(deployment.singleton(
+                    DocumentOutbox.create(registryPersistenceId, offsetStore, documentIndexers, documentRegistry), "DocumentOutbox" + suffix));
+        } else {
+            documentRegistry = deployment.registry(registryPersistenceId, DocumentRegistry.create(registryPersistenceId, Optional.of(documentIndexers), searchDocuments));
+        }
+
+        if (config.getBoolean("case-search-engine-index.reconciliation.enabled")) {
+            if (solrIndexer instanceof FingerprintStore) {
+                deployment.singleton(Reconciler.create(documentRegistry, documentIndexers, (FingerprintStore) solrIndexer), "Reconciler" + suffix);
+            } else {
+                context.getLog().warn("The search engine does not store the fingerprints of the documents, the reconciliation is disabled");
+            }
+        }
+
+        // The partitions are of the tables of the JDBC journal
+        if (config.getString("case-search-engine-index.persistence.store").equals("jdbc")) {
+            deployment.singleton(JournalMaintenance.create(registryPersistenceId.id(), journalTable, outboxOffsetStore), "JournalMaintenance" + suffix);
+        }
+
+        ActorRef<ReindexJob.Command> reindexJob = deployment.singleton(
+                ReindexJob.create(PersistenceId.ofUniqueId("DocumentReindex" + suffix), documentRegistry, documentIndexers), "DocumentReindex" + suffix);
+
+        return new Catalogue(registryPersistenceId, documentRegistry, documentIndexer, documentIndexers, solrIndexer, documentOutbox, outboxOffsetStore, reindexJob);
+    }
+
+    static final class Catalogue {
+        final PersistenceId persistenceId;
+        final ActorRef<DocumentRegistry.Command> registry;
+        // The one of this node
+        final ActorRef<DocumentIndexer.Command> indexer;
+        // The one owning every document, in any node when the indexers are distributed
+        final ActorRef<DocumentIndexer.Command> indexers;
+        final SolrIndexer solrIndexer;
+        final Optional<ActorRef<DocumentOutbox.Command>> outbox;
+        final Optional<ActorRef<OutboxOffsetStore.Command>> outboxOffsetStore;
+        final ActorRef<ReindexJob.Command> reindexJob;
+
+        Catalogue(PersistenceId persistenceId, ActorRef<DocumentRegistry.Command> registry, ActorRef<DocumentIndexer.Command> indexer,
+                  ActorRef<DocumentIndexer.Command> indexers, SolrIndexer solrIndexer,
+                  Optional<ActorRef<DocumentOutbox.Command>> outbox, Optional<ActorRef<OutboxOffsetStore.Command>> outboxOffsetStore,
+                  ActorRef<ReindexJob.Command> reindexJob) {
+            this.persistenceId = persistenceId;
+            this.registry = registry;
+            this.indexer = indexer;
+            this.indexers = indexers;
+            this.solrIndexer = solrIndexer;
+            this.outbox = outbox;
+            this.outboxOffsetStore = outboxOffsetStore;
+            this.reindexJob = reindexJob;
+        }
+    }
+
+    /**
+     * The routes run on the HTTP dispatcher, the connections on the default one
+     */
     static void startHttpServer(Route route, ActorSystem<?> system) {
+        var handler = route.flow(system)
+                .addAttributes(ActorAttributes.dispatcher(system.settings().config().getString("case-search-engine-index.http.dispatcher")));
         CompletionStage<ServerBinding> futureBinding =
                 Http.get(system)
-                        .newServerAt("localhost", 8080)
-                        .bind(route);
+                        .newServerAt(system.settings().config().getString("case-search-engine-index.http.interface"),
+                                system.settings().config().getInt("case-search-engine-index.http.port"))
+                        .bindFlow(handler);
 
         futureBinding.whenComplete((binding, exception) -> {
             if (binding != null) {
+                // Unbinds in the service-unbind phase, then waits for the requests in flight to complete
+                binding.addToCoordinatedShutdown(system.settings().config().getDuration("case-search-engine-index.shutdown.http-hard-deadline"), system);
                 InetSocketAddress address = binding.localAddress();
                 system.log().info("Server online at http://{}:{}/",
                         address.getHostString(),
@@ -57,4 +207,54 @@ public class CaseSearchEngineIndexApp {
             }
         });
     }
+
+    /**
+     * Shutdown without losing index work, so a restart does not have to index everything again. Before unbinding,
+     * the document routes reject the new requests. Once the requests in flight complete, the outbox stops reading
+     * the journal and stores the offset of the acknowledged work, while the indexer retries the documents that failed
+     */
+    static void addShutdownTasks(ActorSystem<?> system,
+                                 List<DocumentRoutes> documentRoutes,
+                                 List<ActorRef<DocumentIndexer.Command>> documentIndexers,
+                                 List<ActorRef<DocumentOutbox.Command>> documentOutboxes) {
+        var shutdown = CoordinatedShutdown.get(system);
+        Duration drainDeadline = system.settings().config().getDuration("case-search-engine-index.shutdown.drain-deadline");
+
+        shutdown.addTask(CoordinatedShutdown.PhaseBeforeServiceUnbind(), "stop-admitting-documents", () -> {
+            system.log().info("Shutting down, rejecting new document requests, {} in flight",
+                    documentRoutes.stream().mapToInt(DocumentRoutes::requestsInFlight).sum());
+            documentRoutes.forEach(DocumentRoutes::stopAdmitting);
+            return CompletableFuture.completedFuture(Done.getInstance());
+        });
+
+        shutdown.addTask(CoordinatedShutdown.PhaseServiceStop(), "drain-index-work", () -> {
+            var deadline = Instant.now().plus(drainDeadline);
+            // All of them are bounded by the deadline, the ask timeouts only cover a lost reply
+            var askTimeout = drainDeadline.plusSeconds(5);
+
+            var drained = new ArrayList<CompletableFuture<Done>>();
+            for (ActorRef<DocumentOutbox.Command> outbox : documentOutboxes) {
+                drained.add(AskPattern.<DocumentOutbox.Command, Long>ask(outbox, DocumentOutbox.Drain::new, askTimeout, system.scheduler())
+                        .handle((offset, exception) -> {
+                            if (exception != null) {
+                                // The requests still failing are not acknowledged, they are delivered again on restart
+                                system.log().warn("{} not drained before the deadline, the work after its stored offset is delivered again on restart", outbox.path().name());
+                            } else {
+                                system.log().info("{} offset stored at {}", outbox.path().name(), offset);
+                            }
+                            return Done.getInstance();
+                        }).toCompletableFuture());
+            }
+            for (ActorRef<DocumentIndexer.Command> indexer : documentIndexers) {
+                drained.add(AskPattern.<DocumentIndexer.Command, DocumentIndexer.DrainReport>ask(
+                                indexer, ref -> new DocumentIndexer.Drain(deadline, ref), askTimeout, system.scheduler())
+                        .thenApply(report -> {
+                            system.log().info("Index work of {} drained: {}", indexer.path().name(), report);
+                            return Done.getInstance();
+                        }).toCompletableFuture());
+            }
+
+            return CompletableFuture.allOf(drained.toArray(CompletableFuture[]::new)).thenApply(done -> Done.getInstance());
+        });
+    }
 }
@@ -0,0 +1,53 @@
+package com.search.engine;
+
+import com.fasterxml.jackson.annotation.JsonCreator;
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Where the bodies of the documents are, when the registry hydrates them lazily.
+ * <p>
+ * For every document, the sequence numbers of the events with its body, the DocumentCreated, DocumentUpdated and
+ * PromotionsExpired events, are kept so the body can be rebuilt from the journal. Only the hydrated documents have
+ * their body in the registry, the rest only have their id, state, data source and indexed timestamps. Which
+ * documents are hydrated is not part of the snapshots, the snapshots never have bodies.
+ */
+final class DocumentBodies {
+    @JsonProperty("events")
+    private final Map<String, long[]> events;
+    private final Set<String> hydrated = new HashSet<>();
+
+    @JsonCreator
+    DocumentBodies(@JsonProperty("events") Map<String, long[]> events) {
+        this.events = events;
+    }
+
+    DocumentBodies() {
+        this(new HashMap<>());
+    }
+
+    void added(String id, long sequenceNumber) {
+        events.merge(id, new long[]{sequenceNumber}, (previous, added) -> {
+            var all = Arrays.copyOf(previous, previous.length + 1);
+            all[previous.length] = sequenceNumber;
+            return all;
+        });
+    }
+
+    long[] events(String id) {
+        return events.getOrDefault(id, new long[0]);
+    }
+
+    boolean isHydrated(String id) {
+        return hydrated.contains(id);
+    }
+
+    void hydrated(String id) {
+        hydrated.add(id);
+    }
+}
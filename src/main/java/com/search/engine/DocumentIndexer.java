@@ -1,109 +1,623 @@
 package com.search.engine;
 
+import akka.Done;
 import akka.actor.typed.ActorRef;
 import akka.actor.typed.Behavior;
+import akka.actor.typed.DispatcherSelector;
 import akka.actor.typed.javadsl.AbstractBehavior;
 import akka.actor.typed.javadsl.ActorContext;
 import akka.actor.typed.javadsl.Behaviors;
 import akka.actor.typed.javadsl.Receive;
+import akka.actor.typed.receptionist.ServiceKey;
+import com.fasterxml.jackson.annotation.JsonCreator;
 import com.search.engine.models.DataSource;
+import com.search.engine.reconciliation.Fingerprints;
+import com.search.engine.solr.SearchDocument;
 import com.search.engine.solr.SolrIndexer;
+import com.search.engine.tenants.TenantMetrics;
+import com.search.engine.tenants.Tenants;
+import com.search.engine.tracing.TraceContext;
+import com.search.engine.tracing.Tracing;
 
+import java.time.Duration;
 import java.time.Instant;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
 import java.util.LinkedList;
-import java.util.Queue;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.function.Supplier;
 
 /**
  * Represents the actor responsible for indexing and deleting documents in the search engine
+ * <p>
+ * The calls to the search engine block, they run on the indexer dispatcher, up to the configured parallelism at a
+ * time, and the actor handles their outcome. A document has at most one call in flight, its index and delete commands
+ * reach the search engine in the order they arrived.
  */
 public class DocumentIndexer extends AbstractBehavior<DocumentIndexer.Command> {
+    /**
+     * With the registry singleton and the indexers distributed, every node runs an indexer registered with this key
+     */
+    public static final ServiceKey<Command> SERVICE_KEY = ServiceKey.create(Command.class, "DocumentIndexer");
+    /**
+     * The version of the index work that is not ordered, e.g. from the reconciliation
+     */
+    public static final long UNVERSIONED = 0;
+    private static final Duration DRAIN_RETRY_INTERVAL = Duration.ofMillis(500);
+    /**
+     * The documents whose latest version is remembered, the least recently seen are forgotten first
+     */
+    static final int MAX_VERSIONS = 100_000;
+
     private final SolrIndexer solrIndexer;
-    private final Queue<IndexDocument> documentsFailedToIndex;
-    private final Queue<DeleteDocument> documentsFailedToDelete;
-    public interface Command {}
+    private final Executor solrExecutor;
+    private final int parallelism;
+    private final Tracing tracing;
+    private final SearchDocuments searchDocuments;
+    private final TenantMetrics metrics;
+    // Waiting for a call to the search engine, in arrival order
+    private final LinkedList<Command> pending;
+    // Failed and waiting to be retried, in the order they failed. The one retried stays at the head until it succeeds
+    private final LinkedList<Command> failed;
+    // The commands with a call to the search engine in flight, and their documents. A document has at most one
+    private final Set<Command> running;
+    private final Set<String> busy;
+    private final Map<String, Long> latestVersions;
+    private boolean retryInFlight = false;
+    public interface Command extends JacksonSerializable {}
+
+    private enum RetryFailed implements Command {
+        INSTANCE
+    }
 
-    private DocumentIndexer(ActorContext<DocumentIndexer.Command> context, final SolrIndexer solrIndexer) {
+    private DocumentIndexer(ActorContext<DocumentIndexer.Command> context, final SolrIndexer solrIndexer, final TenantMetrics metrics,
+                            final SearchDocuments searchDocuments) {
         super(context);
         this.solrIndexer = solrIndexer;
-        this.documentsFailedToIndex = new LinkedList<>();
-        this.documentsFailedToDelete = new LinkedList<>();
+        this.metrics = metrics;
+        this.tracing = Tracing.get(context.getSystem());
+        this.searchDocuments = searchDocuments;
+
+        var config = context.getSystem().settings().config().getConfig("case-search-engine-index.indexer");
+        this.solrExecutor = context.getSystem().dispatchers().lookup(DispatcherSelector.fromConfig(config.getString("dispatcher")));
+        this.parallelism = config.getInt("parallelism");
+        this.pending = new LinkedList<>();
+        this.failed = new LinkedList<>();
+        this.running = Collections.newSetFromMap(new IdentityHashMap<>());
+        this.busy = new HashSet<>();
+        this.latestVersions = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Long> eldest) {
+                return size() > MAX_VERSIONS;
+            }
+        };
     }
 
+    /**
+     * Failed documents are retried when the next document arrives
+     */
     public static Behavior<DocumentIndexer.Command> create(final SolrIndexer solrIndexer) {
-        return Behaviors.setup(context -> new DocumentIndexer(context, solrIndexer));
+        return Behaviors.setup(context -> new DocumentIndexer(context, solrIndexer, new TenantMetrics(), SearchDocuments.get(context.getSystem())));
+    }
+
+    /**
+     * Failed documents are also retried periodically. Needed when the documents come from the outbox, as it waits
+     * for the acknowledgement of the failed documents before delivering new ones
+     */
+    public static Behavior<DocumentIndexer.Command> create(final SolrIndexer solrIndexer, final Duration retryInterval) {
+        return Behaviors.setup(context -> create(solrIndexer, retryInterval, new TenantMetrics(), SearchDocuments.get(context.getSystem())));
+    }
+
+    /**
+     * The indexer of a catalogue, it counts its work in the metrics of the tenant and takes the search documents
+     * prebuilt by the registry of the catalogue
+     */
+    public static Behavior<DocumentIndexer.Command> create(final SolrIndexer solrIndexer, final Duration retryInterval,
+                                                           final TenantMetrics metrics, final SearchDocuments searchDocuments) {
+        return Behaviors.setup(context -> Behaviors.withTimers(timers -> {
+            timers.startTimerWithFixedDelay(RetryFailed.INSTANCE, retryInterval);
+            return new DocumentIndexer(context, solrIndexer, metrics, searchDocuments);
+        }));
+    }
+
+    /**
+     * With the indexers distributed, the indexers of a tenant are registered with their own key
+     */
+    public static ServiceKey<Command> serviceKey(String tenant) {
+        return ServiceKey.create(Command.class, "DocumentIndexer" + Tenants.suffix(tenant));
     }
 
     @Override
     public Receive<DocumentIndexer.Command> createReceive() {
         return newReceiveBuilder()
                 .onMessage(IndexDocument.class, this::onIndexDocument)
+                .onMessage(IndexDocuments.class, this::onIndexDocuments)
                 .onMessage(DeleteDocument.class, this::onDeleteDocument)
+                .onMessage(SolrCallCompleted.class, this::onSolrCallCompleted)
+                .onMessageEquals(RetryFailed.INSTANCE, this::onRetryFailed)
+                .onMessage(Drain.class, this::onDrain)
                 .build();
     }
 
     private Behavior<DocumentIndexer.Command> onIndexDocument(IndexDocument command) {
-        var solrIndexerOk = true;
-        while(!documentsFailedToIndex.isEmpty() && solrIndexerOk) {
-            solrIndexerOk = indexDocument(documentsFailedToIndex.poll());
+        tracing.recordWait(command.trace, "indexer.queue", Map.of("id", command.id));
+        // The version is recorded first, so the failed commands it supersedes are not retried
+        if (!isStale(command.id, command.version, command.ackTo)) enqueue(command);
+        return process();
+    }
+
+    /**
+     * The index and delete commands of a document can arrive out of order, e.g. from the outbox. A command older
+     * than the latest version seen is superseded, it is acknowledged without calling the search engine. Commands
+     * without a version are never stale
+     */
+    private boolean isStale(String id, long version, Optional<ActorRef<Done>> ackTo) {
+        if (version == UNVERSIONED) return false;
+        if (version >= recordVersion(id, version)) return false;
+
+        ackTo.ifPresent(ref -> ref.tell(Done.getInstance()));
+        return true;
+    }
+
+    /**
+     * Records the version when it is the latest seen for the document
+     *
+     * @return the latest version seen
+     */
+    private long recordVersion(String id, long version) {
+        return latestVersions.merge(id, version, Math::max);
+    }
+
+    private boolean isSuperseded(String id, long version) {
+        var latestVersion = latestVersions.get(id);
+        return version != UNVERSIONED && latestVersion != null && version < latestVersion;
+    }
+
+    private Behavior<DocumentIndexer.Command> onIndexDocuments(IndexDocuments command) {
+        // A batch is never dropped for some of its documents, their version is only recorded so the older commands
+        // of them are superseded
+        if (command.version != UNVERSIONED) command.ids.forEach(id -> recordVersion(id, command.version));
+        enqueue(command);
+        return process();
+    }
+
+    private Behavior<DocumentIndexer.Command> onDeleteDocument(DeleteDocument command) {
+        tracing.recordWait(command.trace, "indexer.queue", Map.of("id", command.id));
+        // The version is recorded first, so the failed commands it supersedes are not retried
+        if (!isStale(command.id, command.version, command.ackTo)) enqueue(command);
+        return process();
+    }
+
+    /**
+     * A command delivered again, e.g. by the outbox after its acknowledgement timed out, takes the place of the one
+     * failed or waiting with the same documents and version, so the work is done and acknowledged once, to the new
+     * sender. The commands without a version are always added, they can be ordered only by their arrival
+     */
+    private void enqueue(Command command) {
+        if (!replace(failed, command) && !replace(pending, command)) pending.add(command);
+    }
+
+    private boolean replace(List<Command> commands, Command command) {
+        if (version(command) == UNVERSIONED) return false;
+
+        var queued = commands.listIterator();
+        while (queued.hasNext()) {
+            var previous = queued.next();
+            // The one in flight is left alone, the new one is done after it
+            if (sameWork(previous, command) && !running.contains(previous)) {
+                queued.set(command);
+                return true;
+            }
         }
 
-        indexDocument(command);
-        return this;
+        return false;
     }
 
-    private boolean indexDocument(IndexDocument command) {
-        var indexed = solrIndexer.indexDocument(command.id);
+    private static boolean sameWork(Command a, Command b) {
+        return a.getClass() == b.getClass() && version(a) == version(b) && ids(a).equals(ids(b)) && Objects.equals(dataSource(a), dataSource(b));
+    }
+
+    /**
+     * The failed commands are retried first, one at a time, when a command arrives. The commands waiting start once
+     * none is left, so the work of a document is not reordered with the one that failed before it
+     */
+    private Behavior<DocumentIndexer.Command> process() {
+        retryFailed();
+        startPending();
+        return retrying();
+    }
+
+    /**
+     * Starts the oldest failed command. The ones superseded since they failed are acknowledged without calling the
+     * search engine, and the next one is tried
+     */
+    private void retryFailed() {
+        while (!retryInFlight && !failed.isEmpty()) {
+            if (start(failed.peek(), true)) return;
+            failed.poll();
+        }
+    }
+
+    /**
+     * Starts the commands waiting, in arrival order, up to the configured parallelism. A command waits while a
+     * document of it is busy, and so do the ones after it with the same documents
+     */
+    private void startPending() {
+        if (!failed.isEmpty()) return;
+
+        var blocked = new HashSet<String>();
+        var waiting = pending.iterator();
+        while (waiting.hasNext() && running.size() < parallelism) {
+            var command = waiting.next();
+            var ids = ids(command);
+            if (ids.stream().anyMatch(id -> busy.contains(id) || blocked.contains(id))) {
+                blocked.addAll(ids);
+                continue;
+            }
+
+            waiting.remove();
+            start(command, false);
+        }
+    }
+
+    /**
+     * Calls the search engine on the indexer dispatcher, the outcome comes back as a {@link SolrCallCompleted}
+     *
+     * @return false when there is nothing to call, the command has been superseded
+     */
+    private boolean start(Command command, boolean retry) {
+        var timestamp = Instant.now();
+        Supplier<Boolean> call;
+        List<String> ids;
+
+        if (command instanceof IndexDocument) {
+            var index = (IndexDocument) command;
+            if (isSuperseded(index.id, index.version)) { // A newer version arrived while it was waiting
+                index.ackTo.ifPresent(ackTo -> ackTo.tell(Done.getInstance()));
+                return false;
+            }
+
+            // The time of the index is stored with the document in the search engine and in the registry, the
+            // reconciliation compares them. The search document prebuilt by the registry is sent when it is as new as
+            // the command, with the indexers distributed only the registries of the same node have them
+            var fingerprint = Fingerprints.of(index.id, Optional.of(timestamp));
+            var searchDocument = searchDocuments.get(index.id, index.version);
+            call = () -> solrIndexer.indexDocument(index.id, fingerprint, searchDocument);
+            ids = List.of(index.id);
+        } else if (command instanceof IndexDocuments) {
+            // The documents of the batch superseded by a newer version are left out
+            var batch = (IndexDocuments) command;
+            var fingerprints = new LinkedHashMap<String, Long>();
+            var documents = new HashMap<String, SearchDocument>();
+            batch.ids.stream()
+                    .filter(id -> !isSuperseded(id, batch.version))
+                    .forEach(id -> {
+                        fingerprints.put(id, Fingerprints.of(id, Optional.of(timestamp)));
+                        searchDocuments.get(id, batch.version).ifPresent(document -> documents.put(id, document));
+                    });
+            if (fingerprints.isEmpty()) {
+                batch.ackTo.ifPresent(ackTo -> ackTo.tell(Done.getInstance()));
+                return false;
+            }
 
-        if (indexed) {
-            command.respondTo.tell(new DocumentRegistry.DocumentStatusToIndexed(command.id, command.dataSource, Instant.now()));
+            call = () -> solrIndexer.indexDocuments(fingerprints, documents);
+            ids = List.copyOf(fingerprints.keySet());
         } else {
-            documentsFailedToIndex.add(command);
+            var delete = (DeleteDocument) command;
+            if (isSuperseded(delete.id, delete.version)) {
+                delete.ackTo.ifPresent(ackTo -> ackTo.tell(Done.getInstance()));
+                return false;
+            }
+
+            call = () -> solrIndexer.deleteDocument(delete.id);
+            ids = List.of(delete.id);
         }
 
-        return indexed;
+        running.add(command);
+        busy.addAll(ids);
+        retryInFlight |= retry;
+        var start = Tracing.now();
+        getContext().pipeToSelf(CompletableFuture.supplyAsync(call, solrExecutor),
+                (ok, exception) -> new SolrCallCompleted(command, ids, timestamp, start, exception == null && ok, retry));
+        return true;
     }
 
-    private Behavior<DocumentIndexer.Command> onDeleteDocument(DeleteDocument command) {
-        var solrIndexerOk = true;
-        while(!documentsFailedToDelete.isEmpty() && solrIndexerOk) {
-            solrIndexerOk = deleteDocument(documentsFailedToDelete.poll());
+    private Behavior<DocumentIndexer.Command> onSolrCallCompleted(SolrCallCompleted completed) {
+        var command = completed.command;
+        running.remove(command);
+        busy.removeAll(completed.ids);
+
+        if (command instanceof IndexDocument) {
+            var index = (IndexDocument) command;
+            // A failed call is retried later, every call has its own span
+            tracing.record(index.trace, "solr.index", completed.start, Map.of("id", index.id, "indexed", String.valueOf(completed.ok)));
+            metrics.indexed(1, completed.ok);
+            if (completed.ok) {
+                index.respondTo.tell(new DocumentRegistry.DocumentStatusToIndexed(index.id, index.dataSource, completed.timestamp));
+                index.ackTo.ifPresent(ackTo -> ackTo.tell(Done.getInstance()));
+            }
+        } else if (command instanceof IndexDocuments) {
+            // If the batch fails, the whole batch is retried
+            var batch = (IndexDocuments) command;
+            metrics.indexed(completed.ids.size(), completed.ok);
+            if (completed.ok) {
+                completed.ids.forEach(id -> batch.respondTo.tell(new DocumentRegistry.DocumentStatusToIndexed(id, batch.dataSource, completed.timestamp)));
+                batch.ackTo.ifPresent(ackTo -> ackTo.tell(Done.getInstance()));
+            }
+        } else {
+            var delete = (DeleteDocument) command;
+            tracing.record(delete.trace, "solr.delete", completed.start, Map.of("id", delete.id, "deleted", String.valueOf(completed.ok)));
+            metrics.deleted(completed.ok);
+            if (completed.ok) {
+                delete.respondTo.tell(new DocumentRegistry.DocumentStatusToDeleted(delete.id));
+                delete.ackTo.ifPresent(ackTo -> ackTo.tell(Done.getInstance()));
+            }
         }
 
-        deleteDocument(command);
+        if (completed.retry) {
+            retryInFlight = false;
+            // The next failed command is retried only while the search engine answers
+            if (!completed.ok) return retrying();
+            failed.poll();
+        } else if (!completed.ok) {
+            failed.add(command);
+            return retrying();
+        }
+
+        return process();
+    }
+
+    private static List<String> ids(Command command) {
+        if (command instanceof IndexDocument) return List.of(((IndexDocument) command).id);
+        if (command instanceof IndexDocuments) return ((IndexDocuments) command).ids;
+        return List.of(((DeleteDocument) command).id);
+    }
+
+    private static long version(Command command) {
+        if (command instanceof IndexDocument) return ((IndexDocument) command).version;
+        if (command instanceof IndexDocuments) return ((IndexDocuments) command).version;
+        return ((DeleteDocument) command).version;
+    }
+
+    private static DataSource dataSource(Command command) {
+        if (command instanceof IndexDocument) return ((IndexDocument) command).dataSource;
+        if (command instanceof IndexDocuments) return ((IndexDocuments) command).dataSource;
+        return null;
+    }
+
+    private int documentsFailedToIndex() {
+        return documentsToIndex(failed);
+    }
+
+    private int documentsFailedToDelete() {
+        return documentsToDelete(failed);
+    }
+
+    /**
+     * The commands failed, waiting or in flight, every one once
+     */
+    private Set<Command> left() {
+        var left = Collections.<Command>newSetFromMap(new IdentityHashMap<>());
+        left.addAll(failed);
+        left.addAll(pending);
+        left.addAll(running);
+        return left;
+    }
+
+    private static int documentsToIndex(Collection<Command> commands) {
+        return commands.stream().filter(command -> !(command instanceof DeleteDocument)).mapToInt(command -> ids(command).size()).sum();
+    }
+
+    private static int documentsToDelete(Collection<Command> commands) {
+        return (int) commands.stream().filter(command -> command instanceof DeleteDocument).count();
+    }
+
+    private Behavior<DocumentIndexer.Command> onRetryFailed() {
+        return process();
+    }
+
+    private Behavior<DocumentIndexer.Command> retrying() {
+        metrics.retrying(documentsFailedToIndex() + documentsFailedToDelete());
         return this;
     }
 
-    private boolean deleteDocument(DeleteDocument command) {
-        var deleted = solrIndexer.deleteDocument(command.id);
+    /**
+     * The documents sent before the drain are either done, waiting, in flight or failed. The failed ones are retried
+     * until there are none left or the deadline passes
+     */
+    private Behavior<DocumentIndexer.Command> onDrain(Drain command) {
+        var drain = command.started(documentsToIndex(left()), documentsToDelete(left()));
+        process();
 
-        if (deleted) {
-            command.respondTo.tell(new DocumentRegistry.DocumentStatusToDeleted(command.id));
+        var left = left();
+        if (left.isEmpty() || !Instant.now().plus(DRAIN_RETRY_INTERVAL).isBefore(drain.deadline)) {
+            var toIndex = documentsToIndex(left);
+            var toDelete = documentsToDelete(left);
+            drain.replyTo.tell(new DrainReport(Math.max(0, drain.toIndex - toIndex), Math.max(0, drain.toDelete - toDelete), toIndex, toDelete));
         } else {
-            documentsFailedToDelete.add(command);
+            getContext().scheduleOnce(DRAIN_RETRY_INTERVAL, getContext().getSelf(), drain);
         }
 
-        return deleted;
+        return this;
+    }
+
+    /**
+     * The outcome of a call to the search engine. The ids are the ones sent, without the documents superseded
+     */
+    private final static class SolrCallCompleted implements Command {
+        private final Command command;
+        private final List<String> ids;
+        private final Instant timestamp;
+        private final long start;
+        private final boolean ok;
+        private final boolean retry;
+
+        private SolrCallCompleted(Command command, List<String> ids, Instant timestamp, long start, boolean ok, boolean retry) {
+            this.command = command;
+            this.ids = ids;
+            this.timestamp = timestamp;
+            this.start = start;
+            this.ok = ok;
+            this.retry = retry;
+        }
     }
 
+    /**
+     * The ackTo reference, when present, is told once the document has been indexed. The version is the one of the
+     * document in the registry, the commands with {@link #UNVERSIONED} are never dropped as stale. The trace, when
+     * sampled, is the one of the request that changed the document. The ackTo reference and the trace are added with
+     * withAckTo and withTrace
+     */
     public final static class IndexDocument implements DocumentIndexer.Command {
-        private final String id;
-        private final DataSource dataSource;
+        public final String id;
+        public final DataSource dataSource;
+        public final long version;
         public final ActorRef<DocumentRegistry.DocumentStatusToIndexed> respondTo;
+        public final Optional<ActorRef<Done>> ackTo;
+        public final Optional<TraceContext> trace;
 
-        public IndexDocument(String id, DataSource dataSource, ActorRef<DocumentRegistry.DocumentStatusToIndexed> respondTo) {
+        public IndexDocument(String id, DataSource dataSource, long version, ActorRef<DocumentRegistry.DocumentStatusToIndexed> respondTo) {
+            this(id, dataSource, version, respondTo, Optional.empty(), Optional.empty());
+        }
+
+        @JsonCreator
+        private IndexDocument(String id, DataSource dataSource, long version, ActorRef<DocumentRegistry.DocumentStatusToIndexed> respondTo, Optional<ActorRef<Done>> ackTo, Optional<TraceContext> trace) {
             this.id = id;
             this.dataSource = dataSource;
+            this.version = version;
             this.respondTo = respondTo;
+            this.ackTo = ackTo;
+            this.trace = trace == null ? Optional.empty() : trace;
+        }
+
+        public IndexDocument withAckTo(ActorRef<Done> ackTo) {
+            return new IndexDocument(id, dataSource, version, respondTo, Optional.of(ackTo), trace);
+        }
+
+        public IndexDocument withTrace(Optional<TraceContext> trace) {
+            return new IndexDocument(id, dataSource, version, respondTo, ackTo, trace);
         }
     }
 
+    /**
+     * A batch of documents of the same data source and version, e.g. the documents whose promotions expired at the
+     * same time. The ackTo reference, when present, is told once all of them have been indexed
+     */
+    public final static class IndexDocuments implements DocumentIndexer.Command {
+        public final List<String> ids;
+        public final DataSource dataSource;
+        public final long version;
+        public final ActorRef<DocumentRegistry.DocumentStatusToIndexed> respondTo;
+        public final Optional<ActorRef<Done>> ackTo;
+
+        public IndexDocuments(List<String> ids, DataSource dataSource, long version, ActorRef<DocumentRegistry.DocumentStatusToIndexed> respondTo) {
+            this(ids, dataSource, version, respondTo, Optional.empty());
+        }
+
+        @JsonCreator
+        private IndexDocuments(List<String> ids, DataSource dataSource, long version, ActorRef<DocumentRegistry.DocumentStatusToIndexed> respondTo, Optional<ActorRef<Done>> ackTo) {
+            this.ids = ids;
+            this.dataSource = dataSource;
+            this.version = version;
+            this.respondTo = respondTo;
+            this.ackTo = ackTo;
+        }
+
+        public IndexDocuments withAckTo(ActorRef<Done> ackTo) {
+            return new IndexDocuments(ids, dataSource, version, respondTo, Optional.of(ackTo));
+        }
+    }
+
+    /**
+     * The ackTo reference, when present, is told once the document has been deleted. The version is the one of the
+     * document in the registry, the commands with {@link #UNVERSIONED} are never dropped as stale. The trace, when
+     * sampled, is the one of the request that deleted the document. The ackTo reference and the trace are added with
+     * withAckTo and withTrace
+     */
     public final static class DeleteDocument implements DocumentIndexer.Command {
-        private final String id;
+        public final String id;
+        public final long version;
         public final ActorRef<DocumentRegistry.DocumentStatusToDeleted> respondTo;
+        public final Optional<ActorRef<Done>> ackTo;
+        public final Optional<TraceContext> trace;
 
-        public DeleteDocument(String id, ActorRef<DocumentRegistry.DocumentStatusToDeleted> respondTo) {
+        public DeleteDocument(String id, long version, ActorRef<DocumentRegistry.DocumentStatusToDeleted> respondTo) {
+            this(id, version, respondTo, Optional.empty(), Optional.empty());
+        }
+
+        @JsonCreator
+        private DeleteDocument(String id, long version, ActorRef<DocumentRegistry.DocumentStatusToDeleted> respondTo, Optional<ActorRef<Done>> ackTo, Optional<TraceContext> trace) {
             this.id = id;
+            this.version = version;
             this.respondTo = respondTo;
+            this.ackTo = ackTo;
+            this.trace = trace == null ? Optional.empty() : trace;
+        }
+
+        public DeleteDocument withAckTo(ActorRef<Done> ackTo) {
+            return new DeleteDocument(id, version, respondTo, Optional.of(ackTo), trace);
+        }
+
+        public DeleteDocument withTrace(Optional<TraceContext> trace) {
+            return new DeleteDocument(id, version, respondTo, ackTo, trace);
+        }
+    }
+
+    /**
+     * Sent on shutdown, replies once the documents that failed are indexed or deleted, or the deadline passes
+     */
+    public final static class Drain implements DocumentIndexer.Command {
+        public final Instant deadline;
+        public final ActorRef<DrainReport> replyTo;
+        // The documents left when the drain started, -1 until it does
+        private final int toIndex;
+        private final int toDelete;
+
+        public Drain(Instant deadline, ActorRef<DrainReport> replyTo) {
+            this(deadline, replyTo, -1, -1);
+        }
+
+        private Drain(Instant deadline, ActorRef<DrainReport> replyTo, int toIndex, int toDelete) {
+            this.deadline = deadline;
+            this.replyTo = replyTo;
+            this.toIndex = toIndex;
+            this.toDelete = toDelete;
+        }
+
+        private Drain started(int toIndex, int toDelete) {
+            return this.toIndex >= 0 ? this : new Drain(deadline, replyTo, toIndex, toDelete);
+        }
+    }
+
+    /**
+     * The documents that were indexed or deleted during the drain, and the ones still failing or waiting
+     */
+    public final static class DrainReport {
+        public final int indexed;
+        public final int deleted;
+        public final int failedToIndex;
+        public final int failedToDelete;
+
+        public DrainReport(int indexed, int deleted, int failedToIndex, int failedToDelete) {
+            this.indexed = indexed;
+            this.deleted = deleted;
+            this.failedToIndex = failedToIndex;
+            this.failedToDelete = failedToDelete;
+        }
+
+        @Override
+        public String toString() {
+            return "indexed " + indexed + ", deleted " + deleted + ", still failing to index " + failedToIndex + ", still failing to delete " + failedToDelete;
         }
     }
 }
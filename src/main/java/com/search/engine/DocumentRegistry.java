@@ -5,31 +5,75 @@ import akka.actor.typed.ActorRef;
 import akka.actor.typed.Behavior;
 import akka.actor.typed.javadsl.ActorContext;
 import akka.actor.typed.javadsl.Behaviors;
+import akka.actor.typed.javadsl.TimerScheduler;
 import akka.pattern.StatusReply;
 import akka.persistence.typed.PersistenceId;
 import akka.persistence.typed.RecoveryCompleted;
 import akka.persistence.typed.javadsl.*;
 import com.fasterxml.jackson.annotation.JsonCreator;
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import com.fasterxml.jackson.annotation.JsonProperty;
 import com.search.engine.exceptions.CaseSearchEngineException;
+import com.search.engine.exceptions.PreconditionFailedException;
+import com.search.engine.exceptions.UnprocessableEntityException;
+import com.search.engine.exceptions.ServiceUnavailableException;
 import com.search.engine.models.*;
+import com.search.engine.reconciliation.Fingerprints;
+import com.search.engine.reconciliation.RangeDigests;
+import com.search.engine.reconciliation.RangeFingerprints;
+import com.search.engine.scheduling.TimingWheel;
+import com.search.engine.tracing.TraceContext;
+import com.search.engine.tracing.Tracing;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.time.Duration;
 import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
 import java.util.Map;
+import java.util.NavigableMap;
 import java.util.Optional;
+import java.util.Set;
+import java.util.TreeMap;
 import java.util.UUID;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 /**
  * Represents the actor responsible for handling document changes
  */
 public final class DocumentRegistry extends EventSourcedBehavior<DocumentRegistry.Command, DocumentRegistry.Event, DocumentRegistry.State> {
     private final static Logger log = LoggerFactory.getLogger(DocumentRegistry.class);
+    private final static Duration DEFAULT_PROMOTION_EXPIRY_TICK = Duration.ofSeconds(1);
+    private final static int DEFAULT_PROMOTION_EXPIRY_MAX_BATCH = 1000;
+    private final static int DEFAULT_WHEEL_SIZE = 64;
 
-    private final ActorRef<DocumentIndexer.Command> indexer;
+    private final ActorContext<Command> context;
+    private final Optional<ActorRef<DocumentIndexer.Command>> indexer;
     private final ActorRef<DocumentStatusToIndexed> refDocumentIndexed;
     private final ActorRef<DocumentStatusToDeleted> refDocumentDeleted;
+    private final int idempotencyMaxKeys;
+    private final Duration idempotencyTtl;
+    // Present when the bodies of the documents are hydrated lazily
+    private final Optional<BodyLoader> bodyLoader;
+    private final int snapshotEvery;
+    private final Set<String> loadingBodies = new HashSet<>();
+    private final Set<String> failedBodies = new HashSet<>();
+    private final TimerScheduler<Command> timers;
+    private final Tracing tracing;
+    private final SearchDocuments searchDocuments;
+    // The ids of the documents by the time their promotion expires, filled once recovered
+    private final TimingWheel<String> promotionExpirations;
+    private final Duration promotionExpiryTick;
+    private final int promotionExpiryMaxBatch;
+    private boolean recovered = false;
 
     public interface Command extends JacksonSerializable {
     }
@@ -37,15 +81,78 @@ public final class DocumentRegistry extends EventSourcedBehavior<DocumentRegistr
     public interface Event extends JacksonSerializable {
     }
 
+    /**
+     * The documents are kept sorted by id, so they can be read in pages, and indexed by the time they were indexed
+     * from every data source, so the changes since a given time can be read without scanning them all. The digests
+     * of the fingerprints of the documents expected in the index are kept up to date for the reconciliation
+     */
     public static final class State implements JacksonSerializable {
-        final Map<String, Document> documents;
+        final NavigableMap<String, Document> documents;
+        @JsonProperty("idempotencyKeys")
+        final IdempotencyKeys idempotencyKeys;
+        // Only when the bodies are hydrated lazily
+        @JsonProperty("bodies")
+        final DocumentBodies bodies;
+        final RangeDigests digests;
+        final IndexedTimestamps indexedTimestamps;
+        // Shared by the image URLs of the documents
+        final ImageUrls imageUrls;
+
+        State(NavigableMap<String, Document> documents, IdempotencyKeys idempotencyKeys, DocumentBodies bodies) {
+            this.documents = documents;
+            this.idempotencyKeys = idempotencyKeys;
+            this.bodies = bodies;
+            this.digests = new RangeDigests();
+            this.indexedTimestamps = new IndexedTimestamps();
+            this.imageUrls = new ImageUrls();
+            documents.values().forEach(document -> {
+                document.setImagesUrls(imageUrls.intern(document.getImagesUrls()));
+                digests.update(document.getId(), Fingerprints.ABSENT, expectedFingerprint(document));
+                for (DataSource dataSource : DataSource.values()) {
+                    indexedTimestamp(document, dataSource).ifPresent(timestamp ->
+                            indexedTimestamps.update(document.getId(), dataSource, Optional.empty(), timestamp));
+                }
+            });
+        }
+
+        State(NavigableMap<String, Document> documents, IdempotencyKeys idempotencyKeys) {
+            this(documents, idempotencyKeys, null);
+        }
+
+        @JsonCreator
+        State(@JsonProperty("documents") List<Document> documents,
+              @JsonProperty("idempotencyKeys") IdempotencyKeys idempotencyKeys,
+              @JsonProperty("bodies") DocumentBodies bodies,
+              @JsonProperty("imageUrls") ImageUrls.Table imageUrls) {
+            this(documents.stream()
+                    .peek(document -> {
+                        // The snapshots taken before the table have the URLs in the documents
+                        if (imageUrls != null) document.setImagesUrls(imageUrls.urls(document.getId()));
+                    }).collect(Collectors.toMap(Document::getId, document -> document, (first, second) -> second, TreeMap::new)), idempotencyKeys, bodies);
+        }
 
         public State(Map<String, Document> documents) {
-            this.documents = documents;
+            this(new TreeMap<>(documents), new IdempotencyKeys());
         }
 
         public State() {
-            this(new HashMap<>());
+            this(new TreeMap<>(), new IdempotencyKeys());
+        }
+
+        /**
+         * The snapshots of the registry hydrating the bodies lazily do not have the bodies. Otherwise the image URLs
+         * are in their own table
+         */
+        @JsonProperty("documents")
+        List<Document> snapshotDocuments() {
+            if (bodies == null) return documents.values().stream().map(State::withoutImagesUrls).collect(Collectors.toList());
+
+            return documents.values().stream().map(State::withoutBody).collect(Collectors.toList());
+        }
+
+        @JsonProperty("imageUrls")
+        ImageUrls.Table snapshotImageUrls() {
+            return bodies == null ? ImageUrls.Table.of(documents.values()) : null;
         }
 
         public State indexDocument(String id, DataSource dataSource, Instant timestamp) {
@@ -55,6 +162,8 @@ public final class DocumentRegistry extends EventSourcedBehavior<DocumentRegistr
                 return this;
             }
 
+            var previousFingerprint = expectedFingerprint(document);
+            indexedTimestamps.update(id, dataSource, indexedTimestamp(document, dataSource), timestamp);
             document.setState(DocumentState.INDEXED);
 
             switch (dataSource) {
@@ -64,25 +173,137 @@ public final class DocumentRegistry extends EventSourcedBehavior<DocumentRegistr
             }
 
             documents.put(id, document);
+            digests.update(id, previousFingerprint, expectedFingerprint(document));
             return this;
         }
 
         public State createDocument(Document document) {
-            documents.put(document.getId(), document);
+            document.setImagesUrls(imageUrls.intern(document.getImagesUrls()));
+            var previous = documents.put(document.getId(), document);
+            if (previous != null) imageUrls.release(previous.getImagesUrls());
+            digests.update(document.getId(), previous == null ? Fingerprints.ABSENT : expectedFingerprint(previous), expectedFingerprint(document));
+            return this;
+        }
+
+        public State createDocument(Document document, Optional<String> idempotencyKey, Instant timestamp) {
+            idempotencyKey.ifPresent(key -> idempotencyKeys.put(key, document.getId(), IdempotencyKeys.requestHash(document), timestamp));
+            return createDocument(document);
+        }
+
+        /**
+         * When the bodies are hydrated lazily, the body is kept only if keepBody, otherwise it is loaded from the
+         * event with the given sequence number when needed
+         */
+        State createDocument(Document document, Optional<String> idempotencyKey, Instant timestamp, long sequenceNumber, boolean keepBody) {
+            document.setVersion(sequenceNumber);
+            if (bodies == null) return createDocument(document, idempotencyKey, timestamp);
+
+            // The hash is of the whole body
+            idempotencyKey.ifPresent(key -> idempotencyKeys.put(key, document.getId(), IdempotencyKeys.requestHash(document), timestamp));
+            bodies.added(document.getId(), sequenceNumber);
+            if (keepBody) bodies.hydrated(document.getId());
+            return createDocument(keepBody ? document : withoutBody(document));
+        }
+
+        /**
+         * When the bodies are hydrated lazily, the update is merged into the body only if it is hydrated, otherwise
+         * it is merged when the body is loaded from the events
+         */
+        State updateDocument(Document document, long sequenceNumber) {
+            var storedDocument = documents.get(document.getId());
+            if (storedDocument != null && storedDocument.getState() != DocumentState.DELETED) {
+                storedDocument.setVersion(sequenceNumber);
+                if (bodies != null) bodies.added(document.getId(), sequenceNumber);
+            }
+
+            return updateDocument(document);
+        }
+
+        public boolean isHydrated(String id) {
+            return bodies == null || bodies.isHydrated(id);
+        }
+
+        /**
+         * @return the sequence numbers of the events with the bodies of the documents, by id
+         */
+        Map<String, long[]> bodyEvents(Collection<String> ids) {
+            var events = new HashMap<String, long[]>();
+            ids.forEach(id -> events.put(id, bodies.events(id)));
+            return events;
+        }
+
+        State hydrate(String id, Document body) {
+            var storedDocument = documents.get(id);
+            if (storedDocument == null || bodies.isHydrated(id)) return this;
+
+            storedDocument.setName(body.getName());
+            storedDocument.setDescription(body.getDescription());
+            storedDocument.setImagesUrls(imageUrls.intern(body.getImagesUrls()));
+            storedDocument.setPrice(body.getPrice());
+            storedDocument.setPromotion(body.getPromotion());
+            bodies.hydrated(id);
             return this;
         }
 
+        /**
+         * @return the id of the document already created with the idempotency key, if any
+         */
+        public Optional<String> getIdempotentDocumentId(String idempotencyKey, Instant now) {
+            return idempotencyKeys.documentId(idempotencyKey, now);
+        }
+
+        /**
+         * @return whether the idempotency key was first sent with the same document
+         */
+        public boolean isIdempotentRequest(String idempotencyKey, Document document) {
+            return idempotencyKeys.matches(idempotencyKey, IdempotencyKeys.requestHash(document));
+        }
+
         public State deleteDocument(String id) {
+            return deleteDocument(id, Optional.empty());
+        }
+
+        /**
+         * The document is moved to the time it was deleted in the delta of every data source it was indexed from,
+         * so it is read as a tombstone by the ones reading the changes since before. The deletes persisted without
+         * the time stay where they were
+         */
+        State deleteDocument(String id, Optional<Instant> timestamp) {
             var document = documents.get(id);
 
             if (document == null || document.getState() == DocumentState.DELETED) {
                 return this;
             }
 
+            digests.update(id, expectedFingerprint(document), Fingerprints.ABSENT);
+            timestamp.ifPresent(deletedAt -> {
+                for (DataSource dataSource : DataSource.values()) {
+                    var indexed = indexedTimestamp(document, dataSource);
+                    if (indexed.isEmpty()) continue;
+
+                    indexedTimestamps.update(id, dataSource, indexed, deletedAt);
+                    switch (dataSource) {
+                        case PRICES -> document.setPricesIndexedTimestamp(Optional.of(deletedAt));
+                        case PRODUCTS -> document.setProductsIndexedTimestamp(Optional.of(deletedAt));
+                        case PROMOTIONS -> document.setPromotionsIndexedTimestamp(Optional.of(deletedAt));
+                    }
+                }
+            });
             document.setState(DocumentState.DELETED);
+            imageUrls.release(document.getImagesUrls());
+            document.setImagesUrls(null);
             return this;
         }
 
+        State setDocumentToDelete(String id, long sequenceNumber) {
+            var document = documents.get(id);
+            if (document != null && document.getState() != DocumentState.DELETED) {
+                document.setVersion(sequenceNumber);
+            }
+
+            return setDocumentToDelete(id);
+        }
+
         public State setDocumentToDelete(String id) {
             var document = documents.get(id);
 
@@ -96,6 +317,7 @@ public final class DocumentRegistry extends EventSourcedBehavior<DocumentRegistr
                 return this;
             }
 
+            digests.update(id, expectedFingerprint(document), Fingerprints.ABSENT);
             document.setState(DocumentState.TO_DELETE);
             return this;
         }
@@ -113,30 +335,246 @@ public final class DocumentRegistry extends EventSourcedBehavior<DocumentRegistr
                 return this;
             }
 
+            var previousFingerprint = expectedFingerprint(storedDocument);
             storedDocument.setState(DocumentState.FETCHED);
+            digests.update(storedDocument.getId(), previousFingerprint, expectedFingerprint(storedDocument));
             storedDocument.setDataSource(document.getDataSource());
 
+            // A new promotion comes with its own validity, none if not given. It is kept without the body, it is
+            // needed to schedule the expiry
+            if (document.getPromotion() != null || document.getPromotionValidUntil().isPresent()) {
+                storedDocument.setPromotionValidUntil(document.getPromotionValidUntil());
+            }
+
+            if (isHydrated(storedDocument.getId())) {
+                mergeFields(storedDocument, document);
+                storedDocument.setImagesUrls(imageUrls.merge(storedDocument.getImagesUrls(), document.getImagesUrls()));
+            }
+            return this;
+        }
+
+        /**
+         * Merges the update into a body outside the registry, e.g. one loaded from the events
+         */
+        static void mergeBody(Document storedDocument, Document document) {
+            mergeFields(storedDocument, document);
+            if (document.getImagesUrls() == null) return;
+
+            var imagesUrls = new LinkedHashSet<String>();
+            if (storedDocument.getImagesUrls() != null) imagesUrls.addAll(storedDocument.getImagesUrls());
+            imagesUrls.addAll(document.getImagesUrls());
+            storedDocument.setImagesUrls(new ArrayList<>(imagesUrls));
+        }
+
+        private static void mergeFields(Document storedDocument, Document document) {
             if (document.getName() != null) storedDocument.setName(document.getName());
             if (document.getPrice() != null) storedDocument.setPrice(document.getPrice());
             if (document.getPromotion() != null) storedDocument.setPromotion(document.getPromotion());
             if (document.getDescription() != null) storedDocument.setDescription(document.getDescription());
-            if (document.getImagesUrls() != null) {
-                document.getImagesUrls().forEach(imageUrl -> {
-                    if (!storedDocument.getImagesUrls().contains(imageUrl)) {
-                        storedDocument.getImagesUrls().add(imageUrl);
-                    }
-                });
-            }
+        }
 
-            return this;
+        static Document withoutBody(Document document) {
+            var light = new Document(null, null, null, null, null, document.getDataSource());
+            light.setId(document.getId());
+            light.setState(document.getState());
+            light.setProductsIndexedTimestamp(document.getProductsIndexedTimestamp());
+            light.setPricesIndexedTimestamp(document.getPricesIndexedTimestamp());
+            light.setPromotionsIndexedTimestamp(document.getPromotionsIndexedTimestamp());
+            light.setVersion(document.getVersion());
+            light.setPromotionValidUntil(document.getPromotionValidUntil());
+            return light;
+        }
+
+        static Document withoutImagesUrls(Document document) {
+            var copy = withoutBody(document);
+            copy.setName(document.getName());
+            copy.setDescription(document.getDescription());
+            copy.setPrice(document.getPrice());
+            copy.setPromotion(document.getPromotion());
+            return copy;
         }
 
         public Document getDocument(String id) {
             return documents.get(id);
         }
 
+        /**
+         * @return the version of the document, 0 if it does not exist
+         */
+        public long getVersion(String id) {
+            var document = documents.get(id);
+            return document == null ? 0 : document.getVersion();
+        }
+
+        /**
+         * @return the sequence number up to which the index work of every document is done: the one before the
+         * change of the oldest document waiting to be indexed or deleted, the last one when none is waiting
+         */
+        long indexedUpTo(long lastSequenceNumber) {
+            return documents.values().stream()
+                    .filter(document -> document.getState() == DocumentState.FETCHED || document.getState() == DocumentState.TO_DELETE)
+                    .mapToLong(document -> Math.max(0, document.getVersion() - 1))
+                    .min()
+                    .orElse(lastSequenceNumber);
+        }
+
+        /**
+         * @return whether the document is not deleted and has a promotion valid until the time or before
+         */
+        public boolean isPromotionExpired(String id, Instant now) {
+            var document = documents.get(id);
+            return document != null
+                    && document.getState() != DocumentState.DELETED
+                    && document.getState() != DocumentState.TO_DELETE
+                    && document.getPromotionValidUntil().filter(validUntil -> !validUntil.isAfter(now)).isPresent();
+        }
+
+        /**
+         * The promotions of the documents expired at the time are removed and the documents indexed again. When the
+         * bodies are hydrated lazily, the promotion is removed when the body is loaded from the events
+         */
+        State expirePromotions(List<String> ids, Instant timestamp, long sequenceNumber) {
+            for (String id : ids) {
+                if (!isPromotionExpired(id, timestamp)) continue;
+
+                var document = documents.get(id);
+                var previousFingerprint = expectedFingerprint(document);
+                if (isHydrated(id)) {
+                    document.setPromotion(null);
+                } else {
+                    bodies.added(id, sequenceNumber);
+                }
+                document.setPromotionValidUntil(Optional.empty());
+                document.setState(DocumentState.FETCHED);
+                document.setVersion(sequenceNumber);
+                digests.update(id, previousFingerprint, expectedFingerprint(document));
+            }
+
+            return this;
+        }
+
+        /**
+         * @return whether the document exists, is not deleted and has the version
+         */
+        public boolean hasVersion(String id, long version) {
+            var document = documents.get(id);
+            return document != null
+                    && document.getState() != DocumentState.DELETED
+                    && document.getState() != DocumentState.TO_DELETE
+                    && document.getVersion() == version;
+        }
+
+        /**
+         * @return whether the document has one of the versions, always when none is given
+         */
+        boolean hasAnyVersion(String id, Set<Long> versions) {
+            return versions.isEmpty() || versions.stream().anyMatch(version -> hasVersion(id, version));
+        }
+
+        /**
+         * Scans up to limit documents after the given id and returns the ids of those not deleted
+         */
+        public DocumentsPage getDocumentsPage(Optional<String> afterId, int limit) {
+            var tail = afterId.isPresent() ? documents.tailMap(afterId.get(), false) : documents;
+            var page = new ArrayList<DocumentsPage.Entry>(limit);
+            String lastId = null;
+            int scanned = 0;
+
+            for (var document : tail.values()) {
+                if (scanned == limit) break;
+
+                scanned++;
+                lastId = document.getId();
+                if (document.getState() != DocumentState.DELETED && document.getState() != DocumentState.TO_DELETE) {
+                    page.add(new DocumentsPage.Entry(document.getId(), document.getDataSource(), document.getVersion()));
+                }
+            }
+
+            var hasMore = lastId != null && documents.higherKey(lastId) != null;
+            return new DocumentsPage(page, Optional.ofNullable(lastId), hasMore, scanned, documents.size());
+        }
+
+        /**
+         * Reads up to limit entries indexed from the data source since the given time, or after the given id
+         * at that time. The documents are copied, the page is written outside the registry while they change, and
+         * the deleted ones are tombstones
+         */
+        public DeltaPage getDelta(DataSource dataSource, Instant since, Optional<String> afterId, int limit) {
+            var entries = indexedTimestamps.from(dataSource, since, afterId.orElse(""), afterId.isEmpty(), limit + 1);
+            var hasMore = entries.size() > limit;
+            if (hasMore) entries = entries.subList(0, limit);
+
+            var changed = new ArrayList<DeltaDocument>(entries.size());
+            for (var entry : entries) {
+                var document = documents.get(entry.id);
+                if (document.getState() != DocumentState.DELETED && document.getState() != DocumentState.TO_DELETE) {
+                    changed.add(DeltaDocument.of(document, entry.timestamp));
+                } else {
+                    changed.add(DeltaDocument.tombstone(document, entry.timestamp));
+                }
+            }
+
+            var last = entries.isEmpty() ? Optional.<IndexedTimestamps.Entry>empty() : Optional.of(entries.get(entries.size() - 1));
+            return new DeltaPage(changed, last.map(entry -> entry.timestamp), last.map(entry -> entry.id), hasMore);
+        }
+
+        private static Optional<Instant> indexedTimestamp(Document document, DataSource dataSource) {
+            return switch (dataSource) {
+                case PRICES -> document.getPricesIndexedTimestamp();
+                case PRODUCTS -> document.getProductsIndexedTimestamp();
+                case PROMOTIONS -> document.getPromotionsIndexedTimestamp();
+            };
+        }
+
+        /**
+         * @return a copy of the digests of the documents expected in the index
+         */
+        @JsonIgnore
+        public RangeDigests getRangeDigests() {
+            return digests.copy();
+        }
+
+        /**
+         * @return the fingerprints of the documents expected in the index whose ids start with the prefix
+         */
+        public RangeFingerprints getRangeFingerprints(String prefix) {
+            var fingerprints = new HashMap<String, Long>();
+            var dataSources = new HashMap<String, DataSource>();
+            var versions = new HashMap<String, Long>();
+
+            for (var document : documents.subMap(prefix, true, RangeDigests.upperBound(prefix), false).values()) {
+                versions.put(document.getId(), document.getVersion());
+                var fingerprint = expectedFingerprint(document);
+                if (fingerprint != Fingerprints.ABSENT) {
+                    fingerprints.put(document.getId(), fingerprint);
+                    dataSources.put(document.getId(), document.getDataSource());
+                }
+            }
+
+            return new RangeFingerprints(fingerprints, dataSources, versions);
+        }
+
+        /**
+         * The documents deleted or to delete are not expected in the index, the rest are expected as they were
+         * last indexed
+         */
+        static long expectedFingerprint(Document document) {
+            if (document.getState() == DocumentState.DELETED || document.getState() == DocumentState.TO_DELETE) {
+                return Fingerprints.ABSENT;
+            }
+
+            var lastIndexed = Stream.of(
+                            document.getProductsIndexedTimestamp(),
+                            document.getPricesIndexedTimestamp(),
+                            document.getPromotionsIndexedTimestamp())
+                    .flatMap(Optional::stream)
+                    .max(Comparator.naturalOrder());
+
+            return Fingerprints.of(document.getId(), lastIndexed);
+        }
+
         public DocumentCreatedResponse documentCreatedResponse(String id) {
-            return new DocumentCreatedResponse(id);
+            return new DocumentCreatedResponse(id, getVersion(id));
         }
 
         public DocumentUpdatedResponse documentUpdatedResponse(Document document) {
@@ -144,55 +582,207 @@ public final class DocumentRegistry extends EventSourcedBehavior<DocumentRegistr
         }
     }
 
+    /**
+     * The registry sends the index work straight to the indexer
+     */
     public static Behavior<Command> create(PersistenceId persistenceId, ActorRef<DocumentIndexer.Command> indexer) {
-        return Behaviors.setup(ctx -> new DocumentRegistry(ctx, persistenceId, indexer));
+        return Behaviors.setup(ctx -> create(persistenceId, Optional.of(indexer), SearchDocuments.get(ctx.getSystem())));
     }
 
-    private DocumentRegistry(ActorContext<DocumentRegistry.Command> context, PersistenceId persistenceId, ActorRef<DocumentIndexer.Command> indexer) {
+    /**
+     * The index work is delivered to the indexer by a {@link com.search.engine.outbox.DocumentOutbox} following the
+     * journal of the registry
+     */
+    public static Behavior<Command> create(PersistenceId persistenceId) {
+        return Behaviors.setup(ctx -> create(persistenceId, Optional.empty(), SearchDocuments.get(ctx.getSystem())));
+    }
+
+    /**
+     * The registry of a catalogue, it prebuilds the search documents in the ones of the catalogue. Without indexer
+     * the index work is delivered by the outbox
+     */
+    public static Behavior<Command> create(PersistenceId persistenceId, Optional<ActorRef<DocumentIndexer.Command>> indexer, SearchDocuments searchDocuments) {
+        return Behaviors.setup(ctx -> Behaviors.withTimers(timers -> new DocumentRegistry(ctx, timers, persistenceId, indexer, searchDocuments)));
+    }
+
+    private DocumentRegistry(ActorContext<DocumentRegistry.Command> context,
+                             TimerScheduler<Command> timers,
+                             PersistenceId persistenceId,
+                             Optional<ActorRef<DocumentIndexer.Command>> indexer,
+                             SearchDocuments searchDocuments) {
         super(persistenceId);
+        this.context = context;
+        this.timers = timers;
+        this.tracing = Tracing.get(context.getSystem());
+        this.searchDocuments = searchDocuments;
         this.indexer = indexer;
         this.refDocumentIndexed = context.getSelf().narrow();
         this.refDocumentDeleted = context.getSelf().narrow();
+
+        var config = context.getSystem().settings().config();
+        var idempotencyPath = "case-search-engine-index.registry.idempotency";
+        if (config.hasPath(idempotencyPath)) {
+            this.idempotencyMaxKeys = config.getInt(idempotencyPath + ".max-keys");
+            this.idempotencyTtl = config.getDuration(idempotencyPath + ".ttl");
+        } else {
+            this.idempotencyMaxKeys = IdempotencyKeys.DEFAULT_MAX_KEYS;
+            this.idempotencyTtl = IdempotencyKeys.DEFAULT_TTL;
+        }
+
+        var lazyHydrationPath = "case-search-engine-index.registry.lazy-hydration";
+        if (config.hasPath(lazyHydrationPath) && config.getBoolean(lazyHydrationPath + ".enabled")) {
+            var lazyHydration = config.getConfig(lazyHydrationPath);
+            this.bodyLoader = Optional.of(new BodyLoader(context.getSystem(), lazyHydration.getString("read-journal"), persistenceId.id(), lazyHydration.getInt("parallelism")));
+            this.snapshotEvery = lazyHydration.getInt("snapshot-every");
+        } else {
+            this.bodyLoader = Optional.empty();
+            var snapshotEveryPath = "case-search-engine-index.registry.snapshot-every";
+            this.snapshotEvery = config.hasPath(snapshotEveryPath) ? config.getInt(snapshotEveryPath) : 0;
+        }
+
+        var promotionExpiryPath = "case-search-engine-index.registry.promotion-expiry";
+        var wheelSize = DEFAULT_WHEEL_SIZE;
+        if (config.hasPath(promotionExpiryPath)) {
+            var promotionExpiry = config.getConfig(promotionExpiryPath);
+            this.promotionExpiryTick = promotionExpiry.getDuration("tick");
+            this.promotionExpiryMaxBatch = promotionExpiry.getInt("max-batch");
+            wheelSize = promotionExpiry.getInt("wheel-size");
+        } else {
+            this.promotionExpiryTick = DEFAULT_PROMOTION_EXPIRY_TICK;
+            this.promotionExpiryMaxBatch = DEFAULT_PROMOTION_EXPIRY_MAX_BATCH;
+        }
+        this.promotionExpirations = new TimingWheel<>(promotionExpiryTick, wheelSize, Instant.now());
     }
 
     @Override
     public State emptyState() {
-        return new State();
+        var idempotencyKeys = new IdempotencyKeys(idempotencyMaxKeys, idempotencyTtl);
+        return new State(new TreeMap<>(), idempotencyKeys, bodyLoader.isPresent() ? new DocumentBodies() : null);
+    }
+
+    /**
+     * When the bodies are hydrated lazily, the recovery starts from a snapshot without bodies. The events are kept,
+     * the bodies are loaded from them. Otherwise the snapshots have the whole documents, and the events before the
+     * latest one can be archived
+     */
+    @Override
+    public RetentionCriteria retentionCriteria() {
+        return snapshotEvery > 0 ? RetentionCriteria.snapshotEvery(snapshotEvery, 2) : RetentionCriteria.disabled();
     }
 
     // Commands
+    /**
+     * When an idempotency key is given, retries of the command with the same key reply with the id of the
+     * document created the first time instead of creating a new one. The trace, when sampled, follows the document
+     * until it is indexed
+     */
     public final static class CreateDocument implements DocumentRegistry.Command {
         public final Document document;
+        public final Optional<String> idempotencyKey;
+        public final Optional<TraceContext> trace;
         public final ActorRef<StatusReply<DocumentCreatedResponse>> replyTo;
 
         public CreateDocument(Document document, ActorRef<StatusReply<DocumentCreatedResponse>> replyTo) {
+            this(document, Optional.empty(), replyTo);
+        }
+
+        public CreateDocument(Document document, Optional<String> idempotencyKey, ActorRef<StatusReply<DocumentCreatedResponse>> replyTo) {
+            this(document, idempotencyKey, Optional.empty(), replyTo);
+        }
+
+        public CreateDocument(Document document, Optional<String> idempotencyKey, Optional<TraceContext> trace, ActorRef<StatusReply<DocumentCreatedResponse>> replyTo) {
             this.document = document;
+            this.idempotencyKey = idempotencyKey;
+            this.trace = trace;
             this.replyTo = replyTo;
             this.document.setId(UUID.randomUUID().toString());
         }
+
+        /**
+         * The id was generated by the node that received the request, it is kept when sent to another node
+         */
+        @JsonCreator
+        private static CreateDocument fromJson(@JsonProperty("document") Document document,
+                                               @JsonProperty("idempotencyKey") Optional<String> idempotencyKey,
+                                               @JsonProperty("trace") Optional<TraceContext> trace,
+                                               @JsonProperty("replyTo") ActorRef<StatusReply<DocumentCreatedResponse>> replyTo) {
+            var id = document.getId();
+            var command = new CreateDocument(document, idempotencyKey, trace == null ? Optional.empty() : trace, replyTo);
+            command.document.setId(id);
+            return command;
+        }
     }
 
+    /**
+     * When expected versions are given, the document is only updated if it has one of them, otherwise the reply is
+     * a {@link PreconditionFailedException}. Without them any version is updated
+     */
     public final static class UpdateDocument implements DocumentRegistry.Command {
         public final Document document;
+        public final Set<Long> expectedVersions;
+        public final Optional<TraceContext> trace;
         public final ActorRef<StatusReply<DocumentUpdatedResponse>> replyTo;
 
         public UpdateDocument(String id, Document document, ActorRef<StatusReply<DocumentUpdatedResponse>> replyTo) {
+            this(id, document, Set.of(), replyTo);
+        }
+
+        public UpdateDocument(String id, Document document, Set<Long> expectedVersions, ActorRef<StatusReply<DocumentUpdatedResponse>> replyTo) {
+            this(id, document, expectedVersions, Optional.empty(), replyTo);
+        }
+
+        public UpdateDocument(String id, Document document, Set<Long> expectedVersions, Optional<TraceContext> trace, ActorRef<StatusReply<DocumentUpdatedResponse>> replyTo) {
             this.document = document;
+            this.expectedVersions = expectedVersions;
+            this.trace = trace;
             this.replyTo = replyTo;
             this.document.setId(id);
         }
+
+        @JsonCreator
+        private static UpdateDocument fromJson(@JsonProperty("document") Document document,
+                                               @JsonProperty("expectedVersions") Set<Long> expectedVersions,
+                                               @JsonProperty("trace") Optional<TraceContext> trace,
+                                               @JsonProperty("replyTo") ActorRef<StatusReply<DocumentUpdatedResponse>> replyTo) {
+            return new UpdateDocument(document.getId(), document, expectedVersions == null ? Set.of() : expectedVersions,
+                    trace == null ? Optional.empty() : trace, replyTo);
+        }
     }
 
+    /**
+     * When expected versions are given, the document is only deleted if it has one of them, otherwise the reply is
+     * a {@link PreconditionFailedException}. Without them any version is deleted
+     */
     public final static class DeleteDocument implements DocumentRegistry.Command {
         public final String id;
+        public final Set<Long> expectedVersions;
+        public final Optional<TraceContext> trace;
         public final ActorRef<StatusReply<Done>> replyTo;
 
         public DeleteDocument(String id, ActorRef<StatusReply<Done>> replyTo) {
+            this(id, Set.of(), replyTo);
+        }
+
+        public DeleteDocument(String id, Set<Long> expectedVersions, ActorRef<StatusReply<Done>> replyTo) {
+            this(id, expectedVersions, Optional.empty(), replyTo);
+        }
+
+        @JsonCreator
+        public DeleteDocument(String id, Set<Long> expectedVersions, Optional<TraceContext> trace, ActorRef<StatusReply<Done>> replyTo) {
             this.id = id;
+            this.expectedVersions = expectedVersions == null ? Set.of() : expectedVersions;
+            this.trace = trace == null ? Optional.empty() : trace;
             this.replyTo = replyTo;
         }
     }
 
+    /**
+     * Sent every tick of the promotion expiry, see {@link #onExpirePromotions(State)}
+     */
+    private enum ExpirePromotions implements Command {
+        INSTANCE
+    }
+
     public final static class DocumentStatusToIndexed implements DocumentRegistry.Command {
         public final String id;
         public final DataSource dataSource;
@@ -213,36 +803,158 @@ public final class DocumentRegistry extends EventSourcedBehavior<DocumentRegistr
         }
     }
 
+    /**
+     * Reads the documents that are not deleted in pages, see {@link State#getDocumentsPage(Optional, int)}
+     */
+    public final static class GetDocumentsPage implements DocumentRegistry.Command {
+        public final Optional<String> afterId;
+        public final int limit;
+        public final ActorRef<DocumentsPage> replyTo;
+
+        public GetDocumentsPage(Optional<String> afterId, int limit, ActorRef<DocumentsPage> replyTo) {
+            this.afterId = afterId;
+            this.limit = limit;
+            this.replyTo = replyTo;
+        }
+    }
+
+    /**
+     * Reads the documents indexed from a data source since a given time in pages, see
+     * {@link State#getDelta(DataSource, Instant, Optional, int)}
+     */
+    public final static class GetDelta implements DocumentRegistry.Command {
+        public final DataSource dataSource;
+        public final Instant since;
+        public final Optional<String> afterId;
+        public final int limit;
+        public final ActorRef<StatusReply<DeltaPage>> replyTo;
+
+        public GetDelta(DataSource dataSource, Instant since, Optional<String> afterId, int limit, ActorRef<StatusReply<DeltaPage>> replyTo) {
+            this.dataSource = dataSource;
+            this.since = since;
+            this.afterId = afterId;
+            this.limit = limit;
+            this.replyTo = replyTo;
+        }
+    }
+
+    public final static class GetRangeDigests implements DocumentRegistry.Command {
+        public final ActorRef<RangeDigests> replyTo;
+
+        public GetRangeDigests(ActorRef<RangeDigests> replyTo) {
+            this.replyTo = replyTo;
+        }
+    }
+
+    public final static class GetRangeFingerprints implements DocumentRegistry.Command {
+        public final String prefix;
+        public final ActorRef<RangeFingerprints> replyTo;
+
+        public GetRangeFingerprints(String prefix, ActorRef<RangeFingerprints> replyTo) {
+            this.prefix = prefix;
+            this.replyTo = replyTo;
+        }
+    }
+
+    /**
+     * Reads where the outbox starts when it has no offset stored, see {@link State#indexedUpTo(long)}
+     */
+    public final static class GetIndexedUpTo implements DocumentRegistry.Command {
+        public final ActorRef<Long> replyTo;
+
+        public GetIndexedUpTo(ActorRef<Long> replyTo) {
+            this.replyTo = replyTo;
+        }
+    }
+
+    private final static class BodiesLoaded implements DocumentRegistry.Command {
+        private final Set<String> ids;
+        private final Map<String, Document> bodies;
+        private final Throwable failure;
+
+        private BodiesLoaded(Set<String> ids, Map<String, Document> bodies, Throwable failure) {
+            this.ids = ids;
+            this.bodies = bodies;
+            this.failure = failure;
+        }
+    }
+
     @Override
     public CommandHandler<Command, Event, State> commandHandler() {
         return newCommandHandlerBuilder()
                 .forAnyState()
                 .onCommand(CreateDocument.class, this::onCreateDocument)
                 .onCommand(UpdateDocument.class, this::onUpdateDocument)
+                .onCommand(BodiesLoaded.class, this::onBodiesLoaded)
                 .onCommand(DeleteDocument.class, this::onDeleteDocument)
+                .onCommand(ExpirePromotions.class, (state, command) -> onExpirePromotions(state))
                 .onCommand(DocumentStatusToIndexed.class, this::onDocumentStatusToIndexed)
                 .onCommand(DocumentStatusToDeleted.class, this::onDocumentStatusToDeleted)
+                .onCommand(GetDocumentsPage.class, (state, command) -> Effect().reply(command.replyTo, state.getDocumentsPage(command.afterId, command.limit)))
+                .onCommand(GetDelta.class, this::onGetDelta)
+                .onCommand(GetRangeDigests.class, (state, command) -> Effect().reply(command.replyTo, state.getRangeDigests()))
+                .onCommand(GetRangeFingerprints.class, (state, command) -> Effect().reply(command.replyTo, state.getRangeFingerprints(command.prefix)))
+                .onCommand(GetIndexedUpTo.class, (state, command) -> Effect().reply(command.replyTo, state.indexedUpTo(lastSequenceNumber(context))))
                 .build();
     }
 
     // Effects
-    private Effect<Event, State> onCreateDocument(CreateDocument createDocumentCommand) {
+    private Effect<Event, State> onCreateDocument(State state, CreateDocument createDocumentCommand) {
         var payload = createDocumentCommand.document;
+        var now = Instant.now();
+
+        var idempotentDocumentId = createDocumentCommand.idempotencyKey.flatMap(key -> state.getIdempotentDocumentId(key, now));
+        if (idempotentDocumentId.isPresent()) { // It is a retry, the document already exists
+            if (!state.isIdempotentRequest(createDocumentCommand.idempotencyKey.get(), payload)) {
+                return Effect().reply(createDocumentCommand.replyTo, StatusReply.error(new UnprocessableEntityException(
+                        "The idempotency key was already used with another document")));
+            }
+            return Effect().reply(createDocumentCommand.replyTo, StatusReply.success(state.documentCreatedResponse(idempotentDocumentId.get())));
+        }
 
+        var trace = createDocumentCommand.trace;
+        tracing.recordWait(trace, "registry.queue", Map.of("id", payload.getId()));
+        var persistStart = Tracing.now();
         return Effect()
-                .persist(new DocumentCreated(payload))
-                .thenRun(() -> indexer.tell(new DocumentIndexer.IndexDocument(payload.getId(), payload.getDataSource(), refDocumentIndexed)))
+                .persist(new DocumentCreated(payload, createDocumentCommand.idempotencyKey, now, trace.map(TraceContext::sent)))
+                .thenRun(documentCreated -> {
+                    tracing.record(trace, "registry.persist", persistStart, Map.of("id", payload.getId()));
+                    updateSearchDocument(documentCreated, payload.getId(), searchDocuments::created);
+                    indexer.ifPresent(ref -> ref.tell(new DocumentIndexer.IndexDocument(payload.getId(), payload.getDataSource(), documentCreated.getVersion(payload.getId()), refDocumentIndexed).withTrace(trace.map(TraceContext::sent))));
+                })
                 .thenReply(createDocumentCommand.replyTo, documentCreated -> StatusReply.success(
                         documentCreated.documentCreatedResponse(payload.getId())
                 ));
     }
 
-    private Effect<Event, State> onUpdateDocument(UpdateDocument updateDocumentCommand) {
+    private Effect<Event, State> onUpdateDocument(State state, UpdateDocument updateDocumentCommand) {
         var payload = updateDocumentCommand.document;
 
+        if (!state.hasAnyVersion(payload.getId(), updateDocumentCommand.expectedVersions)) {
+            return Effect().reply(updateDocumentCommand.replyTo, StatusReply.error(versionMismatch(state, payload.getId())));
+        }
+
+        // The response has the whole document, its body is needed
+        if (state.getDocument(payload.getId()) != null && !state.isHydrated(payload.getId())) {
+            if (failedBodies.remove(payload.getId())) {
+                return Effect().reply(updateDocumentCommand.replyTo, StatusReply.error(
+                        new ServiceUnavailableException("The document could not be loaded, retry later", Duration.ofSeconds(1))));
+            }
+
+            return hydrateFirst(state, Set.of(payload.getId()));
+        }
+
+        // Once the body is hydrated, the wait includes the load
+        var trace = updateDocumentCommand.trace;
+        tracing.recordWait(trace, "registry.queue", Map.of("id", payload.getId()));
+        var persistStart = Tracing.now();
         return Effect()
-                .persist(new DocumentUpdated(payload))
-                .thenRun(() -> indexer.tell(new DocumentIndexer.IndexDocument(payload.getId(), payload.getDataSource(), refDocumentIndexed)))
+                .persist(new DocumentUpdated(payload, trace.map(TraceContext::sent)))
+                .thenRun(documentUpdated -> {
+                    tracing.record(trace, "registry.persist", persistStart, Map.of("id", payload.getId()));
+                    updateSearchDocument(documentUpdated, payload.getId(), document -> searchDocuments.updated(document, payload));
+                    indexer.ifPresent(ref -> ref.tell(new DocumentIndexer.IndexDocument(payload.getId(), payload.getDataSource(), documentUpdated.getVersion(payload.getId()), refDocumentIndexed).withTrace(trace.map(TraceContext::sent))));
+                })
                 .thenReply(updateDocumentCommand.replyTo, documentUpdatedState -> {
                     var document = documentUpdatedState.getDocument(payload.getId());
 
@@ -254,59 +966,236 @@ public final class DocumentRegistry extends EventSourcedBehavior<DocumentRegistr
                 });
     }
 
-    private Effect<Event, State> onDeleteDocument(DeleteDocument deleteDocumentCommand) {
+    private Effect<Event, State> onGetDelta(State state, GetDelta getDeltaCommand) {
+        var delta = state.getDelta(getDeltaCommand.dataSource, getDeltaCommand.since, getDeltaCommand.afterId, getDeltaCommand.limit);
+        var notHydrated = delta.documents.stream()
+                .filter(document -> !document.isTombstone())
+                .map(document -> document.id)
+                .filter(id -> !state.isHydrated(id))
+                .collect(Collectors.toSet());
+
+        if (notHydrated.isEmpty()) {
+            return Effect().reply(getDeltaCommand.replyTo, StatusReply.success(delta));
+        }
+
+        if (notHydrated.stream().anyMatch(failedBodies::contains)) {
+            failedBodies.removeAll(notHydrated);
+            return Effect().reply(getDeltaCommand.replyTo, StatusReply.error(
+                    new ServiceUnavailableException("The documents could not be loaded, retry later", Duration.ofSeconds(1))));
+        }
+
+        return hydrateFirst(state, notHydrated);
+    }
+
+    /**
+     * Loads the bodies of the documents and handles the command again once they are hydrated
+     */
+    private Effect<Event, State> hydrateFirst(State state, Set<String> ids) {
+        var toLoad = ids.stream().filter(id -> !loadingBodies.contains(id)).collect(Collectors.toSet());
+
+        if (!toLoad.isEmpty()) {
+            loadingBodies.addAll(toLoad);
+            context.pipeToSelf(bodyLoader.get().load(state.bodyEvents(toLoad)), (bodies, failure) -> new BodiesLoaded(toLoad, bodies, failure));
+        }
+
+        return Effect().stash();
+    }
+
+    private Effect<Event, State> onBodiesLoaded(State state, BodiesLoaded bodiesLoadedCommand) {
+        loadingBodies.removeAll(bodiesLoadedCommand.ids);
+
+        if (bodiesLoadedCommand.failure != null) {
+            log.error("The bodies of {} documents could not be loaded", bodiesLoadedCommand.ids.size(), bodiesLoadedCommand.failure);
+            failedBodies.addAll(bodiesLoadedCommand.ids);
+        } else {
+            bodiesLoadedCommand.bodies.forEach(state::hydrate);
+        }
+
+        return Effect().unstashAll();
+    }
+
+    private Effect<Event, State> onDeleteDocument(State state, DeleteDocument deleteDocumentCommand) {
+        if (!state.hasAnyVersion(deleteDocumentCommand.id, deleteDocumentCommand.expectedVersions)) {
+            return Effect().reply(deleteDocumentCommand.replyTo, StatusReply.error(versionMismatch(state, deleteDocumentCommand.id)));
+        }
+
+        var trace = deleteDocumentCommand.trace;
+        tracing.recordWait(trace, "registry.queue", Map.of("id", deleteDocumentCommand.id));
+        var persistStart = Tracing.now();
         return Effect()
-                .persist(new DocumentToDelete(deleteDocumentCommand.id))
-                .thenRun(() ->indexer.tell(new DocumentIndexer.DeleteDocument(deleteDocumentCommand.id, refDocumentDeleted)))
+                .persist(new DocumentToDelete(deleteDocumentCommand.id, trace.map(TraceContext::sent)))
+                .thenRun(documentToDelete -> {
+                    tracing.record(trace, "registry.persist", persistStart, Map.of("id", deleteDocumentCommand.id));
+                    searchDocuments.removed(deleteDocumentCommand.id);
+                    indexer.ifPresent(ref -> ref.tell(new DocumentIndexer.DeleteDocument(deleteDocumentCommand.id, documentToDelete.getVersion(deleteDocumentCommand.id), refDocumentDeleted).withTrace(trace.map(TraceContext::sent))));
+                })
                 .thenReply(deleteDocumentCommand.replyTo, documentDeleted -> StatusReply.Ack());
     }
 
+    /**
+     * The promotions due are expired in batches, every one persisted as a single event and indexed in a single
+     * request. The wheel does not know about the changes made after an expiry was scheduled, so the documents are
+     * checked against the state
+     */
+    private Effect<Event, State> onExpirePromotions(State state) {
+        var now = Instant.now();
+        List<String> expired = promotionExpirations.advance(now).stream()
+                .distinct()
+                .filter(id -> state.isPromotionExpired(id, now))
+                .collect(Collectors.toList());
+
+        if (expired.isEmpty()) {
+            return Effect().none();
+        }
+
+        var events = new ArrayList<Event>();
+        for (int from = 0; from < expired.size(); from += promotionExpiryMaxBatch) {
+            events.add(new PromotionsExpired(expired.subList(from, Math.min(from + promotionExpiryMaxBatch, expired.size())), now));
+        }
+        log.info("Expiring the promotions of {} documents in {} batches", expired.size(), events.size());
+
+        return Effect()
+                .persist(events)
+                .thenRun(promotionsExpired -> {
+                    expired.forEach(id -> updateSearchDocument(promotionsExpired, id, searchDocuments::promotionExpired));
+                    indexer.ifPresent(ref -> events.forEach(event -> {
+                        var ids = ((PromotionsExpired) event).ids;
+                        ref.tell(new DocumentIndexer.IndexDocuments(ids, DataSource.PROMOTIONS, promotionsExpired.getVersion(ids.get(0)), refDocumentIndexed));
+                    }));
+                });
+    }
+
+    /**
+     * Keeps the search document of a document up to date once its change is persisted. The documents deleted, or
+     * whose body is not hydrated, have none
+     */
+    private void updateSearchDocument(State state, String id, Consumer<Document> update) {
+        var document = state.getDocument(id);
+        if (document == null || document.getState() == DocumentState.DELETED || document.getState() == DocumentState.TO_DELETE || !state.isHydrated(id)) {
+            searchDocuments.removed(id);
+        } else {
+            update.accept(document);
+        }
+    }
+
+    /**
+     * Only once recovered, the recovery schedules the expiry of the promotions of every document at once
+     */
+    private State schedulePromotionExpiry(State state, String id) {
+        if (recovered) {
+            var document = state.getDocument(id);
+            if (document != null) {
+                document.getPromotionValidUntil().ifPresent(validUntil -> promotionExpirations.schedule(id, validUntil));
+            }
+        }
+
+        return state;
+    }
+
+    private static PreconditionFailedException versionMismatch(State state, String id) {
+        var document = state.getDocument(id);
+        if (document == null || document.getState() == DocumentState.DELETED || document.getState() == DocumentState.TO_DELETE) {
+            return new PreconditionFailedException("The document " + id + " does not exist");
+        }
+
+        return new PreconditionFailedException("The document " + id + " is at version " + document.getVersion());
+    }
+
     private Effect<Event, State> onDocumentStatusToIndexed(DocumentStatusToIndexed documentStatusToIndexedCommand) {
-        return Effect().persist(new DocumentIndexed(documentStatusToIndexedCommand.id, documentStatusToIndexedCommand.dataSource, documentStatusToIndexedCommand.timestamp));
+        return Effect()
+                .persist(new DocumentIndexed(documentStatusToIndexedCommand.id, documentStatusToIndexedCommand.dataSource, documentStatusToIndexedCommand.timestamp))
+                .thenRun(documentIndexed -> updateSearchDocument(documentIndexed, documentStatusToIndexedCommand.id, searchDocuments::indexed));
     }
 
     private Effect<Event, State> onDocumentStatusToDeleted(DocumentStatusToDeleted documentStatusToDeletedCommand) {
-        return Effect().persist(new DocumentDeleted(documentStatusToDeletedCommand.id));
+        return Effect()
+                .persist(new DocumentDeleted(documentStatusToDeletedCommand.id, Optional.of(Instant.now())))
+                .thenRun(documentDeleted -> searchDocuments.removed(documentStatusToDeletedCommand.id));
     }
 
     @Override
     public EventHandler<State, Event> eventHandler() {
         return newEventHandlerBuilder()
                 .forAnyState()
-                .onEvent(DocumentCreated.class, (state, event) -> state.createDocument(event.document))
-                .onEvent(DocumentUpdated.class, (state, event) -> state.updateDocument(event.document))
+                .onEvent(DocumentCreated.class, (state, event) -> schedulePromotionExpiry(
+                        state.createDocument(event.document, event.idempotencyKey, event.timestamp, lastSequenceNumber(context), recovered), event.document.getId()))
+                .onEvent(DocumentUpdated.class, (state, event) -> schedulePromotionExpiry(
+                        state.updateDocument(event.document, lastSequenceNumber(context)), event.document.getId()))
+                .onEvent(PromotionsExpired.class, (state, event) -> state.expirePromotions(event.ids, event.timestamp, lastSequenceNumber(context)))
                 .onEvent(DocumentIndexed.class, (state, event) -> state.indexDocument(event.id, event.dataSource, event.timestamp))
-                .onEvent(DocumentToDelete.class, (state, event) -> state.setDocumentToDelete(event.id))
-                .onEvent(DocumentDeleted.class, (state, event) -> state.deleteDocument(event.id))
+                .onEvent(DocumentToDelete.class, (state, event) -> state.setDocumentToDelete(event.id, lastSequenceNumber(context)))
+                .onEvent(DocumentDeleted.class, (state, event) -> state.deleteDocument(event.id, event.timestamp))
                 .build();
     }
 
     // Events
+    /**
+     * The events of the changes made by a request have its trace when sampled, so the outbox can follow it
+     */
     public final static class DocumentCreated implements Event {
         public final Document document;
+        public final Optional<String> idempotencyKey;
+        public final Instant timestamp;
+        public final Optional<TraceContext> trace;
+
+        public DocumentCreated(Document document, Optional<String> idempotencyKey, Instant timestamp) {
+            this(document, idempotencyKey, timestamp, Optional.empty());
+        }
 
         @JsonCreator
-        public DocumentCreated(Document document) {
+        public DocumentCreated(@JsonProperty("document") Document document,
+                               @JsonProperty("idempotencyKey") Optional<String> idempotencyKey,
+                               @JsonProperty("timestamp") Instant timestamp,
+                               @JsonProperty("trace") Optional<TraceContext> trace) {
             this.document = document;
+            // Events persisted before the idempotency keys were introduced do not have them
+            this.idempotencyKey = idempotencyKey == null ? Optional.empty() : idempotencyKey;
+            this.timestamp = timestamp == null ? Instant.EPOCH : timestamp;
+            this.trace = trace == null ? Optional.empty() : trace;
         }
-
     }
 
     public final static class DocumentUpdated implements Event {
         public final Document document;
+        public final Optional<TraceContext> trace;
 
-        @JsonCreator
         public DocumentUpdated(Document document) {
+            this(document, Optional.empty());
+        }
+
+        @JsonCreator
+        public DocumentUpdated(Document document, Optional<TraceContext> trace) {
             this.document = document;
+            this.trace = trace == null ? Optional.empty() : trace;
         }
     }
 
     public final static class DocumentToDelete implements Event {
         public final String id;
+        public final Optional<TraceContext> trace;
 
-        @JsonCreator
         public DocumentToDelete(String id) {
+            this(id, Optional.empty());
+        }
+
+        @JsonCreator
+        public DocumentToDelete(String id, Optional<TraceContext> trace) {
             this.id = id;
+            this.trace = trace == null ? Optional.empty() : trace;
+        }
+    }
+
+    /**
+     * The promotions of the documents expired at the time
+     */
+    public final static class PromotionsExpired implements Event {
+        public final List<String> ids;
+        public final Instant timestamp;
+
+        @JsonCreator
+        public PromotionsExpired(List<String> ids, Instant timestamp) {
+            this.ids = List.copyOf(ids);
+            this.timestamp = timestamp;
         }
     }
 
@@ -325,10 +1214,16 @@ public final class DocumentRegistry extends EventSourcedBehavior<DocumentRegistr
 
     public final static class DocumentDeleted implements Event {
         public final String id;
+        public final Optional<Instant> timestamp;
 
-        @JsonCreator
         public DocumentDeleted(String id) {
+            this(id, Optional.empty());
+        }
+
+        @JsonCreator
+        public DocumentDeleted(@JsonProperty("id") String id, @JsonProperty("timestamp") Optional<Instant> timestamp) {
             this.id = id;
+            this.timestamp = timestamp == null ? Optional.empty() : timestamp;
         }
     }
 
@@ -339,16 +1234,34 @@ public final class DocumentRegistry extends EventSourcedBehavior<DocumentRegistr
                 .onSignal(
                         RecoveryCompleted.instance(),
                         state -> {
-                            // After recovered, we should iterate through the documents and:
-                            // send those in a FETCHED state to index
+                            // From now on the bodies of the documents created are kept
+                            recovered = true;
+
                             state.documents.values().stream()
-                                    .filter(document -> document.getState().equals(DocumentState.FETCHED))
-                                    .forEach(document -> indexer.tell(new DocumentIndexer.IndexDocument(document.getId(), document.getDataSource(), refDocumentIndexed)));
+                                    .filter(document -> document.getState() != DocumentState.DELETED)
+                                    .forEach(document -> document.getPromotionValidUntil()
+                                            .ifPresent(validUntil -> promotionExpirations.schedule(document.getId(), validUntil)));
+                            timers.startTimerWithFixedDelay(ExpirePromotions.INSTANCE, promotionExpiryTick);
 
-                            // send those in a TO_DELETE state to index
+                            // The search documents are not recovered, the ones of the documents indexed again are
+                            // built now and the rest once they change or are indexed
                             state.documents.values().stream()
-                                    .filter(document -> document.getState().equals(DocumentState.TO_DELETE))
-                                    .forEach(document -> indexer.tell(new DocumentIndexer.DeleteDocument(document.getId(), refDocumentDeleted)));
+                                    .filter(document -> document.getState().equals(DocumentState.FETCHED))
+                                    .forEach(document -> updateSearchDocument(state, document.getId(), searchDocuments::created));
+
+                            indexer.ifPresent(ref -> {
+                                // When there is an outbox it resumes the pending work from its stored offset.
+                                // Otherwise, after recovered, we should iterate through the documents and:
+                                // send those in a FETCHED state to index
+                                state.documents.values().stream()
+                                        .filter(document -> document.getState().equals(DocumentState.FETCHED))
+                                        .forEach(document -> ref.tell(new DocumentIndexer.IndexDocument(document.getId(), document.getDataSource(), document.getVersion(), refDocumentIndexed)));
+
+                                // send those in a TO_DELETE state to index
+                                state.documents.values().stream()
+                                        .filter(document -> document.getState().equals(DocumentState.TO_DELETE))
+                                        .forEach(document -> ref.tell(new DocumentIndexer.DeleteDocument(document.getId(), document.getVersion(), refDocumentDeleted)));
+                            });
                         })
                 .build();
     }
@@ -0,0 +1,130 @@
+package com.search.engine;
+
+import com.fasterxml.jackson.annotation.JsonCreator;
+import com.fasterxml.jackson.annotation.JsonProperty;
+import com.search.engine.models.Document;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+
+/**
+ * Bounded cache of the idempotency keys of the created documents, keyed by the idempotency key.
+ * <p>
+ * The keys are kept in creation order, so the expired ones, and the oldest ones once the cache is full, are always
+ * at the head and evicting them is cheap. The cache is rebuilt from the events, so only the event timestamps are
+ * used to evict, which keeps the recovered cache identical to the one before the restart.
+ * <p>
+ * Every key has the hash of the request it was first sent with, so a key reused with another request is told apart
+ * from a retry. The hash is made of the fields of the document sent, not of its id, which the registry assigns.
+ */
+final class IdempotencyKeys {
+    static final int DEFAULT_MAX_KEYS = 100_000;
+    static final Duration DEFAULT_TTL = Duration.ofHours(24);
+
+    @JsonProperty("maxKeys")
+    private final int maxKeys;
+    @JsonProperty("ttl")
+    private final Duration ttl;
+    @JsonProperty("keys")
+    private final LinkedHashMap<String, Entry> keys;
+
+    @JsonCreator
+    IdempotencyKeys(@JsonProperty("maxKeys") int maxKeys,
+                    @JsonProperty("ttl") Duration ttl,
+                    @JsonProperty("keys") LinkedHashMap<String, Entry> keys) {
+        this.maxKeys = maxKeys;
+        this.ttl = ttl;
+        this.keys = keys;
+    }
+
+    IdempotencyKeys(int maxKeys, Duration ttl) {
+        this(maxKeys, ttl, new LinkedHashMap<>());
+    }
+
+    IdempotencyKeys() {
+        this(DEFAULT_MAX_KEYS, DEFAULT_TTL);
+    }
+
+    void put(String key, String documentId, long requestHash, Instant createdAt) {
+        keys.put(key, new Entry(documentId, requestHash, createdAt));
+        evict(createdAt);
+    }
+
+    /**
+     * @return the id of the document created with the key, when the key has not expired
+     */
+    Optional<String> documentId(String key, Instant now) {
+        var entry = keys.get(key);
+
+        if (entry == null || isExpired(entry, now)) {
+            return Optional.empty();
+        }
+
+        return Optional.of(entry.documentId);
+    }
+
+    /**
+     * @return whether the key was first sent with a request of the given hash, always when the key is unknown or
+     * was kept before the hashes were
+     */
+    boolean matches(String key, long requestHash) {
+        var entry = keys.get(key);
+        return entry == null || entry.requestHash == null || entry.requestHash == requestHash;
+    }
+
+    static long requestHash(Document document) {
+        long hash = 17;
+        hash = 31 * hash + Objects.hashCode(document.getName());
+        hash = 31 * hash + Objects.hashCode(document.getDescription());
+        hash = 31 * hash + Objects.hashCode(document.getImagesUrls());
+        hash = 31 * hash + Objects.hashCode(document.getPrice());
+        hash = 31 * hash + Objects.hashCode(document.getPromotion());
+        hash = 31 * hash + Objects.hashCode(document.getPromotionValidUntil());
+        hash = 31 * hash + Objects.hashCode(document.getDataSource());
+        return hash;
+    }
+
+    int size() {
+        return keys.size();
+    }
+
+    private void evict(Instant now) {
+        Iterator<Map.Entry<String, Entry>> oldest = keys.entrySet().iterator();
+
+        while (oldest.hasNext()) {
+            var entry = oldest.next().getValue();
+            if (keys.size() <= maxKeys && !isExpired(entry, now)) return;
+            oldest.remove();
+        }
+    }
+
+    private boolean isExpired(Entry entry, Instant now) {
+        return entry.createdAt.plus(ttl).isBefore(now);
+    }
+
+    private static final class Entry {
+        @JsonProperty("documentId")
+        private final String documentId;
+        /**
+         * Null in the snapshots taken before the hashes were kept
+         */
+        @JsonProperty("requestHash")
+        private final Long requestHash;
+        @JsonProperty("createdAt")
+        private final Instant createdAt;
+
+        @JsonCreator
+        private Entry(@JsonProperty("documentId") String documentId,
+                      @JsonProperty("requestHash") Long requestHash,
+                      @JsonProperty("createdAt") Instant createdAt) {
+            this.documentId = documentId;
+            this.requestHash = requestHash;
+            this.createdAt = createdAt;
+        }
+    }
+}
@@ -0,0 +1,301 @@
+package com.search.engine;
+
+import com.fasterxml.jackson.annotation.JsonCreator;
+import com.fasterxml.jackson.annotation.JsonProperty;
+import com.search.engine.models.Document;
+
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.RandomAccess;
+import java.util.Set;
+
+/**
+ * Dictionary of the image URLs of the documents in the registry.
+ * <p>
+ * Every distinct URL is kept once, split in its prefix, up to the last '/', and its suffix. The prefixes, a few
+ * CDN hosts and paths, are shared by the URLs, and the URLs are shared by the documents, which only keep references
+ * to the entries of the dictionary. The entries count their references and are removed once no document has them.
+ * <p>
+ * The entries never change once created, so the lists of the documents can be read by other threads, e.g. while
+ * a response is marshalled, whatever happens to the dictionary afterwards. The dictionary itself is owned by the
+ * registry.
+ */
+final class ImageUrls {
+    // Below it, the URLs already in a list are found faster by scanning it than with a set
+    private static final int SCAN_THRESHOLD = 16;
+    private static final int INITIAL_CAPACITY = 64;
+    private static final InternedList EMPTY = new InternedList(new Entry[0]);
+
+    private final Map<String, Prefix> prefixes = new HashMap<>();
+    // Open addressing with linear probing, at most half full
+    private Entry[] table = new Entry[INITIAL_CAPACITY];
+    private int size = 0;
+
+    private static final class Prefix {
+        final String value;
+        int references = 0;
+
+        Prefix(String value) {
+            this.value = value;
+        }
+    }
+
+    static final class Entry {
+        final String prefix;
+        final String suffix;
+        private int references = 0;
+
+        private Entry(String prefix, String suffix) {
+            this.prefix = prefix;
+            this.suffix = suffix;
+        }
+
+        String url() {
+            return prefix.concat(suffix);
+        }
+    }
+
+    /**
+     * The image URLs of a document, without duplicates, in the order they were added
+     */
+    static final class InternedList extends AbstractList<String> implements RandomAccess {
+        private final Entry[] entries;
+
+        private InternedList(Entry[] entries) {
+            this.entries = entries;
+        }
+
+        @Override
+        public String get(int index) {
+            return entries[index].url();
+        }
+
+        @Override
+        public int size() {
+            return entries.length;
+        }
+    }
+
+    /**
+     * The image URLs of the documents in a snapshot, every distinct URL and every prefix written once
+     */
+    static final class Table {
+        @JsonProperty("prefixes")
+        final List<String> prefixes;
+        // The index of the prefix of every URL
+        @JsonProperty("urlPrefixes")
+        final int[] urlPrefixes;
+        @JsonProperty("urlSuffixes")
+        final List<String> urlSuffixes;
+        // The indexes of the URLs of every document, by id
+        @JsonProperty("documents")
+        final Map<String, int[]> documents;
+
+        @JsonCreator
+        Table(@JsonProperty("prefixes") List<String> prefixes,
+              @JsonProperty("urlPrefixes") int[] urlPrefixes,
+              @JsonProperty("urlSuffixes") List<String> urlSuffixes,
+              @JsonProperty("documents") Map<String, int[]> documents) {
+            this.prefixes = prefixes;
+            this.urlPrefixes = urlPrefixes;
+            this.urlSuffixes = urlSuffixes;
+            this.documents = documents;
+        }
+
+        static Table of(Collection<Document> documents) {
+            var prefixIndexes = new HashMap<String, Integer>();
+            var urlIndexes = new HashMap<String, Integer>();
+            var prefixes = new ArrayList<String>();
+            var urlPrefixes = new ArrayList<Integer>();
+            var urlSuffixes = new ArrayList<String>();
+            var documentUrls = new HashMap<String, int[]>();
+
+            for (Document document : documents) {
+                if (document.getImagesUrls() == null) continue;
+
+                var indexes = new int[document.getImagesUrls().size()];
+                for (int i = 0; i < indexes.length; i++) {
+                    indexes[i] = urlIndexes.computeIfAbsent(document.getImagesUrls().get(i), url -> {
+                        var split = url.lastIndexOf('/') + 1;
+                        urlPrefixes.add(prefixIndexes.computeIfAbsent(url.substring(0, split), prefix -> {
+                            prefixes.add(prefix);
+                            return prefixes.size() - 1;
+                        }));
+                        urlSuffixes.add(url.substring(split));
+                        return urlSuffixes.size() - 1;
+                    });
+                }
+                documentUrls.put(document.getId(), indexes);
+            }
+
+            return new Table(prefixes, urlPrefixes.stream().mapToInt(Integer::intValue).toArray(), urlSuffixes, documentUrls);
+        }
+
+        /**
+         * @return the URLs of the document, null if it has none
+         */
+        List<String> urls(String id) {
+            var indexes = documents.get(id);
+            if (indexes == null) return null;
+
+            var urls = new String[indexes.length];
+            for (int i = 0; i < indexes.length; i++) {
+                urls[i] = prefixes.get(urlPrefixes[indexes[i]]).concat(urlSuffixes.get(indexes[i]));
+            }
+            return Arrays.asList(urls);
+        }
+    }
+
+    /**
+     * @return the URLs without duplicates, referencing the entries of the dictionary, or null if there are none
+     */
+    List<String> intern(List<String> urls) {
+        return urls == null ? null : merge(EMPTY, urls);
+    }
+
+    /**
+     * Adds the URLs not in the stored ones, in order. The references of the stored list move to the returned one
+     */
+    List<String> merge(List<String> stored, List<String> added) {
+        if (stored == null) return intern(added);
+
+        var storedList = stored instanceof InternedList ? (InternedList) stored : (InternedList) intern(stored);
+        if (added == null || added.isEmpty()) return storedList;
+
+        var merged = new ArrayList<Entry>(storedList.entries.length + added.size());
+        Collections.addAll(merged, storedList.entries);
+        Set<Entry> present = merged.size() + added.size() > SCAN_THRESHOLD ? Collections.newSetFromMap(new IdentityHashMap<>()) : null;
+        if (present != null) present.addAll(merged);
+
+        for (String url : added) {
+            var entry = find(url);
+            if (entry != null && (present != null ? present.contains(entry) : merged.contains(entry))) continue;
+
+            entry = entry == null ? insert(url) : entry;
+            entry.references++;
+            merged.add(entry);
+            if (present != null) present.add(entry);
+        }
+
+        return new InternedList(merged.toArray(new Entry[0]));
+    }
+
+    /**
+     * The URLs are no longer referenced by the document
+     */
+    void release(List<String> urls) {
+        if (!(urls instanceof InternedList)) return;
+
+        for (Entry entry : ((InternedList) urls).entries) {
+            if (--entry.references == 0) remove(entry);
+        }
+    }
+
+    /**
+     * @return the distinct URLs
+     */
+    int size() {
+        return size;
+    }
+
+    int prefixes() {
+        return prefixes.size();
+    }
+
+    /**
+     * Rough size of the dictionary in the heap, with compressed references and Latin-1 strings
+     */
+    long estimatedBytes() {
+        long bytes = 16 + 4L * table.length;
+        for (Entry entry : table) {
+            if (entry != null) bytes += 24 + stringBytes(entry.suffix);
+        }
+        for (Prefix prefix : prefixes.values()) {
+            bytes += 32 + 24 + stringBytes(prefix.value);
+        }
+
+        return bytes;
+    }
+
+    static long stringBytes(String value) {
+        return 24 + ((16 + value.length() + 7) & ~7);
+    }
+
+    private Entry find(String url) {
+        var split = url.lastIndexOf('/') + 1;
+        var prefix = prefixes.get(url.substring(0, split));
+        if (prefix == null) return null;
+
+        var suffix = url.substring(split);
+        for (int slot = slot(prefix.value, suffix); table[slot] != null; slot = (slot + 1) & (table.length - 1)) {
+            var entry = table[slot];
+            if (entry.prefix == prefix.value && entry.suffix.equals(suffix)) return entry;
+        }
+
+        return null;
+    }
+
+    private Entry insert(String url) {
+        if (2 * (size + 1) > table.length) resize(2 * table.length);
+
+        var split = url.lastIndexOf('/') + 1;
+        var prefix = prefixes.computeIfAbsent(url.substring(0, split), Prefix::new);
+        prefix.references++;
+
+        var entry = new Entry(prefix.value, url.substring(split));
+        var slot = slot(entry.prefix, entry.suffix);
+        while (table[slot] != null) slot = (slot + 1) & (table.length - 1);
+        table[slot] = entry;
+        size++;
+        return entry;
+    }
+
+    /**
+     * The entries after the removed one are shifted back, so the probes never stop at a hole
+     */
+    private void remove(Entry entry) {
+        var mask = table.length - 1;
+        var hole = slot(entry.prefix, entry.suffix);
+        while (table[hole] != entry) hole = (hole + 1) & mask;
+        table[hole] = null;
+        size--;
+
+        for (int next = (hole + 1) & mask; table[next] != null; next = (next + 1) & mask) {
+            var home = slot(table[next].prefix, table[next].suffix);
+            // Moves back unless its home is cyclically after the hole and at or before its slot
+            var stays = hole <= next ? hole < home && home <= next : hole < home || home <= next;
+            if (!stays) {
+                table[hole] = table[next];
+                table[next] = null;
+                hole = next;
+            }
+        }
+
+        var prefix = prefixes.get(entry.prefix);
+        if (--prefix.references == 0) prefixes.remove(entry.prefix);
+    }
+
+    private void resize(int capacity) {
+        var previous = table;
+        table = new Entry[capacity];
+        for (Entry entry : previous) {
+            if (entry == null) continue;
+
+            var slot = slot(entry.prefix, entry.suffix);
+            while (table[slot] != null) slot = (slot + 1) & (capacity - 1);
+            table[slot] = entry;
+        }
+    }
+
+    private int slot(String prefix, String suffix) {
+        var hash = prefix.hashCode() * 31 + suffix.hashCode();
+        return (hash ^ (hash >>> 16)) & (table.length - 1);
+    }
+}
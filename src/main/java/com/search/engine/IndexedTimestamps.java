@@ -0,0 +1,64 @@
+package com.search.engine;
+
+import com.search.engine.models.DataSource;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableSet;
+import java.util.Optional;
+import java.util.TreeSet;
+
+/**
+ * Index of the documents by the time they were last indexed, by data source.
+ * <p>
+ * Every document appears once per data source it was indexed from, ordered by timestamp and then by id, so the
+ * documents changed since a given time are read from the position of that time without scanning the rest.
+ */
+final class IndexedTimestamps {
+    private static final Comparator<Entry> ORDER = Comparator.<Entry, Instant>comparing(entry -> entry.timestamp)
+            .thenComparing(entry -> entry.id);
+
+    private final Map<DataSource, NavigableSet<Entry>> byDataSource = new EnumMap<>(DataSource.class);
+
+    IndexedTimestamps() {
+        for (DataSource dataSource : DataSource.values()) {
+            byDataSource.put(dataSource, new TreeSet<>(ORDER));
+        }
+    }
+
+    /**
+     * Moves the document from its previous timestamp, if any, to the new one
+     */
+    void update(String id, DataSource dataSource, Optional<Instant> previousTimestamp, Instant timestamp) {
+        var entries = byDataSource.get(dataSource);
+        previousTimestamp.ifPresent(previous -> entries.remove(new Entry(previous, id)));
+        entries.add(new Entry(timestamp, id));
+    }
+
+    /**
+     * @return up to limit entries from the given position, the first entry included or not
+     */
+    List<Entry> from(DataSource dataSource, Instant timestamp, String id, boolean inclusive, int limit) {
+        var page = new ArrayList<Entry>(Math.min(limit, 1024));
+        for (Entry entry : byDataSource.get(dataSource).tailSet(new Entry(timestamp, id), inclusive)) {
+            if (page.size() == limit) break;
+            page.add(entry);
+        }
+
+        return page;
+    }
+
+    static final class Entry {
+        final Instant timestamp;
+        final String id;
+
+        Entry(Instant timestamp, String id) {
+            this.timestamp = timestamp;
+            this.id = id;
+        }
+    }
+}
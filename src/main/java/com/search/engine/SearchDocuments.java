@@ -0,0 +1,242 @@
+package com.search.engine;
+
+import akka.actor.typed.ActorSystem;
+import akka.actor.typed.Extension;
+import akka.actor.typed.ExtensionId;
+import akka.actor.typed.javadsl.Adapter;
+import akka.serialization.jackson.JacksonObjectMapperProvider;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.search.engine.models.Document;
+import com.search.engine.solr.SearchDocument;
+import com.search.engine.tenants.Tenants;
+import com.typesafe.config.Config;
+
+import java.nio.ByteBuffer;
+import java.time.Instant;
+import java.util.EnumSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * The search documents of the registry, prebuilt for the indexers, see
+ * case-search-engine-index.registry.search-documents.
+ * <p>
+ * The registry builds the search document of a document once it changes, or once it is indexed without one, e.g.
+ * after a restart, and after that it only serializes again the sections of the fields that changed, e.g. the prices
+ * of a price update. After a restart the registry also builds the ones of the documents it sends to index again. The documents are versioned like the
+ * documents of the registry, so an indexer only takes one at least as new as the version it indexes, otherwise it
+ * indexes the document by id. The least recently used ones are forgotten first once they take more than the
+ * maximum bytes.
+ * <p>
+ * Every catalogue has its own, with its own maximum bytes, so a tenant reloading its catalogue does not evict the
+ * search documents of the others. The maximum bytes of a tenant are search-documents.max-bytes in its limits, see
+ * case-search-engine-index.tenants.
+ */
+public final class SearchDocuments {
+    static final long DEFAULT_MAX_BYTES = 64L * 1024 * 1024;
+    private static final Id ID = new Id();
+    private static final ByteBuffer EMPTY = ByteBuffer.allocate(0).asReadOnlyBuffer();
+    private static final ByteBuffer CLOSE = ByteBuffer.wrap(new byte[]{'}'}).asReadOnlyBuffer();
+
+    /**
+     * The parts of every search document, in order
+     */
+    private enum Section {
+        HEADER, PRODUCTS, PRICES, PROMOTIONS, TIMESTAMPS, CLOSE
+    }
+
+    private final long maxBytes;
+    private final ObjectWriter writer;
+    private final LinkedHashMap<String, SearchDocument> documents = new LinkedHashMap<>(16, 0.75f, true);
+    private long bytes;
+
+    /**
+     * @return the search documents of the catalogue without tenant
+     */
+    public static SearchDocuments get(ActorSystem<?> system) {
+        return ID.apply(system).withoutTenant;
+    }
+
+    public static SearchDocuments get(ActorSystem<?> system, String tenant) {
+        return ID.apply(system).tenant(tenant);
+    }
+
+    private static final class Catalogues implements Extension {
+        private static final String MAX_BYTES = "search-documents.max-bytes";
+
+        private final ActorSystem<?> system;
+        private final ObjectMapper objectMapper;
+        private final long defaultMaxBytes;
+        private final SearchDocuments withoutTenant;
+        private final Map<String, SearchDocuments> tenants = new ConcurrentHashMap<>();
+
+        private Catalogues(ActorSystem<?> system) {
+            var path = "case-search-engine-index.registry." + MAX_BYTES;
+            var config = system.settings().config();
+            this.system = system;
+            // The one of the jackson-json serializer, shared with the routes
+            this.objectMapper = JacksonObjectMapperProvider.get(Adapter.toClassic(system)).getOrCreate("jackson-json", Optional.empty());
+            this.defaultMaxBytes = config.hasPath(path) ? config.getBytes(path) : DEFAULT_MAX_BYTES;
+            this.withoutTenant = new SearchDocuments(defaultMaxBytes, objectMapper);
+        }
+
+        private SearchDocuments tenant(String tenant) {
+            return tenants.computeIfAbsent(tenant, id -> {
+                Config limits = Tenants.get(system).limits(id);
+                return new SearchDocuments(limits.hasPath(MAX_BYTES) ? limits.getBytes(MAX_BYTES) : defaultMaxBytes, objectMapper);
+            });
+        }
+    }
+
+    private static final class Id extends ExtensionId<Catalogues> {
+        @Override
+        public Catalogues createExtension(ActorSystem<?> system) {
+            return new Catalogues(system);
+        }
+    }
+
+    SearchDocuments(long maxBytes, ObjectMapper objectMapper) {
+        this.maxBytes = maxBytes;
+        this.writer = objectMapper.writer();
+    }
+
+    /**
+     * @return the search document of the version or a newer one, any version when unversioned
+     */
+    public synchronized Optional<SearchDocument> get(String id, long version) {
+        var document = documents.get(id);
+        if (document == null || (version != DocumentIndexer.UNVERSIONED && document.version() < version)) return Optional.empty();
+
+        return Optional.of(document);
+    }
+
+    /**
+     * Builds the whole search document of a document created
+     */
+    void created(Document document) {
+        put(build(document, EnumSet.allOf(Section.class), null));
+    }
+
+    /**
+     * Serializes again the sections of the fields in the update, the document is the one updated in the registry
+     */
+    void updated(Document document, Document update) {
+        var sections = EnumSet.of(Section.HEADER);
+        if (update.getName() != null || update.getDescription() != null || update.getImagesUrls() != null) sections.add(Section.PRODUCTS);
+        if (update.getPrice() != null) sections.add(Section.PRICES);
+        if (update.getPromotion() != null || update.getPromotionValidUntil().isPresent()) sections.add(Section.PROMOTIONS);
+        rebuild(document, sections);
+    }
+
+    void promotionExpired(Document document) {
+        rebuild(document, EnumSet.of(Section.HEADER, Section.PROMOTIONS));
+    }
+
+    /**
+     * The search documents already built get the new timestamps. A document indexed without one, the index missed
+     * it, gets the whole search document, so its next index takes it
+     */
+    void indexed(Document document) {
+        rebuild(document, EnumSet.of(Section.TIMESTAMPS));
+    }
+
+    synchronized void removed(String id) {
+        var previous = documents.remove(id);
+        if (previous != null) bytes -= previous.size();
+    }
+
+    public synchronized long bytes() {
+        return bytes;
+    }
+
+    public synchronized int size() {
+        return documents.size();
+    }
+
+    private void rebuild(Document document, EnumSet<Section> sections) {
+        SearchDocument previous;
+        synchronized (this) {
+            previous = documents.get(document.getId());
+        }
+        put(previous == null ? build(document, EnumSet.allOf(Section.class), null) : build(document, sections, previous));
+    }
+
+    private synchronized void put(SearchDocument document) {
+        if (maxBytes <= 0) return;
+
+        var previous = documents.put(document.id(), document);
+        bytes += document.size() - (previous == null ? 0 : previous.size());
+
+        var eldest = documents.values().iterator();
+        while (bytes > maxBytes && eldest.hasNext()) {
+            bytes -= eldest.next().size();
+            eldest.remove();
+        }
+    }
+
+    /**
+     * The sections not given are taken from the previous search document
+     */
+    private SearchDocument build(Document document, EnumSet<Section> sections, SearchDocument previous) {
+        var previousParts = previous == null ? null : previous.buffers();
+        var parts = new ByteBuffer[Section.values().length];
+        for (Section section : Section.values()) {
+            parts[section.ordinal()] = sections.contains(section) ? serialize(document, section) : previousParts[section.ordinal()];
+        }
+
+        return new SearchDocument(document.getId(), document.getVersion(), parts);
+    }
+
+    /**
+     * Every section is the fields of a JSON object without the braces, the header opens the object and the other
+     * sections start with a comma, so they are written one after the other. The fields without value are left out
+     */
+    private ByteBuffer serialize(Document document, Section section) {
+        var fields = new LinkedHashMap<String, Object>();
+        switch (section) {
+            case HEADER -> {
+                fields.put("id", document.getId());
+                fields.put("version", document.getVersion());
+                fields.put("dataSource", document.getDataSource());
+            }
+            case PRODUCTS -> {
+                fields.put("name", document.getName());
+                fields.put("description", document.getDescription());
+                fields.put("imagesUrls", document.getImagesUrls());
+            }
+            case PRICES -> fields.put("price", document.getPrice());
+            case PROMOTIONS -> {
+                fields.put("promotion", document.getPromotion());
+                fields.put("promotionValidUntil", document.getPromotionValidUntil().map(Instant::toString).orElse(null));
+            }
+            case TIMESTAMPS -> {
+                fields.put("productsIndexedTimestamp", timestamp(document.getProductsIndexedTimestamp()));
+                fields.put("pricesIndexedTimestamp", timestamp(document.getPricesIndexedTimestamp()));
+                fields.put("promotionsIndexedTimestamp", timestamp(document.getPromotionsIndexedTimestamp()));
+            }
+            case CLOSE -> {
+                return CLOSE;
+            }
+        }
+        fields.values().removeIf(value -> value == null);
+        if (fields.isEmpty()) return EMPTY;
+
+        byte[] object;
+        try {
+            object = writer.writeValueAsBytes(fields);
+        } catch (JsonProcessingException ex) {
+            throw new IllegalStateException("The search document of " + document.getId() + " could not be serialized", ex);
+        }
+        // Without the closing brace, and the opening one replaced with a comma after the header
+        if (section != Section.HEADER) object[0] = ',';
+        return ByteBuffer.wrap(object, 0, object.length - 1).slice().asReadOnlyBuffer();
+    }
+
+    private static String timestamp(Optional<Instant> timestamp) {
+        return timestamp == null ? null : timestamp.map(Instant::toString).orElse(null);
+    }
+}
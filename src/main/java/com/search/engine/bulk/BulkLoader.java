@@ -0,0 +1,157 @@
+package com.search.engine.bulk;
+
+import akka.actor.ActorSystem;
+import akka.serialization.SerializationExtension;
+import akka.serialization.jackson.JacksonObjectMapperProvider;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.search.engine.DocumentRegistry;
+import com.search.engine.models.Document;
+import com.search.engine.validators.DocumentRequestValidator;
+import com.search.engine.validators.RequestValidator;
+import com.typesafe.config.Config;
+import com.typesafe.config.ConfigFactory;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.stream.Collectors;
+
+/**
+ * Loads documents from NDJSON or CSV files straight into the journal of the registry, see {@link DocumentFileParser}
+ * for the formats.
+ * <p>
+ * Every valid document is written as a DocumentCreated event, in JDBC batches, as POST /documents would. The
+ * registry must be stopped while loading. Once it starts, it recovers the documents as FETCHED and they are sent to
+ * index by the outbox, or by the registry itself when the outbox is disabled. The invalid documents are logged with
+ * their line and skipped.
+ * <p>
+ * Usage: BulkLoader file...
+ */
+public class BulkLoader {
+    private final static Logger log = LoggerFactory.getLogger(BulkLoader.class);
+
+    private final RequestValidator<Document> validator = new DocumentRequestValidator();
+    private final JournalWriter journal;
+    private final Config config;
+    private long loaded = 0;
+    private long rejected = 0;
+
+    private BulkLoader(JournalWriter journal, Config config) {
+        this.journal = journal;
+        this.config = config;
+    }
+
+    public static void main(String[] args) throws Exception {
+        if (args.length == 0) {
+            System.err.println("Usage: BulkLoader file...");
+            System.exit(1);
+        }
+
+        // The actor system provides the serializers and the ObjectMapper of the application, no actor is started
+        var system = ActorSystem.create("CaseSearchEngineBulkLoader", ConfigFactory.load());
+        if (!system.settings().config().getString("case-search-engine-index.persistence.store").equals("jdbc")) {
+            System.err.println("The bulk loader writes to the JDBC journal, case-search-engine-index.persistence.store must be jdbc");
+            system.terminate();
+            System.exit(1);
+        }
+        try {
+            var config = system.settings().config().getConfig("case-search-engine-index.bulk-loader");
+            var db = system.settings().config().getConfig("slick.db");
+            var connection = DriverManager.getConnection(db.getString("url"), db.getString("user"), db.getString("password"));
+
+            // The journal of the registry has its own partitions, the rest of the persistence ids share the default one
+            var journalConfig = system.settings().config().getConfig("case-search-engine-index.journal");
+            var persistenceId = config.getString("persistence-id");
+            var partitionedTable = persistenceId.equals(journalConfig.getString("persistence-id"))
+                    ? Optional.of(journalConfig.getString("partitioned-table"))
+                    : Optional.<String>empty();
+
+            try (var journal = new JournalWriter(connection, SerializationExtension.get(system), persistenceId, config.getInt("batch-size"),
+                    partitionedTable, journalConfig.getLong("partition-size"))) {
+                var loader = new BulkLoader(journal, config);
+                var objectMapper = JacksonObjectMapperProvider.get(system).getOrCreate("jackson-json", Optional.empty());
+                var start = System.nanoTime();
+
+                for (String file : args) {
+                    loader.load(Paths.get(file), objectMapper);
+                }
+                journal.flush();
+
+                var elapsed = Duration.ofNanos(System.nanoTime() - start);
+                log.info("Loaded {} documents in {} ({} documents per second), {} rejected. Last sequence number {}",
+                        loader.loaded, elapsed, loader.loaded * 1000 / Math.max(1, elapsed.toMillis()), loader.rejected, journal.lastSequenceNumber());
+            }
+        } finally {
+            system.terminate();
+        }
+    }
+
+    private void load(Path file, ObjectMapper objectMapper) throws IOException, SQLException {
+        log.info("Loading {}", file);
+        var chunkSize = (int) config.getBytes("chunk-size").longValue();
+        var csv = file.getFileName().toString().toLowerCase().endsWith(".csv");
+        // The parser of a CSV file is built from its header, the first line
+        var parser = new DocumentFileParser[]{csv ? null : DocumentFileParser.ndjson(objectMapper)};
+
+        try {
+            ChunkedLineReader.forEachLine(file, chunkSize, (bytes, offset, length, lineNumber) -> {
+                if (parser[0] == null) {
+                    parser[0] = DocumentFileParser.csv(new String(bytes, offset, length, StandardCharsets.UTF_8));
+                } else {
+                    load(file, parser[0], bytes, offset, length, lineNumber);
+                }
+            });
+        } catch (UncheckedSQLException ex) {
+            throw ex.getCause();
+        }
+    }
+
+    private void load(Path file, DocumentFileParser parser, byte[] bytes, int offset, int length, long lineNumber) {
+        Document document;
+        try {
+            document = parser.parse(bytes, offset, length);
+        } catch (IOException ex) {
+            reject(file, lineNumber, ex.getMessage());
+            return;
+        }
+
+        var violations = validator.postEntityViolations(document);
+        if (!violations.isEmpty()) {
+            reject(file, lineNumber, violations.stream().map(violation -> violation.field + ": " + violation.message).collect(Collectors.joining(", ")));
+            return;
+        }
+
+        document.setId(UUID.randomUUID().toString());
+        try {
+            journal.append(new DocumentRegistry.DocumentCreated(document, Optional.empty(), Instant.now()));
+        } catch (SQLException ex) {
+            throw new UncheckedSQLException(ex);
+        }
+        loaded++;
+    }
+
+    private void reject(Path file, long lineNumber, String reason) {
+        rejected++;
+        log.warn("{}:{} rejected: {}", file, lineNumber, reason);
+    }
+
+    private static final class UncheckedSQLException extends RuntimeException {
+        private UncheckedSQLException(SQLException cause) {
+            super(cause);
+        }
+
+        @Override
+        public synchronized SQLException getCause() {
+            return (SQLException) super.getCause();
+        }
+    }
+}
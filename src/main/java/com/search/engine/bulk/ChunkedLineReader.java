@@ -0,0 +1,63 @@
+package com.search.engine.bulk;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Reads the lines of a file in large chunks, handing them over as slices of the chunk without copying them.
+ * <p>
+ * The chunk grows when a line does not fit in it. Empty lines are skipped and the line endings, \n or \r\n,
+ * are not part of the lines.
+ */
+final class ChunkedLineReader {
+    interface LineConsumer {
+        void accept(byte[] bytes, int offset, int length, long lineNumber);
+    }
+
+    private ChunkedLineReader() {
+    }
+
+    static long forEachLine(Path file, int chunkSize, LineConsumer consumer) throws IOException {
+        try (var channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            var chunk = ByteBuffer.allocate(chunkSize);
+            long lineNumber = 0;
+            int scanFrom = 0;
+
+            while (true) {
+                int read = channel.read(chunk);
+                byte[] bytes = chunk.array();
+                int end = chunk.position();
+                int lineStart = 0;
+
+                for (int i = scanFrom; i < end; i++) {
+                    if (bytes[i] == '\n') {
+                        lineNumber++;
+                        emit(bytes, lineStart, i, lineNumber, consumer);
+                        lineStart = i + 1;
+                    }
+                }
+
+                if (read == -1) {
+                    if (lineStart < end) emit(bytes, lineStart, end, ++lineNumber, consumer);
+                    return lineNumber;
+                }
+
+                // Moves the incomplete line to the start of the chunk, growing it when the line fills it
+                int remaining = end - lineStart;
+                var next = remaining == chunk.capacity() ? ByteBuffer.allocate(chunk.capacity() * 2) : chunk;
+                System.arraycopy(bytes, lineStart, next.array(), 0, remaining);
+                next.clear().position(remaining);
+                chunk = next;
+                scanFrom = remaining;
+            }
+        }
+    }
+
+    private static void emit(byte[] bytes, int start, int end, long lineNumber, LineConsumer consumer) {
+        if (end > start && bytes[end - 1] == '\r') end--;
+        if (end > start) consumer.accept(bytes, start, end - start, lineNumber);
+    }
+}
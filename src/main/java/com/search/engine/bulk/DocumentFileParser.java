@@ -0,0 +1,115 @@
+package com.search.engine.bulk;
+
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.search.engine.models.DataSource;
+import com.search.engine.models.Document;
+import com.search.engine.models.Views;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Parses the lines of the files of documents to load.
+ * <p>
+ * NDJSON files have a document per line, with the same format as the body of POST /documents. CSV files have a
+ * header with the columns name, description, imagesUrls, price, promotion and dataSource, in any order, and the
+ * urls of the images separated by |. Values with commas or quotes are quoted, with the quotes doubled.
+ */
+abstract class DocumentFileParser {
+    private static final List<String> CSV_COLUMNS = List.of("name", "description", "imagesUrls", "price", "promotion", "dataSource");
+
+    abstract Document parse(byte[] bytes, int offset, int length) throws IOException;
+
+    static DocumentFileParser ndjson(ObjectMapper objectMapper) {
+        ObjectReader reader = objectMapper.readerFor(Document.class)
+                .withView(Views.Public.class)
+                .with(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES);
+        return new DocumentFileParser() {
+            @Override
+            Document parse(byte[] bytes, int offset, int length) throws IOException {
+                return reader.readValue(bytes, offset, length);
+            }
+        };
+    }
+
+    static DocumentFileParser csv(String header) {
+        var columns = splitCsv(header);
+        var positions = new int[CSV_COLUMNS.size()];
+        for (int i = 0; i < CSV_COLUMNS.size(); i++) {
+            positions[i] = columns.indexOf(CSV_COLUMNS.get(i));
+        }
+        for (String column : columns) {
+            if (!CSV_COLUMNS.contains(column)) throw new IllegalArgumentException("Unknown CSV column: " + column);
+        }
+
+        return new DocumentFileParser() {
+            @Override
+            Document parse(byte[] bytes, int offset, int length) throws IOException {
+                var values = splitCsv(new String(bytes, offset, length, StandardCharsets.UTF_8));
+                if (values.size() != columns.size()) {
+                    throw new IOException("Expected " + columns.size() + " values but found " + values.size());
+                }
+
+                var imagesUrls = value(values, positions[2]);
+                var price = value(values, positions[3]);
+                var dataSource = value(values, positions[5]);
+                try {
+                    return new Document(
+                            value(values, positions[0]),
+                            value(values, positions[1]),
+                            imagesUrls == null ? null : new ArrayList<>(Arrays.asList(imagesUrls.split("\\|"))),
+                            price == null ? null : Double.valueOf(price),
+                            value(values, positions[4]),
+                            dataSource == null ? null : DataSource.valueOf(dataSource));
+                } catch (IllegalArgumentException ex) { // Includes NumberFormatException
+                    throw new IOException("Invalid value: " + ex.getMessage(), ex);
+                }
+            }
+        };
+    }
+
+    /**
+     * Empty values are missing values
+     */
+    private static String value(List<String> values, int position) {
+        if (position < 0) return null;
+
+        var value = values.get(position);
+        return value.isEmpty() ? null : value;
+    }
+
+    static List<String> splitCsv(String line) {
+        var values = new ArrayList<String>();
+        var value = new StringBuilder();
+        boolean quoted = false;
+
+        for (int i = 0; i < line.length(); i++) {
+            char c = line.charAt(i);
+            if (quoted) {
+                if (c == '"' && i + 1 < line.length() && line.charAt(i + 1) == '"') {
+                    value.append('"');
+                    i++;
+                } else if (c == '"') {
+                    quoted = false;
+                } else {
+                    value.append(c);
+                }
+            } else if (c == '"') {
+                quoted = true;
+            } else if (c == ',') {
+                values.add(value.toString());
+                value.setLength(0);
+            } else {
+                value.append(c);
+            }
+        }
+        values.add(value.toString());
+
+        return values;
+    }
+}
@@ -0,0 +1,103 @@
+package com.search.engine.bulk;
+
+import akka.serialization.Serialization;
+import akka.serialization.Serializers;
+import com.search.engine.journal.JournalPartitions;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.Optional;
+import java.util.UUID;
+
+/**
+ * Appends events to the journal of a persistent actor with batched JDBC inserts, bypassing the actor.
+ * <p>
+ * The rows are the same akka-persistence-jdbc writes, serialized with the serializers of the actor system, so the
+ * actor recovers them as its own events. The sequence numbers continue after the last one in the journal, so the
+ * actor must not be running while the events are written. When the journal of the actor is partitioned, the
+ * partitions of every batch are created before it is inserted.
+ */
+final class JournalWriter implements AutoCloseable {
+    private static final String LAST_SEQUENCE_NUMBER =
+            "SELECT COALESCE(MAX(sequence_number), 0) FROM event_journal WHERE persistence_id = ?";
+    private static final String INSERT_EVENT =
+            "INSERT INTO event_journal (persistence_id, sequence_number, deleted, writer, write_timestamp, adapter_manifest, "
+                    + "event_ser_id, event_ser_manifest, event_payload) VALUES (?, ?, FALSE, ?, ?, '', ?, ?, ?)";
+
+    private final Connection connection;
+    private final Serialization serialization;
+    private final String persistenceId;
+    private final int batchSize;
+    private final String writer = UUID.randomUUID().toString();
+    private final PreparedStatement insert;
+    private final Optional<JournalPartitions> partitions;
+    private final long partitionSize;
+    private long sequenceNumber;
+    private int batched = 0;
+
+    JournalWriter(Connection connection,
+                  Serialization serialization,
+                  String persistenceId,
+                  int batchSize,
+                  Optional<String> partitionedTable,
+                  long partitionSize) throws SQLException {
+        this.connection = connection;
+        this.partitions = partitionedTable.map(table -> new JournalPartitions(connection, table, persistenceId));
+        this.partitionSize = partitionSize;
+        this.serialization = serialization;
+        this.persistenceId = persistenceId;
+        this.batchSize = batchSize;
+
+        connection.setAutoCommit(false);
+        try (var query = connection.prepareStatement(LAST_SEQUENCE_NUMBER)) {
+            query.setString(1, persistenceId);
+            try (var result = query.executeQuery()) {
+                result.next();
+                sequenceNumber = result.getLong(1);
+            }
+        }
+        this.insert = connection.prepareStatement(INSERT_EVENT);
+    }
+
+    void append(Object event) throws SQLException {
+        var serializer = serialization.findSerializerFor(event);
+
+        insert.setString(1, persistenceId);
+        insert.setLong(2, ++sequenceNumber);
+        insert.setString(3, writer);
+        insert.setLong(4, System.currentTimeMillis());
+        insert.setInt(5, serializer.identifier());
+        insert.setString(6, Serializers.manifestFor(serializer, event));
+        insert.setBytes(7, serializer.toBinary(event));
+        insert.addBatch();
+
+        if (++batched == batchSize) flush();
+    }
+
+    /**
+     * Every batch is committed on its own, a failure keeps the batches already written
+     */
+    void flush() throws SQLException {
+        if (batched == 0) return;
+
+        if (partitions.isPresent()) partitions.get().createUntil(sequenceNumber, partitionSize);
+        insert.executeBatch();
+        connection.commit();
+        batched = 0;
+    }
+
+    long lastSequenceNumber() {
+        return sequenceNumber;
+    }
+
+    @Override
+    public void close() throws SQLException {
+        try {
+            flush();
+        } finally {
+            insert.close();
+            connection.close();
+        }
+    }
+}
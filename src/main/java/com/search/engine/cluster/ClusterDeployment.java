@@ -0,0 +1,145 @@
+package com.search.engine.cluster;
+
+import akka.Done;
+import akka.actor.typed.ActorRef;
+import akka.actor.typed.Behavior;
+import akka.actor.typed.javadsl.ActorContext;
+import akka.actor.typed.javadsl.Behaviors;
+import akka.actor.typed.javadsl.Routers;
+import akka.actor.typed.receptionist.Receptionist;
+import akka.actor.typed.receptionist.ServiceKey;
+import akka.cluster.sharding.typed.ShardingEnvelope;
+import akka.cluster.sharding.typed.javadsl.ClusterSharding;
+import akka.cluster.sharding.typed.javadsl.Entity;
+import akka.cluster.sharding.typed.javadsl.EntityTypeKey;
+import akka.cluster.sharding.typed.javadsl.StartEntity;
+import akka.cluster.typed.ClusterSingleton;
+import akka.cluster.typed.SingletonActor;
+import akka.persistence.typed.PersistenceId;
+import com.search.engine.DocumentIndexer;
+import com.search.engine.DocumentRegistry;
+
+import java.time.Duration;
+import java.util.List;
+
+/**
+ * The singleton registry with distributed indexers. The registry is a sharded entity, it runs in one of the nodes and
+ * moves to another one when the node leaves. Every
+ * node runs an indexer, and the index work of a document always goes to the same one while the nodes do not
+ * change, so the index and delete requests of a document are not reordered. The HTTP layer of every node sends the
+ * requests to the registry wherever it runs.
+ * <p>
+ * The registry owns every document, the pages, the digests and the change feed all read its state or its journal,
+ * so it is a single entity keyed by its persistence id: every write goes through it in one node, only the HTTP layer
+ * and the indexers scale out. The actors following its journal, and the jobs, are cluster singletons. Every tenant has a registry of its own entity type, and indexers registered with its own key.
+ */
+final class ClusterDeployment implements Deployment {
+    private final ActorContext<?> context;
+    private final int indexerVirtualNodesFactor;
+    private final Duration batchAckTimeout;
+
+    ClusterDeployment(ActorContext<?> context) {
+        this.context = context;
+        var config = context.getSystem().settings().config().getConfig("case-search-engine-index.cluster");
+        this.indexerVirtualNodesFactor = config.getInt("indexer-virtual-nodes-factor");
+        this.batchAckTimeout = config.getDuration("batch-ack-timeout");
+    }
+
+    @Override
+    public ActorRef<DocumentRegistry.Command> registry(PersistenceId persistenceId, Behavior<DocumentRegistry.Command> behavior) {
+        // The entity type of the registry without tenant is DocumentRegistry, as before the tenants
+        var entityId = persistenceId.id();
+        ActorRef<ShardingEnvelope<DocumentRegistry.Command>> region = ClusterSharding.get(context.getSystem())
+                .init(Entity.of(EntityTypeKey.create(DocumentRegistry.Command.class, entityId), entityContext -> behavior));
+
+        // Started right away, it resumes the pending index work once recovered
+        region.tell(StartEntity.create(DocumentRegistry.Command.class, entityId));
+
+        return context.spawn(Behaviors.receive(DocumentRegistry.Command.class)
+                .onAnyMessage(command -> {
+                    region.tell(new ShardingEnvelope<>(entityId, command));
+                    return Behaviors.same();
+                })
+                .build(), entityId);
+    }
+
+    @Override
+    public ActorRef<DocumentIndexer.Command> indexers(ServiceKey<DocumentIndexer.Command> serviceKey, ActorRef<DocumentIndexer.Command> localIndexer) {
+        context.getSystem().receptionist().tell(Receptionist.register(serviceKey, localIndexer));
+
+        ActorRef<DocumentIndexer.Command> router = context.spawn(Routers.group(serviceKey)
+                .withConsistentHashingRouting(indexerVirtualNodesFactor, ClusterDeployment::documentId), serviceKey.id() + "-router");
+
+        return context.spawn(Behaviors.receive(DocumentIndexer.Command.class)
+                .onMessage(DocumentIndexer.IndexDocuments.class, batch -> batch.ids.size() > 1, (ctx, batch) -> {
+                    split(ctx, batch, router);
+                    return Behaviors.same();
+                })
+                .onAnyMessage(command -> {
+                    router.tell(command);
+                    return Behaviors.same();
+                })
+                .build(), serviceKey.id() + "s");
+    }
+
+    /**
+     * The documents of a batch are owned by different indexers, every one goes to its own so it is not reordered with
+     * the other index and delete requests of the document. The batch is acknowledged once all of them are
+     */
+    private void split(ActorContext<DocumentIndexer.Command> ctx, DocumentIndexer.IndexDocuments batch, ActorRef<DocumentIndexer.Command> router) {
+        var ackTo = batch.ackTo.map(ref -> ctx.spawnAnonymous(acknowledgeAll(batch.ids.size(), ref, batchAckTimeout)).<Done>narrow());
+
+        for (String id : batch.ids) {
+            router.tell(ackTo
+                    .map(ref -> new DocumentIndexer.IndexDocuments(List.of(id), batch.dataSource, batch.version, batch.respondTo).withAckTo(ref))
+                    .orElseGet(() -> new DocumentIndexer.IndexDocuments(List.of(id), batch.dataSource, batch.version, batch.respondTo)));
+        }
+    }
+
+    private enum AckTimeout { INSTANCE }
+
+    /**
+     * Tells ackTo once every part is acknowledged, the batch not acknowledged in time is left to the sender to retry
+     */
+    static Behavior<Object> acknowledgeAll(int parts, ActorRef<Done> ackTo, Duration timeout) {
+        return Behaviors.setup(ctx -> {
+            ctx.setReceiveTimeout(timeout, AckTimeout.INSTANCE);
+            return awaiting(parts, ackTo);
+        });
+    }
+
+    private static Behavior<Object> awaiting(int parts, ActorRef<Done> ackTo) {
+        return Behaviors.receive(Object.class)
+                .onMessage(Done.class, done -> {
+                    if (parts > 1) return awaiting(parts - 1, ackTo);
+
+                    ackTo.tell(done);
+                    return Behaviors.stopped();
+                })
+                .onMessage(AckTimeout.class, timeout -> Behaviors.stopped())
+                .build();
+    }
+
+    @Override
+    public <T> ActorRef<T> singleton(Behavior<T> behavior, String name) {
+        return ClusterSingleton.get(context.getSystem()).init(SingletonActor.of(behavior, name));
+    }
+
+    @Override
+    public boolean isClustered() {
+        return true;
+    }
+
+    private static String documentId(DocumentIndexer.Command command) {
+        if (command instanceof DocumentIndexer.IndexDocument) {
+            return ((DocumentIndexer.IndexDocument) command).id;
+        } else if (command instanceof DocumentIndexer.IndexDocuments) {
+            // The batches are split before, one document each
+            return ((DocumentIndexer.IndexDocuments) command).ids.get(0);
+        } else if (command instanceof DocumentIndexer.DeleteDocument) {
+            return ((DocumentIndexer.DeleteDocument) command).id;
+        }
+
+        return "";
+    }
+}
@@ -0,0 +1,48 @@
+package com.search.engine.cluster;
+
+import akka.actor.typed.ActorRef;
+import akka.actor.typed.Behavior;
+import akka.actor.typed.javadsl.ActorContext;
+import akka.actor.typed.receptionist.ServiceKey;
+import akka.persistence.typed.PersistenceId;
+import com.search.engine.DocumentIndexer;
+import com.search.engine.DocumentRegistry;
+
+/**
+ * Where the actors of the application run: all of them in this node, or the registry once in a cluster and the
+ * indexers in every node of it
+ */
+public interface Deployment {
+
+    static Deployment local(ActorContext<?> context) {
+        return new LocalDeployment(context);
+    }
+
+    static Deployment cluster(ActorContext<?> context) {
+        return new ClusterDeployment(context);
+    }
+
+    /**
+     * The registry with the given persistence id, spawned with the given behavior where it runs
+     */
+    ActorRef<DocumentRegistry.Command> registry(PersistenceId persistenceId, Behavior<DocumentRegistry.Command> behavior);
+
+    /**
+     * The indexers the registry sends the index work to, given the one of this node
+     */
+    default ActorRef<DocumentIndexer.Command> indexers(ActorRef<DocumentIndexer.Command> localIndexer) {
+        return indexers(DocumentIndexer.SERVICE_KEY, localIndexer);
+    }
+
+    /**
+     * The indexers registered with the key, e.g. the ones of a tenant, given the one of this node
+     */
+    ActorRef<DocumentIndexer.Command> indexers(ServiceKey<DocumentIndexer.Command> serviceKey, ActorRef<DocumentIndexer.Command> localIndexer);
+
+    /**
+     * Actors that run once, e.g. the ones following the journal of the registry or running jobs
+     */
+    <T> ActorRef<T> singleton(Behavior<T> behavior, String name);
+
+    boolean isClustered();
+}
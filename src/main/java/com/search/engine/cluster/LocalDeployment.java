@@ -0,0 +1,40 @@
+package com.search.engine.cluster;
+
+import akka.actor.typed.ActorRef;
+import akka.actor.typed.Behavior;
+import akka.actor.typed.javadsl.ActorContext;
+import akka.actor.typed.receptionist.ServiceKey;
+import akka.persistence.typed.PersistenceId;
+import com.search.engine.DocumentIndexer;
+import com.search.engine.DocumentRegistry;
+
+/**
+ * Every actor is a child of the root actor of this node
+ */
+final class LocalDeployment implements Deployment {
+    private final ActorContext<?> context;
+
+    LocalDeployment(ActorContext<?> context) {
+        this.context = context;
+    }
+
+    @Override
+    public ActorRef<DocumentRegistry.Command> registry(PersistenceId persistenceId, Behavior<DocumentRegistry.Command> behavior) {
+        return context.spawn(behavior, persistenceId.id());
+    }
+
+    @Override
+    public ActorRef<DocumentIndexer.Command> indexers(ServiceKey<DocumentIndexer.Command> serviceKey, ActorRef<DocumentIndexer.Command> localIndexer) {
+        return localIndexer;
+    }
+
+    @Override
+    public <T> ActorRef<T> singleton(Behavior<T> behavior, String name) {
+        return context.spawn(behavior, name);
+    }
+
+    @Override
+    public boolean isClustered() {
+        return false;
+    }
+}
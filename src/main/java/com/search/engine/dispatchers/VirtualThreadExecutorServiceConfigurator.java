@@ -0,0 +1,36 @@
+package com.search.engine.dispatchers;
+
+import akka.dispatch.DispatcherPrerequisites;
+import akka.dispatch.ExecutorServiceConfigurator;
+import akka.dispatch.ExecutorServiceFactory;
+import com.typesafe.config.Config;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * Executor of a dispatcher running every task on a new virtual thread. Meant for the actors calling blocking
+ * {@link com.search.engine.solr.SolrIndexer} implementations, a blocked virtual thread does not hold a platform thread.
+ * <p>
+ * Set it as the executor of a dispatcher:
+ * <pre>
+ * executor = "com.search.engine.dispatchers.VirtualThreadExecutorServiceConfigurator"
+ * </pre>
+ */
+public class VirtualThreadExecutorServiceConfigurator extends ExecutorServiceConfigurator {
+    private final static Logger log = LoggerFactory.getLogger(VirtualThreadExecutorServiceConfigurator.class);
+
+    public VirtualThreadExecutorServiceConfigurator(Config config, DispatcherPrerequisites prerequisites) {
+        super(config, prerequisites);
+    }
+
+    @Override
+    public ExecutorServiceFactory createExecutorServiceFactory(String id, ThreadFactory threadFactory) {
+        return () -> VirtualThreads.newVirtualThreadPerTaskExecutor().orElseGet(() -> {
+            log.warn("Virtual threads are not available in this JVM, the dispatcher {} runs a platform thread per task", id);
+            return Executors.newCachedThreadPool(threadFactory);
+        });
+    }
+}
@@ -4,4 +4,8 @@ public class CaseSearchEngineException extends RuntimeException {
     public CaseSearchEngineException(String message) {
         super(message);
     }
+
+    protected CaseSearchEngineException(String message, boolean writableStackTrace) {
+        super(message, null, false, writableStackTrace);
+    }
 }
@@ -0,0 +1,11 @@
+package com.search.engine.exceptions;
+
+/**
+ * Thrown when a conditional write expects a version of the document other than the current one, or the document
+ * does not exist
+ */
+public class PreconditionFailedException extends RuntimeException {
+    public PreconditionFailedException(String message) {
+        super(message);
+    }
+}
@@ -0,0 +1,19 @@
+package com.search.engine.exceptions;
+
+import java.time.Duration;
+
+/**
+ * Thrown when the system is saturated and the request is rejected. The client can retry after the given time
+ */
+public class ServiceUnavailableException extends RuntimeException {
+    private final Duration retryAfter;
+
+    public ServiceUnavailableException(String message, Duration retryAfter) {
+        super(message);
+        this.retryAfter = retryAfter;
+    }
+
+    public Duration getRetryAfter() {
+        return retryAfter;
+    }
+}
@@ -0,0 +1,19 @@
+package com.search.engine.exceptions;
+
+import java.time.Duration;
+
+/**
+ * Thrown when a client goes over its rate limit. The client can retry after the given time
+ */
+public class TooManyRequestsException extends RuntimeException {
+    private final Duration retryAfter;
+
+    public TooManyRequestsException(String message, Duration retryAfter) {
+        super(message);
+        this.retryAfter = retryAfter;
+    }
+
+    public Duration getRetryAfter() {
+        return retryAfter;
+    }
+}
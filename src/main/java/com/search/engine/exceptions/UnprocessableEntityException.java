@@ -0,0 +1,10 @@
+package com.search.engine.exceptions;
+
+/**
+ * Thrown when an idempotency key is reused with a request other than the one it was first sent with
+ */
+public class UnprocessableEntityException extends RuntimeException {
+    public UnprocessableEntityException(String message) {
+        super(message);
+    }
+}
@@ -0,0 +1,28 @@
+package com.search.engine.exceptions;
+
+import com.search.engine.models.Violation;
+
+import java.util.List;
+import java.util.stream.Collectors;
+
+/**
+ * Thrown when the request does not meet the rules. It carries all the violations found.
+ * <p>
+ * It is an expected outcome of the validation, so no stack trace is filled in.
+ */
+public class ValidationException extends CaseSearchEngineException {
+    private final List<Violation> violations;
+
+    public ValidationException(List<Violation> violations) {
+        super(violations.stream().map(violation -> violation.message).collect(Collectors.joining("; ")), false);
+        this.violations = violations;
+    }
+
+    public List<Violation> getViolations() {
+        return violations;
+    }
+
+    public static void throwIfAny(List<Violation> violations) {
+        if (!violations.isEmpty()) throw new ValidationException(violations);
+    }
+}
@@ -0,0 +1,84 @@
+package com.search.engine.journal;
+
+import akka.actor.typed.javadsl.Adapter;
+import akka.dispatch.Futures;
+import akka.persistence.AtomicWrite;
+import akka.persistence.PersistentRepr;
+import akka.persistence.journal.japi.AsyncWriteJournal;
+import com.typesafe.config.Config;
+import scala.concurrent.Future;
+import scala.jdk.javaapi.CollectionConverters;
+import scala.jdk.javaapi.FutureConverters;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
+
+/**
+ * Akka persistence journal in local append-only files, see {@link FileJournalStorage} and file-journal in
+ * persistence.conf. For single-node deployments, only one actor system can use the files of a directory.
+ * <p>
+ * The events are serialized by the journal actor, a write that cannot be serialized is rejected alone. The
+ * events are replayed on the plugin dispatcher, a batch at a time.
+ */
+public class FileJournal extends AsyncWriteJournal {
+    // Events read from the segments at once while replaying
+    private static final int REPLAY_BATCH = 1000;
+
+    private final FileJournals journals;
+    private final FileJournalStorage storage;
+
+    public FileJournal(Config config) {
+        this.journals = FileJournals.get(Adapter.toTyped(context().system()));
+        this.storage = journals.storage(config);
+    }
+
+    @Override
+    public Future<Iterable<Optional<Exception>>> doAsyncWriteMessages(Iterable<AtomicWrite> messages) {
+        var results = new ArrayList<Optional<Exception>>();
+        var frames = new ArrayList<FileJournalStorage.Frame>();
+        for (AtomicWrite write : messages) {
+            try {
+                List<FileJournalStorage.StoredEvent> events = CollectionConverters.asJava(write.payload()).stream()
+                        .map(journals::serialize)
+                        .collect(Collectors.toList());
+                frames.add(FileJournalStorage.Frame.events(write.persistenceId(), events));
+                results.add(Optional.empty());
+            } catch (Exception ex) {
+                results.add(Optional.of(ex));
+            }
+        }
+
+        return FutureConverters.asScala(storage.write(frames).<Iterable<Optional<Exception>>>thenApply(done -> results));
+    }
+
+    @Override
+    public Future<Void> doAsyncDeleteMessagesTo(String persistenceId, long toSequenceNr) {
+        return FutureConverters.asScala(storage.deleteTo(persistenceId, toSequenceNr));
+    }
+
+    @Override
+    public Future<Void> doAsyncReplayMessages(String persistenceId, long fromSequenceNr, long toSequenceNr, long max,
+                                              Consumer<PersistentRepr> replayCallback) {
+        return FutureConverters.asScala(CompletableFuture.runAsync(() -> {
+            var next = fromSequenceNr;
+            var remaining = max;
+            while (remaining > 0) {
+                var batch = Math.min(remaining, REPLAY_BATCH);
+                var events = storage.read(persistenceId, next, toSequenceNr, batch);
+                events.forEach(event -> replayCallback.accept(journals.deserialize(event)));
+                if (events.size() < batch) break;
+                remaining -= events.size();
+                next = events.get(events.size() - 1).sequenceNr + 1;
+            }
+        }, context().dispatcher()));
+    }
+
+    @Override
+    public Future<Long> doAsyncReadHighestSequenceNr(String persistenceId, long fromSequenceNr) {
+        return Futures.successful(storage.highestSequenceNr(persistenceId));
+    }
+}
@@ -0,0 +1,461 @@
+package com.search.engine.journal;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.CRC32C;
+
+/**
+ * Events of the persistence ids in local append-only files, the storage of the {@link FileJournal}.
+ * <p>
+ * The files are segments named after the position of their first byte in the whole journal, a new one is started
+ * when the current one reaches the segment size. Every write is a frame: its length, the CRC32C of its content, and
+ * the events of an atomic write, or the sequence number up to which the events of a persistence id are deleted.
+ * <p>
+ * A single thread appends the frames. The writes that arrive while it syncs the previous ones to disk are appended
+ * together and synced once, and they are only completed, and visible to the readers, once synced. On start, the
+ * segments are read to rebuild the index of the events by persistence id. A frame cut short or with a wrong CRC at
+ * the end of the last segment, from a crash while writing, is truncated; anywhere else the journal is corrupted and
+ * does not start. The events are read from the segments mapped in memory.
+ */
+final class FileJournalStorage implements AutoCloseable {
+    private final static Logger log = LoggerFactory.getLogger(FileJournalStorage.class);
+
+    static final long MAX_SEGMENT_SIZE = 1L << 30;
+    private static final int HEADER_SIZE = 8;
+    private static final byte EVENTS = 0;
+    private static final byte DELETE = 1;
+    private static final Write CLOSE = new Write(List.of());
+
+    private final Path directory;
+    private final long segmentSize;
+    private final int maxBatch;
+    private final boolean fsync;
+    private final ConcurrentSkipListMap<Long, Segment> segments = new ConcurrentSkipListMap<>();
+    private final Map<String, Index> indexes = new ConcurrentHashMap<>();
+    private final BlockingQueue<Write> queue = new LinkedBlockingQueue<>();
+    private final Thread writer;
+    private final AtomicLong writes = new AtomicLong();
+    private final AtomicLong syncs = new AtomicLong();
+    // Only used by the writer
+    private Segment active;
+    private FileChannel channel;
+    private volatile IOException failure;
+
+    /**
+     * An event as stored, its payload is the persistent representation serialized
+     */
+    static final class StoredEvent {
+        final String persistenceId;
+        final long sequenceNr;
+        final long timestamp;
+        final byte[] payload;
+
+        StoredEvent(String persistenceId, long sequenceNr, long timestamp, byte[] payload) {
+            this.persistenceId = persistenceId;
+            this.sequenceNr = sequenceNr;
+            this.timestamp = timestamp;
+            this.payload = payload;
+        }
+    }
+
+    /**
+     * A frame ready to append, with what it changes in the index once synced
+     */
+    static final class Frame {
+        private final ByteBuffer bytes;
+        private final String persistenceId;
+        private final byte type;
+        // The first sequence number of the events, or the one up to which they are deleted
+        private final long sequenceNr;
+        private final int events;
+        private long position;
+
+        private Frame(ByteBuffer bytes, String persistenceId, byte type, long sequenceNr, int events) {
+            this.bytes = bytes;
+            this.persistenceId = persistenceId;
+            this.type = type;
+            this.sequenceNr = sequenceNr;
+            this.events = events;
+        }
+
+        /**
+         * The events of an atomic write, with consecutive sequence numbers
+         */
+        static Frame events(String persistenceId, List<StoredEvent> events) {
+            var id = persistenceId.getBytes(StandardCharsets.UTF_8);
+            var size = 1 + 4 + id.length + 8 + 4 + events.stream().mapToInt(event -> 8 + 4 + event.payload.length).sum();
+            var body = ByteBuffer.allocate(size).put(EVENTS).putInt(id.length).put(id)
+                    .putLong(events.get(0).sequenceNr).putInt(events.size());
+            for (StoredEvent event : events) {
+                body.putLong(event.timestamp).putInt(event.payload.length).put(event.payload);
+            }
+            return new Frame(seal(body), persistenceId, EVENTS, events.get(0).sequenceNr, events.size());
+        }
+
+        static Frame delete(String persistenceId, long toSequenceNr) {
+            var id = persistenceId.getBytes(StandardCharsets.UTF_8);
+            var body = ByteBuffer.allocate(1 + 4 + id.length + 8).put(DELETE).putInt(id.length).put(id).putLong(toSequenceNr);
+            return new Frame(seal(body), persistenceId, DELETE, toSequenceNr, 0);
+        }
+
+        private static ByteBuffer seal(ByteBuffer body) {
+            body.flip();
+            var crc = new CRC32C();
+            crc.update(body.duplicate());
+            return ByteBuffer.allocate(HEADER_SIZE + body.remaining())
+                    .putInt(body.remaining()).putInt((int) crc.getValue()).put(body).flip();
+        }
+
+        int size() {
+            return bytes.limit();
+        }
+    }
+
+    private static final class Write {
+        final List<Frame> frames;
+        final CompletableFuture<Void> done = new CompletableFuture<>();
+
+        Write(List<Frame> frames) {
+            this.frames = frames;
+        }
+    }
+
+    /**
+     * A segment file, mapped again when the events to read are past the part mapped
+     */
+    private static final class Segment {
+        final long base;
+        final Path path;
+        volatile long length;
+        private MappedByteBuffer mapped;
+
+        Segment(long base, Path path, long length) {
+            this.base = base;
+            this.path = path;
+            this.length = length;
+        }
+
+        synchronized ByteBuffer map(long end) throws IOException {
+            if (mapped == null || mapped.capacity() < end) {
+                try (var channel = FileChannel.open(path, StandardOpenOption.READ)) {
+                    mapped = channel.map(FileChannel.MapMode.READ_ONLY, 0, length);
+                }
+            }
+            return mapped.duplicate();
+        }
+    }
+
+    /**
+     * Positions of the events of a persistence id, by sequence number. The deleted ones are dropped, the highest
+     * sequence number is kept
+     */
+    private static final class Index {
+        private long[] sequenceNrs = new long[8];
+        private long[] positions = new long[8];
+        private int start;
+        private int end;
+        private long highest;
+        private long deletedTo;
+
+        synchronized void add(long sequenceNr, long position) {
+            if (end == sequenceNrs.length) {
+                // Drops the deleted ones at the start before growing
+                var live = end - start;
+                var capacity = live * 2 > sequenceNrs.length ? sequenceNrs.length * 2 : sequenceNrs.length;
+                sequenceNrs = Arrays.copyOfRange(sequenceNrs, start, start + capacity);
+                positions = Arrays.copyOfRange(positions, start, start + capacity);
+                start = 0;
+                end = live;
+            }
+            sequenceNrs[end] = sequenceNr;
+            positions[end++] = position;
+            highest = Math.max(highest, sequenceNr);
+        }
+
+        synchronized void deleteTo(long toSequenceNr) {
+            deletedTo = Math.max(deletedTo, Math.min(toSequenceNr, highest));
+            while (start < end && sequenceNrs[start] <= deletedTo) start++;
+        }
+
+        synchronized long highest() {
+            return highest;
+        }
+
+        /**
+         * @return the sequence numbers and positions of the events in the range, at most max
+         */
+        synchronized long[][] find(long fromSequenceNr, long toSequenceNr, long max) {
+            var from = Arrays.binarySearch(sequenceNrs, start, end, Math.max(fromSequenceNr, deletedTo + 1));
+            if (from < 0) from = -from - 1;
+            var to = from;
+            while (to < end && sequenceNrs[to] <= toSequenceNr && to - from < max) to++;
+            return new long[][]{Arrays.copyOfRange(sequenceNrs, from, to), Arrays.copyOfRange(positions, from, to)};
+        }
+    }
+
+    static FileJournalStorage open(Path directory, long segmentSize, int maxBatch, boolean fsync) throws IOException {
+        if (segmentSize > MAX_SEGMENT_SIZE) {
+            throw new IllegalArgumentException("The segments are mapped whole, they cannot be larger than " + MAX_SEGMENT_SIZE + " bytes");
+        }
+        return new FileJournalStorage(directory, segmentSize, maxBatch, fsync);
+    }
+
+    private FileJournalStorage(Path directory, long segmentSize, int maxBatch, boolean fsync) throws IOException {
+        this.directory = directory;
+        this.segmentSize = segmentSize;
+        this.maxBatch = maxBatch;
+        this.fsync = fsync;
+
+        Files.createDirectories(directory);
+        try (var files = Files.list(directory)) {
+            files.map(path -> path.getFileName().toString())
+                    .filter(name -> name.startsWith("segment-") && name.endsWith(".log"))
+                    .forEach(name -> {
+                        var base = Long.parseLong(name.substring("segment-".length(), name.length() - ".log".length()));
+                        segments.put(base, new Segment(base, directory.resolve(name), 0));
+                    });
+        }
+        for (Segment segment : segments.values()) {
+            recover(segment, segment == segments.lastEntry().getValue());
+        }
+
+        if (segments.isEmpty()) {
+            active = create(0);
+        } else {
+            active = segments.lastEntry().getValue();
+            channel = FileChannel.open(active.path, StandardOpenOption.WRITE);
+            channel.position(active.length);
+        }
+
+        writer = new Thread(this::runWriter, "file-journal-writer");
+        writer.setDaemon(true);
+        writer.start();
+    }
+
+    /**
+     * Appends the frames, the future completes once they are synced to disk
+     */
+    CompletableFuture<Void> write(List<Frame> frames) {
+        var write = new Write(frames);
+        if (failure != null) {
+            write.done.completeExceptionally(failure);
+        } else {
+            queue.add(write);
+        }
+        return write.done;
+    }
+
+    CompletableFuture<Void> deleteTo(String persistenceId, long toSequenceNr) {
+        return write(List.of(Frame.delete(persistenceId, toSequenceNr)));
+    }
+
+    long highestSequenceNr(String persistenceId) {
+        var index = indexes.get(persistenceId);
+        return index == null ? 0 : index.highest();
+    }
+
+    /**
+     * @return the events not deleted in the range, in order, at most max
+     */
+    List<StoredEvent> read(String persistenceId, long fromSequenceNr, long toSequenceNr, long max) {
+        var index = indexes.get(persistenceId);
+        if (index == null || max <= 0) return List.of();
+
+        var found = index.find(fromSequenceNr, toSequenceNr, max);
+        var events = new ArrayList<StoredEvent>(found[0].length);
+        try {
+            for (int i = 0; i < found[0].length; i++) {
+                events.add(readEvent(persistenceId, found[0][i], found[1][i]));
+            }
+        } catch (IOException ex) {
+            throw new UncheckedIOException(ex);
+        }
+        return events;
+    }
+
+    long writes() {
+        return writes.get();
+    }
+
+    long syncs() {
+        return syncs.get();
+    }
+
+    @Override
+    public void close() throws IOException {
+        queue.add(CLOSE);
+        try {
+            writer.join();
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        }
+        channel.close();
+    }
+
+    private StoredEvent readEvent(String persistenceId, long sequenceNr, long position) throws IOException {
+        var segment = segments.floorEntry(position).getValue();
+        var offset = (int) (position - segment.base);
+        var buffer = segment.map(offset + HEADER_SIZE);
+        var length = buffer.getInt(offset);
+        var body = segment.map(offset + HEADER_SIZE + length).position(offset + HEADER_SIZE).slice().limit(length);
+
+        body.position(1 + 4 + body.getInt(1));
+        var first = body.getLong();
+        body.getInt();
+        for (long current = first; ; current++) {
+            var timestamp = body.getLong();
+            var size = body.getInt();
+            if (current == sequenceNr) {
+                var payload = new byte[size];
+                body.get(payload);
+                return new StoredEvent(persistenceId, sequenceNr, timestamp, payload);
+            }
+            body.position(body.position() + size);
+        }
+    }
+
+    /**
+     * Reads the frames of the segment into the index. Stops at the first frame cut short or with a wrong CRC
+     */
+    private void recover(Segment segment, boolean last) throws IOException {
+        long valid = 0;
+        try (var channel = FileChannel.open(segment.path, StandardOpenOption.READ)) {
+            var size = channel.size();
+            var buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+            while (valid + HEADER_SIZE <= size) {
+                var length = buffer.getInt((int) valid);
+                if (length <= 0 || valid + HEADER_SIZE + length > size) break;
+                var body = buffer.duplicate().position((int) valid + HEADER_SIZE).slice().limit(length);
+                var crc = new CRC32C();
+                crc.update(body.duplicate());
+                if ((int) crc.getValue() != buffer.getInt((int) valid + 4)) break;
+
+                apply(body, segment.base + valid);
+                valid += HEADER_SIZE + length;
+            }
+
+            if (valid < size) {
+                if (!last) {
+                    throw new IllegalStateException("The journal is corrupted, " + segment.path + " has an invalid frame at " + valid);
+                }
+                log.warn("Truncating {} from {} to {} bytes, the last write was not complete", segment.path, size, valid);
+            }
+        }
+        if (last && valid < Files.size(segment.path)) {
+            try (var channel = FileChannel.open(segment.path, StandardOpenOption.WRITE)) {
+                channel.truncate(valid);
+                channel.force(true);
+            }
+        }
+        segment.length = valid;
+    }
+
+    private void apply(ByteBuffer body, long position) {
+        var type = body.get();
+        var id = new byte[body.getInt()];
+        body.get(id);
+        var index = indexes.computeIfAbsent(new String(id, StandardCharsets.UTF_8), persistenceId -> new Index());
+        if (type == EVENTS) {
+            var first = body.getLong();
+            var count = body.getInt();
+            for (int i = 0; i < count; i++) index.add(first + i, position);
+        } else {
+            index.deleteTo(body.getLong());
+        }
+    }
+
+    private void apply(Frame frame) {
+        var index = indexes.computeIfAbsent(frame.persistenceId, persistenceId -> new Index());
+        if (frame.type == EVENTS) {
+            for (int i = 0; i < frame.events; i++) index.add(frame.sequenceNr + i, frame.position);
+        } else {
+            index.deleteTo(frame.sequenceNr);
+        }
+    }
+
+    private void runWriter() {
+        var batch = new ArrayList<Write>();
+        var closing = false;
+        while (!closing) {
+            try {
+                batch.add(queue.take());
+            } catch (InterruptedException ex) {
+                return;
+            }
+            queue.drainTo(batch, maxBatch - 1);
+            closing = batch.remove(CLOSE);
+
+            try {
+                if (failure != null) throw failure;
+                for (Write write : batch) {
+                    for (Frame frame : write.frames) append(frame);
+                }
+                if (fsync) channel.force(false);
+                syncs.incrementAndGet();
+                writes.addAndGet(batch.size());
+
+                batch.forEach(write -> write.frames.forEach(this::apply));
+                batch.forEach(write -> write.done.complete(null));
+            } catch (IOException ex) {
+                // The frames may be partly written, the next start truncates them. Until then, nothing else is written
+                log.error("Failed to write to the journal in {}", directory, ex);
+                failure = ex;
+                batch.forEach(write -> write.done.completeExceptionally(ex));
+            }
+            batch.clear();
+        }
+        queue.forEach(write -> write.done.completeExceptionally(new IllegalStateException("The journal is closed")));
+    }
+
+    private void append(Frame frame) throws IOException {
+        if (active.length > 0 && active.length + frame.size() > segmentSize) {
+            if (fsync) channel.force(false);
+            channel.close();
+            active = create(active.base + active.length);
+        }
+
+        frame.position = active.base + active.length;
+        var bytes = frame.bytes.duplicate();
+        while (bytes.hasRemaining()) channel.write(bytes);
+        active.length += frame.size();
+    }
+
+    private Segment create(long base) throws IOException {
+        var segment = new Segment(base, directory.resolve(String.format("segment-%020d.log", base)), 0);
+        channel = FileChannel.open(segment.path, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE);
+        if (fsync) forceDirectory(directory);
+        segments.put(base, segment);
+        return segment;
+    }
+
+    /**
+     * Syncs the entries of the directory, so a file created survives a crash. Not supported on every platform
+     */
+    static void forceDirectory(Path directory) {
+        try (var channel = FileChannel.open(directory, StandardOpenOption.READ)) {
+            channel.force(true);
+        } catch (IOException ex) {
+            log.debug("Cannot sync the directory {}", directory, ex);
+        }
+    }
+}
@@ -0,0 +1,81 @@
+package com.search.engine.journal;
+
+import akka.actor.typed.ActorSystem;
+import akka.actor.typed.Extension;
+import akka.actor.typed.ExtensionId;
+import akka.persistence.PersistentRepr;
+import akka.persistence.journal.Tagged;
+import akka.serialization.Serialization;
+import akka.serialization.SerializationExtension;
+import com.typesafe.config.Config;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Path;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * The storages of the file journals of the actor system, by directory. The journal and the read journal share the
+ * same one, they are closed when the actor system terminates
+ */
+public final class FileJournals implements Extension {
+    private static final Id ID = new Id();
+
+    private final Serialization serialization;
+    private final Map<Path, FileJournalStorage> storages = new ConcurrentHashMap<>();
+
+    public static FileJournals get(ActorSystem<?> system) {
+        return ID.apply(system);
+    }
+
+    private static final class Id extends ExtensionId<FileJournals> {
+        @Override
+        public FileJournals createExtension(ActorSystem<?> system) {
+            var journals = new FileJournals(SerializationExtension.get(system));
+            system.getWhenTerminated().thenRun(journals::close);
+            return journals;
+        }
+    }
+
+    private FileJournals(Serialization serialization) {
+        this.serialization = serialization;
+    }
+
+    /**
+     * @param config the settings of the file journal plugin
+     */
+    FileJournalStorage storage(Config config) {
+        var directory = Path.of(config.getString("directory")).toAbsolutePath().normalize();
+        return storages.computeIfAbsent(directory, path -> {
+            try {
+                return FileJournalStorage.open(path, config.getBytes("segment-size"), config.getInt("max-batch"), config.getBoolean("fsync"));
+            } catch (IOException ex) {
+                throw new UncheckedIOException(ex);
+            }
+        });
+    }
+
+    /**
+     * The tags are dropped, the file journal has no queries by tag
+     */
+    FileJournalStorage.StoredEvent serialize(PersistentRepr repr) {
+        var untagged = repr.payload() instanceof Tagged ? repr.withPayload(((Tagged) repr.payload()).payload()) : repr;
+        return new FileJournalStorage.StoredEvent(repr.persistenceId(), repr.sequenceNr(), repr.timestamp(),
+                serialization.serialize(untagged).get());
+    }
+
+    PersistentRepr deserialize(FileJournalStorage.StoredEvent event) {
+        return serialization.deserialize(event.payload, PersistentRepr.class).get().withTimestamp(event.timestamp);
+    }
+
+    private void close() {
+        storages.values().forEach(storage -> {
+            try {
+                storage.close();
+            } catch (IOException ex) {
+                throw new UncheckedIOException(ex);
+            }
+        });
+    }
+}
@@ -0,0 +1,73 @@
+package com.search.engine.journal;
+
+import akka.NotUsed;
+import akka.actor.typed.ActorSystem;
+import akka.japi.Pair;
+import akka.pattern.Patterns;
+import akka.persistence.query.EventEnvelope;
+import akka.persistence.query.Offset;
+import akka.persistence.query.javadsl.CurrentEventsByPersistenceIdQuery;
+import akka.persistence.query.javadsl.EventsByPersistenceIdQuery;
+import akka.persistence.query.javadsl.ReadJournal;
+import akka.stream.javadsl.Source;
+import com.typesafe.config.Config;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.stream.Collectors;
+
+/**
+ * Queries of the events of a persistence id in the {@link FileJournal} of the same actor system, see
+ * file-read-journal in persistence.conf. The live queries look for new events every refresh interval
+ */
+public class FileReadJournal implements ReadJournal, EventsByPersistenceIdQuery, CurrentEventsByPersistenceIdQuery {
+    public static final String IDENTIFIER = "file-read-journal";
+
+    private final ActorSystem<?> system;
+    private final FileJournals journals;
+    private final FileJournalStorage storage;
+    private final Duration refreshInterval;
+    private final int maxBufferSize;
+
+    FileReadJournal(ActorSystem<?> system, Config config) {
+        this.system = system;
+        this.journals = FileJournals.get(system);
+        this.storage = journals.storage(system.settings().config().getConfig(config.getString("journal")));
+        this.refreshInterval = config.getDuration("refresh-interval");
+        this.maxBufferSize = config.getInt("max-buffer-size");
+    }
+
+    @Override
+    public Source<EventEnvelope, NotUsed> eventsByPersistenceId(String persistenceId, long fromSequenceNr, long toSequenceNr) {
+        return events(persistenceId, fromSequenceNr, toSequenceNr, true);
+    }
+
+    /**
+     * Up to the highest sequence number when the source is materialized
+     */
+    @Override
+    public Source<EventEnvelope, NotUsed> currentEventsByPersistenceId(String persistenceId, long fromSequenceNr, long toSequenceNr) {
+        return Source.lazySource(() -> events(persistenceId, fromSequenceNr, Math.min(toSequenceNr, storage.highestSequenceNr(persistenceId)), false))
+                .mapMaterializedValue(ignored -> NotUsed.getInstance());
+    }
+
+    private Source<EventEnvelope, NotUsed> events(String persistenceId, long fromSequenceNr, long toSequenceNr, boolean live) {
+        return Source.<Long, List<EventEnvelope>>unfoldAsync(fromSequenceNr, next -> {
+            if (next > toSequenceNr) return CompletableFuture.completedFuture(Optional.empty());
+
+            var events = storage.read(persistenceId, next, toSequenceNr, maxBufferSize).stream()
+                    .map(event -> new EventEnvelope(Offset.sequence(event.sequenceNr), persistenceId, event.sequenceNr,
+                            journals.deserialize(event).payload(), event.timestamp))
+                    .collect(Collectors.toList());
+            if (!events.isEmpty()) {
+                return CompletableFuture.completedFuture(Optional.of(Pair.create(events.get(events.size() - 1).sequenceNr() + 1, events)));
+            }
+            if (!live) return CompletableFuture.completedFuture(Optional.empty());
+
+            return Patterns.after(refreshInterval, system.classicSystem().scheduler(), system.executionContext(),
+                    () -> CompletableFuture.completedFuture(Optional.of(Pair.create(next, List.<EventEnvelope>of()))));
+        }).mapConcat(events -> events);
+    }
+}
@@ -0,0 +1,27 @@
+package com.search.engine.journal;
+
+import akka.actor.ExtendedActorSystem;
+import akka.actor.typed.javadsl.Adapter;
+import akka.persistence.query.ReadJournalProvider;
+import com.typesafe.config.Config;
+
+/**
+ * Provider of the {@link FileReadJournal}, only with the Java API
+ */
+public class FileReadJournalProvider implements ReadJournalProvider {
+    private final FileReadJournal readJournal;
+
+    public FileReadJournalProvider(ExtendedActorSystem system, Config config) {
+        this.readJournal = new FileReadJournal(Adapter.toTyped(system), config);
+    }
+
+    @Override
+    public FileReadJournal javadslReadJournal() {
+        return readJournal;
+    }
+
+    @Override
+    public akka.persistence.query.scaladsl.ReadJournal scaladslReadJournal() {
+        return new akka.persistence.query.scaladsl.ReadJournal() {};
+    }
+}
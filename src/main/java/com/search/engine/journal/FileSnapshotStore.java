@@ -0,0 +1,178 @@
+package com.search.engine.journal;
+
+import akka.persistence.SelectedSnapshot;
+import akka.persistence.SnapshotMetadata;
+import akka.persistence.SnapshotSelectionCriteria;
+import akka.persistence.serialization.Snapshot;
+import akka.persistence.snapshot.japi.SnapshotStore;
+import akka.serialization.Serialization;
+import akka.serialization.SerializationExtension;
+import com.typesafe.config.Config;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import scala.concurrent.Future;
+import scala.jdk.javaapi.FutureConverters;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.URLEncoder;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.function.Predicate;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.zip.CRC32C;
+
+/**
+ * Akka persistence snapshot store in local files, see file-snapshot-store in persistence.conf.
+ * <p>
+ * Every snapshot is a file in the directory of its persistence id, named after its sequence number and timestamp,
+ * with the CRC32C of its content first. It is written to a temporary file, synced and renamed, so a crash never
+ * leaves a snapshot half written. A snapshot with a wrong CRC, or that cannot be deserialized, is skipped and the
+ * previous one is loaded instead.
+ */
+public class FileSnapshotStore extends SnapshotStore {
+    private final static Logger log = LoggerFactory.getLogger(FileSnapshotStore.class);
+    // Snapshots tried when the latest ones cannot be loaded
+    private static final int MAX_LOAD_ATTEMPTS = 3;
+
+    private final Path directory;
+    private final boolean fsync;
+    private final Serialization serialization;
+    private final Executor executor;
+
+    private static final class SnapshotFile {
+        final Path path;
+        final long sequenceNr;
+        final long timestamp;
+
+        SnapshotFile(Path path, long sequenceNr, long timestamp) {
+            this.path = path;
+            this.sequenceNr = sequenceNr;
+            this.timestamp = timestamp;
+        }
+
+        static Optional<SnapshotFile> parse(Path path) {
+            // The temporary files of the snapshots being saved are left out
+            var parts = path.getFileName().toString().split("-");
+            if (parts.length != 3 || !parts[0].equals("snapshot") || parts[2].endsWith(".tmp")) return Optional.empty();
+            return Optional.of(new SnapshotFile(path, Long.parseLong(parts[1]), Long.parseLong(parts[2])));
+        }
+
+        boolean matches(SnapshotSelectionCriteria criteria) {
+            return sequenceNr <= criteria.maxSequenceNr() && timestamp <= criteria.maxTimestamp()
+                    && sequenceNr >= criteria.minSequenceNr() && timestamp >= criteria.minTimestamp();
+        }
+    }
+
+    public FileSnapshotStore(Config config) {
+        this.directory = Path.of(config.getString("directory"));
+        this.fsync = config.getBoolean("fsync");
+        this.serialization = SerializationExtension.get(context().system());
+        this.executor = context().dispatcher();
+    }
+
+    @Override
+    public Future<Optional<SelectedSnapshot>> doLoadAsync(String persistenceId, SnapshotSelectionCriteria criteria) {
+        return FutureConverters.asScala(CompletableFuture.supplyAsync(() -> {
+            var candidates = snapshots(persistenceId, file -> file.matches(criteria)).stream()
+                    .sorted(Comparator.<SnapshotFile>comparingLong(file -> file.sequenceNr).thenComparingLong(file -> file.timestamp).reversed())
+                    .limit(MAX_LOAD_ATTEMPTS)
+                    .collect(Collectors.toList());
+            for (SnapshotFile file : candidates) {
+                try {
+                    return Optional.of(SelectedSnapshot.create(new SnapshotMetadata(persistenceId, file.sequenceNr, file.timestamp), load(file.path)));
+                } catch (Exception ex) {
+                    log.warn("Skipping the snapshot {}, it cannot be loaded", file.path, ex);
+                }
+            }
+            return Optional.<SelectedSnapshot>empty();
+        }, executor));
+    }
+
+    @Override
+    public Future<Void> doSaveAsync(SnapshotMetadata metadata, Object snapshot) {
+        return FutureConverters.asScala(CompletableFuture.runAsync(() -> {
+            var bytes = serialization.serialize(new Snapshot(snapshot)).get();
+            var directory = directory(metadata.persistenceId());
+            var path = directory.resolve("snapshot-" + metadata.sequenceNr() + "-" + metadata.timestamp());
+            var temporary = directory.resolve(path.getFileName() + ".tmp");
+            try {
+                Files.createDirectories(directory);
+                try (var channel = FileChannel.open(temporary, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+                    var crc = new CRC32C();
+                    crc.update(bytes);
+                    var buffer = ByteBuffer.allocate(4 + bytes.length).putInt((int) crc.getValue()).put(bytes).flip();
+                    while (buffer.hasRemaining()) channel.write(buffer);
+                    if (fsync) channel.force(false);
+                }
+                Files.move(temporary, path, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+                if (fsync) FileJournalStorage.forceDirectory(directory);
+            } catch (IOException ex) {
+                throw new UncheckedIOException(ex);
+            }
+        }, executor));
+    }
+
+    @Override
+    public Future<Void> doDeleteAsync(SnapshotMetadata metadata) {
+        // Without a timestamp, every snapshot of the sequence number is deleted
+        return delete(metadata.persistenceId(), file -> file.sequenceNr == metadata.sequenceNr()
+                && (metadata.timestamp() == 0 || file.timestamp == metadata.timestamp()));
+    }
+
+    @Override
+    public Future<Void> doDeleteAsync(String persistenceId, SnapshotSelectionCriteria criteria) {
+        return delete(persistenceId, file -> file.matches(criteria));
+    }
+
+    private Future<Void> delete(String persistenceId, Predicate<SnapshotFile> filter) {
+        return FutureConverters.asScala(CompletableFuture.runAsync(() -> snapshots(persistenceId, filter).forEach(file -> {
+            try {
+                Files.deleteIfExists(file.path);
+            } catch (IOException ex) {
+                throw new UncheckedIOException(ex);
+            }
+        }), executor));
+    }
+
+    private Object load(Path path) throws IOException {
+        var buffer = ByteBuffer.wrap(Files.readAllBytes(path));
+        var expected = buffer.getInt();
+        var crc = new CRC32C();
+        crc.update(buffer.duplicate());
+        if ((int) crc.getValue() != expected) throw new IOException("Wrong CRC");
+
+        var bytes = new byte[buffer.remaining()];
+        buffer.get(bytes);
+        return serialization.deserialize(bytes, Snapshot.class).get().data();
+    }
+
+    private List<SnapshotFile> snapshots(String persistenceId, Predicate<SnapshotFile> filter) {
+        var directory = directory(persistenceId);
+        if (!Files.isDirectory(directory)) return List.of();
+
+        try (Stream<Path> files = Files.list(directory)) {
+            return files.map(SnapshotFile::parse)
+                    .flatMap(Optional::stream)
+                    .filter(filter)
+                    .collect(Collectors.toList());
+        } catch (IOException ex) {
+            throw new UncheckedIOException(ex);
+        }
+    }
+
+    private Path directory(String persistenceId) {
+        return directory.resolve(URLEncoder.encode(persistenceId, StandardCharsets.UTF_8));
+    }
+}
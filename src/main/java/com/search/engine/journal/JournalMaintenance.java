@@ -0,0 +1,187 @@
+package com.search.engine.journal;
+
+import akka.actor.typed.ActorRef;
+import akka.actor.typed.Behavior;
+import akka.actor.typed.DispatcherSelector;
+import akka.actor.typed.javadsl.AbstractBehavior;
+import akka.actor.typed.javadsl.ActorContext;
+import akka.actor.typed.javadsl.AskPattern;
+import akka.actor.typed.javadsl.Behaviors;
+import akka.actor.typed.javadsl.Receive;
+import akka.actor.typed.javadsl.TimerScheduler;
+import com.search.engine.outbox.OutboxOffsetStore;
+import com.typesafe.config.Config;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Path;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.time.Duration;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.Executor;
+
+/**
+ * Represents the actor responsible for the partitions of the journal of a registry, every catalogue has its own.
+ * <p>
+ * Periodically, the partitions after the one of the last event are created, so the inserts always have one. The
+ * table of the partitions of a tenant is created on the first run, with the events written before. When
+ * the archival is enabled, the partitions whose events are all before the latest snapshot of the registry, and
+ * already delivered by the outbox, are moved to compressed files. Neither the recovery nor the outbox read them
+ * again, so the journal keeps only the recent events and their indexes stay small.
+ */
+public class JournalMaintenance extends AbstractBehavior<JournalMaintenance.Command> {
+    private final static Logger log = LoggerFactory.getLogger(JournalMaintenance.class);
+
+    private final TimerScheduler<Command> timers;
+    private final Optional<ActorRef<OutboxOffsetStore.Command>> outboxOffsetStore;
+    private final Executor executor;
+    private final Config db;
+    private final String persistenceId;
+    private final String table;
+    private final long partitionSize;
+    private final int partitionsAhead;
+    private final Duration interval;
+    private final Duration askTimeout;
+    private final boolean archivalEnabled;
+    private final Path archiveDirectory;
+
+    public interface Command {}
+
+    private enum Run implements Command {
+        INSTANCE
+    }
+
+    private static final class RunFinished implements Command {
+        private final Result result;
+        private final Throwable failure;
+
+        private RunFinished(Result result, Throwable failure) {
+            this.result = result;
+            this.failure = failure;
+        }
+    }
+
+    private static final class Result {
+        private boolean tableCreated = false;
+        private int partitionsCreated = 0;
+        private int partitionsArchived = 0;
+        private long eventsArchived = 0;
+    }
+
+    /**
+     * @param persistenceId of the registry
+     * @param table of the partitions of the registry
+     * @param outboxOffsetStore when present, the events after the offset of the outbox are never archived
+     */
+    public static Behavior<Command> create(String persistenceId, String table, Optional<ActorRef<OutboxOffsetStore.Command>> outboxOffsetStore) {
+        return Behaviors.setup(context -> Behaviors.withTimers(timers -> new JournalMaintenance(context, timers, persistenceId, table, outboxOffsetStore)));
+    }
+
+    /**
+     * The table of the partitions of the registry of the tenant, after the one of the registry without tenant
+     */
+    public static String tenantTable(Config config, String tenant) {
+        return config.getString("case-search-engine-index.journal.partitioned-table") + "_tenant_" + tenant.replace('-', '_');
+    }
+
+    private JournalMaintenance(ActorContext<Command> context,
+                               TimerScheduler<Command> timers,
+                               String persistenceId,
+                               String table,
+                               Optional<ActorRef<OutboxOffsetStore.Command>> outboxOffsetStore) {
+        super(context);
+        this.timers = timers;
+        this.persistenceId = persistenceId;
+        this.table = table;
+        this.outboxOffsetStore = outboxOffsetStore;
+
+        var rootConfig = context.getSystem().settings().config();
+        Config config = rootConfig.getConfig("case-search-engine-index.journal");
+        this.executor = context.getSystem().dispatchers().lookup(DispatcherSelector.fromConfig(config.getString("dispatcher")));
+        this.db = rootConfig.getConfig("slick.db");
+        this.partitionSize = config.getLong("partition-size");
+        this.partitionsAhead = config.getInt("partitions-ahead");
+        this.interval = config.getDuration("interval");
+        this.askTimeout = config.getDuration("ask-timeout");
+        this.archiveDirectory = Path.of(config.getString("archival.directory"));
+
+        // The bodies hydrated lazily are read from the events, they cannot be archived
+        var lazyHydration = rootConfig.getBoolean("case-search-engine-index.registry.lazy-hydration.enabled");
+        this.archivalEnabled = config.getBoolean("archival.enabled") && !lazyHydration;
+        if (config.getBoolean("archival.enabled") && lazyHydration) {
+            log.warn("The archival of the journal is disabled, the bodies of the documents are hydrated lazily from it");
+        }
+
+        // The next run is scheduled when the previous one finishes, so runs never overlap
+        timers.startSingleTimer(Run.INSTANCE, config.getDuration("initial-delay"));
+    }
+
+    @Override
+    public Receive<Command> createReceive() {
+        return newReceiveBuilder()
+                .onMessageEquals(Run.INSTANCE, this::onRun)
+                .onMessage(RunFinished.class, this::onRunFinished)
+                .build();
+    }
+
+    private Behavior<Command> onRun() {
+        CompletionStage<Long> deliveredOffset = outboxOffsetStore
+                .map(store -> AskPattern.<OutboxOffsetStore.Command, Long>ask(store, OutboxOffsetStore.GetOffset::new, askTimeout, getContext().getSystem().scheduler()))
+                .orElse(CompletableFuture.completedFuture(Long.MAX_VALUE));
+
+        getContext().pipeToSelf(deliveredOffset.thenApplyAsync(this::maintain, executor), RunFinished::new);
+        return this;
+    }
+
+    private Behavior<Command> onRunFinished(RunFinished runFinished) {
+        if (runFinished.failure != null) {
+            log.error("The maintenance of the journal of {} failed, retrying in {}", persistenceId, interval, runFinished.failure);
+        } else {
+            var result = runFinished.result;
+            if (result.tableCreated) log.info("Table {} of the partitions of the journal of {} created", table, persistenceId);
+            log.info("Maintenance of the journal of {} finished: {} partitions created, {} partitions archived with {} events",
+                    persistenceId, result.partitionsCreated, result.partitionsArchived, result.eventsArchived);
+        }
+
+        timers.startSingleTimer(Run.INSTANCE, interval);
+        return this;
+    }
+
+    /**
+     * Runs on the maintenance dispatcher, JDBC and the archive files are blocking
+     */
+    private Result maintain(long deliveredOffset) {
+        var result = new Result();
+
+        try (var connection = DriverManager.getConnection(db.getString("url"), db.getString("user"), db.getString("password"))) {
+            var journal = new JournalPartitions(connection, table, persistenceId);
+            result.tableCreated = journal.createTable();
+            var partitions = journal.partitions();
+            result.partitionsCreated = journal.createAhead(partitions, partitionSize, partitionsAhead).size();
+
+            if (archivalEnabled) {
+                var archivableUntil = Math.min(journal.latestSnapshotSequenceNumber(), deliveredOffset);
+
+                for (var partition : partitions) {
+                    if (!partition.endsBefore(archivableUntil)) break;
+
+                    result.eventsArchived += journal.archive(partition, archiveDirectory);
+                    result.partitionsArchived++;
+                    log.info("Partition {} of the journal archived, events from {} to {}", partition.name, partition.from, partition.to - 1);
+                }
+            }
+        } catch (SQLException ex) {
+            throw new CompletionException(ex);
+        } catch (IOException ex) {
+            throw new UncheckedIOException(ex);
+        }
+
+        return result;
+    }
+}
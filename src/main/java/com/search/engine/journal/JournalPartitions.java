@@ -0,0 +1,296 @@
+package com.search.engine.journal;
+
+import org.postgresql.PGConnection;
+
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Optional;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * The partitions by ranges of sequence numbers of the journal of a persistent actor, see initdb/schema.sql.
+ * <p>
+ * Archiving a partition copies its rows to a gzipped CSV file, in the format of COPY so they can be loaded back,
+ * and then detaches and drops the partition. The file is only kept when it has every row of the partition.
+ * <p>
+ * The events without a partition go to the default partition of the table. Creating their partition moves them to it.
+ * <p>
+ * The table of the registry without tenant is in initdb/schema.sql, the ones of the registries of the tenants are
+ * created when missing, see {@link #createTable()}.
+ */
+public final class JournalPartitions {
+    private static final Pattern RANGE_BOUND = Pattern.compile("FROM \\('?(-?\\d+)'?\\) TO \\('?(-?\\d+)'?\\)");
+    private static final String PARTITIONS =
+            "SELECT c.relname, pg_get_expr(c.relpartbound, c.oid) FROM pg_inherits i JOIN pg_class c ON c.oid = i.inhrelid "
+                    + "WHERE i.inhparent = ?::regclass";
+    private static final String DEFAULT_BOUND = "DEFAULT";
+    private static final String JOURNAL = "event_journal";
+    private static final String EXISTS = "SELECT to_regclass(?) IS NOT NULL";
+    private static final String LAST_SEQUENCE_NUMBER = "SELECT COALESCE(MAX(sequence_number), 0) FROM %s WHERE persistence_id = ?";
+    private static final String LATEST_SNAPSHOT = "SELECT COALESCE(MAX(sequence_number), 0) FROM snapshot WHERE persistence_id = ?";
+
+    private final Connection connection;
+    private final String table;
+    private final String persistenceId;
+
+    public JournalPartitions(Connection connection, String table, String persistenceId) {
+        this.connection = connection;
+        this.table = table;
+        this.persistenceId = persistenceId;
+    }
+
+    /**
+     * A partition has the sequence numbers from, inclusive, to, exclusive
+     */
+    static final class Partition {
+        final String name;
+        final long from;
+        final long to;
+
+        Partition(String name, long from, long to) {
+            this.name = name;
+            this.from = from;
+            this.to = to;
+        }
+
+        /**
+         * @param bound as given by pg_get_expr, e.g. FOR VALUES FROM ('0') TO ('1000000')
+         */
+        static Optional<Partition> parse(String name, String bound) {
+            Matcher matcher = RANGE_BOUND.matcher(bound);
+            if (!matcher.find()) return Optional.empty();
+
+            return Optional.of(new Partition(name, Long.parseLong(matcher.group(1)), Long.parseLong(matcher.group(2))));
+        }
+
+        /**
+         * Every event in the partition is at or before the sequence number
+         */
+        boolean endsBefore(long sequenceNumber) {
+            return to - 1 <= sequenceNumber;
+        }
+    }
+
+    /**
+     * @return the partitions sorted by their sequence numbers, the default one excluded
+     */
+    List<Partition> partitions() throws SQLException {
+        var partitions = new ArrayList<Partition>();
+
+        try (var query = connection.prepareStatement(PARTITIONS)) {
+            query.setString(1, table);
+            try (var result = query.executeQuery()) {
+                while (result.next()) {
+                    Partition.parse(result.getString(1), result.getString(2)).ifPresent(partitions::add);
+                }
+            }
+        }
+
+        partitions.sort(Comparator.comparingLong(partition -> partition.from));
+        return partitions;
+    }
+
+    /**
+     * @return the name of the default partition, when the table has one
+     */
+    Optional<String> defaultPartition() throws SQLException {
+        try (var query = connection.prepareStatement(PARTITIONS)) {
+            query.setString(1, table);
+            try (var result = query.executeQuery()) {
+                while (result.next()) {
+                    if (DEFAULT_BOUND.equals(result.getString(2))) return Optional.of(result.getString(1));
+                }
+            }
+        }
+
+        return Optional.empty();
+    }
+
+    /**
+     * Creates the table of the persistence id, a partition of the journal with a default partition of its own, when
+     * it does not exist. The events of the persistence id already in the default partition of the journal are moved
+     * to it, the default partition is locked meanwhile, as in {@link #createFromDefault}
+     *
+     * @return whether the table was created
+     */
+    boolean createTable() throws SQLException {
+        try (var query = connection.prepareStatement(EXISTS)) {
+            query.setString(1, table);
+            try (var result = query.executeQuery()) {
+                result.next();
+                if (result.getBoolean(1)) return false;
+            }
+        }
+
+        var journalDefault = new JournalPartitions(connection, JOURNAL, persistenceId).defaultPartition();
+        var autoCommit = connection.getAutoCommit();
+        connection.setAutoCommit(false);
+        try (var statement = connection.createStatement()) {
+            if (journalDefault.isPresent()) {
+                statement.execute(String.format("LOCK TABLE %s IN ACCESS EXCLUSIVE MODE", journalDefault.get()));
+            }
+            statement.execute(String.format("CREATE TABLE %s (LIKE %s INCLUDING DEFAULTS) PARTITION BY RANGE (sequence_number)", table, JOURNAL));
+            statement.execute(String.format("CREATE TABLE %s_default PARTITION OF %s DEFAULT", table, table));
+            if (journalDefault.isPresent()) {
+                try (var move = connection.prepareStatement(String.format(
+                        "WITH moved AS (DELETE FROM %s WHERE persistence_id = ? RETURNING *) INSERT INTO %s SELECT * FROM moved",
+                        journalDefault.get(), table))) {
+                    move.setString(1, persistenceId);
+                    move.executeUpdate();
+                }
+            }
+            // The persistence ids are of letters, digits and dashes
+            statement.execute(String.format("ALTER TABLE %s ATTACH PARTITION %s FOR VALUES IN ('%s')", JOURNAL, table, persistenceId));
+            connection.commit();
+            return true;
+        } catch (SQLException ex) {
+            connection.rollback();
+            throw ex;
+        } finally {
+            connection.setAutoCommit(autoCommit);
+        }
+    }
+
+    long lastSequenceNumber() throws SQLException {
+        return queryLong(String.format(LAST_SEQUENCE_NUMBER, table), persistenceId);
+    }
+
+    long latestSnapshotSequenceNumber() throws SQLException {
+        return queryLong(LATEST_SNAPSHOT, persistenceId);
+    }
+
+    /**
+     * Creates partitions of the given size after the last one until there are the given number of partitions after
+     * the one of the last event
+     *
+     * @return the partitions created
+     */
+    List<Partition> createAhead(List<Partition> partitions, long partitionSize, int partitionsAhead) throws SQLException {
+        return createUntil(partitions, lastSequenceNumber() + partitionsAhead * partitionSize, partitionSize);
+    }
+
+    /**
+     * Creates partitions of the given size after the last one until one has the sequence number, e.g. before
+     * writing events straight into the journal
+     *
+     * @return the number of partitions created
+     */
+    public int createUntil(long sequenceNumber, long partitionSize) throws SQLException {
+        return createUntil(partitions(), sequenceNumber, partitionSize).size();
+    }
+
+    private List<Partition> createUntil(List<Partition> partitions, long sequenceNumber, long partitionSize) throws SQLException {
+        var lastSequenceNumber = partitions.isEmpty() ? lastSequenceNumber() : 0;
+        var upperBound = partitions.isEmpty()
+                ? lastSequenceNumber - lastSequenceNumber % partitionSize
+                : partitions.get(partitions.size() - 1).to;
+        var defaultPartition = upperBound <= sequenceNumber ? defaultPartition() : Optional.<String>empty();
+        var created = new ArrayList<Partition>();
+
+        while (upperBound <= sequenceNumber) {
+            var partition = new Partition(table + "_" + upperBound, upperBound, upperBound + partitionSize);
+            if (defaultPartition.isPresent()) {
+                createFromDefault(partition, defaultPartition.get());
+            } else {
+                try (var statement = connection.createStatement()) {
+                    statement.execute(String.format("CREATE TABLE IF NOT EXISTS %s PARTITION OF %s FOR VALUES FROM (%d) TO (%d)",
+                            partition.name, table, partition.from, partition.to));
+                }
+            }
+            created.add(partition);
+            upperBound = partition.to;
+        }
+
+        return created;
+    }
+
+    /**
+     * A partition cannot be created while the default one has rows in its range, so it is created on its own, the
+     * rows are moved to it and then it is attached. The default partition is locked meanwhile, the events written
+     * into it wait
+     */
+    private void createFromDefault(Partition partition, String defaultPartition) throws SQLException {
+        var autoCommit = connection.getAutoCommit();
+        connection.setAutoCommit(false);
+        try (var statement = connection.createStatement()) {
+            statement.execute(String.format("LOCK TABLE %s IN ACCESS EXCLUSIVE MODE", defaultPartition));
+            statement.execute(String.format("CREATE TABLE %s (LIKE %s INCLUDING DEFAULTS)", partition.name, table));
+            statement.execute(String.format(
+                    "WITH moved AS (DELETE FROM %s WHERE sequence_number >= %d AND sequence_number < %d RETURNING *) INSERT INTO %s SELECT * FROM moved",
+                    defaultPartition, partition.from, partition.to, partition.name));
+            statement.execute(String.format("ALTER TABLE %s ATTACH PARTITION %s FOR VALUES FROM (%d) TO (%d)",
+                    table, partition.name, partition.from, partition.to));
+            connection.commit();
+        } catch (SQLException ex) {
+            connection.rollback();
+            throw ex;
+        } finally {
+            connection.setAutoCommit(autoCommit);
+        }
+    }
+
+    /**
+     * Copies the rows of the partition to a file in the directory, then drops the partition. A file left by a
+     * previous attempt is replaced
+     *
+     * @return the rows archived
+     */
+    long archive(Partition partition, Path directory) throws SQLException, IOException {
+        Files.createDirectories(directory);
+        var file = directory.resolve(partition.name + ".csv.gz");
+        var partial = directory.resolve(partition.name + ".csv.gz.partial");
+
+        long copied;
+        try (var output = new FileOutputStream(partial.toFile())) {
+            var gzip = new GZIPOutputStream(output, 1 << 16);
+            copied = connection.unwrap(PGConnection.class).getCopyAPI().copyOut(
+                    String.format("COPY (SELECT * FROM %s ORDER BY sequence_number) TO STDOUT WITH (FORMAT csv, HEADER)", partition.name), gzip);
+            gzip.finish();
+            output.getChannel().force(true);
+        }
+
+        var rows = queryLong(String.format("SELECT COUNT(*) FROM %s", partition.name));
+        if (copied != rows) {
+            Files.deleteIfExists(partial);
+            throw new IllegalStateException("Partition " + partition.name + " has " + rows + " rows but " + copied + " were archived");
+        }
+        Files.move(partial, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+
+        var autoCommit = connection.getAutoCommit();
+        connection.setAutoCommit(false);
+        try (var statement = connection.createStatement()) {
+            statement.execute(String.format("ALTER TABLE %s DETACH PARTITION %s", table, partition.name));
+            statement.execute(String.format("DROP TABLE %s", partition.name));
+            connection.commit();
+        } catch (SQLException ex) {
+            connection.rollback();
+            throw ex;
+        } finally {
+            connection.setAutoCommit(autoCommit);
+        }
+
+        return rows;
+    }
+
+    private long queryLong(String sql, String... parameters) throws SQLException {
+        try (var query = connection.prepareStatement(sql)) {
+            for (int i = 0; i < parameters.length; i++) {
+                query.setString(i + 1, parameters[i]);
+            }
+            try (var result = query.executeQuery()) {
+                result.next();
+                return result.getLong(1);
+            }
+        }
+    }
+}
@@ -0,0 +1,86 @@
+package com.search.engine.models;
+
+import com.fasterxml.jackson.annotation.JsonCreator;
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+import java.time.Instant;
+import java.util.List;
+import java.util.Optional;
+
+/**
+ * Representation of a document in the delta export, copied from the registry when the page is read. The timestamp
+ * is the one of its position in the delta. The documents deleted since are tombstones, with only their id, state,
+ * version and the time they were deleted
+ */
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public class DeltaDocument implements Response {
+    public final String id;
+    public final DocumentState state;
+    public final DataSource dataSource;
+    public final String name;
+    public final String description;
+    public final List<String> imagesUrls;
+    public final Double price;
+    public final String promotion;
+    public final Instant promotionValidUntil;
+    public final Instant productsIndexedTimestamp;
+    public final Instant pricesIndexedTimestamp;
+    public final Instant promotionsIndexedTimestamp;
+    public final long version;
+    public final Instant timestamp;
+
+    @JsonCreator
+    public DeltaDocument(@JsonProperty("id") String id,
+                         @JsonProperty("state") DocumentState state,
+                         @JsonProperty("dataSource") DataSource dataSource,
+                         @JsonProperty("name") String name,
+                         @JsonProperty("description") String description,
+                         @JsonProperty("imagesUrls") List<String> imagesUrls,
+                         @JsonProperty("price") Double price,
+                         @JsonProperty("promotion") String promotion,
+                         @JsonProperty("promotionValidUntil") Instant promotionValidUntil,
+                         @JsonProperty("productsIndexedTimestamp") Instant productsIndexedTimestamp,
+                         @JsonProperty("pricesIndexedTimestamp") Instant pricesIndexedTimestamp,
+                         @JsonProperty("promotionsIndexedTimestamp") Instant promotionsIndexedTimestamp,
+                         @JsonProperty("version") long version,
+                         @JsonProperty("timestamp") Instant timestamp) {
+        this.id = id;
+        this.state = state;
+        this.dataSource = dataSource;
+        this.name = name;
+        this.description = description;
+        this.imagesUrls = imagesUrls;
+        this.price = price;
+        this.promotion = promotion;
+        this.promotionValidUntil = promotionValidUntil;
+        this.productsIndexedTimestamp = productsIndexedTimestamp;
+        this.pricesIndexedTimestamp = pricesIndexedTimestamp;
+        this.promotionsIndexedTimestamp = promotionsIndexedTimestamp;
+        this.version = version;
+        this.timestamp = timestamp;
+    }
+
+    public static DeltaDocument of(Document document, Instant timestamp) {
+        return new DeltaDocument(document.getId(), document.getState(), document.getDataSource(), document.getName(),
+                document.getDescription(), document.getImagesUrls() == null ? null : List.copyOf(document.getImagesUrls()),
+                document.getPrice(), document.getPromotion(), orNull(document.getPromotionValidUntil()),
+                orNull(document.getProductsIndexedTimestamp()), orNull(document.getPricesIndexedTimestamp()),
+                orNull(document.getPromotionsIndexedTimestamp()), document.getVersion(), timestamp);
+    }
+
+    public static DeltaDocument tombstone(Document document, Instant timestamp) {
+        return new DeltaDocument(document.getId(), document.getState(), null, null, null, null, null, null, null,
+                null, null, null, document.getVersion(), timestamp);
+    }
+
+    @JsonIgnore
+    public boolean isTombstone() {
+        return state == DocumentState.DELETED || state == DocumentState.TO_DELETE;
+    }
+
+    private static Instant orNull(Optional<Instant> timestamp) {
+        return timestamp == null ? null : timestamp.orElse(null);
+    }
+}
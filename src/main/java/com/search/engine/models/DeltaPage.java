@@ -0,0 +1,32 @@
+package com.search.engine.models;
+
+import com.fasterxml.jackson.annotation.JsonCreator;
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+import java.time.Instant;
+import java.util.List;
+import java.util.Optional;
+
+/**
+ * Page of the documents indexed from a data source since a given time, in timestamp order, and of the documents
+ * indexed from it that were deleted since, as tombstones. The documents are copies, see {@link DeltaDocument}.
+ * <p>
+ * lastTimestamp and lastId are the position of the last entry read, and the next page starts after it.
+ */
+public class DeltaPage implements Response {
+    public final List<DeltaDocument> documents;
+    public final Optional<Instant> lastTimestamp;
+    public final Optional<String> lastId;
+    public final boolean hasMore;
+
+    @JsonCreator
+    public DeltaPage(@JsonProperty("documents") List<DeltaDocument> documents,
+                     @JsonProperty("lastTimestamp") Optional<Instant> lastTimestamp,
+                     @JsonProperty("lastId") Optional<String> lastId,
+                     @JsonProperty("hasMore") boolean hasMore) {
+        this.documents = documents;
+        this.lastTimestamp = lastTimestamp;
+        this.lastId = lastId;
+        this.hasMore = hasMore;
+    }
+}
@@ -2,6 +2,7 @@ package com.search.engine.models;
 
 import com.fasterxml.jackson.annotation.JsonCreator;
 import com.fasterxml.jackson.annotation.JsonProperty;
+import com.fasterxml.jackson.annotation.JsonView;
 
 import java.time.Instant;
 import java.util.List;
@@ -14,11 +15,13 @@ public class Document {
     private List<String> imagesUrls;
     private Double price;
     private String promotion;
+    private Optional<Instant> promotionValidUntil;
     private DataSource dataSource;
     private DocumentState state;
     private Optional<Instant> productsIndexedTimestamp;
     private Optional<Instant> promotionsIndexedTimestamp;
     private Optional<Instant> pricesIndexedTimestamp;
+    private long version;
 
     @JsonCreator
     public Document(@JsonProperty("name") String name,
@@ -34,6 +37,7 @@ public class Document {
         this.promotion = promotion;
         this.dataSource = dataSource;
 
+        this.promotionValidUntil = Optional.empty();
         this.state = DocumentState.FETCHED;
         this.productsIndexedTimestamp = Optional.empty();
         this.promotionsIndexedTimestamp = Optional.empty();
@@ -72,6 +76,17 @@ public class Document {
         this.promotion = promotion;
     }
 
+    /**
+     * The promotion is removed at this time, when there is one
+     */
+    public Optional<Instant> getPromotionValidUntil() {
+        return promotionValidUntil;
+    }
+
+    public void setPromotionValidUntil(Optional<Instant> promotionValidUntil) {
+        this.promotionValidUntil = promotionValidUntil == null ? Optional.empty() : promotionValidUntil;
+    }
+
     public DataSource getDataSource() {
         return dataSource;
     }
@@ -127,4 +142,18 @@ public class Document {
     public void setImagesUrls(List<String> imagesUrls) {
         this.imagesUrls = imagesUrls;
     }
+
+    /**
+     * The sequence number of the last event of the registry that created, updated or deleted the document. It
+     * only increases, and it is the same after a recovery. It is in the internal view, so it is neither read from
+     * the request bodies nor written to the responses
+     */
+    @JsonView(Views.Internal.class)
+    public long getVersion() {
+        return version;
+    }
+
+    public void setVersion(long version) {
+        this.version = version;
+    }
 }
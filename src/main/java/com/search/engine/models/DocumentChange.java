@@ -0,0 +1,33 @@
+package com.search.engine.models;
+
+import com.fasterxml.jackson.annotation.JsonCreator;
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+import java.time.Instant;
+
+/**
+ * Representation of a change of a document sent to the consumers of the change feed. The offset identifies the
+ * change, consumers resume the feed after it
+ */
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public class DocumentChange implements Response {
+    public final long offset;
+    public final String id;
+    public final DocumentState state;
+    public final DataSource dataSource;
+    public final Instant timestamp;
+
+    @JsonCreator
+    public DocumentChange(@JsonProperty("offset") long offset,
+                          @JsonProperty("id") String id,
+                          @JsonProperty("state") DocumentState state,
+                          @JsonProperty("dataSource") DataSource dataSource,
+                          @JsonProperty("timestamp") Instant timestamp) {
+        this.offset = offset;
+        this.id = id;
+        this.state = state;
+        this.dataSource = dataSource;
+        this.timestamp = timestamp;
+    }
+}
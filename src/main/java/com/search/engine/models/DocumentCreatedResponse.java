@@ -2,15 +2,24 @@ package com.search.engine.models;
 
 import com.fasterxml.jackson.annotation.JsonCreator;
 import com.fasterxml.jackson.annotation.JsonProperty;
+import com.fasterxml.jackson.annotation.JsonView;
 
 /**
- * Representation of the document resource returned to the user when it is created
+ * Representation of the document resource returned to the user when it is created. The version is sent to the
+ * user in the ETag header
  */
 public class DocumentCreatedResponse implements Response {
     public final String id;
+    @JsonView(Views.Internal.class)
+    public final long version;
+
+    public DocumentCreatedResponse(String id) {
+        this(id, 0);
+    }
 
     @JsonCreator
-    public DocumentCreatedResponse(@JsonProperty String id) {
+    public DocumentCreatedResponse(@JsonProperty("id") String id, @JsonProperty("version") long version) {
         this.id = id;
+        this.version = version;
     }
 }
@@ -1,9 +1,12 @@
 package com.search.engine.models;
 
+import com.fasterxml.jackson.annotation.JsonView;
+
 import java.util.List;
 
 /**
- * Representation of the document resource returned to the user when it is updated
+ * Representation of the document resource returned to the user when it is updated. The version is sent to the
+ * user in the ETag header
  */
 public class DocumentUpdatedResponse implements Response {
     public String id;
@@ -12,6 +15,8 @@ public class DocumentUpdatedResponse implements Response {
     public List<String> imagesUrls;
     public Double price;
     public String promotion;
+    @JsonView(Views.Internal.class)
+    public long version;
 
     public DocumentUpdatedResponse() {}
 
@@ -22,6 +27,7 @@ public class DocumentUpdatedResponse implements Response {
         this.imagesUrls = document.getImagesUrls();
         this.price = document.getPrice();
         this.promotion = document.getPromotion();
+        this.version = document.getVersion();
     }
 
 }
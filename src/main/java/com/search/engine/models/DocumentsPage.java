@@ -0,0 +1,55 @@
+package com.search.engine.models;
+
+import com.fasterxml.jackson.annotation.JsonCreator;
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+import java.util.List;
+import java.util.Optional;
+import java.util.stream.Collectors;
+
+/**
+ * Page of the documents that are not deleted, in id order, with the data source and the version they have in the
+ * registry when the page is read.
+ * <p>
+ * lastId is the last id scanned, deleted or not, and the next page starts after it. scanned is the number of
+ * documents scanned in the page and totalDocuments the number of documents in the registry, deleted included.
+ */
+public class DocumentsPage implements Response {
+    public final List<Entry> documents;
+    @JsonIgnore
+    public final List<String> ids;
+    public final Optional<String> lastId;
+    public final boolean hasMore;
+    public final int scanned;
+    public final int totalDocuments;
+
+    @JsonCreator
+    public DocumentsPage(@JsonProperty("documents") List<Entry> documents,
+                         @JsonProperty("lastId") Optional<String> lastId,
+                         @JsonProperty("hasMore") boolean hasMore,
+                         @JsonProperty("scanned") int scanned,
+                         @JsonProperty("totalDocuments") int totalDocuments) {
+        this.documents = documents;
+        this.ids = documents.stream().map(entry -> entry.id).collect(Collectors.toList());
+        this.lastId = lastId;
+        this.hasMore = hasMore;
+        this.scanned = scanned;
+        this.totalDocuments = totalDocuments;
+    }
+
+    public static class Entry {
+        public final String id;
+        public final DataSource dataSource;
+        public final long version;
+
+        @JsonCreator
+        public Entry(@JsonProperty("id") String id,
+                     @JsonProperty("dataSource") DataSource dataSource,
+                     @JsonProperty("version") long version) {
+            this.id = id;
+            this.dataSource = dataSource;
+            this.version = version;
+        }
+    }
+}
@@ -0,0 +1,12 @@
+package com.search.engine.models;
+
+/**
+ * State of a write accepted asynchronously
+ */
+public enum OperationState {
+    PENDING,
+    SUCCEEDED,
+    FAILED,
+    // The registry did not reply in time, the write may have been applied or not
+    UNKNOWN
+}
@@ -0,0 +1,28 @@
+package com.search.engine.models;
+
+import com.fasterxml.jackson.annotation.JsonCreator;
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+/**
+ * Representation of the status of a write accepted asynchronously. The id of the document is unknown while a
+ * creation is pending, the error is only present when it failed or its outcome is unknown
+ */
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public class OperationStatus implements Response {
+    public final String id;
+    public final OperationState state;
+    public final String documentId;
+    public final String error;
+
+    @JsonCreator
+    public OperationStatus(@JsonProperty("id") String id,
+                           @JsonProperty("state") OperationState state,
+                           @JsonProperty("documentId") String documentId,
+                           @JsonProperty("error") String error) {
+        this.id = id;
+        this.state = state;
+        this.documentId = documentId;
+        this.error = error;
+    }
+}
@@ -0,0 +1,41 @@
+package com.search.engine.models;
+
+import com.fasterxml.jackson.annotation.JsonCreator;
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+import java.time.Instant;
+
+/**
+ * Representation of the progress of the reindex returned to the user
+ */
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public class ReindexProgress implements Response {
+    public final String status;
+    public final long indexed;
+    public final long scanned;
+    public final long totalDocuments;
+    public final Instant startedAt;
+    public final Instant finishedAt;
+    public final Double documentsPerSecond;
+    public final Long etaSeconds;
+
+    @JsonCreator
+    public ReindexProgress(@JsonProperty("status") String status,
+                           @JsonProperty("indexed") long indexed,
+                           @JsonProperty("scanned") long scanned,
+                           @JsonProperty("totalDocuments") long totalDocuments,
+                           @JsonProperty("startedAt") Instant startedAt,
+                           @JsonProperty("finishedAt") Instant finishedAt,
+                           @JsonProperty("documentsPerSecond") Double documentsPerSecond,
+                           @JsonProperty("etaSeconds") Long etaSeconds) {
+        this.status = status;
+        this.indexed = indexed;
+        this.scanned = scanned;
+        this.totalDocuments = totalDocuments;
+        this.startedAt = startedAt;
+        this.finishedAt = finishedAt;
+        this.documentsPerSecond = documentsPerSecond;
+        this.etaSeconds = etaSeconds;
+    }
+}
@@ -0,0 +1,18 @@
+package com.search.engine.models;
+
+import com.fasterxml.jackson.annotation.JsonCreator;
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+import java.util.List;
+
+/**
+ * Representation of the errors returned to the user when the request is not valid
+ */
+public class ValidationErrorResponse implements Response {
+    public final List<Violation> errors;
+
+    @JsonCreator
+    public ValidationErrorResponse(@JsonProperty("errors") List<Violation> errors) {
+        this.errors = errors;
+    }
+}
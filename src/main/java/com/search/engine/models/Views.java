@@ -0,0 +1,13 @@
+package com.search.engine.models;
+
+/**
+ * Jackson views of the models. The routes write the public view, so the properties in the internal one are only
+ * sent between the actors
+ */
+public final class Views {
+    public static class Public {}
+
+    public static class Internal {}
+
+    private Views() {}
+}
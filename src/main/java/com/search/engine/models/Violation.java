@@ -0,0 +1,18 @@
+package com.search.engine.models;
+
+import com.fasterxml.jackson.annotation.JsonCreator;
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+/**
+ * Representation of a rule of the request that was not met
+ */
+public class Violation {
+    public final String field;
+    public final String message;
+
+    @JsonCreator
+    public Violation(@JsonProperty("field") String field, @JsonProperty("message") String message) {
+        this.field = field;
+        this.message = message;
+    }
+}
@@ -0,0 +1,219 @@
+package com.search.engine.outbox;
+
+import akka.Done;
+import akka.actor.typed.ActorRef;
+import akka.actor.typed.ActorSystem;
+import akka.actor.typed.Behavior;
+import akka.actor.typed.PostStop;
+import akka.actor.typed.Scheduler;
+import akka.actor.typed.javadsl.AskPattern;
+import akka.actor.typed.javadsl.Behaviors;
+import akka.persistence.query.EventEnvelope;
+import akka.persistence.query.PersistenceQuery;
+import akka.persistence.query.javadsl.EventsByPersistenceIdQuery;
+import akka.persistence.typed.PersistenceId;
+import akka.stream.KillSwitches;
+import akka.stream.RestartSettings;
+import akka.stream.SharedKillSwitch;
+import akka.stream.javadsl.RestartSource;
+import akka.stream.javadsl.Sink;
+import akka.stream.javadsl.Source;
+import com.search.engine.DocumentIndexer;
+import com.search.engine.DocumentRegistry;
+import com.search.engine.models.DataSource;
+import com.search.engine.tracing.TraceContext;
+import com.search.engine.tracing.Tracing;
+import com.typesafe.config.Config;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.time.Duration;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Represents the actor responsible for feeding the indexer from the journal of the document registry.
+ * <p>
+ * The events of the registry are read in order starting after the last stored offset. Every index or delete
+ * request is delivered to the indexer, and the offset is only stored once the indexer has acknowledged it, so
+ * the work is delivered at least once and a restart resumes where the indexing left off. The first start of an
+ * existing registry does not deliver its whole journal again, see {@link #storedOrSeededOffset()}.
+ * <p>
+ * On shutdown the journal stops being read, the requests already delivered are awaited and the offset of the
+ * acknowledged ones is stored, so the next start does not deliver them again.
+ */
+public final class DocumentOutbox {
+    private final static Logger log = LoggerFactory.getLogger(DocumentOutbox.class);
+
+    private final ActorSystem<?> system;
+    private final PersistenceId registryPersistenceId;
+    private final ActorRef<OutboxOffsetStore.Command> offsetStore;
+    private final ActorRef<DocumentIndexer.Command> indexer;
+    private final ActorRef<DocumentRegistry.Command> registry;
+    private final ActorRef<DocumentRegistry.DocumentStatusToIndexed> refDocumentIndexed;
+    private final ActorRef<DocumentRegistry.DocumentStatusToDeleted> refDocumentDeleted;
+    private final EventsByPersistenceIdQuery readJournal;
+    private final Scheduler scheduler;
+    private final Tracing tracing;
+
+    private final int parallelism;
+    private final Duration askTimeout;
+    private final Duration ackTimeout;
+    private final int commitBatch;
+    private final Duration commitInterval;
+    private final RestartSettings restartSettings;
+    // Placed right after the journal, stopping it lets the delivered requests complete and their offset be stored
+    private final SharedKillSwitch killSwitch = KillSwitches.shared("document-outbox");
+    private final AtomicLong storedOffset = new AtomicLong();
+
+    public interface Command {}
+
+    /**
+     * Stops reading the journal, replies the last stored offset once the delivered requests are acknowledged
+     */
+    public static final class Drain implements Command {
+        public final ActorRef<Long> replyTo;
+
+        public Drain(ActorRef<Long> replyTo) {
+            this.replyTo = replyTo;
+        }
+    }
+
+    private DocumentOutbox(ActorSystem<?> system,
+                           PersistenceId registryPersistenceId,
+                           ActorRef<OutboxOffsetStore.Command> offsetStore,
+                           ActorRef<DocumentIndexer.Command> indexer,
+                           ActorRef<DocumentRegistry.Command> registry) {
+        this.system = system;
+        this.registryPersistenceId = registryPersistenceId;
+        this.offsetStore = offsetStore;
+        this.indexer = indexer;
+        this.registry = registry;
+        this.refDocumentIndexed = registry.narrow();
+        this.refDocumentDeleted = registry.narrow();
+        this.scheduler = system.scheduler();
+        this.tracing = Tracing.get(system);
+
+        Config config = system.settings().config().getConfig("case-search-engine-index.outbox");
+        this.readJournal = PersistenceQuery.get(system)
+                .getReadJournalFor(EventsByPersistenceIdQuery.class, config.getString("read-journal"));
+        this.parallelism = config.getInt("parallelism");
+        this.askTimeout = config.getDuration("ask-timeout");
+        this.ackTimeout = config.getDuration("ack-timeout");
+        this.commitBatch = config.getInt("commit-batch");
+        this.commitInterval = config.getDuration("commit-interval");
+        this.restartSettings = RestartSettings.create(config.getDuration("min-backoff"), config.getDuration("max-backoff"), 0.2);
+    }
+
+    public static Behavior<Command> create(PersistenceId registryPersistenceId,
+                                           ActorRef<OutboxOffsetStore.Command> offsetStore,
+                                           ActorRef<DocumentIndexer.Command> indexer,
+                                           ActorRef<DocumentRegistry.Command> registry) {
+        return Behaviors.setup(context -> {
+            var outbox = new DocumentOutbox(context.getSystem(), registryPersistenceId, offsetStore, indexer, registry);
+            CompletionStage<Done> done = outbox.run();
+
+            return Behaviors.receive(Command.class)
+                    .onMessage(Drain.class, drain -> {
+                        outbox.killSwitch.shutdown();
+                        done.whenComplete((result, exception) -> drain.replyTo.tell(outbox.storedOffset.get()));
+                        return Behaviors.same();
+                    })
+                    .onSignal(PostStop.class, signal -> {
+                        outbox.killSwitch.shutdown();
+                        return Behaviors.same();
+                    })
+                    .build();
+        });
+    }
+
+    /**
+     * Completes once the kill switch is shut down and the last offset is stored
+     */
+    private CompletionStage<Done> run() {
+        return RestartSource.onFailuresWithBackoff(restartSettings, this::deliverFromStoredOffset)
+                .runWith(Sink.ignore(), system);
+    }
+
+    /**
+     * Every (re)start reads the stored offset again, so the events that were not acknowledged before a failure
+     * get delivered again
+     */
+    private Source<Done, ?> deliverFromStoredOffset() {
+        return Source.completionStage(storedOrSeededOffset())
+                .flatMapConcat(offset -> {
+                    log.info("Delivering index work of {} from offset {}", registryPersistenceId.id(), offset);
+                    storedOffset.set(offset);
+                    return readJournal.eventsByPersistenceId(registryPersistenceId.id(), offset + 1, Long.MAX_VALUE);
+                })
+                .via(killSwitch.flow())
+                .mapAsync(parallelism, envelope -> deliver(envelope).thenApply(done -> envelope.sequenceNr()))
+                .groupedWithin(commitBatch, commitInterval)
+                .mapAsync(1, offsets -> storeOffset(offsets.get(offsets.size() - 1)));
+    }
+
+    /**
+     * Without a stored offset, e.g. the first start with the outbox enabled, the offset is seeded from the registry:
+     * the work it has already done is not delivered again, only the one after the change of the oldest document
+     * waiting to be indexed or deleted. The seeded offset is stored right away
+     */
+    private CompletionStage<Long> storedOrSeededOffset() {
+        return AskPattern.<OutboxOffsetStore.Command, Long>ask(offsetStore, OutboxOffsetStore.GetOffset::new, askTimeout, scheduler)
+                .thenCompose(offset -> {
+                    if (offset != OutboxOffsetStore.NO_OFFSET) return CompletableFuture.completedFuture(offset);
+
+                    return AskPattern.<DocumentRegistry.Command, Long>ask(registry, DocumentRegistry.GetIndexedUpTo::new, askTimeout, scheduler)
+                            .thenCompose(seed -> {
+                                log.info("No offset stored for {}, starting after the offset {} indexed by the registry", registryPersistenceId.id(), seed);
+                                return storeOffset(seed).thenApply(done -> seed);
+                            });
+                });
+    }
+
+    private CompletionStage<Done> deliver(EventEnvelope envelope) {
+        Object event = envelope.event();
+
+        // The version of the document is the sequence number of the event, the indexer drops the older ones
+        // delivered after a newer one
+        if (event instanceof DocumentRegistry.DocumentCreated) {
+            var created = (DocumentRegistry.DocumentCreated) event;
+            return index(created.document.getId(), created.document.getDataSource(), envelope.sequenceNr(), created.trace);
+        } else if (event instanceof DocumentRegistry.DocumentUpdated) {
+            var updated = (DocumentRegistry.DocumentUpdated) event;
+            return index(updated.document.getId(), updated.document.getDataSource(), envelope.sequenceNr(), updated.trace);
+        } else if (event instanceof DocumentRegistry.DocumentToDelete) {
+            var toDelete = (DocumentRegistry.DocumentToDelete) event;
+            return delete(toDelete.id, envelope.sequenceNr(), toDelete.trace);
+        } else if (event instanceof DocumentRegistry.PromotionsExpired) {
+            var ids = ((DocumentRegistry.PromotionsExpired) event).ids;
+            return AskPattern.ask(indexer, ref -> new DocumentIndexer.IndexDocuments(ids, DataSource.PROMOTIONS, envelope.sequenceNr(), refDocumentIndexed).withAckTo(ref), ackTimeout, scheduler);
+        }
+
+        // The rest of the events are the outcome of the index work, nothing to deliver
+        return CompletableFuture.completedFuture(Done.getInstance());
+    }
+
+    /**
+     * The trace of the event was sent when it was persisted, the wait until it is delivered is the lag of the outbox
+     */
+    private CompletionStage<Done> index(String id, DataSource dataSource, long version, Optional<TraceContext> trace) {
+        tracing.recordWait(trace, "outbox.lag", Map.of("id", id));
+        return AskPattern.ask(indexer, ref -> new DocumentIndexer.IndexDocument(id, dataSource, version, refDocumentIndexed).withAckTo(ref).withTrace(trace.map(TraceContext::sent)), ackTimeout, scheduler);
+    }
+
+    private CompletionStage<Done> delete(String id, long version, Optional<TraceContext> trace) {
+        tracing.recordWait(trace, "outbox.lag", Map.of("id", id));
+        return AskPattern.ask(indexer, ref -> new DocumentIndexer.DeleteDocument(id, version, refDocumentDeleted).withAckTo(ref).withTrace(trace.map(TraceContext::sent)), ackTimeout, scheduler);
+    }
+
+    private CompletionStage<Done> storeOffset(long offset) {
+        return AskPattern.<OutboxOffsetStore.Command, Done>ask(offsetStore, ref -> new OutboxOffsetStore.StoreOffset(offset, ref), askTimeout, scheduler)
+                .thenApply(done -> {
+                    storedOffset.set(offset);
+                    return done;
+                });
+    }
+}
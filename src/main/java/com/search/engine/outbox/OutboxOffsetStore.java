@@ -0,0 +1,111 @@
+package com.search.engine.outbox;
+
+import akka.Done;
+import akka.actor.typed.ActorRef;
+import akka.actor.typed.Behavior;
+import akka.persistence.typed.PersistenceId;
+import akka.persistence.typed.javadsl.*;
+import com.fasterxml.jackson.annotation.JsonCreator;
+import com.fasterxml.jackson.annotation.JsonProperty;
+import com.search.engine.JacksonSerializable;
+
+/**
+ * Represents the actor responsible for durably storing the journal offset up to which the outbox has delivered
+ * the index work to the indexer. Until an offset is stored the offset is {@link #NO_OFFSET}
+ */
+public final class OutboxOffsetStore extends EventSourcedBehavior<OutboxOffsetStore.Command, OutboxOffsetStore.Event, OutboxOffsetStore.State> {
+    private static final int SNAPSHOT_EVERY = 100;
+    private static final int SNAPSHOTS_TO_KEEP = 2;
+    public static final long NO_OFFSET = -1;
+
+    public interface Command extends JacksonSerializable {
+    }
+
+    public interface Event extends JacksonSerializable {
+    }
+
+    public static final class State implements JacksonSerializable {
+        public final long offset;
+
+        @JsonCreator
+        public State(@JsonProperty("offset") long offset) {
+            this.offset = offset;
+        }
+    }
+
+    public static Behavior<Command> create(PersistenceId persistenceId) {
+        return new OutboxOffsetStore(persistenceId);
+    }
+
+    private OutboxOffsetStore(PersistenceId persistenceId) {
+        super(persistenceId);
+    }
+
+    @Override
+    public State emptyState() {
+        return new State(NO_OFFSET);
+    }
+
+    @Override
+    public RetentionCriteria retentionCriteria() {
+        // Only the latest offset matters, older events can be dropped once a snapshot is taken
+        return RetentionCriteria.snapshotEvery(SNAPSHOT_EVERY, SNAPSHOTS_TO_KEEP).withDeleteEventsOnSnapshot();
+    }
+
+    // Commands
+    public final static class GetOffset implements Command {
+        public final ActorRef<Long> replyTo;
+
+        public GetOffset(ActorRef<Long> replyTo) {
+            this.replyTo = replyTo;
+        }
+    }
+
+    public final static class StoreOffset implements Command {
+        public final long offset;
+        public final ActorRef<Done> replyTo;
+
+        public StoreOffset(long offset, ActorRef<Done> replyTo) {
+            this.offset = offset;
+            this.replyTo = replyTo;
+        }
+    }
+
+    @Override
+    public CommandHandler<Command, Event, State> commandHandler() {
+        return newCommandHandlerBuilder()
+                .forAnyState()
+                .onCommand(GetOffset.class, (state, command) -> Effect().reply(command.replyTo, state.offset))
+                .onCommand(StoreOffset.class, this::onStoreOffset)
+                .build();
+    }
+
+    // Effects
+    private Effect<Event, State> onStoreOffset(State state, StoreOffset storeOffsetCommand) {
+        if (storeOffsetCommand.offset <= state.offset) { // Offsets only move forward
+            return Effect().reply(storeOffsetCommand.replyTo, Done.getInstance());
+        }
+
+        return Effect()
+                .persist(new OffsetStored(storeOffsetCommand.offset))
+                .thenReply(storeOffsetCommand.replyTo, offsetStored -> Done.getInstance());
+    }
+
+    @Override
+    public EventHandler<State, Event> eventHandler() {
+        return newEventHandlerBuilder()
+                .forAnyState()
+                .onEvent(OffsetStored.class, (state, event) -> new State(event.offset))
+                .build();
+    }
+
+    // Events
+    public final static class OffsetStored implements Event {
+        public final long offset;
+
+        @JsonCreator
+        public OffsetStored(long offset) {
+            this.offset = offset;
+        }
+    }
+}
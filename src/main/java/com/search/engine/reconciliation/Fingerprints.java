@@ -0,0 +1,54 @@
+package com.search.engine.reconciliation;
+
+import java.time.Instant;
+import java.util.Optional;
+
+/**
+ * Fingerprints of the documents compared by the reconciliation.
+ * <p>
+ * The search engine only receives the ids of the documents, so the fields sent to it are identified by the time
+ * they were indexed. The fingerprint of a document is the hash of its id and the time it was last indexed, stored
+ * with the document in the search engine and computed from the indexed timestamps in the registry.
+ * <p>
+ * The digest of a range of documents is the sum of their fingerprints, so it does not depend on the order the
+ * documents are read in and can be updated one document at a time.
+ */
+public final class Fingerprints {
+    /**
+     * Fingerprint of a document that is not in the index, it does not change the digests
+     */
+    public static final long ABSENT = 0L;
+
+    private Fingerprints() {
+    }
+
+    public static long of(String id, Optional<Instant> indexedAt) {
+        // FNV-1a of the id and the timestamp, followed by the SplitMix64 finalizer to spread the bits
+        long hash = 0xcbf29ce484222325L;
+        for (int i = 0; i < id.length(); i++) {
+            hash = (hash ^ id.charAt(i)) * 0x100000001b3L;
+        }
+        if (indexedAt.isPresent()) {
+            hash = (hash ^ indexedAt.get().getEpochSecond()) * 0x100000001b3L;
+            hash = (hash ^ indexedAt.get().getNano()) * 0x100000001b3L;
+        }
+
+        hash = (hash ^ (hash >>> 30)) * 0xbf58476d1ce4e5b9L;
+        hash = (hash ^ (hash >>> 27)) * 0x94d049bb133111ebL;
+        hash = hash ^ (hash >>> 31);
+
+        return hash == ABSENT ? 1L : hash;
+    }
+
+    /**
+     * @return the digest of the fingerprints given
+     */
+    public static long digest(Iterable<Long> fingerprints) {
+        long digest = 0L;
+        for (long fingerprint : fingerprints) {
+            digest += fingerprint;
+        }
+
+        return digest;
+    }
+}
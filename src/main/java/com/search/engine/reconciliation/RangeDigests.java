@@ -0,0 +1,93 @@
+package com.search.engine.reconciliation;
+
+import com.fasterxml.jackson.annotation.JsonCreator;
+import com.fasterxml.jackson.annotation.JsonProperty;
+import com.search.engine.JacksonSerializable;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Digests of the fingerprints of the documents by ranges of ids, arranged as a tree.
+ * <p>
+ * The ids are UUIDs, so a range is a prefix of hexadecimal digits. The root is the empty prefix, every range has
+ * one child per following digit and the leaves are the prefixes of {@link #LEAF_PREFIX_LENGTH} digits. Only the
+ * digests of the leaves are stored, updated as the fingerprints of the documents change, and the digest of a
+ * range is the sum of its leaves.
+ */
+public final class RangeDigests implements JacksonSerializable {
+    public static final int LEAF_PREFIX_LENGTH = 3;
+    private static final String DIGITS = "0123456789abcdef";
+
+    @JsonProperty("leaves")
+    private final long[] leaves;
+
+    public RangeDigests() {
+        this(new long[1 << (4 * LEAF_PREFIX_LENGTH)]);
+    }
+
+    @JsonCreator
+    private RangeDigests(@JsonProperty("leaves") long[] leaves) {
+        this.leaves = leaves;
+    }
+
+    /**
+     * Replaces the fingerprint of a document, {@link Fingerprints#ABSENT} when it is not expected in the index
+     */
+    public void update(String id, long previousFingerprint, long fingerprint) {
+        if (previousFingerprint != fingerprint) {
+            leaves[leafOf(id)] += fingerprint - previousFingerprint;
+        }
+    }
+
+    public long digest(String prefix) {
+        int from = 0;
+        for (int i = 0; i < prefix.length(); i++) {
+            from = (from << 4) | Character.digit(prefix.charAt(i), 16);
+        }
+
+        int width = 1 << (4 * (LEAF_PREFIX_LENGTH - prefix.length()));
+        from *= width;
+
+        long digest = 0L;
+        for (int leaf = from; leaf < from + width; leaf++) {
+            digest += leaves[leaf];
+        }
+
+        return digest;
+    }
+
+    public RangeDigests copy() {
+        return new RangeDigests(Arrays.copyOf(leaves, leaves.length));
+    }
+
+    public static boolean isLeaf(String prefix) {
+        return prefix.length() == LEAF_PREFIX_LENGTH;
+    }
+
+    public static List<String> children(String prefix) {
+        var children = new ArrayList<String>(DIGITS.length());
+        for (int i = 0; i < DIGITS.length(); i++) {
+            children.add(prefix + DIGITS.charAt(i));
+        }
+
+        return children;
+    }
+
+    /**
+     * @return the exclusive upper bound of the ids starting with the prefix
+     */
+    public static String upperBound(String prefix) {
+        return prefix + Character.MAX_VALUE;
+    }
+
+    private static int leafOf(String id) {
+        int leaf = 0;
+        for (int i = 0; i < LEAF_PREFIX_LENGTH; i++) {
+            leaf = (leaf << 4) | (i < id.length() ? Character.digit(id.charAt(i), 16) & 0xf : 0);
+        }
+
+        return leaf;
+    }
+}
@@ -0,0 +1,24 @@
+package com.search.engine.reconciliation;
+
+import com.fasterxml.jackson.annotation.JsonCreator;
+import com.search.engine.JacksonSerializable;
+import com.search.engine.models.DataSource;
+
+import java.util.Map;
+
+/**
+ * Fingerprints of the documents of a range expected in the index, by id, with the data source to reindex them with.
+ * The versions are the ones of every document of the range in the registry, deleted included, to repair them with
+ */
+public final class RangeFingerprints implements JacksonSerializable {
+    public final Map<String, Long> fingerprints;
+    public final Map<String, DataSource> dataSources;
+    public final Map<String, Long> versions;
+
+    @JsonCreator
+    public RangeFingerprints(Map<String, Long> fingerprints, Map<String, DataSource> dataSources, Map<String, Long> versions) {
+        this.fingerprints = fingerprints;
+        this.dataSources = dataSources;
+        this.versions = versions;
+    }
+}
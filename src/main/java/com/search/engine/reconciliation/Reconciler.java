@@ -0,0 +1,191 @@
+package com.search.engine.reconciliation;
+
+import akka.actor.typed.ActorRef;
+import akka.actor.typed.Behavior;
+import akka.actor.typed.DispatcherSelector;
+import akka.actor.typed.Scheduler;
+import akka.actor.typed.javadsl.AbstractBehavior;
+import akka.actor.typed.javadsl.ActorContext;
+import akka.actor.typed.javadsl.AskPattern;
+import akka.actor.typed.javadsl.Behaviors;
+import akka.actor.typed.javadsl.Receive;
+import akka.actor.typed.javadsl.TimerScheduler;
+import com.search.engine.DocumentIndexer;
+import com.search.engine.DocumentRegistry;
+import com.search.engine.solr.FingerprintStore;
+import com.typesafe.config.Config;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executor;
+
+/**
+ * Represents the actor responsible for repairing the drift between the registry and the search engine.
+ * <p>
+ * Periodically, the digests of the ranges of documents in the registry are compared with those in the search
+ * engine, starting from the whole range of ids and going down only into the ranges that differ, as in a Merkle
+ * tree. The fingerprints of the documents are only compared in the leaves that differ, and only the documents
+ * that differ are sent to the indexer, to index or to delete. The work of a run is proportional to the drift,
+ * not to the number of documents.
+ */
+public class Reconciler extends AbstractBehavior<Reconciler.Command> {
+    private final static Logger log = LoggerFactory.getLogger(Reconciler.class);
+
+    private final TimerScheduler<Command> timers;
+    private final ActorRef<DocumentRegistry.Command> registry;
+    private final ActorRef<DocumentIndexer.Command> indexer;
+    private final FingerprintStore fingerprintStore;
+    private final Executor solrExecutor;
+    private final Scheduler scheduler;
+    private final Duration interval;
+    private final Duration askTimeout;
+    private final int maxRepairs;
+
+    public interface Command {}
+
+    private enum Run implements Command {
+        INSTANCE
+    }
+
+    private static final class RunFinished implements Command {
+        private final Result result;
+        private final Throwable failure;
+
+        private RunFinished(Result result, Throwable failure) {
+            this.result = result;
+            this.failure = failure;
+        }
+    }
+
+    private static final class Result {
+        private int rangesCompared = 0;
+        private int leavesDiffering = 0;
+        private int reindexed = 0;
+        private int deleted = 0;
+
+        private int repairs() {
+            return reindexed + deleted;
+        }
+    }
+
+    /**
+     * @param fingerprintStore the fingerprints stored in the search engine the indexer indexes into
+     */
+    public static Behavior<Command> create(ActorRef<DocumentRegistry.Command> registry, ActorRef<DocumentIndexer.Command> indexer, FingerprintStore fingerprintStore) {
+        return Behaviors.setup(context -> Behaviors.withTimers(timers -> new Reconciler(context, timers, registry, indexer, fingerprintStore)));
+    }
+
+    private Reconciler(ActorContext<Command> context,
+                       TimerScheduler<Command> timers,
+                       ActorRef<DocumentRegistry.Command> registry,
+                       ActorRef<DocumentIndexer.Command> indexer,
+                       FingerprintStore fingerprintStore) {
+        super(context);
+        this.timers = timers;
+        this.registry = registry;
+        this.indexer = indexer;
+        this.fingerprintStore = fingerprintStore;
+        this.scheduler = context.getSystem().scheduler();
+
+        Config config = context.getSystem().settings().config().getConfig("case-search-engine-index.reconciliation");
+        this.solrExecutor = context.getSystem().dispatchers().lookup(DispatcherSelector.fromConfig(config.getString("dispatcher")));
+        this.interval = config.getDuration("interval");
+        this.askTimeout = config.getDuration("ask-timeout");
+        this.maxRepairs = config.getInt("max-repairs");
+
+        // The next run is scheduled when the previous one finishes, so runs never overlap
+        timers.startSingleTimer(Run.INSTANCE, config.getDuration("initial-delay"));
+    }
+
+    @Override
+    public Receive<Command> createReceive() {
+        return newReceiveBuilder()
+                .onMessageEquals(Run.INSTANCE, this::onRun)
+                .onMessage(RunFinished.class, this::onRunFinished)
+                .build();
+    }
+
+    private Behavior<Command> onRun() {
+        getContext().pipeToSelf(
+                AskPattern.<DocumentRegistry.Command, RangeDigests>ask(registry, DocumentRegistry.GetRangeDigests::new, askTimeout, scheduler)
+                        .thenApplyAsync(this::reconcile, solrExecutor),
+                RunFinished::new);
+        return this;
+    }
+
+    private Behavior<Command> onRunFinished(RunFinished runFinished) {
+        if (runFinished.failure != null) {
+            log.error("The reconciliation failed, retrying in {}", interval, runFinished.failure);
+        } else {
+            var result = runFinished.result;
+            log.info("Reconciliation finished: {} ranges compared, {} leaves differing, {} documents reindexed, {} deleted",
+                    result.rangesCompared, result.leavesDiffering, result.reindexed, result.deleted);
+        }
+
+        timers.startSingleTimer(Run.INSTANCE, interval);
+        return this;
+    }
+
+    /**
+     * Runs on the dispatcher of the search engine, the calls to it are blocking
+     */
+    private Result reconcile(RangeDigests registryDigests) {
+        var result = new Result();
+        var ranges = new ArrayDeque<String>();
+        ranges.add("");
+
+        while (!ranges.isEmpty() && result.repairs() < maxRepairs) {
+            var prefix = ranges.poll();
+            result.rangesCompared++;
+            if (registryDigests.digest(prefix) == fingerprintStore.digest(prefix)) continue;
+
+            if (RangeDigests.isLeaf(prefix)) {
+                result.leavesDiffering++;
+                repair(prefix, result);
+            } else {
+                ranges.addAll(RangeDigests.children(prefix));
+            }
+        }
+
+        return result;
+    }
+
+    private void repair(String prefix, Result result) {
+        // The registry is read again, the documents may have been indexed since the digests were taken
+        var expected = AskPattern.<DocumentRegistry.Command, RangeFingerprints>ask(
+                registry, ref -> new DocumentRegistry.GetRangeFingerprints(prefix, ref), askTimeout, scheduler)
+                .toCompletableFuture()
+                .join();
+        var indexed = fingerprintStore.fingerprints(prefix);
+
+        List<String> toIndex = new ArrayList<>();
+        expected.fingerprints.forEach((id, fingerprint) -> {
+            if (!fingerprint.equals(indexed.get(id))) toIndex.add(id);
+        });
+        List<String> toDelete = new ArrayList<>();
+        indexed.keySet().forEach(id -> {
+            if (!expected.fingerprints.containsKey(id)) toDelete.add(id);
+        });
+
+        // Versioned, so a repair read before a newer change of the document does not overwrite it in the index. The
+        // documents the registry does not have are deleted unversioned
+        for (String id : toIndex) {
+            if (result.repairs() == maxRepairs) return;
+            indexer.tell(new DocumentIndexer.IndexDocument(id, expected.dataSources.get(id), version(expected, id), registry.narrow()));
+            result.reindexed++;
+        }
+        for (String id : toDelete) {
+            if (result.repairs() == maxRepairs) return;
+            indexer.tell(new DocumentIndexer.DeleteDocument(id, version(expected, id), registry.narrow()));
+            result.deleted++;
+        }
+    }
+
+    private static long version(RangeFingerprints expected, String id) {
+        return expected.versions.getOrDefault(id, DocumentIndexer.UNVERSIONED);
+    }
+}
@@ -0,0 +1,402 @@
+package com.search.engine.reindex;
+
+import akka.Done;
+import akka.actor.typed.ActorRef;
+import akka.actor.typed.Behavior;
+import akka.actor.typed.Scheduler;
+import akka.actor.typed.javadsl.ActorContext;
+import akka.actor.typed.javadsl.AskPattern;
+import akka.actor.typed.javadsl.Behaviors;
+import akka.actor.typed.javadsl.TimerScheduler;
+import akka.japi.Pair;
+import akka.pattern.StatusReply;
+import akka.persistence.typed.PersistenceId;
+import akka.persistence.typed.RecoveryCompleted;
+import akka.persistence.typed.javadsl.*;
+import akka.stream.KillSwitches;
+import akka.stream.ThrottleMode;
+import akka.stream.UniqueKillSwitch;
+import akka.stream.javadsl.Keep;
+import akka.stream.javadsl.Sink;
+import akka.stream.javadsl.Source;
+import com.fasterxml.jackson.annotation.JsonCreator;
+import com.fasterxml.jackson.annotation.JsonProperty;
+import com.search.engine.DocumentIndexer;
+import com.search.engine.DocumentRegistry;
+import com.search.engine.JacksonSerializable;
+import com.search.engine.exceptions.CaseSearchEngineException;
+import com.search.engine.models.DocumentsPage;
+import com.search.engine.models.ReindexProgress;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+
+/**
+ * Represents the actor responsible for reindexing all the documents that are not deleted.
+ * <p>
+ * The documents are read from the registry in pages, in id order, and sent to the indexers with the version they have
+ * in the page, throttled to the configured documents per second so the live traffic keeps its share. They go through
+ * the indexers like any other change, so a document deleted or updated since the page was read is not indexed over
+ * its newer version, and the registry records the index. The id of the last document of every indexed page is
+ * persisted as a checkpoint, so after a failure or a restart the reindex resumes after it.
+ */
+public final class ReindexJob extends EventSourcedBehavior<ReindexJob.Command, ReindexJob.Event, ReindexJob.State> {
+    private final static Logger log = LoggerFactory.getLogger(ReindexJob.class);
+
+    private final ActorContext<Command> context;
+    private final TimerScheduler<Command> timers;
+    private final ActorRef<DocumentRegistry.Command> registry;
+    private final ActorRef<DocumentIndexer.Command> indexers;
+    private final int pageSize;
+    private final int maxDocumentsPerSecond;
+    private final Duration askTimeout;
+    private final Duration retryBackoff;
+
+    // Every run of the stream has its own generation, the messages of the previous runs are ignored
+    private int generation = 0;
+    private Optional<UniqueKillSwitch> running = Optional.empty();
+
+    public enum Status {
+        IDLE, RUNNING, COMPLETED, CANCELLED
+    }
+
+    public interface Command extends JacksonSerializable {
+    }
+
+    public interface Event extends JacksonSerializable {
+    }
+
+    public static final class State implements JacksonSerializable {
+        public final Status status;
+        public final Optional<String> checkpoint;
+        public final long indexed;
+        public final long scanned;
+        public final long totalDocuments;
+        public final Optional<Instant> startedAt;
+        public final Optional<Instant> finishedAt;
+
+        @JsonCreator
+        public State(@JsonProperty("status") Status status,
+                     @JsonProperty("checkpoint") Optional<String> checkpoint,
+                     @JsonProperty("indexed") long indexed,
+                     @JsonProperty("scanned") long scanned,
+                     @JsonProperty("totalDocuments") long totalDocuments,
+                     @JsonProperty("startedAt") Optional<Instant> startedAt,
+                     @JsonProperty("finishedAt") Optional<Instant> finishedAt) {
+            this.status = status;
+            this.checkpoint = checkpoint;
+            this.indexed = indexed;
+            this.scanned = scanned;
+            this.totalDocuments = totalDocuments;
+            this.startedAt = startedAt;
+            this.finishedAt = finishedAt;
+        }
+
+        public State started(Instant at) {
+            return new State(Status.RUNNING, Optional.empty(), 0, 0, 0, Optional.of(at), Optional.empty());
+        }
+
+        public State checkpointReached(Optional<String> lastId, int pageIndexed, int pageScanned, int totalDocuments) {
+            return new State(status, lastId.or(() -> checkpoint), indexed + pageIndexed, scanned + pageScanned, totalDocuments, startedAt, finishedAt);
+        }
+
+        public State finished(Status status, Instant at) {
+            return new State(status, checkpoint, indexed, scanned, totalDocuments, startedAt, Optional.of(at));
+        }
+
+        public boolean isRunning() {
+            return status == Status.RUNNING;
+        }
+
+        /**
+         * The rate and the ETA are estimated from the documents scanned since the reindex started
+         */
+        public ReindexProgress progress(Instant now) {
+            Double documentsPerSecond = null;
+            Long etaSeconds = null;
+
+            if (startedAt.isPresent()) {
+                var elapsedMillis = Duration.between(startedAt.get(), finishedAt.orElse(now)).toMillis();
+                if (elapsedMillis > 0) {
+                    documentsPerSecond = indexed * 1000.0 / elapsedMillis;
+                    var scannedPerSecond = scanned * 1000.0 / elapsedMillis;
+                    if (isRunning() && scannedPerSecond > 0) {
+                        etaSeconds = (long) Math.ceil(Math.max(0, totalDocuments - scanned) / scannedPerSecond);
+                    }
+                }
+            }
+
+            return new ReindexProgress(status.name(), indexed, scanned, totalDocuments, startedAt.orElse(null), finishedAt.orElse(null), documentsPerSecond, etaSeconds);
+        }
+    }
+
+    public static Behavior<Command> create(PersistenceId persistenceId, ActorRef<DocumentRegistry.Command> registry, ActorRef<DocumentIndexer.Command> indexers) {
+        return Behaviors.setup(context -> Behaviors.withTimers(timers -> new ReindexJob(context, timers, persistenceId, registry, indexers)));
+    }
+
+    private ReindexJob(ActorContext<Command> context,
+                       TimerScheduler<Command> timers,
+                       PersistenceId persistenceId,
+                       ActorRef<DocumentRegistry.Command> registry,
+                       ActorRef<DocumentIndexer.Command> indexers) {
+        super(persistenceId);
+        this.context = context;
+        this.timers = timers;
+        this.registry = registry;
+        this.indexers = indexers;
+
+        var config = context.getSystem().settings().config().getConfig("case-search-engine-index.reindex");
+        this.pageSize = config.getInt("page-size");
+        this.maxDocumentsPerSecond = config.getInt("max-documents-per-second");
+        this.askTimeout = config.getDuration("ask-timeout");
+        this.retryBackoff = config.getDuration("retry-backoff");
+    }
+
+    @Override
+    public State emptyState() {
+        return new State(Status.IDLE, Optional.empty(), 0, 0, 0, Optional.empty(), Optional.empty());
+    }
+
+    // Commands
+    public final static class Start implements Command {
+        public final ActorRef<StatusReply<ReindexProgress>> replyTo;
+
+        public Start(ActorRef<StatusReply<ReindexProgress>> replyTo) {
+            this.replyTo = replyTo;
+        }
+    }
+
+    public final static class Cancel implements Command {
+        public final ActorRef<StatusReply<ReindexProgress>> replyTo;
+
+        public Cancel(ActorRef<StatusReply<ReindexProgress>> replyTo) {
+            this.replyTo = replyTo;
+        }
+    }
+
+    public final static class GetProgress implements Command {
+        public final ActorRef<ReindexProgress> replyTo;
+
+        public GetProgress(ActorRef<ReindexProgress> replyTo) {
+            this.replyTo = replyTo;
+        }
+    }
+
+    private final static class PageIndexed implements Command {
+        private final int generation;
+        private final DocumentsPage page;
+        private final ActorRef<Done> replyTo;
+
+        private PageIndexed(int generation, DocumentsPage page, ActorRef<Done> replyTo) {
+            this.generation = generation;
+            this.page = page;
+            this.replyTo = replyTo;
+        }
+    }
+
+    private final static class StreamFinished implements Command {
+        private final int generation;
+        private final Optional<String> failure;
+
+        private StreamFinished(int generation, Optional<String> failure) {
+            this.generation = generation;
+            this.failure = failure;
+        }
+    }
+
+    private enum Resume implements Command {
+        INSTANCE
+    }
+
+    @Override
+    public CommandHandler<Command, Event, State> commandHandler() {
+        return newCommandHandlerBuilder()
+                .forAnyState()
+                .onCommand(Start.class, this::onStart)
+                .onCommand(Cancel.class, this::onCancel)
+                .onCommand(GetProgress.class, (state, command) -> Effect().reply(command.replyTo, state.progress(Instant.now())))
+                .onCommand(PageIndexed.class, this::onPageIndexed)
+                .onCommand(StreamFinished.class, this::onStreamFinished)
+                .onCommand(Resume.class, this::onResume)
+                .build();
+    }
+
+    // Effects
+    private Effect<Event, State> onStart(State state, Start startCommand) {
+        if (state.isRunning()) {
+            return Effect().reply(startCommand.replyTo, StatusReply.error(new CaseSearchEngineException("A reindex is already running")));
+        }
+
+        return Effect()
+                .persist(new ReindexStarted(Instant.now()))
+                .thenRun(this::startStream)
+                .thenReply(startCommand.replyTo, started -> StatusReply.success(started.progress(Instant.now())));
+    }
+
+    private Effect<Event, State> onCancel(State state, Cancel cancelCommand) {
+        if (!state.isRunning()) {
+            return Effect().reply(cancelCommand.replyTo, StatusReply.error(new CaseSearchEngineException("There is no reindex running")));
+        }
+
+        return Effect()
+                .persist(new ReindexFinished(Status.CANCELLED, Instant.now()))
+                .thenRun(cancelled -> stopStream())
+                .thenReply(cancelCommand.replyTo, cancelled -> StatusReply.success(cancelled.progress(Instant.now())));
+    }
+
+    private Effect<Event, State> onPageIndexed(State state, PageIndexed pageIndexedCommand) {
+        if (!state.isRunning() || pageIndexedCommand.generation != generation) {
+            return Effect().reply(pageIndexedCommand.replyTo, Done.getInstance());
+        }
+
+        var page = pageIndexedCommand.page;
+        return Effect()
+                .persist(new CheckpointReached(page.lastId, page.ids.size(), page.scanned, page.totalDocuments))
+                .thenReply(pageIndexedCommand.replyTo, checkpointReached -> Done.getInstance());
+    }
+
+    private Effect<Event, State> onStreamFinished(State state, StreamFinished streamFinishedCommand) {
+        if (!state.isRunning() || streamFinishedCommand.generation != generation) {
+            return Effect().none();
+        }
+
+        running = Optional.empty();
+        if (streamFinishedCommand.failure.isPresent()) {
+            log.error("The reindex failed, resuming from the checkpoint in {}: {}", retryBackoff, streamFinishedCommand.failure.get());
+            timers.startSingleTimer(Resume.INSTANCE, retryBackoff);
+            return Effect().none();
+        }
+
+        return Effect()
+                .persist(new ReindexFinished(Status.COMPLETED, Instant.now()))
+                .thenRun(completed -> log.info("Reindex completed, {} documents indexed", completed.indexed));
+    }
+
+    private Effect<Event, State> onResume(State state) {
+        if (state.isRunning() && running.isEmpty()) {
+            startStream(state);
+        }
+
+        return Effect().none();
+    }
+
+    private void startStream(State state) {
+        stopStream();
+        var streamGeneration = ++generation;
+        var self = context.getSelf();
+        var scheduler = context.getSystem().scheduler();
+        log.info("Reindexing the documents after {}", state.checkpoint.orElse("the beginning"));
+
+        Pair<UniqueKillSwitch, CompletionStage<Done>> stream = Source.unfoldAsync(
+                        new Cursor(state.checkpoint, true),
+                        cursor -> {
+                            if (!cursor.hasMore) return CompletableFuture.completedFuture(Optional.<Pair<Cursor, DocumentsPage>>empty());
+
+                            return AskPattern.<DocumentRegistry.Command, DocumentsPage>ask(registry, ref -> new DocumentRegistry.GetDocumentsPage(cursor.afterId, pageSize, ref), askTimeout, scheduler)
+                                    .thenApply(page -> Optional.of(Pair.create(new Cursor(page.lastId.or(() -> cursor.afterId), page.hasMore), page)));
+                        })
+                .throttle(maxDocumentsPerSecond, Duration.ofSeconds(1), Math.max(maxDocumentsPerSecond, pageSize), page -> page.ids.size(), ThrottleMode.shaping())
+                .mapAsync(1, page -> indexPage(page, scheduler))
+                .mapAsync(1, page -> AskPattern.<Command, Done>ask(self, ref -> new PageIndexed(streamGeneration, page, ref), askTimeout, scheduler))
+                .viaMat(KillSwitches.single(), Keep.right())
+                .toMat(Sink.ignore(), Keep.both())
+                .run(context.getSystem());
+
+        stream.second().whenComplete((done, exception) ->
+                self.tell(new StreamFinished(streamGeneration, Optional.ofNullable(exception).map(Throwable::getMessage))));
+        running = Optional.of(stream.first());
+    }
+
+    private void stopStream() {
+        running.ifPresent(UniqueKillSwitch::shutdown);
+        running = Optional.empty();
+    }
+
+    /**
+     * Completes once the indexers acknowledge every document of the page. The ones failing in the search engine are
+     * retried by the indexers, when that takes longer than the ask timeout the page is sent again from the checkpoint
+     */
+    private CompletionStage<DocumentsPage> indexPage(DocumentsPage page, Scheduler scheduler) {
+        ActorRef<DocumentRegistry.DocumentStatusToIndexed> respondTo = registry.narrow();
+
+        return Source.from(page.documents)
+                .mapAsyncUnordered(Math.max(1, page.documents.size()), document -> AskPattern.<DocumentIndexer.Command, Done>ask(indexers,
+                        ref -> new DocumentIndexer.IndexDocument(document.id, document.dataSource, document.version, respondTo).withAckTo(ref), askTimeout, scheduler))
+                .runWith(Sink.ignore(), context.getSystem())
+                .thenApply(done -> page);
+    }
+
+    private static final class Cursor {
+        private final Optional<String> afterId;
+        private final boolean hasMore;
+
+        private Cursor(Optional<String> afterId, boolean hasMore) {
+            this.afterId = afterId;
+            this.hasMore = hasMore;
+        }
+    }
+
+    @Override
+    public EventHandler<State, Event> eventHandler() {
+        return newEventHandlerBuilder()
+                .forAnyState()
+                .onEvent(ReindexStarted.class, (state, event) -> state.started(event.timestamp))
+                .onEvent(CheckpointReached.class, (state, event) -> state.checkpointReached(event.lastId, event.indexed, event.scanned, event.totalDocuments))
+                .onEvent(ReindexFinished.class, (state, event) -> state.finished(event.status, event.timestamp))
+                .build();
+    }
+
+    // Events
+    public final static class ReindexStarted implements Event {
+        public final Instant timestamp;
+
+        @JsonCreator
+        public ReindexStarted(@JsonProperty("timestamp") Instant timestamp) {
+            this.timestamp = timestamp;
+        }
+    }
+
+    public final static class CheckpointReached implements Event {
+        public final Optional<String> lastId;
+        public final int indexed;
+        public final int scanned;
+        public final int totalDocuments;
+
+        @JsonCreator
+        public CheckpointReached(@JsonProperty("lastId") Optional<String> lastId,
+                                 @JsonProperty("indexed") int indexed,
+                                 @JsonProperty("scanned") int scanned,
+                                 @JsonProperty("totalDocuments") int totalDocuments) {
+            this.lastId = lastId;
+            this.indexed = indexed;
+            this.scanned = scanned;
+            this.totalDocuments = totalDocuments;
+        }
+    }
+
+    public final static class ReindexFinished implements Event {
+        public final Status status;
+        public final Instant timestamp;
+
+        @JsonCreator
+        public ReindexFinished(@JsonProperty("status") Status status, @JsonProperty("timestamp") Instant timestamp) {
+            this.status = status;
+            this.timestamp = timestamp;
+        }
+    }
+
+    @Override
+    public SignalHandler<State> signalHandler() {
+        // Resume the reindex that was running before a shutdown or restart
+        return newSignalHandlerBuilder()
+                .onSignal(RecoveryCompleted.instance(), state -> {
+                    if (state.isRunning()) startStream(state);
+                })
+                .build();
+    }
+}
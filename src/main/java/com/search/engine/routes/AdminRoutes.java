@@ -0,0 +1,68 @@
+package com.search.engine.routes;
+
+import akka.actor.typed.ActorRef;
+import akka.actor.typed.ActorSystem;
+import akka.actor.typed.Scheduler;
+import akka.actor.typed.javadsl.AskPattern;
+import akka.http.javadsl.marshalling.Marshaller;
+import akka.http.javadsl.model.RequestEntity;
+import akka.http.javadsl.model.StatusCodes;
+import akka.http.javadsl.server.Route;
+import akka.pattern.StatusReply;
+import com.search.engine.models.ReindexProgress;
+import com.search.engine.reindex.ReindexJob;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.time.Duration;
+
+import static akka.http.javadsl.server.Directives.*;
+import static akka.http.javadsl.server.PathMatchers.segment;
+
+/**
+ * Administration routes
+ * <p>
+ * POST /admin/reindex. Starts reindexing all the documents that are not deleted, 409 if a reindex is already running.
+ * GET /admin/reindex. Returns the progress of the current or last reindex.
+ * DELETE /admin/reindex. Cancels the running reindex, 409 if there is none.
+ */
+public class AdminRoutes {
+    private final static Logger log = LoggerFactory.getLogger(AdminRoutes.class);
+
+    private final ActorRef<ReindexJob.Command> reindexJob;
+    private final Scheduler scheduler;
+    private final Duration askTimeout;
+    private final Marshaller<Object, RequestEntity> marshaller;
+
+    public AdminRoutes(ActorSystem<?> system, ActorRef<ReindexJob.Command> reindexJob) {
+        this.reindexJob = reindexJob;
+
+        scheduler = system.scheduler();
+        askTimeout = system.settings().config().getDuration("case-search-engine-index.routes.ask-timeout");
+        marshaller = new JsonMarshalling(system).marshaller();
+    }
+
+    public Route adminRoutes() {
+        return path(segment("admin").slash("reindex"), () ->
+                concat(
+                        post(() -> onSuccess(AskPattern.<ReindexJob.Command, StatusReply<ReindexProgress>>ask(reindexJob, ReindexJob.Start::new, askTimeout, scheduler), started -> {
+                            if (started.isError()) {
+                                return complete(StatusCodes.CONFLICT, started.getError().getMessage());
+                            }
+
+                            log.info("Reindex started");
+                            return complete(StatusCodes.ACCEPTED, started.getValue(), marshaller);
+                        })),
+                        get(() -> onSuccess(AskPattern.<ReindexJob.Command, ReindexProgress>ask(reindexJob, ReindexJob.GetProgress::new, askTimeout, scheduler),
+                                progress -> complete(StatusCodes.OK, progress, marshaller))),
+                        delete(() -> onSuccess(AskPattern.<ReindexJob.Command, StatusReply<ReindexProgress>>ask(reindexJob, ReindexJob.Cancel::new, askTimeout, scheduler), cancelled -> {
+                            if (cancelled.isError()) {
+                                return complete(StatusCodes.CONFLICT, cancelled.getError().getMessage());
+                            }
+
+                            log.info("Reindex cancelled");
+                            return complete(StatusCodes.OK, cancelled.getValue(), marshaller);
+                        }))
+                ));
+    }
+}
@@ -0,0 +1,183 @@
+package com.search.engine.routes;
+
+import akka.actor.Cancellable;
+import akka.actor.typed.ActorSystem;
+import com.search.engine.exceptions.ServiceUnavailableException;
+import com.typesafe.config.Config;
+
+import java.time.Duration;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+/**
+ * Bounds the number of requests being processed at the same time.
+ * <p>
+ * When all the slots are taken, the request waits in a bounded queue for a limited time. Requests that do not fit
+ * in the queue, or wait longer than allowed, are rejected with a {@link ServiceUnavailableException} so the client
+ * gets a fast answer instead of waiting for the ask timeout.
+ */
+public class AdmissionControl {
+    private final ActorSystem<?> system;
+    private final int maxInFlight;
+    private final int maxQueued;
+    private final Duration maxQueueTime;
+    private final Duration retryAfter;
+
+    private final AtomicInteger inFlight = new AtomicInteger();
+    private final AtomicInteger queued = new AtomicInteger();
+    private final AtomicBoolean closed = new AtomicBoolean();
+    private final Queue<Waiting<?>> waiting = new ConcurrentLinkedQueue<>();
+
+    public AdmissionControl(ActorSystem<?> system) {
+        this(system, system.settings().config().getConfig("case-search-engine-index.routes.admission"));
+    }
+
+    AdmissionControl(ActorSystem<?> system, Config config) {
+        this.system = system;
+        this.maxInFlight = config.getInt("max-in-flight");
+        this.maxQueued = config.getInt("max-queued");
+        this.maxQueueTime = config.getDuration("max-queue-time");
+        this.retryAfter = config.getDuration("retry-after");
+    }
+
+    /**
+     * Runs the work when there is a free slot. The slot is released when the returned stage completes
+     */
+    public <T> CompletionStage<T> admit(Supplier<CompletionStage<T>> work) {
+        if (closed.get()) {
+            return CompletableFuture.failedFuture(new ServiceUnavailableException("The service is shutting down", retryAfter));
+        }
+
+        if (tryAcquire()) {
+            return run(work);
+        }
+
+        if (queued.incrementAndGet() > maxQueued) {
+            queued.decrementAndGet();
+            return CompletableFuture.failedFuture(new ServiceUnavailableException("The service is saturated, too many requests waiting", retryAfter));
+        }
+
+        var request = new Waiting<>(work);
+        waiting.add(request);
+        request.timeout = system.scheduler().scheduleOnce(maxQueueTime, () -> {
+            if (request.claim()) {
+                queued.decrementAndGet();
+                request.result.completeExceptionally(new ServiceUnavailableException("The service is saturated, the request waited too long", retryAfter));
+            }
+        }, system.executionContext());
+
+        // A slot could have been released while the request was being queued
+        drain();
+        return request.result;
+    }
+
+    /**
+     * Rejects the new requests and the ones waiting in the queue. The requests in flight are left to complete
+     */
+    public void close() {
+        if (!closed.compareAndSet(false, true)) return;
+
+        Waiting<?> request;
+        while ((request = waiting.poll()) != null) {
+            if (request.claim()) {
+                queued.decrementAndGet();
+                if (request.timeout != null) request.timeout.cancel();
+                request.result.completeExceptionally(new ServiceUnavailableException("The service is shutting down", retryAfter));
+            }
+        }
+    }
+
+    public int inFlight() {
+        return inFlight.get();
+    }
+
+    public int queued() {
+        return queued.get();
+    }
+
+    private boolean tryAcquire() {
+        int current;
+        do {
+            current = inFlight.get();
+            if (current >= maxInFlight) return false;
+        } while (!inFlight.compareAndSet(current, current + 1));
+
+        return true;
+    }
+
+    private void release() {
+        inFlight.decrementAndGet();
+        drain();
+    }
+
+    private void drain() {
+        while (!closed.get() && !waiting.isEmpty() && tryAcquire()) {
+            var request = waiting.poll();
+
+            if (request == null) { // Another thread took it
+                inFlight.decrementAndGet();
+                return;
+            }
+
+            if (request.claim()) {
+                queued.decrementAndGet();
+                request.start();
+            } else { // It already timed out
+                inFlight.decrementAndGet();
+            }
+        }
+    }
+
+    private <T> CompletionStage<T> run(Supplier<CompletionStage<T>> work) {
+        CompletionStage<T> stage;
+        try {
+            stage = work.get();
+        } catch (RuntimeException ex) {
+            release();
+            throw ex;
+        }
+
+        stage.whenComplete((result, exception) -> release());
+        return stage;
+    }
+
+    private final class Waiting<T> {
+        private final Supplier<CompletionStage<T>> work;
+        private final CompletableFuture<T> result = new CompletableFuture<>();
+        private final AtomicBoolean claimed = new AtomicBoolean();
+        private volatile Cancellable timeout;
+
+        private Waiting(Supplier<CompletionStage<T>> work) {
+            this.work = work;
+        }
+
+        /**
+         * Either the timeout or a released slot claims the request, never both
+         */
+        private boolean claim() {
+            return claimed.compareAndSet(false, true);
+        }
+
+        private void start() {
+            if (timeout != null) timeout.cancel();
+
+            try {
+                run(work).whenComplete((value, exception) -> {
+                    if (exception != null) {
+                        result.completeExceptionally(exception instanceof CompletionException && exception.getCause() != null ? exception.getCause() : exception);
+                    } else {
+                        result.complete(value);
+                    }
+                });
+            } catch (RuntimeException ex) {
+                result.completeExceptionally(ex);
+            }
+        }
+    }
+}
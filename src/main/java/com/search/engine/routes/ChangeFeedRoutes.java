@@ -0,0 +1,169 @@
+package com.search.engine.routes;
+
+import akka.NotUsed;
+import akka.actor.typed.ActorSystem;
+import akka.http.javadsl.model.ContentTypes;
+import akka.http.javadsl.model.HttpEntities;
+import akka.http.javadsl.model.StatusCodes;
+import akka.http.javadsl.model.headers.Accept;
+import akka.http.javadsl.model.sse.ServerSentEvent;
+import akka.http.javadsl.server.Route;
+import akka.persistence.query.EventEnvelope;
+import akka.persistence.query.PersistenceQuery;
+import akka.persistence.query.javadsl.CurrentEventsByPersistenceIdQuery;
+import akka.persistence.query.javadsl.EventsByPersistenceIdQuery;
+import akka.persistence.typed.PersistenceId;
+import akka.stream.OverflowStrategy;
+import akka.stream.javadsl.Sink;
+import akka.stream.javadsl.Source;
+import akka.util.ByteString;
+import com.search.engine.DocumentRegistry;
+import com.search.engine.models.DocumentChange;
+import com.search.engine.models.DocumentState;
+import com.typesafe.config.Config;
+
+import java.time.Duration;
+import java.util.Optional;
+import java.util.concurrent.CompletionStage;
+
+import static akka.http.javadsl.marshalling.sse.EventStreamMarshalling.toEventStream;
+import static akka.http.javadsl.server.Directives.*;
+import static akka.http.javadsl.server.PathMatchers.segment;
+
+/**
+ * Routes of the change feed
+ * <p>
+ * GET /documents/changes. Streams the documents becoming INDEXED or DELETED, read from the journal of the registry.
+ * <p>
+ * The changes are sent as Server-Sent Events, or as newline delimited JSON when the client accepts
+ * application/x-ndjson. Every change carries its offset. SSE clients resume after an offset with the
+ * Last-Event-ID header, the rest with the offset query parameter. Every client has its own bounded buffer and
+ * the journal is only read as fast as the client consumes.
+ * <p>
+ * The changes of archived journal partitions cannot be read. Resuming after an offset before the oldest change
+ * available is rejected with 410 Gone instead of skipping the archived changes. Without offset the feed starts at
+ * the oldest change available.
+ */
+public class ChangeFeedRoutes {
+    private static final String LAST_EVENT_ID_HEADER = "Last-Event-ID";
+
+    private final ActorSystem<?> system;
+    private final PersistenceId registryPersistenceId;
+    private final EventsByPersistenceIdQuery readJournal;
+    private final CurrentEventsByPersistenceIdQuery currentReadJournal;
+    private final JsonMarshalling json;
+    private final int bufferSize;
+    private final Duration keepAlive;
+
+    public ChangeFeedRoutes(ActorSystem<?> system, PersistenceId registryPersistenceId) {
+        this.system = system;
+        this.registryPersistenceId = registryPersistenceId;
+
+        Config config = system.settings().config().getConfig("case-search-engine-index.change-feed");
+        this.readJournal = PersistenceQuery.get(system)
+                .getReadJournalFor(EventsByPersistenceIdQuery.class, config.getString("read-journal"));
+        this.currentReadJournal = PersistenceQuery.get(system)
+                .getReadJournalFor(CurrentEventsByPersistenceIdQuery.class, config.getString("read-journal"));
+        this.json = new JsonMarshalling(system);
+        this.bufferSize = config.getInt("buffer-size");
+        this.keepAlive = config.getDuration("keep-alive");
+    }
+
+    public Route changeFeedRoutes() {
+        return path(segment("documents").slash("changes"), () ->
+                get(() -> optionalHeaderValueByName(LAST_EVENT_ID_HEADER, lastEventId ->
+                        parameterOptional("offset", offset -> {
+                            var resumeAfter = lastEventId.or(() -> offset);
+                            var from = parseOffset(resumeAfter);
+                            if (from.isEmpty()) {
+                                return complete(StatusCodes.BAD_REQUEST, "The offset provided is invalid");
+                            }
+                            if (resumeAfter.isEmpty()) return changeFeed(from.get());
+
+                            return onSuccess(oldestOffset(), oldest -> oldest.isPresent() && from.get() + 1 < oldest.get()
+                                    ? complete(StatusCodes.GONE, "The changes after the offset " + from.get()
+                                    + " are archived, the oldest change available has the offset " + oldest.get())
+                                    : changeFeed(from.get()));
+                        }))));
+    }
+
+    private Route changeFeed(long afterOffset) {
+        // Without an Accept header the client gets Server-Sent Events
+        return optionalHeaderValueByType(Accept.class, accept -> accept.filter(this::acceptsNdjson).isPresent()
+                ? ndjson(changes(afterOffset))
+                : serverSentEvents(changes(afterOffset)));
+    }
+
+    /**
+     * @return the offset of the oldest change in the journal, the ones before are archived. Empty when there are no
+     * events
+     */
+    private CompletionStage<Optional<Long>> oldestOffset() {
+        return currentReadJournal.currentEventsByPersistenceId(registryPersistenceId.id(), 0, Long.MAX_VALUE)
+                .take(1)
+                .map(EventEnvelope::sequenceNr)
+                .runWith(Sink.headOption(), system);
+    }
+
+    /**
+     * @return the changes after the given offset
+     */
+    Source<DocumentChange, NotUsed> changes(long afterOffset) {
+        return readJournal.eventsByPersistenceId(registryPersistenceId.id(), afterOffset + 1, Long.MAX_VALUE)
+                .map(this::toChange)
+                .filter(Optional::isPresent)
+                .map(Optional::get)
+                .buffer(bufferSize, OverflowStrategy.backpressure());
+    }
+
+    private Optional<DocumentChange> toChange(EventEnvelope envelope) {
+        Object event = envelope.event();
+
+        if (event instanceof DocumentRegistry.DocumentIndexed) {
+            var documentIndexed = (DocumentRegistry.DocumentIndexed) event;
+            return Optional.of(new DocumentChange(envelope.sequenceNr(), documentIndexed.id, DocumentState.INDEXED, documentIndexed.dataSource, documentIndexed.timestamp));
+        } else if (event instanceof DocumentRegistry.DocumentDeleted) {
+            var documentDeleted = (DocumentRegistry.DocumentDeleted) event;
+            return Optional.of(new DocumentChange(envelope.sequenceNr(), documentDeleted.id, DocumentState.DELETED, null, null));
+        }
+
+        return Optional.empty();
+    }
+
+    private Route serverSentEvents(Source<DocumentChange, NotUsed> changes) {
+        Source<ServerSentEvent, Object> events = changes
+                .map(change -> ServerSentEvent.create(json.write(change).utf8String(), change.state.name(), String.valueOf(change.offset)))
+                .keepAlive(keepAlive, ServerSentEvent::heartbeat)
+                .mapMaterializedValue(notUsed -> notUsed);
+
+        return completeOK(events, toEventStream());
+    }
+
+    private Route ndjson(Source<DocumentChange, NotUsed> changes) {
+        Source<ByteString, NotUsed> lines = changes
+                .map(change -> json.write(change).concat(ByteString.fromString("\n")))
+                .keepAlive(keepAlive, () -> ByteString.fromString("\n"));
+
+        return complete(HttpEntities.createChunked(ContentTypes.create(JsonMarshalling.APPLICATION_NDJSON), lines));
+    }
+
+    private boolean acceptsNdjson(Accept accept) {
+        for (var range : accept.getMediaRanges()) {
+            if (!range.isWildcard() && range.matches(JsonMarshalling.APPLICATION_NDJSON)) return true;
+        }
+
+        return false;
+    }
+
+    private Optional<Long> parseOffset(Optional<String> offset) {
+        if (offset.isEmpty()) return Optional.of(0L);
+
+        var value = offset.get();
+        if (value.isEmpty() || value.length() > 18) return Optional.empty();
+        for (int i = 0; i < value.length(); i++) {
+            if (!Character.isDigit(value.charAt(i))) return Optional.empty();
+        }
+
+        return Optional.of(Long.parseLong(value));
+    }
+}
@@ -0,0 +1,174 @@
+package com.search.engine.routes;
+
+import akka.NotUsed;
+import akka.actor.typed.ActorRef;
+import akka.actor.typed.ActorSystem;
+import akka.actor.typed.Scheduler;
+import akka.actor.typed.javadsl.AskPattern;
+import akka.http.javadsl.model.ContentTypes;
+import akka.http.javadsl.model.HttpEntities;
+import akka.http.javadsl.model.HttpResponse;
+import akka.http.javadsl.model.StatusCodes;
+import akka.http.javadsl.model.headers.RetryAfter;
+import akka.http.javadsl.server.Route;
+import akka.japi.Pair;
+import akka.stream.javadsl.Source;
+import akka.util.ByteString;
+import com.search.engine.DocumentRegistry;
+import com.search.engine.exceptions.ServiceUnavailableException;
+import com.search.engine.models.DataSource;
+import com.search.engine.models.DeltaDocument;
+import com.search.engine.models.DeltaPage;
+import com.typesafe.config.Config;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.time.format.DateTimeParseException;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.TimeoutException;
+
+import static akka.http.javadsl.server.Directives.*;
+import static akka.http.javadsl.server.PathMatchers.segment;
+
+/**
+ * Routes of the delta export
+ * <p>
+ * GET /documents/delta?since={timestamp}&dataSource={dataSource}. Streams, as newline delimited JSON, the documents
+ * indexed from the data source since the given ISO-8601 timestamp, in timestamp order. The documents are read from
+ * the registry one page at a time, as fast as the client consumes them. The documents deleted since are written as
+ * tombstones, with only their id, state, version and the time they were deleted. When the registry can not serve
+ * the first page the request gets 503 Service Unavailable with Retry-After.
+ */
+public class DeltaRoutes {
+    private final ActorRef<DocumentRegistry.Command> documentRegistry;
+    private final Scheduler scheduler;
+    private final Duration askTimeout;
+    private final int pageSize;
+    private final JsonMarshalling json;
+
+    public DeltaRoutes(ActorSystem<?> system, ActorRef<DocumentRegistry.Command> documentRegistry) {
+        this.documentRegistry = documentRegistry;
+
+        Config config = system.settings().config().getConfig("case-search-engine-index.delta");
+        this.scheduler = system.scheduler();
+        this.askTimeout = config.getDuration("ask-timeout");
+        this.pageSize = config.getInt("page-size");
+        this.json = new JsonMarshalling(system);
+    }
+
+    public Route deltaRoutes() {
+        return path(segment("documents").slash("delta"), () ->
+                get(() -> parameter("since", since -> parameter("dataSource", dataSource -> {
+                    var from = parseTimestamp(since);
+                    if (from.isEmpty()) {
+                        return complete(StatusCodes.BAD_REQUEST, "The since parameter must be an ISO-8601 timestamp");
+                    }
+
+                    var source = parseDataSource(dataSource);
+                    if (source.isEmpty()) {
+                        return complete(StatusCodes.BAD_REQUEST, "The dataSource parameter is invalid");
+                    }
+
+                    // The first page is read before answering, so a registry not able to serve it gets 503
+                    var start = new Cursor(from.get(), Optional.empty(), true);
+                    return onComplete(page(source.get(), start), first -> {
+                        if (first.isFailure()) {
+                            return unavailable(first.failed().get());
+                        }
+
+                        Source<ByteString, NotUsed> lines = delta(source.get(), start, first.get())
+                                .map(document -> json.write(document).concat(ByteString.fromString("\n")));
+                        return complete(HttpEntities.createChunked(ContentTypes.create(JsonMarshalling.APPLICATION_NDJSON), lines));
+                    });
+                }))));
+    }
+
+    /**
+     * @return the documents indexed from the data source since the given time
+     */
+    Source<DeltaDocument, NotUsed> delta(DataSource dataSource, Instant since) {
+        var start = new Cursor(since, Optional.empty(), true);
+        return Source.completionStage(page(dataSource, start))
+                .flatMapConcat(first -> delta(dataSource, start, first));
+    }
+
+    /**
+     * The pages after the first one fail the stream when the registry can not serve them, the client sees the
+     * response cut instead of waiting
+     */
+    private Source<DeltaDocument, NotUsed> delta(DataSource dataSource, Cursor start, DeltaPage first) {
+        return Source.unfoldAsync(Pair.create(start, Optional.of(first)), state -> {
+                    var cursor = state.first();
+                    if (!cursor.hasMore) return CompletableFuture.completedFuture(Optional.<Pair<Pair<Cursor, Optional<DeltaPage>>, DeltaPage>>empty());
+
+                    CompletionStage<DeltaPage> page = state.second().isPresent()
+                            ? CompletableFuture.completedFuture(state.second().get())
+                            : page(dataSource, cursor);
+                    return page.thenApply(read -> Optional.of(Pair.create(Pair.create(
+                            new Cursor(read.lastTimestamp.orElse(cursor.timestamp), read.lastId.or(() -> cursor.afterId), read.hasMore),
+                            Optional.<DeltaPage>empty()), read)));
+                })
+                .mapConcat(page -> page.documents);
+    }
+
+    /**
+     * Fails with the error of the registry, a {@link ServiceUnavailableException} when the bodies of the documents
+     * could not be loaded
+     */
+    private CompletionStage<DeltaPage> page(DataSource dataSource, Cursor cursor) {
+        return AskPattern.<DocumentRegistry.Command, DeltaPage>askWithStatus(documentRegistry,
+                ref -> new DocumentRegistry.GetDelta(dataSource, cursor.timestamp, cursor.afterId, pageSize, ref), askTimeout, scheduler);
+    }
+
+    private Route unavailable(Throwable failure) {
+        var cause = failure instanceof CompletionException && failure.getCause() != null ? failure.getCause() : failure;
+        if (cause instanceof ServiceUnavailableException) {
+            return retryLater(cause.getMessage(), ((ServiceUnavailableException) cause).getRetryAfter());
+        }
+        if (cause instanceof TimeoutException) {
+            return retryLater("The request timed out waiting for the registry", askTimeout);
+        }
+        return failWith(cause);
+    }
+
+    private Route retryLater(String message, Duration retryAfter) {
+        // Retry-After is expressed in whole seconds, round up so the client does not come back too early
+        long retryAfterSeconds = Math.max(1, (retryAfter.toMillis() + 999) / 1000);
+
+        return complete(HttpResponse.create()
+                .withStatus(StatusCodes.SERVICE_UNAVAILABLE)
+                .addHeader(RetryAfter.create(retryAfterSeconds))
+                .withEntity(message));
+    }
+
+    private Optional<Instant> parseTimestamp(String timestamp) {
+        try {
+            return Optional.of(Instant.parse(timestamp));
+        } catch (DateTimeParseException ex) {
+            return Optional.empty();
+        }
+    }
+
+    private Optional<DataSource> parseDataSource(String dataSource) {
+        for (DataSource value : DataSource.values()) {
+            if (value.name().equals(dataSource)) return Optional.of(value);
+        }
+
+        return Optional.empty();
+    }
+
+    private static final class Cursor {
+        private final Instant timestamp;
+        private final Optional<String> afterId;
+        private final boolean hasMore;
+
+        private Cursor(Instant timestamp, Optional<String> afterId, boolean hasMore) {
+            this.timestamp = timestamp;
+            this.afterId = afterId;
+            this.hasMore = hasMore;
+        }
+    }
+}
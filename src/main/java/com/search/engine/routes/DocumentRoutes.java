@@ -5,105 +5,331 @@ import akka.actor.typed.ActorRef;
 import akka.actor.typed.ActorSystem;
 import akka.actor.typed.Scheduler;
 import akka.actor.typed.javadsl.AskPattern;
-import akka.http.javadsl.marshallers.jackson.Jackson;
+import akka.http.javadsl.marshalling.Marshaller;
+import akka.http.javadsl.model.HttpEntity;
+import akka.http.javadsl.model.HttpResponse;
+import akka.http.javadsl.model.RequestEntity;
+import akka.http.javadsl.model.StatusCode;
 import akka.http.javadsl.model.StatusCodes;
+import akka.http.javadsl.model.headers.ETag;
+import akka.http.javadsl.model.headers.EntityTag;
+import akka.http.javadsl.model.headers.Location;
+import akka.http.javadsl.model.headers.RawHeader;
+import akka.http.javadsl.model.headers.RetryAfter;
 import akka.http.javadsl.server.ExceptionHandler;
 import akka.http.javadsl.server.PathMatchers;
 import akka.http.javadsl.server.RejectionHandler;
 import akka.http.javadsl.server.Route;
+import akka.http.javadsl.unmarshalling.Unmarshaller;
 import akka.pattern.StatusReply;
 import com.search.engine.DocumentRegistry;
 import com.search.engine.exceptions.CaseSearchEngineException;
+import com.search.engine.exceptions.PreconditionFailedException;
+import com.search.engine.exceptions.UnprocessableEntityException;
+import com.search.engine.exceptions.ServiceUnavailableException;
+import com.search.engine.exceptions.TooManyRequestsException;
+import com.search.engine.exceptions.ValidationException;
 import com.search.engine.models.Document;
 import com.search.engine.models.DocumentCreatedResponse;
 import com.search.engine.models.DocumentUpdatedResponse;
+import com.search.engine.models.ValidationErrorResponse;
+import com.search.engine.tracing.TraceContext;
+import com.search.engine.tracing.Tracing;
 import com.search.engine.validators.RequestValidator;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.time.Duration;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.CompletionException;
 import java.util.concurrent.CompletionStage;
+import java.util.concurrent.TimeoutException;
+import java.util.function.BiFunction;
+import java.util.function.Function;
+import java.util.function.Supplier;
 
 import static akka.http.javadsl.server.Directives.*;
 
 /**
  * Routes exposed in the system
  * <p>
- * POST /documents. Creates a new document in the system.
+ * POST /documents. Creates a new document in the system. Retries with the same Idempotency-Key header return the same document.
  * PATCH /documents/{id}. Modifies the document with the id indicated in the request path.
  * DELETE /documents/{id}. Deletes the document from Solr and marks it as DELETED in the system.
+ * <p>
+ * The version of the document is returned in the ETag header when it is created or modified. With an If-Match
+ * header, PATCH and DELETE are only performed if the document still has one of its versions, otherwise they answer
+ * 412 Precondition Failed.
+ * <p>
+ * With the Prefer: respond-async header the writes answer 202 Accepted as soon as they are admitted, with the
+ * status of the operation, and its outcome is polled in /operations, see {@link OperationRoutes}.
+ * <p>
+ * The writes sampled for tracing answer with their traceparent header, see {@link Tracing}.
  */
 public class DocumentRoutes {
     private final static Logger log = LoggerFactory.getLogger(DocumentRoutes.class);
+    private final static String IDEMPOTENCY_KEY_HEADER = "Idempotency-Key";
+    private final static String PREFER_HEADER = "Prefer";
+    private final static String RESPOND_ASYNC = "respond-async";
+    private final static String IF_MATCH_HEADER = "If-Match";
+    private final static String TRACEPARENT_HEADER = "traceparent";
 
     private final RequestValidator<Document> validator;
     private final ActorRef<DocumentRegistry.Command> documentRegistry;
     private final Scheduler scheduler;
     private final Duration askTimeout;
+    private final AdmissionControl admissionControl;
+    private final OperationStore operations;
+    private final RateLimiter rateLimiter;
+    private final Tracing tracing;
+    private final Unmarshaller<HttpEntity, Document> documentUnmarshaller;
+    private final Marshaller<Object, RequestEntity> marshaller;
 
     public DocumentRoutes(ActorSystem<?> system, ActorRef<DocumentRegistry.Command> documentRegistry, RequestValidator<Document> validator) {
+        this(system, documentRegistry, validator, new OperationStore(system));
+    }
+
+    public DocumentRoutes(ActorSystem<?> system, ActorRef<DocumentRegistry.Command> documentRegistry, RequestValidator<Document> validator, OperationStore operations) {
+        this(system, documentRegistry, validator, operations, new AdmissionControl(system), new RateLimiter(system));
+    }
+
+    /**
+     * The routes of a tenant, with its own limits, see {@link TenantRoutes}
+     */
+    DocumentRoutes(ActorSystem<?> system, ActorRef<DocumentRegistry.Command> documentRegistry, RequestValidator<Document> validator, OperationStore operations,
+                   AdmissionControl admissionControl, RateLimiter rateLimiter) {
         this.documentRegistry = documentRegistry;
         this.validator = validator;
+        this.operations = operations;
+        this.admissionControl = admissionControl;
+        this.rateLimiter = rateLimiter;
 
         scheduler = system.scheduler();
         askTimeout = system.settings().config().getDuration("case-search-engine-index.routes.ask-timeout");
+        tracing = Tracing.get(system);
+
+        var json = new JsonMarshalling(system);
+        documentUnmarshaller = json.unmarshaller(Document.class);
+        marshaller = json.marshaller();
+    }
+
+    private CompletionStage<StatusReply<DocumentCreatedResponse>> createDocument(String client, Optional<String> idempotencyKey, Document document, Optional<TraceContext> trace) {
+        return traced(trace, "POST /documents", () -> {
+            rateLimiter.acquire(client, document.getDataSource());
+            validator.validatePost(document, idempotencyKey);
+            return idempotencyKey;
+        }, (key, sent) -> admissionControl.admit(() -> AskPattern.ask(documentRegistry, ref -> new DocumentRegistry.CreateDocument(document, key, sent, ref), askTimeout, scheduler)));
     }
 
-    private CompletionStage<StatusReply<DocumentCreatedResponse>> createDocument(Document document) {
-        validator.validatePostEntity(document);
-        return AskPattern.ask(documentRegistry, ref -> new DocumentRegistry.CreateDocument(document, ref), askTimeout, scheduler);
+    private CompletionStage<StatusReply<DocumentUpdatedResponse>> updateDocument(String client, String id, Optional<String> ifMatch, Document document, Optional<TraceContext> trace) {
+        return traced(trace, "PATCH /documents", () -> {
+            rateLimiter.acquire(client, document.getDataSource());
+            validator.validatePatch(id, document);
+            return expectedVersions(ifMatch);
+        }, (expectedVersions, sent) -> admissionControl.admit(() -> AskPattern.ask(documentRegistry, ref -> new DocumentRegistry.UpdateDocument(id, document, expectedVersions, sent, ref), askTimeout, scheduler)));
     }
 
-    private CompletionStage<StatusReply<DocumentUpdatedResponse>> updateDocument(String id, Document document) {
-        validator.validateId(id);
-        validator.validatePatchEntity(document);
-        return AskPattern.ask(documentRegistry, ref -> new DocumentRegistry.UpdateDocument(id, document, ref), askTimeout, scheduler);
+    private CompletionStage<StatusReply<Done>> deleteDocument(String client, String id, Optional<String> ifMatch, Optional<TraceContext> trace) {
+        return traced(trace, "DELETE /documents", () -> {
+            rateLimiter.acquire(client, null);
+            validator.validateId(id);
+            return expectedVersions(ifMatch);
+        }, (expectedVersions, sent) -> admissionControl.admit(() -> AskPattern.ask(documentRegistry, ref -> new DocumentRegistry.DeleteDocument(id, expectedVersions, sent, ref), askTimeout, scheduler)));
     }
 
-    private CompletionStage<StatusReply<Done>> deleteDocument(String id) {
-        validator.validateId(id);
-        return AskPattern.ask(documentRegistry, ref -> new DocumentRegistry.DeleteDocument(id, ref), askTimeout, scheduler);
+    /**
+     * Validates the request and asks the registry with what the validation returns. When the request is sampled, the
+     * validation and the wait for the reply, admission included, are recorded, and the root span ends with the reply
+     * or the rejection
+     */
+    private <V, T> CompletionStage<StatusReply<T>> traced(Optional<TraceContext> trace, String name, Supplier<V> validation,
+                                                          BiFunction<V, Optional<TraceContext>, CompletionStage<StatusReply<T>>> ask) {
+        V validated;
+        try {
+            validated = validation.get();
+        } catch (RuntimeException ex) {
+            tracing.finish(trace, name, Map.of("outcome", "rejected"));
+            throw ex;
+        }
+        tracing.record(trace, "http.validation", trace.map(root -> root.sentAt).orElse(0L), Map.of());
+
+        var askStart = Tracing.now();
+        var reply = ask.apply(validated, trace.map(TraceContext::sent));
+        trace.ifPresent(root -> reply.whenComplete((statusReply, exception) -> {
+            tracing.record(trace, "registry.ask", askStart, Map.of());
+            tracing.finish(trace, name, Map.of("outcome", exception != null ? "failed" : statusReply.isError() ? "error" : "ok"));
+        }));
+        return reply;
+    }
+
+    /**
+     * Samples the trace of the request. Its traceparent is returned, so the spans of the request can be found
+     */
+    private Route withTrace(Function<Optional<TraceContext>, Route> inner) {
+        var trace = tracing.sample();
+        return trace.map(root -> respondWithHeader(RawHeader.create(TRACEPARENT_HEADER, root.traceparent()), () -> inner.apply(trace)))
+                .orElseGet(() -> inner.apply(trace));
+    }
+
+    /**
+     * If-Match is * or a list of entity tags. The entity tags are the versions of the documents, strong and quoted,
+     * and If-Match compares them strongly: the weak tags, and the ones that are not a version, never match. * matches
+     * any version, so no version is expected. When no tag can match, the answer is 412 Precondition Failed
+     */
+    static Set<Long> expectedVersions(Optional<String> ifMatch) {
+        if (ifMatch.isEmpty() || ifMatch.get().trim().equals("*")) return Set.of();
+
+        var versions = new HashSet<Long>();
+        for (String element : ifMatch.get().split(",")) {
+            var tag = element.trim();
+            if (tag.isEmpty()) continue;
+
+            var weak = tag.startsWith("W/");
+            var opaque = weak ? tag.substring(2) : tag;
+            if (opaque.length() < 2 || !opaque.startsWith("\"") || !opaque.endsWith("\"")) {
+                throw new CaseSearchEngineException("If-Match must be * or a list of entity tags returned in ETag headers");
+            }
+            if (weak) continue;
+
+            try {
+                versions.add(Long.parseLong(opaque.substring(1, opaque.length() - 1)));
+            } catch (NumberFormatException ex) {
+                // Not a version of any document
+            }
+        }
+
+        if (versions.isEmpty()) throw new PreconditionFailedException("None of the entity tags of If-Match matches a version of the document");
+        return versions;
+    }
+
+    private static ETag etag(long version) {
+        return ETag.create(EntityTag.create(String.valueOf(version), false));
+    }
+
+    /**
+     * Called on shutdown, before the server unbinds. The requests in flight complete, the rest are rejected
+     */
+    public void stopAdmitting() {
+        admissionControl.close();
+    }
+
+    public int requestsInFlight() {
+        return admissionControl.inFlight();
+    }
+
+    public int requestsQueued() {
+        return admissionControl.queued();
     }
 
     public Route documentRoutes() {
         final ExceptionHandler fieldRequiredHandler = ExceptionHandler.newBuilder()
-                .match(CaseSearchEngineException.class, ex -> complete(StatusCodes.BAD_REQUEST, ex.getMessage())).build();
+                .match(ValidationException.class, ex -> complete(StatusCodes.BAD_REQUEST, new ValidationErrorResponse(ex.getViolations()), marshaller))
+                .match(CaseSearchEngineException.class, ex -> complete(StatusCodes.BAD_REQUEST, ex.getMessage()))
+                .match(PreconditionFailedException.class, ex -> complete(StatusCodes.PRECONDITION_FAILED, ex.getMessage()))
+                .match(UnprocessableEntityException.class, ex -> complete(StatusCodes.UNPROCESSABLE_ENTITY, ex.getMessage()))
+                .match(TooManyRequestsException.class, ex -> retryLater(StatusCodes.TOO_MANY_REQUESTS, ex.getMessage(), ex.getRetryAfter()))
+                .match(ServiceUnavailableException.class, ex -> retryLater(StatusCodes.SERVICE_UNAVAILABLE, ex.getMessage(), ex.getRetryAfter()))
+                .match(TimeoutException.class, ex -> retryLater(StatusCodes.SERVICE_UNAVAILABLE, "The request timed out waiting for the registry", askTimeout))
+                .build();
         final RejectionHandler defaultHandler = RejectionHandler.defaultHandler();
 
-        return pathPrefix("documents", () ->
-                concat(
+        return pathPrefix("documents", () -> optionalHeaderValueByName(rateLimiter.clientHeader(), client ->
+                optionalHeaderValueByName(PREFER_HEADER, prefer -> concat(
                         pathEnd(() ->
                                 concat(
-                                        post(() -> entity(
-                                                Jackson.unmarshaller(Document.class),
-                                                document -> onSuccess(createDocument(document), createdMessage -> {
+                                        post(() -> optionalHeaderValueByName(IDEMPOTENCY_KEY_HEADER, idempotencyKey -> entity(
+                                                documentUnmarshaller,
+                                                document -> withTrace(trace -> respondAsync(prefer)
+                                                        ? accepted(createDocument(client.orElse(null), idempotencyKey, document, trace), Optional.empty(), created -> created.id)
+                                                        : onSuccess(createDocument(client.orElse(null), idempotencyKey, document, trace), createdMessage -> {
                                                     log.info("Created document: {}", createdMessage.getValue());
-                                                    return complete(StatusCodes.CREATED, createdMessage.getValue(), Jackson.marshaller());
-                                                }))
-                                        )
+                                                    return respondWithHeader(etag(createdMessage.getValue().version),
+                                                            () -> complete(StatusCodes.CREATED, createdMessage.getValue(), marshaller));
+                                                })))
+                                        ))
                                 )
                         ),
                         path(PathMatchers.segment(), (String id) ->
                                 concat(
-                                        patch(() -> entity(
-                                                Jackson.unmarshaller(Document.class),
-                                                document -> onSuccess(updateDocument(id, document), updatedMessage -> {
+                                        patch(() -> optionalHeaderValueByName(IF_MATCH_HEADER, ifMatch -> entity(
+                                                documentUnmarshaller,
+                                                document -> withTrace(trace -> respondAsync(prefer)
+                                                        ? accepted(updateDocument(client.orElse(null), id, ifMatch, document, trace), Optional.of(id), updated -> id)
+                                                        : onSuccess(updateDocument(client.orElse(null), id, ifMatch, document, trace), updatedMessage -> {
                                                     log.info("Updated document: {}", updatedMessage.getValue());
-                                                    return complete(StatusCodes.OK, updatedMessage.getValue(), Jackson.marshaller());
-                                                }))
-                                        )
+                                                    return respondWithHeader(etag(updatedMessage.getValue().version),
+                                                            () -> complete(StatusCodes.OK, updatedMessage.getValue(), marshaller));
+                                                })))
+                                        ))
                                 )
                         ),
                         path(PathMatchers.segment(), (String id) ->
                                 concat(
-                                        delete(() -> onSuccess(deleteDocument(id), deletedMessage -> {
+                                        delete(() -> optionalHeaderValueByName(IF_MATCH_HEADER, ifMatch -> withTrace(trace -> respondAsync(prefer)
+                                                ? accepted(deleteDocument(client.orElse(null), id, ifMatch, trace), Optional.of(id), deleted -> id)
+                                                : onSuccess(deleteDocument(client.orElse(null), id, ifMatch, trace), deletedMessage -> {
                                             log.info("Delete of document with id {} performed", id);
                                             return complete(StatusCodes.NO_CONTENT);
-                                        }))
+                                        }))))
                                 )
                         )
                 ).seal(defaultHandler, fieldRequiredHandler)
-        );
+        )));
+    }
+
+    private boolean respondAsync(Optional<String> prefer) {
+        return prefer.map(value -> Arrays.stream(value.split(","))
+                        .anyMatch(preference -> preference.trim().equalsIgnoreCase(RESPOND_ASYNC)))
+                .orElse(false);
     }
-}
 
+    /**
+     * Answers 202 Accepted with the pending operation once the write is admitted, and records its outcome when the
+     * registry replies. A write rejected before being admitted gets its error right away. When the registry does not
+     * reply in time the write may still be applied, so the outcome of the operation is unknown, not failed
+     */
+    private <T> Route accepted(CompletionStage<StatusReply<T>> reply, Optional<String> documentId, Function<T, String> resultDocumentId) {
+        var result = reply.toCompletableFuture();
+        if (result.isCompletedExceptionally()) {
+            return failWith(cause(result.handle((statusReply, exception) -> exception).join()));
+        }
+
+        var operation = operations.start(documentId);
+        result.whenComplete((statusReply, exception) -> {
+            if (exception != null) {
+                var cause = cause(exception);
+                if (cause instanceof TimeoutException) {
+                    operations.unknown(operation.id, "The request timed out waiting for the registry, the write may have been applied");
+                } else {
+                    operations.fail(operation.id, cause.getMessage());
+                }
+            } else if (statusReply.isError()) {
+                operations.fail(operation.id, statusReply.getError().getMessage());
+            } else {
+                operations.succeed(operation.id, resultDocumentId.apply(statusReply.getValue()));
+            }
+        });
+
+        return respondWithHeaders(List.of(Location.create("/operations/" + operation.id), RawHeader.create("Preference-Applied", RESPOND_ASYNC)),
+                () -> complete(StatusCodes.ACCEPTED, operation, marshaller));
+    }
+
+    private static Throwable cause(Throwable exception) {
+        return exception instanceof CompletionException && exception.getCause() != null ? exception.getCause() : exception;
+    }
+
+    private Route retryLater(StatusCode status, String message, Duration retryAfter) {
+        // Retry-After is expressed in whole seconds, round up so the client does not come back too early
+        long retryAfterSeconds = Math.max(1, (retryAfter.toMillis() + 999) / 1000);
+
+        return complete(HttpResponse.create()
+                .withStatus(status)
+                .addHeader(RetryAfter.create(retryAfterSeconds))
+                .withEntity(message));
+    }
+}
@@ -0,0 +1,89 @@
+package com.search.engine.routes;
+
+import akka.actor.typed.ActorSystem;
+import akka.actor.typed.javadsl.Adapter;
+import akka.http.javadsl.marshalling.Marshaller;
+import akka.http.javadsl.model.ContentTypes;
+import akka.http.javadsl.model.HttpEntities;
+import akka.http.javadsl.model.HttpCharsets;
+import akka.http.javadsl.model.HttpEntity;
+import akka.http.javadsl.model.MediaType;
+import akka.http.javadsl.model.MediaTypes;
+import akka.http.javadsl.model.RequestEntity;
+import akka.http.javadsl.unmarshalling.Unmarshaller;
+import akka.serialization.jackson.JacksonObjectMapperProvider;
+import akka.util.ByteString;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.databind.util.ByteBufferBackedInputStream;
+import com.search.engine.models.Views;
+
+import java.io.IOException;
+import java.util.Optional;
+
+/**
+ * JSON marshalling of the routes.
+ * <p>
+ * It uses the same ObjectMapper as the jackson-json serializer of the events and snapshots, configured in
+ * serialization.conf. The readers and writers are built once, and the request bodies are parsed straight from
+ * their bytes and the responses written straight to bytes, without intermediate strings. The request bodies are
+ * read and the responses written with the public view, see {@link Views}.
+ */
+public class JsonMarshalling {
+    private static final String SERIALIZER_BINDING = "jackson-json";
+    /**
+     * Newline delimited JSON, used by the routes streaming documents
+     */
+    static final MediaType.WithFixedCharset APPLICATION_NDJSON =
+            MediaTypes.applicationWithFixedCharset("x-ndjson", HttpCharsets.UTF_8, "ndjson");
+
+    private final ObjectMapper objectMapper;
+    private final ObjectWriter writer;
+
+    public JsonMarshalling(ActorSystem<?> system) {
+        this(JacksonObjectMapperProvider.get(Adapter.toClassic(system)).getOrCreate(SERIALIZER_BINDING, Optional.empty()));
+    }
+
+    public JsonMarshalling(ObjectMapper objectMapper) {
+        this.objectMapper = objectMapper;
+        this.writer = objectMapper.writerWithView(Views.Public.class);
+    }
+
+    /**
+     * Unknown properties in the request are rejected, even if the serializer ignores them. The properties of the
+     * internal view are skipped, the clients can not set them
+     */
+    public <T> Unmarshaller<HttpEntity, T> unmarshaller(Class<T> type) {
+        var reader = objectMapper.readerFor(type)
+                .withView(Views.Public.class)
+                .with(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES);
+        return Unmarshaller.forMediaType(MediaTypes.APPLICATION_JSON, Unmarshaller.entityToByteString())
+                .thenApply(bytes -> read(reader, bytes));
+    }
+
+    public <T> Marshaller<T, RequestEntity> marshaller() {
+        return Marshaller.withFixedContentType(ContentTypes.APPLICATION_JSON, value ->
+                HttpEntities.create(ContentTypes.APPLICATION_JSON, write(value)));
+    }
+
+    public <T> T read(ObjectReader reader, ByteString bytes) {
+        try {
+            // A strict entity is a single chunk, its buffer wraps the bytes without copying them
+            return reader.readValue(new ByteBufferBackedInputStream(bytes.asByteBuffer()));
+        } catch (IOException ex) {
+            throw new IllegalArgumentException("Cannot unmarshal JSON: " + ex.getMessage(), ex);
+        }
+    }
+
+    public ByteString write(Object value) {
+        try {
+            // The array is not used anywhere else, no need to copy it
+            return ByteString.fromArrayUnsafe(writer.writeValueAsBytes(value));
+        } catch (JsonProcessingException ex) {
+            throw new IllegalArgumentException("Cannot marshal JSON: " + ex.getMessage(), ex);
+        }
+    }
+}
@@ -0,0 +1,57 @@
+package com.search.engine.routes;
+
+import akka.actor.typed.ActorSystem;
+import akka.http.javadsl.marshalling.Marshaller;
+import akka.http.javadsl.model.RequestEntity;
+import akka.http.javadsl.model.StatusCodes;
+import akka.http.javadsl.server.PathMatchers;
+import akka.http.javadsl.server.Route;
+import com.search.engine.models.OperationStatus;
+
+import java.util.Arrays;
+import java.util.Optional;
+import java.util.stream.Collectors;
+
+import static akka.http.javadsl.server.Directives.*;
+
+/**
+ * Routes of the status of the writes accepted asynchronously, see {@link DocumentRoutes}
+ * <p>
+ * GET /operations/{id}. Returns the status of the operation, 404 if it is unknown or expired.
+ * GET /operations?ids={id},{id}. Returns the status of the known operations among the given ones.
+ */
+public class OperationRoutes {
+    private final OperationStore operations;
+    private final int maxBatch;
+    private final Marshaller<Object, RequestEntity> marshaller;
+
+    public OperationRoutes(ActorSystem<?> system, OperationStore operations) {
+        this.operations = operations;
+
+        maxBatch = system.settings().config().getInt("case-search-engine-index.routes.operations.max-batch");
+        marshaller = new JsonMarshalling(system).marshaller();
+    }
+
+    public Route operationRoutes() {
+        return pathPrefix("operations", () -> concat(
+                pathEnd(() -> get(() -> parameter("ids", ids -> {
+                    var requested = Arrays.stream(ids.split(",")).map(String::trim).filter(id -> !id.isEmpty()).distinct().collect(Collectors.toList());
+                    if (requested.size() > maxBatch) {
+                        return complete(StatusCodes.BAD_REQUEST, "At most " + maxBatch + " operations can be queried at once");
+                    }
+
+                    var statuses = requested.stream()
+                            .map(operations::status)
+                            .flatMap(Optional::stream)
+                            .collect(Collectors.toList());
+                    return complete(StatusCodes.OK, statuses, marshaller);
+                }))),
+                path(PathMatchers.segment(), (String id) -> get(() -> {
+                    Optional<OperationStatus> status = operations.status(id);
+                    return status
+                            .map(found -> complete(StatusCodes.OK, found, marshaller))
+                            .orElseGet(() -> complete(StatusCodes.NOT_FOUND, "The operation is unknown or expired"));
+                }))
+        ));
+    }
+}
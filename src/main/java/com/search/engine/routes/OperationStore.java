@@ -0,0 +1,138 @@
+package com.search.engine.routes;
+
+import akka.actor.typed.ActorSystem;
+import com.search.engine.models.OperationState;
+import com.search.engine.models.OperationStatus;
+import com.typesafe.config.Config;
+
+import java.time.Duration;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.UUID;
+
+/**
+ * Bounded store of the status of the writes accepted asynchronously, keyed by operation id.
+ * <p>
+ * The operations are kept in start order, so the expired ones, and the oldest ones once the store is full, are
+ * always at the head and evicting them is cheap. Only the state, the id of the document and the error are kept.
+ * The store is in memory, the status of an operation is only known by the node that accepted it and is lost on
+ * restart.
+ */
+public class OperationStore {
+    private final int maxOperations;
+    private final long ttlMillis;
+    private final LinkedHashMap<UUID, Operation> operations = new LinkedHashMap<>();
+
+    public OperationStore(ActorSystem<?> system) {
+        this(system.settings().config().getConfig("case-search-engine-index.routes.operations"));
+    }
+
+    OperationStore(Config config) {
+        this(config.getInt("max-operations"), config.getDuration("ttl"));
+    }
+
+    OperationStore(int maxOperations, Duration ttl) {
+        this.maxOperations = maxOperations;
+        this.ttlMillis = ttl.toMillis();
+    }
+
+    private static final class Operation {
+        private OperationState state = OperationState.PENDING;
+        private String documentId;
+        private String error;
+        private final long startedAt;
+
+        private Operation(String documentId, long startedAt) {
+            this.documentId = documentId;
+            this.startedAt = startedAt;
+        }
+    }
+
+    /**
+     * @param documentId the id of the document, when already known
+     * @return the status of the new pending operation
+     */
+    public synchronized OperationStatus start(Optional<String> documentId) {
+        var id = UUID.randomUUID();
+        var now = System.currentTimeMillis();
+        var operation = new Operation(documentId.orElse(null), now);
+
+        operations.put(id, operation);
+        evict(now);
+        return status(id, operation);
+    }
+
+    public synchronized void succeed(String id, String documentId) {
+        find(id).ifPresent(operation -> {
+            operation.state = OperationState.SUCCEEDED;
+            operation.documentId = documentId;
+        });
+    }
+
+    public synchronized void fail(String id, String error) {
+        find(id).ifPresent(operation -> {
+            operation.state = OperationState.FAILED;
+            operation.error = error;
+        });
+    }
+
+    /**
+     * The write was sent but its outcome is not known, e.g. the registry did not reply in time
+     */
+    public synchronized void unknown(String id, String reason) {
+        find(id).ifPresent(operation -> {
+            operation.state = OperationState.UNKNOWN;
+            operation.error = reason;
+        });
+    }
+
+    public synchronized Optional<OperationStatus> status(String id) {
+        return parse(id).flatMap(uuid -> find(uuid).map(operation -> status(uuid, operation)));
+    }
+
+    synchronized int size() {
+        return operations.size();
+    }
+
+    private Optional<Operation> find(String id) {
+        return parse(id).flatMap(this::find);
+    }
+
+    private Optional<Operation> find(UUID id) {
+        var operation = operations.get(id);
+
+        if (operation == null || isExpired(operation, System.currentTimeMillis())) {
+            return Optional.empty();
+        }
+
+        return Optional.of(operation);
+    }
+
+    private void evict(long now) {
+        Iterator<Map.Entry<UUID, Operation>> oldest = operations.entrySet().iterator();
+
+        while (oldest.hasNext()) {
+            var operation = oldest.next().getValue();
+            if (operations.size() <= maxOperations && !isExpired(operation, now)) return;
+            oldest.remove();
+        }
+    }
+
+    private boolean isExpired(Operation operation, long now) {
+        return now - operation.startedAt > ttlMillis;
+    }
+
+    private static OperationStatus status(UUID id, Operation operation) {
+        return new OperationStatus(id.toString(), operation.state, operation.documentId, operation.error);
+    }
+
+    private static Optional<UUID> parse(String id) {
+        try {
+            return Optional.of(UUID.fromString(id));
+        } catch (IllegalArgumentException ex) {
+            return Optional.empty();
+        }
+    }
+}
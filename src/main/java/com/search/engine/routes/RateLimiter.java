@@ -0,0 +1,102 @@
+package com.search.engine.routes;
+
+import akka.actor.typed.ActorSystem;
+import com.search.engine.exceptions.TooManyRequestsException;
+import com.search.engine.models.DataSource;
+import com.typesafe.config.Config;
+import com.typesafe.config.ConfigUtil;
+
+import java.time.Duration;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.LongSupplier;
+
+/**
+ * Rate limits the requests per client and per data source, so a flooding feed does not crowd out the rest.
+ * <p>
+ * Every client, identified by the configured header, and every data source has its own {@link TokenBucket}.
+ * Clients without the header share the same bucket.
+ */
+public class RateLimiter {
+    static final String ANONYMOUS_CLIENT = "anonymous";
+
+    private final boolean enabled;
+    private final String clientHeader;
+    private final Config clientsConfig;
+    private final LongSupplier clock;
+    private final Map<String, TokenBucket> clientBuckets = new ConcurrentHashMap<>();
+    private final Map<DataSource, TokenBucket> dataSourceBuckets = new EnumMap<>(DataSource.class);
+
+    public RateLimiter(ActorSystem<?> system) {
+        this(system, system.settings().config().getConfig("case-search-engine-index.routes.rate-limits"));
+    }
+
+    RateLimiter(ActorSystem<?> system, Config config) {
+        this(config, System::nanoTime);
+
+        if (enabled) {
+            var idleEviction = clientsConfig.getDuration("idle-eviction-interval");
+            system.scheduler().scheduleAtFixedRate(idleEviction, idleEviction, this::evictIdleClients, system.executionContext());
+        }
+    }
+
+    RateLimiter(Config config, LongSupplier clock) {
+        this.enabled = config.getBoolean("enabled");
+        this.clientHeader = config.getString("client-header");
+        this.clientsConfig = config.getConfig("clients");
+        this.clock = clock;
+
+        var dataSourcesConfig = config.getConfig("data-sources");
+        for (DataSource dataSource : DataSource.values()) {
+            if (dataSourcesConfig.hasPath(dataSource.name())) {
+                dataSourceBuckets.put(dataSource, createBucket(dataSourcesConfig.getConfig(dataSource.name())));
+            }
+        }
+    }
+
+    public String clientHeader() {
+        return clientHeader;
+    }
+
+    /**
+     * Takes a token from the bucket of the client and from the bucket of the data source, when there is one. A
+     * request rejected by the data source gives its token back to the client, so it is not charged for it
+     *
+     * @throws TooManyRequestsException when one of the buckets is empty
+     */
+    public void acquire(String client, DataSource dataSource) {
+        if (!enabled) return;
+
+        var now = clock.getAsLong();
+        var clientBucket = clientBuckets.computeIfAbsent(client == null ? ANONYMOUS_CLIENT : client, this::createClientBucket);
+        rejectIfWaiting(clientBucket.tryAcquire(now), "The client has exceeded its rate limit");
+
+        var dataSourceBucket = dataSource == null ? null : dataSourceBuckets.get(dataSource);
+        if (dataSourceBucket != null) {
+            var waitNanos = dataSourceBucket.tryAcquire(now);
+            if (waitNanos > 0) clientBucket.release();
+            rejectIfWaiting(waitNanos, "The data source " + dataSource + " has exceeded its rate limit");
+        }
+    }
+
+    void evictIdleClients() {
+        var now = clock.getAsLong();
+        clientBuckets.values().removeIf(bucket -> bucket.isIdle(now));
+    }
+
+    private void rejectIfWaiting(long waitNanos, String message) {
+        if (waitNanos > 0) throw new TooManyRequestsException(message, Duration.ofNanos(waitNanos));
+    }
+
+    private TokenBucket createClientBucket(String client) {
+        var overrides = clientsConfig.getConfig("overrides");
+        // Client keys can contain dots, they have to be quoted
+        var path = ConfigUtil.joinPath(client);
+        return createBucket(overrides.hasPath(path) ? overrides.getConfig(path) : clientsConfig.getConfig("default"));
+    }
+
+    private TokenBucket createBucket(Config limit) {
+        return new TokenBucket(limit.getDouble("rate"), limit.getInt("burst"), clock.getAsLong());
+    }
+}
@@ -0,0 +1,90 @@
+package com.search.engine.routes;
+
+import akka.actor.typed.ActorRef;
+import akka.actor.typed.ActorSystem;
+import akka.http.javadsl.marshalling.Marshaller;
+import akka.http.javadsl.model.RequestEntity;
+import akka.http.javadsl.model.StatusCodes;
+import akka.http.javadsl.server.PathMatchers;
+import akka.http.javadsl.server.Route;
+import com.search.engine.DocumentRegistry;
+import com.search.engine.models.Document;
+import com.search.engine.models.ValidationErrorResponse;
+import com.search.engine.models.Violation;
+import com.search.engine.reindex.ReindexJob;
+import com.search.engine.tenants.Tenants;
+import com.search.engine.validators.RequestValidator;
+import com.typesafe.config.Config;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import static akka.http.javadsl.server.Directives.*;
+
+/**
+ * Routes of the catalogues of the tenants, see {@link Tenants}
+ * <p>
+ * /tenants/{tenant}/documents. The routes of {@link DocumentRoutes}, {@link DeltaRoutes} and {@link ChangeFeedRoutes}
+ * on the registry of the tenant. Every tenant has its own admission control and rate limits, its limits over the
+ * ones of case-search-engine-index.routes, so a saturated tenant is rejected without the others noticing.
+ * /tenants/{tenant}/admin/reindex. The routes of {@link AdminRoutes} on the reindex of the tenant.
+ * GET /tenants/{tenant}/metrics. The counters of the requests and of the index work of the tenant in this node.
+ * <p>
+ * The tenants not configured get 404 Not Found, with the error in the body as the violations of the requests.
+ */
+public class TenantRoutes {
+    private final ActorSystem<?> system;
+    private final Tenants tenants;
+    private final RequestValidator<Document> validator;
+    private final OperationStore operations;
+    private final Marshaller<Object, RequestEntity> marshaller;
+    private final Map<String, Route> routes = new ConcurrentHashMap<>();
+
+    public TenantRoutes(ActorSystem<?> system, RequestValidator<Document> validator, OperationStore operations) {
+        this.system = system;
+        this.tenants = Tenants.get(system);
+        this.validator = validator;
+        this.operations = operations;
+        this.marshaller = new JsonMarshalling(system).marshaller();
+    }
+
+    /**
+     * Adds the routes of the tenant on its registry and its reindex
+     *
+     * @return the document routes of the tenant, they stop admitting requests on shutdown
+     */
+    public DocumentRoutes add(String tenant, ActorRef<DocumentRegistry.Command> registry, ActorRef<ReindexJob.Command> reindexJob) {
+        var routesConfig = system.settings().config().getConfig("case-search-engine-index.routes");
+        var limits = tenants.limits(tenant);
+        var documentRoutes = new DocumentRoutes(system, registry, validator, operations,
+                new AdmissionControl(system, limit(limits, "admission", routesConfig)),
+                new RateLimiter(system, limit(limits, "rate-limits", routesConfig)));
+        var changeFeedRoutes = new ChangeFeedRoutes(system, Tenants.registryPersistenceId(tenant));
+        var deltaRoutes = new DeltaRoutes(system, registry);
+        var adminRoutes = new AdminRoutes(system, reindexJob);
+        var metrics = tenants.metrics(tenant);
+
+        // The change feed and the delta go first, the document routes are sealed and would reject them
+        routes.put(tenant, concat(
+                path("metrics", () -> get(() -> complete(StatusCodes.OK,
+                        metrics.snapshot(documentRoutes.requestsInFlight(), documentRoutes.requestsQueued()), marshaller))),
+                mapResponse(response -> {
+                    metrics.responded(response.status().intValue());
+                    return response;
+                }, () -> concat(adminRoutes.adminRoutes(), changeFeedRoutes.changeFeedRoutes(), deltaRoutes.deltaRoutes(), documentRoutes.documentRoutes()))));
+        return documentRoutes;
+    }
+
+    public Route tenantRoutes() {
+        return pathPrefix("tenants", () -> pathPrefix(PathMatchers.segment(), tenant -> {
+            var route = routes.get(tenant);
+            return route != null ? route : complete(StatusCodes.NOT_FOUND,
+                    new ValidationErrorResponse(List.of(new Violation("tenant", "The tenant " + tenant + " does not exist"))), marshaller);
+        }));
+    }
+
+    private static Config limit(Config limits, String path, Config routesConfig) {
+        return limits.hasPath(path) ? limits.getConfig(path).withFallback(routesConfig.getConfig(path)) : routesConfig.getConfig(path);
+    }
+}
@@ -0,0 +1,58 @@
+package com.search.engine.routes;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Lock-free token bucket implemented with the generic cell rate algorithm.
+ * <p>
+ * Instead of a token count and a refill timestamp, the bucket keeps a single value: the theoretical arrival time
+ * of the next request. Taking a token is a single compare-and-set on it, so concurrent requests never block.
+ */
+final class TokenBucket {
+    private final long emissionIntervalNanos;
+    private final long burstToleranceNanos;
+    private final AtomicLong theoreticalArrivalTime;
+
+    /**
+     * @param ratePerSecond tokens added to the bucket per second
+     * @param burst         capacity of the bucket
+     * @param nowNanos      current time
+     */
+    TokenBucket(double ratePerSecond, int burst, long nowNanos) {
+        if (ratePerSecond <= 0 || burst < 1) throw new IllegalArgumentException("The rate and the burst must be positive");
+
+        this.emissionIntervalNanos = Math.max(1, (long) (1_000_000_000L / ratePerSecond));
+        this.burstToleranceNanos = emissionIntervalNanos * burst;
+        this.theoreticalArrivalTime = new AtomicLong(nowNanos);
+    }
+
+    /**
+     * Takes a token from the bucket
+     *
+     * @return 0 when the token was taken, otherwise the nanos to wait until a token is available
+     */
+    long tryAcquire(long nowNanos) {
+        while (true) {
+            long current = theoreticalArrivalTime.get();
+            long next = Math.max(current, nowNanos) + emissionIntervalNanos;
+            long waitNanos = next - nowNanos - burstToleranceNanos;
+
+            if (waitNanos > 0) return waitNanos;
+            if (theoreticalArrivalTime.compareAndSet(current, next)) return 0;
+        }
+    }
+
+    /**
+     * Gives back a token taken with {@link #tryAcquire(long)}, e.g. when the request is rejected by another bucket
+     */
+    void release() {
+        theoreticalArrivalTime.addAndGet(-emissionIntervalNanos);
+    }
+
+    /**
+     * A bucket is idle when it is full again, so dropping it and creating a new one makes no difference
+     */
+    boolean isIdle(long nowNanos) {
+        return theoreticalArrivalTime.get() <= nowNanos;
+    }
+}
@@ -0,0 +1,132 @@
+package com.search.engine.scheduling;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Hierarchical timing wheel, see Varghese and Lauck, "Hashed and Hierarchical Timing Wheels".
+ * <p>
+ * The time is divided in ticks. Every level has the same number of buckets, a bucket of the first level spans one
+ * tick and a bucket of every other level spans a whole turn of the level below. An item goes to the lowest level
+ * whose current turn has its deadline, and when a turn of a level starts, the bucket of the level above for that
+ * turn is cascaded down. Scheduling an item and advancing one tick cost the same however many items are
+ * scheduled, and levels are only added when an item is scheduled farther than the existing ones reach.
+ * <p>
+ * The items are never cancelled, the caller checks whether they are still due when they are returned. Not thread
+ * safe, it is owned by an actor.
+ */
+public final class TimingWheel<T> {
+    private final long tickMillis;
+    private final int wheelSize;
+    private final List<Level<T>> levels = new ArrayList<>();
+    // The items due, returned by the next advance
+    private List<T> overdue = new ArrayList<>();
+    private long currentTick;
+    private int size = 0;
+
+    private static final class Level<T> {
+        // Ticks spanned by a bucket
+        final long span;
+        final List<Entry<T>>[] buckets;
+
+        @SuppressWarnings("unchecked")
+        Level(long span, int wheelSize) {
+            this.span = span;
+            this.buckets = new List[wheelSize];
+        }
+    }
+
+    private static final class Entry<T> {
+        final T item;
+        final long tick;
+
+        Entry(T item, long tick) {
+            this.item = item;
+            this.tick = tick;
+        }
+    }
+
+    public TimingWheel(Duration tick, int wheelSize, Instant start) {
+        if (tick.toMillis() <= 0) throw new IllegalArgumentException("The tick must be at least 1ms");
+        if (wheelSize < 2) throw new IllegalArgumentException("The wheel must have at least 2 buckets");
+
+        this.tickMillis = tick.toMillis();
+        this.wheelSize = wheelSize;
+        this.currentTick = start.toEpochMilli() / tickMillis;
+        this.levels.add(new Level<>(1, wheelSize));
+    }
+
+    /**
+     * The item is returned by the first advance to a time at or after the deadline
+     */
+    public void schedule(T item, Instant deadline) {
+        // Rounded up, so the item is never returned before its deadline
+        var tick = Math.floorDiv(deadline.toEpochMilli() + tickMillis - 1, tickMillis);
+        size++;
+        add(new Entry<>(item, tick));
+    }
+
+    /**
+     * Moves the wheel to the given time, one tick at a time
+     *
+     * @return the items whose deadline is at or before the time
+     */
+    public List<T> advance(Instant now) {
+        var nowTick = Math.floorDiv(now.toEpochMilli(), tickMillis);
+
+        while (currentTick < nowTick) {
+            currentTick++;
+
+            // From the top, so the items cascaded from a level can be cascaded again from the one below
+            for (int level = levels.size() - 1; level > 0; level--) {
+                if (currentTick % levels.get(level).span == 0) {
+                    var entries = take(levels.get(level), currentTick);
+                    if (entries != null) entries.forEach(this::add);
+                }
+            }
+
+            var entries = take(levels.get(0), currentTick);
+            if (entries != null) entries.forEach(entry -> overdue.add(entry.item));
+        }
+
+        var due = overdue;
+        overdue = new ArrayList<>();
+        size -= due.size();
+        return due;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    private void add(Entry<T> entry) {
+        if (entry.tick <= currentTick) {
+            overdue.add(entry.item);
+            return;
+        }
+
+        for (int i = 0; ; i++) {
+            if (i == levels.size()) {
+                levels.add(new Level<>(levels.get(i - 1).span * wheelSize, wheelSize));
+            }
+
+            var level = levels.get(i);
+            var turn = level.span * wheelSize;
+            if (entry.tick / turn == currentTick / turn) {
+                var index = (int) (entry.tick / level.span % wheelSize);
+                if (level.buckets[index] == null) level.buckets[index] = new ArrayList<>();
+                level.buckets[index].add(entry);
+                return;
+            }
+        }
+    }
+
+    private List<Entry<T>> take(Level<T> level, long tick) {
+        var index = (int) (tick / level.span % wheelSize);
+        var entries = level.buckets[index];
+        level.buckets[index] = null;
+        return entries;
+    }
+}
@@ -0,0 +1,24 @@
+package com.search.engine.solr;
+
+import com.search.engine.reconciliation.Fingerprints;
+
+import java.util.Map;
+
+/**
+ * The fingerprints stored with the documents in the search engine, see {@link Fingerprints}. Only the search engines
+ * storing them take part in the reconciliation
+ */
+public interface FingerprintStore {
+    /**
+     * @return the fingerprints stored with the documents whose ids start with the prefix, by id
+     */
+    Map<String, Long> fingerprints(String idPrefix);
+
+    /**
+     * Digest of the fingerprints of the documents whose ids start with the prefix. Implementations should compute
+     * it in the search engine, e.g. with the sum of the stats component, instead of reading the fingerprints
+     */
+    default long digest(String idPrefix) {
+        return Fingerprints.digest(fingerprints(idPrefix).values());
+    }
+}
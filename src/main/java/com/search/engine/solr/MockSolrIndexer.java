@@ -5,19 +5,32 @@ import io.github.resilience4j.retry.Retry;
 import io.github.resilience4j.retry.RetryConfig;
 import io.github.resilience4j.retry.RetryRegistry;
 
+import com.search.engine.reconciliation.RangeDigests;
+
 import java.time.Duration;
+import java.util.Map;
 import java.util.Random;
+import java.util.concurrent.ConcurrentNavigableMap;
+import java.util.concurrent.ConcurrentSkipListMap;
 
 /**
  * Mock implementation of the SolrIndexer. This implementation generates a random response (success or failure).
- * When it generates a failure, a retry mechanism gets triggered to retry for the configured number of times
+ * When it generates a failure, a retry mechanism gets triggered to retry for the configured number of times.
+ * The fingerprints of the documents indexed are kept in memory, every collection in its own instance
  */
-public class MockSolrIndexer implements SolrIndexer {
+public class MockSolrIndexer implements SolrIndexer, FingerprintStore {
+    private final String collection;
     private final int solrIndexerRetries;
     private final Duration solrIndexerWaitBetweenRetries;
     private final int solrIndexerSuccessProbability;
+    private final ConcurrentNavigableMap<String, Long> fingerprints = new ConcurrentSkipListMap<>();
 
     public MockSolrIndexer(ActorSystem<?> system) {
+        this(system, system.settings().config().getString("case-search-engine-index.solrIndexer.collection"));
+    }
+
+    public MockSolrIndexer(ActorSystem<?> system, String collection) {
+        this.collection = collection;
         this.solrIndexerRetries = system.settings().config().getInt("case-search-engine-index.solrIndexer.retries");
         this.solrIndexerWaitBetweenRetries = system.settings().config().getDuration("case-search-engine-index.solrIndexer.waitBetweenRetries");
         this.solrIndexerSuccessProbability = system.settings().config().getInt("case-search-engine-index.solrIndexer.successProbability");
@@ -29,10 +42,28 @@ public class MockSolrIndexer implements SolrIndexer {
         return retry.executeSupplier(this::generateResponse);
     }
 
+    @Override
+    public boolean indexDocument(String id, long fingerprint) {
+        var indexed = indexDocument(id);
+        if (indexed) fingerprints.put(id, fingerprint);
+        return indexed;
+    }
+
     @Override
     public boolean deleteDocument(String id) {
         var retry = configureRetry();
-        return retry.executeSupplier(this::generateResponse);
+        var deleted = retry.executeSupplier(this::generateResponse);
+        if (deleted) fingerprints.remove(id);
+        return deleted;
+    }
+
+    @Override
+    public Map<String, Long> fingerprints(String idPrefix) {
+        return Map.copyOf(fingerprints.subMap(idPrefix, true, RangeDigests.upperBound(idPrefix), false));
+    }
+
+    public String collection() {
+        return collection;
     }
 
     /**
@@ -54,6 +85,6 @@ public class MockSolrIndexer implements SolrIndexer {
                 .build();
 
         RetryRegistry registry = RetryRegistry.of(config);
-        return registry.retry("solrIndexer", config);
+        return registry.retry("solrIndexer-" + collection, config);
     }
 }
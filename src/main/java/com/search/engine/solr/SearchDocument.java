@@ -0,0 +1,102 @@
+package com.search.engine.solr;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.GatheringByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * The search representation of a document, a JSON object prebuilt by the registry, see
+ * com.search.engine.SearchDocuments.
+ * <p>
+ * The object is made of parts serialized on their own, e.g. the fields of every data source, so a change only
+ * serializes the parts it touches. The parts are never modified once built, a change replaces them, so they are
+ * shared with the indexers and written to the request as they are, without assembling the document.
+ */
+public final class SearchDocument {
+    private static final ByteBuffer OPEN = readOnly("[");
+    private static final ByteBuffer SEPARATOR = readOnly(",");
+    private static final ByteBuffer CLOSE = readOnly("]");
+
+    private final String id;
+    private final long version;
+    private final ByteBuffer[] parts;
+    private final int size;
+
+    public SearchDocument(String id, long version, ByteBuffer[] parts) {
+        this.id = id;
+        this.version = version;
+        this.parts = parts;
+        var size = 0;
+        for (ByteBuffer part : parts) size += part.remaining();
+        this.size = size;
+    }
+
+    public String id() {
+        return id;
+    }
+
+    public long version() {
+        return version;
+    }
+
+    /**
+     * @return the bytes of the JSON object
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * @return read-only views of the parts, in order, ready to be written
+     */
+    public ByteBuffer[] buffers() {
+        var buffers = new ByteBuffer[parts.length];
+        for (int i = 0; i < parts.length; i++) buffers[i] = parts[i].asReadOnlyBuffer();
+        return buffers;
+    }
+
+    @Override
+    public String toString() {
+        var bytes = new byte[size];
+        var offset = 0;
+        for (ByteBuffer buffer : buffers()) {
+            var length = buffer.remaining();
+            buffer.get(bytes, offset, length);
+            offset += length;
+        }
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Writes the documents as a JSON array, e.g. the body of a Solr update request, with gathering writes of their
+     * parts. Nothing is copied into a single buffer first
+     *
+     * @return the bytes written
+     */
+    public static long writeBatch(GatheringByteChannel channel, Collection<SearchDocument> documents) throws IOException {
+        List<ByteBuffer> buffers = new ArrayList<>();
+        buffers.add(OPEN.duplicate());
+        for (SearchDocument document : documents) {
+            if (buffers.size() > 1) buffers.add(SEPARATOR.duplicate());
+            buffers.addAll(List.of(document.buffers()));
+        }
+        buffers.add(CLOSE.duplicate());
+
+        var array = buffers.toArray(ByteBuffer[]::new);
+        long written = 0;
+        // A channel may write only part of them at once
+        for (int first = 0; first < array.length; ) {
+            written += channel.write(array, first, array.length - first);
+            while (first < array.length && !array[first].hasRemaining()) first++;
+        }
+        return written;
+    }
+
+    static ByteBuffer readOnly(String text) {
+        return ByteBuffer.wrap(text.getBytes(StandardCharsets.UTF_8)).asReadOnlyBuffer();
+    }
+}
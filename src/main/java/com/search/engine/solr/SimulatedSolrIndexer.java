@@ -0,0 +1,302 @@
+package com.search.engine.solr;
+
+import akka.actor.typed.ActorSystem;
+import com.search.engine.reconciliation.RangeDigests;
+import com.typesafe.config.Config;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.GatheringByteChannel;
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Random;
+import java.util.concurrent.ConcurrentNavigableMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.stream.Collectors;
+
+/**
+ * Simulates a search engine following a script, see case-search-engine-index.solrIndexer.simulation.
+ * <p>
+ * Every request takes a latency from a log-normal distribution and fails with the failure rate of the time it
+ * is made. The phases of the script change the failure rate and the latency for a while: error bursts, full
+ * outages, and slow recoveries where the failure rate and the latency go back to the baseline gradually. The
+ * documents of a batch can also fail on their own, so only part of the batch is indexed.
+ * <p>
+ * All the randomness comes from a seeded generator. With the virtual clock, the time only advances with the latency
+ * of the requests, or when the caller advances it, so the same sequence of requests always has the same outcomes
+ * and times. With the wall clock, the requests wait for their latency and the phases start after the simulator is
+ * created. The fingerprints of the documents indexed are kept in memory, every collection in its own simulator.
+ * <p>
+ * The body of every index request is written to the wire as the search engine would receive it, with the search
+ * documents prebuilt by the registry written as they are, see {@link SearchDocument#writeBatch}. By default the
+ * wire only counts the bytes sent.
+ */
+public class SimulatedSolrIndexer implements SolrIndexer, FingerprintStore {
+    // The 99th percentile of the standard normal distribution
+    private static final double Z_99 = 2.3263;
+    private static final String DEFAULT_COLLECTION = "documents";
+
+    private final String collection;
+    private final Random random;
+    private final boolean virtualClock;
+    private final long medianLatencyNanos;
+    private final double latencySigma;
+    private final double failureRate;
+    private final double partialBatchFailureRate;
+    private final List<Phase> phases;
+    private final long createdAt = System.nanoTime();
+    private final ConcurrentNavigableMap<String, Long> fingerprints = new ConcurrentSkipListMap<>();
+    private final GatheringByteChannel wire;
+    private long virtualNanos = 0;
+    private long requests = 0;
+    private long failures = 0;
+    private long bytesSent = 0;
+
+    /**
+     * A change of the failure rate and the latency, from its start for its duration. A recovery goes from its
+     * failure rate and latency factor back to the baseline during its duration
+     */
+    static final class Phase {
+        final long startNanos;
+        final long endNanos;
+        final double failureRate;
+        final double latencyFactor;
+        final boolean recovery;
+
+        Phase(Duration start, Duration duration, double failureRate, double latencyFactor, boolean recovery) {
+            this.startNanos = start.toNanos();
+            this.endNanos = start.plus(duration).toNanos();
+            this.failureRate = failureRate;
+            this.latencyFactor = latencyFactor;
+            this.recovery = recovery;
+        }
+
+        static Phase of(Config config) {
+            return new Phase(config.getDuration("start"), config.getDuration("duration"),
+                    config.getDouble("failure-rate"),
+                    config.hasPath("latency-factor") ? config.getDouble("latency-factor") : 1,
+                    config.hasPath("recovery") && config.getBoolean("recovery"));
+        }
+
+        boolean isActive(long nanos) {
+            return startNanos <= nanos && nanos < endNanos;
+        }
+
+        /**
+         * @return how far from the baseline the phase is, 1 at its start and, for a recovery, 0 at its end
+         */
+        double weight(long nanos) {
+            return recovery ? 1 - (double) (nanos - startNanos) / (endNanos - startNanos) : 1;
+        }
+    }
+
+    public SimulatedSolrIndexer(ActorSystem<?> system, String collection) {
+        this(system.settings().config().getConfig("case-search-engine-index.solrIndexer.simulation"), collection, new CountingChannel());
+    }
+
+    public SimulatedSolrIndexer(Config config) {
+        this(config, new CountingChannel());
+    }
+
+    public SimulatedSolrIndexer(Config config, GatheringByteChannel wire) {
+        this(config, DEFAULT_COLLECTION, wire);
+    }
+
+    /**
+     * Every simulator follows the script of the config from its own seeded generator, whatever its collection
+     */
+    public SimulatedSolrIndexer(Config config, String collection, GatheringByteChannel wire) {
+        this.collection = collection;
+        this.wire = wire;
+        this.random = new Random(config.getLong("seed"));
+        this.virtualClock = config.getString("clock").equals("virtual");
+        this.medianLatencyNanos = config.getDuration("latency.median").toNanos();
+        var p99LatencyNanos = config.getDuration("latency.p99").toNanos();
+        if (p99LatencyNanos < medianLatencyNanos) {
+            throw new IllegalArgumentException("The 99th percentile of the latency cannot be below the median");
+        }
+        this.latencySigma = medianLatencyNanos == 0 ? 0 : Math.log((double) p99LatencyNanos / medianLatencyNanos) / Z_99;
+        this.failureRate = config.getDouble("failure-rate");
+        this.partialBatchFailureRate = config.getDouble("partial-batch-failure-rate");
+        this.phases = config.getConfigList("phases").stream().map(Phase::of).collect(Collectors.toList());
+    }
+
+    @Override
+    public boolean indexDocument(String id) {
+        return request();
+    }
+
+    @Override
+    public boolean indexDocument(String id, long fingerprint) {
+        var indexed = request();
+        if (indexed) fingerprints.put(id, fingerprint);
+        return indexed;
+    }
+
+    @Override
+    public boolean indexDocument(String id, long fingerprint, Optional<SearchDocument> document) {
+        if (!send(List.of(document.orElseGet(() -> byId(id))))) return false;
+        return indexDocument(id, fingerprint);
+    }
+
+    @Override
+    public boolean deleteDocument(String id) {
+        var deleted = request();
+        if (deleted) fingerprints.remove(id);
+        return deleted;
+    }
+
+    /**
+     * A single request. When it succeeds, every document can still fail on its own
+     */
+    @Override
+    public boolean indexDocuments(Map<String, Long> batch) {
+        if (!request()) return false;
+
+        var indexed = true;
+        synchronized (this) {
+            for (Map.Entry<String, Long> document : batch.entrySet()) {
+                if (random.nextDouble() < partialBatchFailureRate) {
+                    indexed = false;
+                } else {
+                    fingerprints.put(document.getKey(), document.getValue());
+                }
+            }
+        }
+
+        return indexed;
+    }
+
+    @Override
+    public boolean indexDocuments(Map<String, Long> fingerprints, Map<String, SearchDocument> documents) {
+        var batch = fingerprints.keySet().stream()
+                .map(id -> documents.containsKey(id) ? documents.get(id) : byId(id))
+                .collect(Collectors.toList());
+        if (!send(batch)) return false;
+        return indexDocuments(fingerprints);
+    }
+
+    @Override
+    public Map<String, Long> fingerprints(String idPrefix) {
+        return Map.copyOf(fingerprints.subMap(idPrefix, true, RangeDigests.upperBound(idPrefix), false));
+    }
+
+    public String collection() {
+        return collection;
+    }
+
+    /**
+     * @return the time of the simulation, since it started
+     */
+    public synchronized Duration now() {
+        return Duration.ofNanos(nanos());
+    }
+
+    /**
+     * Moves the virtual clock forward, e.g. while there are no requests
+     */
+    public synchronized void advanceTo(Duration time) {
+        if (!virtualClock) throw new IllegalStateException("Only the virtual clock can be advanced");
+        virtualNanos = Math.max(virtualNanos, time.toNanos());
+    }
+
+    public synchronized long requests() {
+        return requests;
+    }
+
+    public synchronized long failures() {
+        return failures;
+    }
+
+    public synchronized long bytesSent() {
+        return bytesSent;
+    }
+
+    /**
+     * Writes the body of an index request to the wire. A request that could not be written fails
+     */
+    private synchronized boolean send(List<SearchDocument> documents) {
+        try {
+            bytesSent += SearchDocument.writeBatch(wire, documents);
+            return true;
+        } catch (IOException ex) {
+            return false;
+        }
+    }
+
+    /**
+     * Without the search document prebuilt by the registry, the simulator only knows the id of the document
+     */
+    private static SearchDocument byId(String id) {
+        return new SearchDocument(id, 0, new ByteBuffer[]{SearchDocument.readOnly("{\"id\":\"" + id + "\"}")});
+    }
+
+    private boolean request() {
+        long latency;
+        boolean failed;
+        synchronized (this) {
+            var start = nanos();
+            var phase = phases.stream().filter(candidate -> candidate.isActive(start)).findFirst();
+            var weight = phase.map(active -> active.weight(start)).orElse(0.0);
+            var currentFailureRate = failureRate + weight * (phase.map(active -> active.failureRate).orElse(failureRate) - failureRate);
+            var latencyFactor = 1 + weight * (phase.map(active -> active.latencyFactor).orElse(1.0) - 1);
+
+            latency = (long) (medianLatencyNanos * latencyFactor * Math.exp(latencySigma * random.nextGaussian()));
+            failed = random.nextDouble() < currentFailureRate;
+            requests++;
+            if (failed) failures++;
+            if (virtualClock) virtualNanos += latency;
+        }
+
+        if (!virtualClock) sleep(latency);
+        return !failed;
+    }
+
+    private long nanos() {
+        return virtualClock ? virtualNanos : System.nanoTime() - createdAt;
+    }
+
+    private static void sleep(long nanos) {
+        try {
+            Thread.sleep(nanos / 1_000_000, (int) (nanos % 1_000_000));
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * The wire by default, it drops the bytes written
+     */
+    private static final class CountingChannel implements GatheringByteChannel {
+        @Override
+        public long write(ByteBuffer[] sources, int offset, int length) {
+            long written = 0;
+            for (int i = offset; i < offset + length; i++) {
+                written += sources[i].remaining();
+                sources[i].position(sources[i].limit());
+            }
+            return written;
+        }
+
+        @Override
+        public long write(ByteBuffer[] sources) {
+            return write(sources, 0, sources.length);
+        }
+
+        @Override
+        public int write(ByteBuffer source) {
+            return (int) write(new ByteBuffer[]{source});
+        }
+
+        @Override
+        public boolean isOpen() {
+            return true;
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+}
@@ -1,9 +1,83 @@
 package com.search.engine.solr;
 
+import akka.actor.typed.ActorSystem;
+import com.search.engine.reconciliation.Fingerprints;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
 /**
  * Contains the operations exposed by Solr
  */
 public interface SolrIndexer {
+    /**
+     * The simulation of the search engine when enabled, the mock otherwise, indexing into the given collection
+     */
+    static SolrIndexer create(ActorSystem<?> system, String collection) {
+        return system.settings().config().getBoolean("case-search-engine-index.solrIndexer.simulation.enabled")
+                ? new SimulatedSolrIndexer(system, collection)
+                : new MockSolrIndexer(system, collection);
+    }
+
     boolean indexDocument(String id);
     boolean deleteDocument(String id);
+
+    /**
+     * Indexes a batch of documents. Implementations sending the batch in a single request should override it
+     *
+     * @return true when all the documents were indexed
+     */
+    default boolean indexDocuments(List<String> ids) {
+        var indexed = true;
+        for (String id : ids) {
+            indexed &= indexDocument(id);
+        }
+
+        return indexed;
+    }
+
+    /**
+     * Indexes a batch of documents storing their fingerprints with them, see {@link #indexDocument(String, long)}.
+     * Implementations sending the batch in a single request should override it
+     *
+     * @param fingerprints by id
+     * @return true when all the documents were indexed
+     */
+    default boolean indexDocuments(Map<String, Long> fingerprints) {
+        var indexed = true;
+        for (Map.Entry<String, Long> document : fingerprints.entrySet()) {
+            indexed &= indexDocument(document.getKey(), document.getValue());
+        }
+
+        return indexed;
+    }
+
+    /**
+     * Indexes the document storing its fingerprint with it, see {@link Fingerprints}. Implementations not taking
+     * part in the reconciliation, the ones that are not a {@link FingerprintStore}, can ignore the fingerprint
+     */
+    default boolean indexDocument(String id, long fingerprint) {
+        return indexDocument(id);
+    }
+
+    /**
+     * Indexes the document with its search document when the registry has it prebuilt, see {@link SearchDocument}.
+     * Implementations sending the documents themselves should write it to the request instead of building it
+     */
+    default boolean indexDocument(String id, long fingerprint, Optional<SearchDocument> document) {
+        return indexDocument(id, fingerprint);
+    }
+
+    /**
+     * Indexes a batch of documents with the search documents prebuilt by the registry, the ones without it are
+     * built by the implementation, see {@link SearchDocument#writeBatch}
+     *
+     * @param fingerprints by id
+     * @param documents the prebuilt search documents, by id
+     * @return true when all the documents were indexed
+     */
+    default boolean indexDocuments(Map<String, Long> fingerprints, Map<String, SearchDocument> documents) {
+        return indexDocuments(fingerprints);
+    }
 }
@@ -0,0 +1,89 @@
+package com.search.engine.tenants;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Counters of the requests and of the index work of a tenant, in this node, since it started. The routes count the
+ * responses and the indexer of the tenant counts the calls to the search engine
+ */
+public final class TenantMetrics {
+    private final LongAdder succeeded = new LongAdder();
+    private final LongAdder rejected = new LongAdder();
+    private final LongAdder rateLimited = new LongAdder();
+    private final LongAdder unavailable = new LongAdder();
+    private final LongAdder failed = new LongAdder();
+    private final LongAdder indexed = new LongAdder();
+    private final LongAdder failedToIndex = new LongAdder();
+    private final LongAdder deleted = new LongAdder();
+    private final LongAdder failedToDelete = new LongAdder();
+    private volatile int retrying;
+
+    public void responded(int status) {
+        if (status == 429) {
+            rateLimited.increment();
+        } else if (status == 503) {
+            unavailable.increment();
+        } else if (status >= 500) {
+            failed.increment();
+        } else if (status >= 400) {
+            rejected.increment();
+        } else {
+            succeeded.increment();
+        }
+    }
+
+    public void indexed(int documents, boolean ok) {
+        (ok ? indexed : failedToIndex).add(documents);
+    }
+
+    public void deleted(boolean ok) {
+        (ok ? deleted : failedToDelete).increment();
+    }
+
+    /**
+     * The documents waiting to be retried by the indexer
+     */
+    public void retrying(int documents) {
+        retrying = documents;
+    }
+
+    public Snapshot snapshot(int requestsInFlight, int requestsQueued) {
+        return new Snapshot(succeeded.sum(), rejected.sum(), rateLimited.sum(), unavailable.sum(), failed.sum(),
+                requestsInFlight, requestsQueued, indexed.sum(), failedToIndex.sum(), deleted.sum(), failedToDelete.sum(), retrying);
+    }
+
+    /**
+     * The failed calls to the search engine count once per attempt, the documents retried are indexed later
+     */
+    public static final class Snapshot {
+        public final long requestsSucceeded;
+        public final long requestsRejected;
+        public final long requestsRateLimited;
+        public final long requestsUnavailable;
+        public final long requestsFailed;
+        public final int requestsInFlight;
+        public final int requestsQueued;
+        public final long documentsIndexed;
+        public final long documentsFailedToIndex;
+        public final long documentsDeleted;
+        public final long documentsFailedToDelete;
+        public final int documentsRetrying;
+
+        Snapshot(long requestsSucceeded, long requestsRejected, long requestsRateLimited, long requestsUnavailable, long requestsFailed,
+                 int requestsInFlight, int requestsQueued, long documentsIndexed, long documentsFailedToIndex, long documentsDeleted,
+                 long documentsFailedToDelete, int documentsRetrying) {
+            this.requestsSucceeded = requestsSucceeded;
+            this.requestsRejected = requestsRejected;
+            this.requestsRateLimited = requestsRateLimited;
+            this.requestsUnavailable = requestsUnavailable;
+            this.requestsFailed = requestsFailed;
+            this.requestsInFlight = requestsInFlight;
+            this.requestsQueued = requestsQueued;
+            this.documentsIndexed = documentsIndexed;
+            this.documentsFailedToIndex = documentsFailedToIndex;
+            this.documentsDeleted = documentsDeleted;
+            this.documentsFailedToDelete = documentsFailedToDelete;
+            this.documentsRetrying = documentsRetrying;
+        }
+    }
+}
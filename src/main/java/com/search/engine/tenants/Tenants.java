@@ -0,0 +1,97 @@
+package com.search.engine.tenants;
+
+import akka.actor.typed.ActorSystem;
+import akka.actor.typed.Extension;
+import akka.actor.typed.ExtensionId;
+import akka.persistence.typed.PersistenceId;
+import com.typesafe.config.Config;
+import com.typesafe.config.ConfigFactory;
+import com.typesafe.config.ConfigUtil;
+
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.regex.Pattern;
+
+/**
+ * The storefronts with their own catalogue, see case-search-engine-index.tenants.
+ * <p>
+ * Every tenant has its own registry, with its own persistence id, its own indexer and its own limits, so the load
+ * of a tenant, e.g. reloading its whole catalogue, only queues behind its own work. The documents of /documents
+ * are the ones of the registry without tenant.
+ */
+public final class Tenants implements Extension {
+    private static final Id ID = new Id();
+    // Part of actor names, persistence ids and paths
+    private static final Pattern TENANT_ID = Pattern.compile("[a-z0-9][a-z0-9-]{0,62}");
+
+    private final List<String> ids;
+    private final Config defaultLimits;
+    private final Config overrides;
+    private final Map<String, TenantMetrics> metrics = new ConcurrentHashMap<>();
+
+    public static Tenants get(ActorSystem<?> system) {
+        return ID.apply(system);
+    }
+
+    private static final class Id extends ExtensionId<Tenants> {
+        @Override
+        public Tenants createExtension(ActorSystem<?> system) {
+            var path = "case-search-engine-index.tenants";
+            var config = system.settings().config();
+            if (!config.hasPath(path)) {
+                return new Tenants(ConfigFactory.parseString("ids = [], default {}, overrides {}"));
+            }
+
+            return new Tenants(config.getConfig(path));
+        }
+    }
+
+    Tenants(Config config) {
+        this.ids = List.copyOf(config.getStringList("ids"));
+        this.defaultLimits = config.getConfig("default");
+        this.overrides = config.getConfig("overrides");
+
+        var unique = new HashSet<String>();
+        for (String id : ids) {
+            if (!TENANT_ID.matcher(id).matches()) {
+                throw new IllegalArgumentException("The tenant " + id + " must have only lowercase letters, digits and dashes");
+            }
+            if (!unique.add(id)) {
+                throw new IllegalArgumentException("The tenant " + id + " is configured twice");
+            }
+        }
+    }
+
+    public List<String> ids() {
+        return ids;
+    }
+
+    public boolean exists(String tenant) {
+        return ids.contains(tenant);
+    }
+
+    /**
+     * The limits of the tenant, its overrides over the default ones
+     */
+    public Config limits(String tenant) {
+        var path = ConfigUtil.joinPath(tenant);
+        return overrides.hasPath(path) ? overrides.getConfig(path).withFallback(defaultLimits) : defaultLimits;
+    }
+
+    public TenantMetrics metrics(String tenant) {
+        return metrics.computeIfAbsent(tenant, id -> new TenantMetrics());
+    }
+
+    /**
+     * The names of the actors of the tenant, and its persistence ids, end with the suffix
+     */
+    public static String suffix(String tenant) {
+        return "-" + tenant;
+    }
+
+    public static PersistenceId registryPersistenceId(String tenant) {
+        return PersistenceId.ofUniqueId("DocumentRegistry" + suffix(tenant));
+    }
+}
@@ -0,0 +1,60 @@
+package com.search.engine.tracing;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+
+/**
+ * Appends the spans to a file, a JSON object per line
+ */
+public final class FileSpanExporter implements SpanExporter {
+    private final static Logger log = LoggerFactory.getLogger(FileSpanExporter.class);
+
+    private final ObjectWriter writer;
+    private final BufferedWriter output;
+
+    /**
+     * @param objectMapper the one of the jackson-json serializer, shared with the routes
+     */
+    public FileSpanExporter(Path file, ObjectMapper objectMapper) {
+        this.writer = objectMapper.writerFor(Span.class);
+        try {
+            if (file.getParent() != null) Files.createDirectories(file.getParent());
+            this.output = Files.newBufferedWriter(file, StandardCharsets.UTF_8, StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+        } catch (IOException ex) {
+            throw new UncheckedIOException("The spans cannot be written to " + file, ex);
+        }
+    }
+
+    @Override
+    public void export(List<Span> spans) {
+        try {
+            for (Span span : spans) {
+                output.write(writer.writeValueAsString(span));
+                output.newLine();
+            }
+            output.flush();
+        } catch (IOException ex) {
+            log.warn("{} spans could not be written", spans.size(), ex);
+        }
+    }
+
+    @Override
+    public void close() {
+        try {
+            output.close();
+        } catch (IOException ex) {
+            log.warn("The spans file could not be closed", ex);
+        }
+    }
+}
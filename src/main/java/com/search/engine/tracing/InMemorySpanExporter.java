@@ -0,0 +1,34 @@
+package com.search.engine.tracing;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Collectors;
+
+/**
+ * Keeps the latest spans in memory, the oldest ones are forgotten first
+ */
+public final class InMemorySpanExporter implements SpanExporter {
+    private final int maxSpans;
+    private final ArrayDeque<Span> spans = new ArrayDeque<>();
+
+    public InMemorySpanExporter(int maxSpans) {
+        this.maxSpans = maxSpans;
+    }
+
+    @Override
+    public synchronized void export(List<Span> exported) {
+        for (Span span : exported) {
+            if (spans.size() == maxSpans) spans.removeFirst();
+            spans.addLast(span);
+        }
+    }
+
+    public synchronized List<Span> spans() {
+        return new ArrayList<>(spans);
+    }
+
+    public synchronized List<Span> trace(String traceId) {
+        return spans.stream().filter(span -> span.traceId.equals(traceId)).collect(Collectors.toList());
+    }
+}
@@ -0,0 +1,27 @@
+package com.search.engine.tracing;
+
+import java.util.Map;
+
+/**
+ * A finished span, as exported. The times are in microseconds, the start since the epoch
+ */
+public final class Span {
+    public final String traceId;
+    public final String spanId;
+    // Null for the root span of the trace
+    public final String parentSpanId;
+    public final String name;
+    public final long start;
+    public final long duration;
+    public final Map<String, String> attributes;
+
+    public Span(String traceId, String spanId, String parentSpanId, String name, long start, long duration, Map<String, String> attributes) {
+        this.traceId = traceId;
+        this.spanId = spanId;
+        this.parentSpanId = parentSpanId;
+        this.name = name;
+        this.start = start;
+        this.duration = duration;
+        this.attributes = attributes;
+    }
+}
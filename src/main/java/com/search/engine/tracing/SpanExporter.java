@@ -0,0 +1,12 @@
+package com.search.engine.tracing;
+
+import java.util.List;
+
+/**
+ * Where the spans go. Called with the spans recorded since the last export, from a single thread at a time
+ */
+public interface SpanExporter {
+    void export(List<Span> spans);
+
+    default void close() {}
+}
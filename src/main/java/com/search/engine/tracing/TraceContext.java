@@ -0,0 +1,43 @@
+package com.search.engine.tracing;
+
+import com.fasterxml.jackson.annotation.JsonCreator;
+
+/**
+ * Context of a sampled trace, carried by the commands and events of a document from the HTTP request until it is
+ * indexed. The spans recorded with it are children of its span.
+ * <p>
+ * It also has the time the message carrying it was sent, so the receiver can record how long the message waited,
+ * e.g. in the mailbox of the indexer.
+ */
+public final class TraceContext {
+    public final String traceId;
+    public final String spanId;
+    // Epoch microseconds
+    public final long sentAt;
+
+    @JsonCreator
+    public TraceContext(String traceId, String spanId, long sentAt) {
+        this.traceId = traceId;
+        this.spanId = spanId;
+        this.sentAt = sentAt;
+    }
+
+    /**
+     * The same context, sent now
+     */
+    public TraceContext sent() {
+        return new TraceContext(traceId, spanId, Tracing.now());
+    }
+
+    /**
+     * @return the W3C traceparent header of the context, sampled
+     */
+    public String traceparent() {
+        return "00-" + traceId + "-" + spanId + "-01";
+    }
+
+    @Override
+    public String toString() {
+        return traceparent();
+    }
+}
@@ -0,0 +1,155 @@
+package com.search.engine.tracing;
+
+import akka.Done;
+import akka.actor.CoordinatedShutdown;
+import akka.actor.typed.ActorSystem;
+import akka.actor.typed.DispatcherSelector;
+import akka.actor.typed.Extension;
+import akka.actor.typed.ExtensionId;
+import akka.actor.typed.javadsl.Adapter;
+import akka.serialization.jackson.JacksonObjectMapperProvider;
+
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Traces the lifecycle of the documents, from the HTTP request until they are indexed, see
+ * case-search-engine-index.tracing.
+ * <p>
+ * Only a sample of the requests is traced. The requests not sampled have no context, and recording a span without
+ * one does nothing, so they only cost drawing a random number. The spans recorded are queued, without blocking, and
+ * exported in batches on the blocking dispatcher. When the queue is full they are dropped.
+ */
+public final class Tracing implements Extension {
+    private static final Id ID = new Id();
+
+    private final double sampleRate;
+    private final SpanExporter exporter;
+    private final BlockingQueue<Span> queue;
+    private final AtomicLong dropped = new AtomicLong();
+
+    public static Tracing get(ActorSystem<?> system) {
+        return ID.apply(system);
+    }
+
+    private static final class Id extends ExtensionId<Tracing> {
+        @Override
+        public Tracing createExtension(ActorSystem<?> system) {
+            var path = "case-search-engine-index.tracing";
+            var config = system.settings().config();
+            if (!config.hasPath(path) || !config.getBoolean(path + ".enabled")) {
+                return new Tracing(0, 1, spans -> {});
+            }
+
+            var tracingConfig = config.getConfig(path);
+            SpanExporter exporter = switch (tracingConfig.getString("exporter")) {
+                case "file" -> new FileSpanExporter(Path.of(tracingConfig.getString("file")),
+                        JacksonObjectMapperProvider.get(Adapter.toClassic(system)).getOrCreate("jackson-json", Optional.empty()));
+                case "memory" -> new InMemorySpanExporter(tracingConfig.getInt("max-spans"));
+                default -> throw new IllegalArgumentException("Unknown span exporter " + tracingConfig.getString("exporter"));
+            };
+            var tracing = new Tracing(tracingConfig.getDouble("sample-rate"), tracingConfig.getInt("max-queued"), exporter);
+
+            var interval = tracingConfig.getDuration("export-interval");
+            system.scheduler().scheduleWithFixedDelay(interval, interval, tracing::flush,
+                    system.dispatchers().lookup(DispatcherSelector.blocking()));
+            CoordinatedShutdown.get(system).addTask(CoordinatedShutdown.PhaseBeforeActorSystemTerminate(), "export-spans", () -> {
+                tracing.flush();
+                exporter.close();
+                return CompletableFuture.completedFuture(Done.getInstance());
+            });
+
+            return tracing;
+        }
+    }
+
+    Tracing(double sampleRate, int maxQueued, SpanExporter exporter) {
+        this.sampleRate = sampleRate;
+        this.exporter = exporter;
+        this.queue = new ArrayBlockingQueue<>(maxQueued);
+    }
+
+    public SpanExporter exporter() {
+        return exporter;
+    }
+
+    /**
+     * Starts a trace, with the probability of the sample rate
+     *
+     * @return the context of the root span, empty if not sampled
+     */
+    public Optional<TraceContext> sample() {
+        if (sampleRate <= 0 || ThreadLocalRandom.current().nextDouble() >= sampleRate) return Optional.empty();
+
+        return Optional.of(new TraceContext(id() + id(), id(), now()));
+    }
+
+    /**
+     * Records a span from the start, in epoch microseconds, until now, child of the span of the context
+     *
+     * @return the context of the span recorded, empty if there is no context
+     */
+    public Optional<TraceContext> record(Optional<TraceContext> parent, String name, long start, Map<String, String> attributes) {
+        if (parent.isEmpty()) return Optional.empty();
+
+        var end = now();
+        var context = new TraceContext(parent.get().traceId, id(), end);
+        export(new Span(context.traceId, context.spanId, parent.get().spanId, name, start, end - start, attributes));
+        return Optional.of(context);
+    }
+
+    /**
+     * Records how long the message carrying the context waited, from when it was sent until now
+     */
+    public void recordWait(Optional<TraceContext> context, String name, Map<String, String> attributes) {
+        context.ifPresent(sent -> record(context, name, sent.sentAt, attributes));
+    }
+
+    /**
+     * Records the span of the root context, from when the trace started until now
+     */
+    public void finish(Optional<TraceContext> root, String name, Map<String, String> attributes) {
+        root.ifPresent(context -> export(new Span(context.traceId, context.spanId, null, name, context.sentAt, now() - context.sentAt, attributes)));
+    }
+
+    /**
+     * @return the spans dropped because the queue was full
+     */
+    public long dropped() {
+        return dropped.get();
+    }
+
+    /**
+     * Exports the spans queued
+     */
+    synchronized void flush() {
+        var spans = new ArrayList<Span>(queue.size());
+        queue.drainTo(spans);
+        if (!spans.isEmpty()) exporter.export(spans);
+    }
+
+    /**
+     * Epoch microseconds
+     */
+    public static long now() {
+        var now = Instant.now();
+        return now.getEpochSecond() * 1_000_000 + now.getNano() / 1_000;
+    }
+
+    private void export(Span span) {
+        if (!queue.offer(span)) dropped.incrementAndGet();
+    }
+
+    private static String id() {
+        var hex = Long.toHexString(ThreadLocalRandom.current().nextLong());
+        return "0".repeat(16 - hex.length()) + hex;
+    }
+}
@@ -1,77 +1,90 @@
 package com.search.engine.validators;
 
-import com.search.engine.exceptions.CaseSearchEngineException;
 import com.search.engine.models.Document;
+import com.search.engine.models.Violation;
 
-import java.net.MalformedURLException;
-import java.net.URL;
 import java.util.List;
-import java.util.UUID;
 
 /**
- * Class responsible of executing the validations on the request
+ * Class responsible of executing the validations on the request.
+ * <p>
+ * All the rules are checked and every violation is collected, so the client gets all the errors at once.
  */
 public class DocumentRequestValidator implements RequestValidator<Document> {
     private static final int NAME_MAX_LENGTH = 50;
     private static final int DESCRIPTION_MAX_LENGTH = 200;
     private static final int PROMOTION_MAX_LENGTH = 100;
     private static final int IMAGE_URLS_MAX_ALLOWED = 10;
+    private static final int IDEMPOTENCY_KEY_MAX_LENGTH = 255;
 
     @Override
-    public void validatePostEntity(Document entity) {
-        validateFieldRequired("name", entity.getName());
-        validateFieldRequired("dataSource", entity.getDataSource());
-
-        validateFieldSize("name", entity.getName(), NAME_MAX_LENGTH);
-        validateFieldSize("description", entity.getDescription(), DESCRIPTION_MAX_LENGTH);
-        validateFieldSize("promotion", entity.getPromotion(), PROMOTION_MAX_LENGTH);
-        validateFieldSize("imagesUrls", entity.getImagesUrls(), IMAGE_URLS_MAX_ALLOWED);
-        validateImagesUrlsFieldFormat(entity.getImagesUrls());
+    public List<Violation> postEntityViolations(Document entity) {
+        var violations = new Violations();
+        validateFieldRequired(violations, "name", entity.getName());
+        validateFieldRequired(violations, "dataSource", entity.getDataSource());
+
+        validateFields(violations, entity);
+        return violations.toList();
+    }
+
+    @Override
+    public List<Violation> patchEntityViolations(Document entity) {
+        var violations = new Violations();
+        validateFieldRequired(violations, "dataSource", entity.getDataSource());
+
+        validateFields(violations, entity);
+        return violations.toList();
     }
 
     @Override
-    public void validatePatchEntity(Document entity) {
-        validateFieldRequired("dataSource", entity.getDataSource());
-
-        validateFieldSize("name", entity.getName(), NAME_MAX_LENGTH);
-        validateFieldSize("description", entity.getDescription(), DESCRIPTION_MAX_LENGTH);
-        validateFieldSize("promotion", entity.getPromotion(), PROMOTION_MAX_LENGTH);
-        validateFieldSize("imagesUrls", entity.getImagesUrls(), IMAGE_URLS_MAX_ALLOWED);
-        validateImagesUrlsFieldFormat(entity.getImagesUrls());
+    public List<Violation> idViolations(String id) {
+        if (Scanners.isUuid(id)) return List.of();
+        return List.of(new Violation("id", "The id provided is invalid"));
     }
 
     @Override
-    public void validateId(String id) {
-        try {
-            UUID.fromString(id);
-        } catch (IllegalArgumentException ex) {
-            throw new CaseSearchEngineException("The id provided is invalid");
+    public List<Violation> idempotencyKeyViolations(String idempotencyKey) {
+        var violations = new Violations();
+
+        if (idempotencyKey.isBlank()) {
+            violations.add("Idempotency-Key", "The idempotency key provided is empty");
         }
+        validateFieldSize(violations, "Idempotency-Key", idempotencyKey, IDEMPOTENCY_KEY_MAX_LENGTH);
+
+        return violations.toList();
     }
 
-    private void validateFieldRequired(String fieldName, Object field) {
-        if (field == null) throw new CaseSearchEngineException("The field " + fieldName + " is mandatory");
+    private void validateFields(Violations violations, Document entity) {
+        validateFieldSize(violations, "name", entity.getName(), NAME_MAX_LENGTH);
+        validateFieldSize(violations, "description", entity.getDescription(), DESCRIPTION_MAX_LENGTH);
+        validateFieldSize(violations, "promotion", entity.getPromotion(), PROMOTION_MAX_LENGTH);
+        validateFieldSize(violations, "imagesUrls", entity.getImagesUrls(), IMAGE_URLS_MAX_ALLOWED);
+        validateImagesUrlsFieldFormat(violations, entity.getImagesUrls());
     }
 
+    private void validateFieldRequired(Violations violations, String fieldName, Object field) {
+        if (field == null) violations.add(fieldName, "The field " + fieldName + " is mandatory");
+    }
 
-    private void validateFieldSize(String fieldName, String field, int limit) {
+    private void validateFieldSize(Violations violations, String fieldName, String field, int limit) {
         if (field != null && field.length() > limit) {
-            throw new CaseSearchEngineException("The field " + fieldName + " has a size of " + field.length() + " and is bigger than the limit " + limit);
+            violations.add(fieldName, "The field " + fieldName + " has a size of " + field.length() + " and is bigger than the limit " + limit);
         }
     }
 
-    private void validateFieldSize(String fieldName, List<String> field, int limit) {
+    private void validateFieldSize(Violations violations, String fieldName, List<String> field, int limit) {
         if (field != null && field.size() > limit) {
-            throw new CaseSearchEngineException("The field " + fieldName + " has more elements '" + field.size() + "' than the max allowed " + limit);
+            violations.add(fieldName, "The field " + fieldName + " has more elements '" + field.size() + "' than the max allowed " + limit);
         }
     }
 
-    private void validateImagesUrlsFieldFormat(List<String> field) {
+    private void validateImagesUrlsFieldFormat(Violations violations, List<String> field) {
         if (field != null) {
-            try {
-                for (String s : field) { new URL(s); }
-            } catch (MalformedURLException ex) {
-                throw new CaseSearchEngineException("The imageUrls field contains malformed URLs");
+            for (int i = 0; i < field.size(); i++) {
+                if (!Scanners.isHttpUrl(field.get(i))) {
+                    violations.add("imagesUrls", "The imageUrls field contains malformed URLs");
+                    return;
+                }
             }
         }
     }
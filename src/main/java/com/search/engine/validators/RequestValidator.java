@@ -1,7 +1,55 @@
 package com.search.engine.validators;
 
+import com.search.engine.exceptions.ValidationException;
+import com.search.engine.models.Violation;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+
+/**
+ * The *Violations methods return every rule the request does not meet, an empty list when it is valid.
+ * The validate* methods throw a {@link ValidationException} with them instead. The ones of a whole request collect
+ * the violations of all its parts, so the client gets them in a single response.
+ */
 public interface RequestValidator<T> {
-    void validatePostEntity(T entity);
-    void validatePatchEntity(T entity);
-    void validateId(String id);
+    List<Violation> postEntityViolations(T entity);
+    List<Violation> patchEntityViolations(T entity);
+    List<Violation> idViolations(String id);
+    List<Violation> idempotencyKeyViolations(String idempotencyKey);
+
+    default void validatePostEntity(T entity) {
+        ValidationException.throwIfAny(postEntityViolations(entity));
+    }
+
+    default void validatePatchEntity(T entity) {
+        ValidationException.throwIfAny(patchEntityViolations(entity));
+    }
+
+    default void validateId(String id) {
+        ValidationException.throwIfAny(idViolations(id));
+    }
+
+    default void validateIdempotencyKey(String idempotencyKey) {
+        ValidationException.throwIfAny(idempotencyKeyViolations(idempotencyKey));
+    }
+
+    default void validatePost(T entity, Optional<String> idempotencyKey) {
+        ValidationException.throwIfAny(concat(postEntityViolations(entity),
+                idempotencyKey.map(this::idempotencyKeyViolations).orElse(List.of())));
+    }
+
+    default void validatePatch(String id, T entity) {
+        ValidationException.throwIfAny(concat(idViolations(id), patchEntityViolations(entity)));
+    }
+
+    private static List<Violation> concat(List<Violation> first, List<Violation> second) {
+        if (second.isEmpty()) return first;
+        if (first.isEmpty()) return second;
+
+        var violations = new ArrayList<Violation>(first.size() + second.size());
+        violations.addAll(first);
+        violations.addAll(second);
+        return violations;
+    }
 }
@@ -0,0 +1,86 @@
+package com.search.engine.validators;
+
+/**
+ * Scanners checking the format of the identifiers of the requests in a single pass, without allocating nor
+ * throwing exceptions
+ */
+final class Scanners {
+    private static final int UUID_LENGTH = 36;
+
+    private Scanners() {}
+
+    /**
+     * @return true when the value is a UUID in its canonical form, e.g. f65d620a-f10a-4549-b77b-d9f68f7ac029
+     */
+    static boolean isUuid(String value) {
+        if (value == null || value.length() != UUID_LENGTH) return false;
+
+        for (int i = 0; i < UUID_LENGTH; i++) {
+            char c = value.charAt(i);
+
+            if (i == 8 || i == 13 || i == 18 || i == 23) {
+                if (c != '-') return false;
+            } else if (!isHexDigit(c)) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    /**
+     * @return true when the value is an absolute http or https URL with a host, without whitespaces nor control
+     * characters
+     */
+    static boolean isHttpUrl(String value) {
+        if (value == null) return false;
+
+        int length = value.length();
+        int authorityStart;
+        if (value.regionMatches(true, 0, "http://", 0, 7)) {
+            authorityStart = 7;
+        } else if (value.regionMatches(true, 0, "https://", 0, 8)) {
+            authorityStart = 8;
+        } else {
+            return false;
+        }
+
+        int i = authorityStart;
+        while (i < length) {
+            char c = value.charAt(i);
+            if (c == '/' || c == '?' || c == '#') break;
+            if (!isAuthorityChar(c)) return false;
+            i++;
+        }
+
+        if (i == authorityStart) return false; // No host
+
+        for (; i < length; i++) {
+            char c = value.charAt(i);
+            if (c <= ' ' || c == 0x7f) return false;
+        }
+
+        return true;
+    }
+
+    private static boolean isHexDigit(char c) {
+        return (c >= '0' && c <= '9') || (c >= 'a' && c <= 'f') || (c >= 'A' && c <= 'F');
+    }
+
+    /**
+     * Unreserved, sub-delims, percent encoding, user info and port characters of RFC 3986, plus the brackets of
+     * the IPv6 hosts
+     */
+    private static boolean isAuthorityChar(char c) {
+        if ((c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z') || (c >= '0' && c <= '9')) return true;
+
+        switch (c) {
+            case '-': case '.': case '_': case '~':
+            case '!': case '$': case '&': case '\'': case '(': case ')': case '*': case '+': case ',': case ';': case '=':
+            case '%': case ':': case '@': case '[': case ']':
+                return true;
+            default:
+                return false;
+        }
+    }
+}
@@ -0,0 +1,22 @@
+package com.search.engine.validators;
+
+import com.search.engine.models.Violation;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Collects the violations of a request. Nothing is allocated until the first violation is found
+ */
+final class Violations {
+    private List<Violation> violations;
+
+    void add(String field, String message) {
+        if (violations == null) violations = new ArrayList<>(2);
+        violations.add(new Violation(field, message));
+    }
+
+    List<Violation> toList() {
+        return violations == null ? List.of() : violations;
+    }
+}
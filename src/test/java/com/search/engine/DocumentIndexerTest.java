@@ -1,17 +1,30 @@
 package com.search.engine;
 
+import akka.Done;
 import akka.actor.testkit.typed.javadsl.TestKitJunitResource;
 import akka.actor.testkit.typed.javadsl.TestProbe;
 import akka.actor.typed.ActorRef;
+import com.fasterxml.jackson.databind.ObjectMapper;
 import com.search.engine.models.DataSource;
+import com.search.engine.models.Document;
+import com.search.engine.solr.SearchDocument;
+import com.search.engine.tenants.TenantMetrics;
 import org.junit.AfterClass;
 import org.junit.BeforeClass;
 import org.junit.ClassRule;
 import org.junit.Test;
 
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+import java.util.Optional;
 import java.util.UUID;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
 
 public class DocumentIndexerTest {
     @ClassRule
@@ -36,7 +49,7 @@ public class DocumentIndexerTest {
         DataSource dataSource = DataSource.PRODUCTS;
 
         TestProbe<DocumentRegistry.DocumentStatusToIndexed> probe = testkit.createTestProbe();
-        documentIndexer.tell(new DocumentIndexer.IndexDocument(id, dataSource, probe.ref()));
+        documentIndexer.tell(new DocumentIndexer.IndexDocument(id, dataSource, DocumentIndexer.UNVERSIONED, probe.ref()));
 
         var documentIndexedMessage = probe.receiveMessage();
         assertEquals(documentIndexedMessage.id, id);
@@ -53,12 +66,12 @@ public class DocumentIndexerTest {
         solrIndexer.indexDocumentSuccess = false;
 
         TestProbe<DocumentRegistry.DocumentStatusToIndexed> probe = testkit.createTestProbe();
-        documentIndexer.tell(new DocumentIndexer.IndexDocument(id1, dataSource1, probe.ref()));
+        documentIndexer.tell(new DocumentIndexer.IndexDocument(id1, dataSource1, DocumentIndexer.UNVERSIONED, probe.ref()));
 
         probe.expectNoMessage();
 
         solrIndexer.indexDocumentSuccess = true;
-        documentIndexer.tell(new DocumentIndexer.IndexDocument(id2, dataSource2, probe.ref()));
+        documentIndexer.tell(new DocumentIndexer.IndexDocument(id2, dataSource2, DocumentIndexer.UNVERSIONED, probe.ref()));
 
         var documentIndexedMessages = probe.receiveSeveralMessages(2);
 
@@ -74,7 +87,7 @@ public class DocumentIndexerTest {
         String id = UUID.randomUUID().toString();
 
         TestProbe<DocumentRegistry.DocumentStatusToDeleted> probe = testkit.createTestProbe();
-        documentIndexer.tell(new DocumentIndexer.DeleteDocument(id, probe.ref()));
+        documentIndexer.tell(new DocumentIndexer.DeleteDocument(id, DocumentIndexer.UNVERSIONED, probe.ref()));
 
         var documentDeletedMessage = probe.receiveMessage();
         assertEquals(documentDeletedMessage.id, id);
@@ -88,12 +101,12 @@ public class DocumentIndexerTest {
         solrIndexer.deleteDocumentSuccess = false;
 
         TestProbe<DocumentRegistry.DocumentStatusToDeleted> probe = testkit.createTestProbe();
-        documentIndexer.tell(new DocumentIndexer.DeleteDocument(id1, probe.ref()));
+        documentIndexer.tell(new DocumentIndexer.DeleteDocument(id1, DocumentIndexer.UNVERSIONED, probe.ref()));
 
         probe.expectNoMessage();
 
         solrIndexer.deleteDocumentSuccess = true;
-        documentIndexer.tell(new DocumentIndexer.DeleteDocument(id2, probe.ref()));
+        documentIndexer.tell(new DocumentIndexer.DeleteDocument(id2, DocumentIndexer.UNVERSIONED, probe.ref()));
 
         var documentDeletedMessages = probe.receiveSeveralMessages(2);
 
@@ -101,4 +114,284 @@ public class DocumentIndexerTest {
         assertEquals(documentDeletedMessages.get(0).id, id1);
         assertEquals(documentDeletedMessages.get(1).id, id2);
     }
-}
\ No newline at end of file
+
+    @Test
+    public void indexDocumentAcknowledged() {
+        String id = UUID.randomUUID().toString();
+        DataSource dataSource = DataSource.PROMOTIONS;
+
+        TestProbe<DocumentRegistry.DocumentStatusToIndexed> probe = testkit.createTestProbe();
+        TestProbe<Done> ackProbe = testkit.createTestProbe();
+        documentIndexer.tell(new DocumentIndexer.IndexDocument(id, dataSource, DocumentIndexer.UNVERSIONED, probe.ref()).withAckTo(ackProbe.ref()));
+
+        assertEquals(probe.receiveMessage().id, id);
+        ackProbe.expectMessage(Done.getInstance());
+    }
+
+    @Test
+    public void indexDocumentFailedThenRetriedPeriodically() {
+        String id = UUID.randomUUID().toString();
+        DataSource dataSource = DataSource.PRODUCTS;
+
+        TestSolrIndexer failingSolrIndexer = new TestSolrIndexer();
+        failingSolrIndexer.indexDocumentSuccess = false;
+        ActorRef<DocumentIndexer.Command> retryingIndexer = testkit.spawn(DocumentIndexer.create(failingSolrIndexer, Duration.ofMillis(100)));
+
+        TestProbe<DocumentRegistry.DocumentStatusToIndexed> probe = testkit.createTestProbe();
+        TestProbe<Done> ackProbe = testkit.createTestProbe();
+        retryingIndexer.tell(new DocumentIndexer.IndexDocument(id, dataSource, DocumentIndexer.UNVERSIONED, probe.ref()).withAckTo(ackProbe.ref()));
+
+        ackProbe.expectNoMessage(Duration.ofMillis(300));
+
+        // No new document arrives, the timer retries the failed one
+        failingSolrIndexer.indexDocumentSuccess = true;
+
+        assertEquals(probe.receiveMessage().id, id);
+        ackProbe.expectMessage(Done.getInstance());
+        testkit.stop(retryingIndexer);
+    }
+
+    @Test
+    public void deleteDocumentAcknowledged() {
+        String id = UUID.randomUUID().toString();
+
+        TestProbe<DocumentRegistry.DocumentStatusToDeleted> probe = testkit.createTestProbe();
+        TestProbe<Done> ackProbe = testkit.createTestProbe();
+        documentIndexer.tell(new DocumentIndexer.DeleteDocument(id, DocumentIndexer.UNVERSIONED, probe.ref()).withAckTo(ackProbe.ref()));
+
+        assertEquals(probe.receiveMessage().id, id);
+        ackProbe.expectMessage(Done.getInstance());
+    }
+
+    @Test
+    public void drainIndexesFailedDocumentsBeforeDeadline() {
+        TestSolrIndexer failingSolrIndexer = new TestSolrIndexer();
+        failingSolrIndexer.indexDocumentSuccess = false;
+        failingSolrIndexer.deleteDocumentSuccess = false;
+        ActorRef<DocumentIndexer.Command> drainingIndexer = testkit.spawn(DocumentIndexer.create(failingSolrIndexer));
+
+        TestProbe<DocumentRegistry.DocumentStatusToIndexed> indexedProbe = testkit.createTestProbe();
+        TestProbe<DocumentRegistry.DocumentStatusToDeleted> deletedProbe = testkit.createTestProbe();
+        drainingIndexer.tell(new DocumentIndexer.IndexDocument(UUID.randomUUID().toString(), DataSource.PRODUCTS, DocumentIndexer.UNVERSIONED, indexedProbe.ref()));
+        drainingIndexer.tell(new DocumentIndexer.DeleteDocument(UUID.randomUUID().toString(), DocumentIndexer.UNVERSIONED, deletedProbe.ref()));
+
+        TestProbe<DocumentIndexer.DrainReport> reportProbe = testkit.createTestProbe();
+        drainingIndexer.tell(new DocumentIndexer.Drain(Instant.now().plusSeconds(5), reportProbe.ref()));
+        reportProbe.expectNoMessage(Duration.ofMillis(300));
+
+        // The search engine is back before the deadline
+        failingSolrIndexer.indexDocumentSuccess = true;
+        failingSolrIndexer.deleteDocumentSuccess = true;
+
+        var report = reportProbe.receiveMessage();
+        assertEquals(1, report.indexed);
+        assertEquals(1, report.deleted);
+        assertEquals(0, report.failedToIndex);
+        assertEquals(0, report.failedToDelete);
+        testkit.stop(drainingIndexer);
+    }
+
+    @Test
+    public void drainReportsDocumentsStillFailingAtDeadline() {
+        TestSolrIndexer failingSolrIndexer = new TestSolrIndexer();
+        failingSolrIndexer.indexDocumentSuccess = false;
+        ActorRef<DocumentIndexer.Command> drainingIndexer = testkit.spawn(DocumentIndexer.create(failingSolrIndexer));
+
+        TestProbe<DocumentRegistry.DocumentStatusToIndexed> indexedProbe = testkit.createTestProbe();
+        drainingIndexer.tell(new DocumentIndexer.IndexDocument(UUID.randomUUID().toString(), DataSource.PRODUCTS, DocumentIndexer.UNVERSIONED, indexedProbe.ref()));
+
+        TestProbe<DocumentIndexer.DrainReport> reportProbe = testkit.createTestProbe();
+        drainingIndexer.tell(new DocumentIndexer.Drain(Instant.now().plusSeconds(1), reportProbe.ref()));
+
+        var report = reportProbe.receiveMessage(Duration.ofSeconds(3));
+        assertEquals(0, report.indexed);
+        assertEquals(1, report.failedToIndex);
+        testkit.stop(drainingIndexer);
+    }
+
+    @Test
+    public void staleIndexDocumentAcknowledgedWithoutIndexing() {
+        String id = UUID.randomUUID().toString();
+
+        TestProbe<DocumentRegistry.DocumentStatusToIndexed> probe = testkit.createTestProbe();
+        TestProbe<Done> ackProbe = testkit.createTestProbe();
+        documentIndexer.tell(new DocumentIndexer.IndexDocument(id, DataSource.PRICES, 5, probe.ref()).withAckTo(ackProbe.ref()));
+        assertEquals(probe.receiveMessage().id, id);
+        ackProbe.expectMessage(Done.getInstance());
+
+        // An older version delivered late is dropped, it would overwrite the newer one
+        documentIndexer.tell(new DocumentIndexer.IndexDocument(id, DataSource.PRODUCTS, 3, probe.ref()).withAckTo(ackProbe.ref()));
+        ackProbe.expectMessage(Done.getInstance());
+        probe.expectNoMessage(Duration.ofMillis(200));
+    }
+
+    @Test
+    public void indexDocumentOlderThanDeleteDropped() {
+        String id = UUID.randomUUID().toString();
+
+        TestProbe<DocumentRegistry.DocumentStatusToDeleted> deletedProbe = testkit.createTestProbe();
+        documentIndexer.tell(new DocumentIndexer.DeleteDocument(id, 7, deletedProbe.ref()));
+        assertEquals(deletedProbe.receiveMessage().id, id);
+
+        TestProbe<DocumentRegistry.DocumentStatusToIndexed> indexedProbe = testkit.createTestProbe();
+        documentIndexer.tell(new DocumentIndexer.IndexDocument(id, DataSource.PRODUCTS, 6, indexedProbe.ref()));
+        indexedProbe.expectNoMessage(Duration.ofMillis(200));
+
+        // The reconciliation does not version its index work
+        documentIndexer.tell(new DocumentIndexer.IndexDocument(id, DataSource.PRODUCTS, DocumentIndexer.UNVERSIONED, indexedProbe.ref()));
+        assertEquals(indexedProbe.receiveMessage().id, id);
+    }
+
+    @Test
+    public void failedIndexDocumentSupersededIsNotRetried() {
+        String id = UUID.randomUUID().toString();
+
+        TestSolrIndexer failingSolrIndexer = new TestSolrIndexer();
+        failingSolrIndexer.indexDocumentSuccess = false;
+        ActorRef<DocumentIndexer.Command> failingIndexer = testkit.spawn(DocumentIndexer.create(failingSolrIndexer));
+
+        TestProbe<DocumentRegistry.DocumentStatusToIndexed> probe = testkit.createTestProbe();
+        TestProbe<Done> staleAckProbe = testkit.createTestProbe();
+        failingIndexer.tell(new DocumentIndexer.IndexDocument(id, DataSource.PRODUCTS, 1, probe.ref()).withAckTo(staleAckProbe.ref()));
+        staleAckProbe.expectNoMessage(Duration.ofMillis(200));
+
+        // The newer version is indexed, the failed one is acknowledged without being sent again
+        failingSolrIndexer.indexDocumentSuccess = true;
+        failingIndexer.tell(new DocumentIndexer.IndexDocument(id, DataSource.PRICES, 2, probe.ref()));
+
+        staleAckProbe.expectMessage(Done.getInstance());
+        assertEquals(DataSource.PRICES, probe.receiveMessage().dataSource);
+        probe.expectNoMessage(Duration.ofMillis(200));
+        testkit.stop(failingIndexer);
+    }
+
+    @Test
+    public void indexDocumentsLeavesOutSupersededDocuments() {
+        String id1 = UUID.randomUUID().toString();
+        String id2 = UUID.randomUUID().toString();
+
+        TestProbe<DocumentRegistry.DocumentStatusToIndexed> probe = testkit.createTestProbe();
+        documentIndexer.tell(new DocumentIndexer.IndexDocument(id2, DataSource.PROMOTIONS, 10, probe.ref()));
+        assertEquals(probe.receiveMessage().id, id2);
+
+        TestProbe<Done> ackProbe = testkit.createTestProbe();
+        documentIndexer.tell(new DocumentIndexer.IndexDocuments(List.of(id1, id2), DataSource.PROMOTIONS, 8, probe.ref()).withAckTo(ackProbe.ref()));
+
+        assertEquals(probe.receiveMessage().id, id1);
+        ackProbe.expectMessage(Done.getInstance());
+        probe.expectNoMessage(Duration.ofMillis(200));
+    }
+
+    @Test
+    public void callsOfDifferentDocumentsInFlightAtOnce() {
+        // Every call waits for the other one, they only succeed when both are in flight
+        var bothCalled = new CountDownLatch(2);
+        ActorRef<DocumentIndexer.Command> concurrentIndexer = testkit.spawn(DocumentIndexer.create(new TestSolrIndexer() {
+            @Override
+            public boolean indexDocument(String id) {
+                bothCalled.countDown();
+                try {
+                    return bothCalled.await(2, TimeUnit.SECONDS);
+                } catch (InterruptedException ex) {
+                    return false;
+                }
+            }
+        }));
+
+        TestProbe<DocumentRegistry.DocumentStatusToIndexed> probe = testkit.createTestProbe();
+        concurrentIndexer.tell(new DocumentIndexer.IndexDocument(UUID.randomUUID().toString(), DataSource.PRICES, DocumentIndexer.UNVERSIONED, probe.ref()));
+        concurrentIndexer.tell(new DocumentIndexer.IndexDocument(UUID.randomUUID().toString(), DataSource.PRICES, DocumentIndexer.UNVERSIONED, probe.ref()));
+
+        assertEquals(2, probe.receiveSeveralMessages(2).size());
+        testkit.stop(concurrentIndexer);
+    }
+
+    @Test
+    public void callsOfTheSameDocumentInArrivalOrder() {
+        String id = UUID.randomUUID().toString();
+        var calls = new ConcurrentLinkedQueue<String>();
+        ActorRef<DocumentIndexer.Command> orderedIndexer = testkit.spawn(DocumentIndexer.create(new TestSolrIndexer() {
+            @Override
+            public boolean indexDocument(String id) {
+                try {
+                    Thread.sleep(100);
+                } catch (InterruptedException ex) {
+                    return false;
+                }
+                calls.add("index");
+                return true;
+            }
+
+            @Override
+            public boolean deleteDocument(String id) {
+                calls.add("delete");
+                return true;
+            }
+        }));
+
+        TestProbe<DocumentRegistry.DocumentStatusToIndexed> indexedProbe = testkit.createTestProbe();
+        TestProbe<DocumentRegistry.DocumentStatusToDeleted> deletedProbe = testkit.createTestProbe();
+        orderedIndexer.tell(new DocumentIndexer.IndexDocument(id, DataSource.PRICES, DocumentIndexer.UNVERSIONED, indexedProbe.ref()));
+        orderedIndexer.tell(new DocumentIndexer.DeleteDocument(id, DocumentIndexer.UNVERSIONED, deletedProbe.ref()));
+
+        indexedProbe.receiveMessage();
+        deletedProbe.receiveMessage();
+        assertEquals(List.of("index", "delete"), List.copyOf(calls));
+        testkit.stop(orderedIndexer);
+    }
+
+    @Test
+    public void failedCommandDeliveredAgainIndexedOnceAndAcknowledgedToTheNewSender() {
+        String id = UUID.randomUUID().toString();
+
+        TestSolrIndexer failingSolrIndexer = new TestSolrIndexer();
+        failingSolrIndexer.indexDocumentSuccess = false;
+        ActorRef<DocumentIndexer.Command> failingIndexer = testkit.spawn(DocumentIndexer.create(failingSolrIndexer));
+
+        TestProbe<DocumentRegistry.DocumentStatusToIndexed> probe = testkit.createTestProbe();
+        TestProbe<Done> timedOutAckProbe = testkit.createTestProbe();
+        TestProbe<Done> ackProbe = testkit.createTestProbe();
+        failingIndexer.tell(new DocumentIndexer.IndexDocument(id, DataSource.PRICES, 4, probe.ref()).withAckTo(timedOutAckProbe.ref()));
+        probe.expectNoMessage(Duration.ofMillis(200));
+
+        // The outbox restarts and delivers it again, with a new ask
+        failingIndexer.tell(new DocumentIndexer.IndexDocument(id, DataSource.PRICES, 4, probe.ref()).withAckTo(ackProbe.ref()));
+        probe.expectNoMessage(Duration.ofMillis(200));
+
+        failingSolrIndexer.indexDocumentSuccess = true;
+        failingIndexer.tell(new DocumentIndexer.IndexDocument(UUID.randomUUID().toString(), DataSource.PRICES, DocumentIndexer.UNVERSIONED, probe.ref()));
+
+        assertEquals(id, probe.receiveMessage().id);
+        ackProbe.expectMessage(Done.getInstance());
+        probe.receiveMessage();
+        probe.expectNoMessage(Duration.ofMillis(200));
+        timedOutAckProbe.expectNoMessage(Duration.ofMillis(100));
+        testkit.stop(failingIndexer);
+    }
+
+    @Test
+    public void prebuiltSearchDocumentSentToTheSearchEngine() {
+        String id = UUID.randomUUID().toString();
+        var document = new Document("Shoes", "Running shoes", List.of(), 42.5, null, DataSource.PRODUCTS);
+        document.setId(id);
+        document.setVersion(3);
+        var searchDocuments = new SearchDocuments(SearchDocuments.DEFAULT_MAX_BYTES, new ObjectMapper());
+        searchDocuments.created(document);
+
+        var sent = new ConcurrentLinkedQueue<Optional<SearchDocument>>();
+        ActorRef<DocumentIndexer.Command> prebuiltIndexer = testkit.spawn(DocumentIndexer.create(new TestSolrIndexer() {
+            @Override
+            public boolean indexDocument(String id, long fingerprint, Optional<SearchDocument> searchDocument) {
+                sent.add(searchDocument);
+                return true;
+            }
+        }, Duration.ofSeconds(1), new TenantMetrics(), searchDocuments));
+
+        TestProbe<DocumentRegistry.DocumentStatusToIndexed> probe = testkit.createTestProbe();
+        prebuiltIndexer.tell(new DocumentIndexer.IndexDocument(id, DataSource.PRODUCTS, 3, probe.ref()));
+
+        assertEquals(id, probe.receiveMessage().id);
+        assertSame(searchDocuments.get(id, 3).orElseThrow(), sent.poll().orElseThrow());
+        testkit.stop(prebuiltIndexer);
+    }
+}
@@ -6,13 +6,22 @@ import akka.actor.typed.ActorRef;
 import akka.pattern.StatusReply;
 import akka.persistence.testkit.javadsl.EventSourcedBehaviorTestKit;
 import akka.persistence.typed.PersistenceId;
+import com.search.engine.exceptions.PreconditionFailedException;
+import com.search.engine.exceptions.UnprocessableEntityException;
 import com.search.engine.models.*;
 import com.typesafe.config.ConfigFactory;
 import org.junit.Before;
 import org.junit.ClassRule;
 import org.junit.Test;
 
+import java.time.Duration;
+import java.time.Instant;
 import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.stream.Collectors;
 
 import static org.junit.Assert.*;
 
@@ -145,6 +154,273 @@ public class DocumentRegistryTest {
         assertEquals(DocumentState.DELETED, documentToDelete.state().getDocument(createdResponse.id).getState());
     }
 
+    @Test
+    public void createDocumentWithIdempotencyKeyRetried() {
+        var idempotencyKey = Optional.of("create-test-document");
+
+        // Create a document
+        EventSourcedBehaviorTestKit.CommandResultWithReply<
+                DocumentRegistry.Command,
+                DocumentRegistry.Event,
+                DocumentRegistry.State,
+                StatusReply<DocumentCreatedResponse>> documentCreatedResult = documentRegistryTestKit.runCommand(
+                replyTo -> new DocumentRegistry.CreateDocument(generateTestDocumentFromProducts(), idempotencyKey, replyTo));
+
+        assertTrue(documentCreatedResult.reply().isSuccess());
+        DocumentCreatedResponse createdResponse = documentCreatedResult.reply().getValue();
+        assertEquals(idempotencyKey, documentCreatedResult.eventOfType(DocumentRegistry.DocumentCreated.class).idempotencyKey);
+
+        // Retry the creation, the same document is returned
+        EventSourcedBehaviorTestKit.CommandResultWithReply<
+                DocumentRegistry.Command,
+                DocumentRegistry.Event,
+                DocumentRegistry.State,
+                StatusReply<DocumentCreatedResponse>> retriedResult = documentRegistryTestKit.runCommand(
+                replyTo -> new DocumentRegistry.CreateDocument(generateTestDocumentFromProducts(), idempotencyKey, replyTo));
+
+        assertTrue(retriedResult.reply().isSuccess());
+        assertEquals(createdResponse.id, retriedResult.reply().getValue().id);
+        assertTrue(retriedResult.hasNoEvents());
+
+        // The key survives a restart
+        documentRegistryTestKit.restart();
+
+        EventSourcedBehaviorTestKit.CommandResultWithReply<
+                DocumentRegistry.Command,
+                DocumentRegistry.Event,
+                DocumentRegistry.State,
+                StatusReply<DocumentCreatedResponse>> retriedAfterRestartResult = documentRegistryTestKit.runCommand(
+                replyTo -> new DocumentRegistry.CreateDocument(generateTestDocumentFromProducts(), idempotencyKey, replyTo));
+
+        assertEquals(createdResponse.id, retriedAfterRestartResult.reply().getValue().id);
+        assertTrue(retriedAfterRestartResult.hasNoEvents());
+    }
+
+    @Test
+    public void createDocumentWithIdempotencyKeyReusedForAnotherDocument() {
+        var idempotencyKey = Optional.of("reused-key");
+
+        var created = documentRegistryTestKit.<StatusReply<DocumentCreatedResponse>>runCommand(
+                replyTo -> new DocumentRegistry.CreateDocument(generateTestDocumentFromProducts(), idempotencyKey, replyTo));
+        assertTrue(created.reply().isSuccess());
+
+        // Another document with the same key is rejected, nothing is persisted
+        var reused = documentRegistryTestKit.<StatusReply<DocumentCreatedResponse>>runCommand(
+                replyTo -> new DocumentRegistry.CreateDocument(generateTestDocumentFromPrices(), idempotencyKey, replyTo));
+        assertTrue(reused.reply().isError());
+        assertTrue(reused.reply().getError() instanceof UnprocessableEntityException);
+        assertTrue(reused.hasNoEvents());
+
+        // The hash is recovered with the key
+        documentRegistryTestKit.restart();
+        var reusedAfterRestart = documentRegistryTestKit.<StatusReply<DocumentCreatedResponse>>runCommand(
+                replyTo -> new DocumentRegistry.CreateDocument(generateTestDocumentFromPrices(), idempotencyKey, replyTo));
+        assertTrue(reusedAfterRestart.reply().getError() instanceof UnprocessableEntityException);
+    }
+
+    @Test
+    public void readDocumentsInPagesSkippingDeleted() {
+        // Create three documents and delete one of them
+        var ids = new TreeSet<String>();
+        for (int i = 0; i < 3; i++) {
+            ids.add(documentRegistryTestKit.<StatusReply<DocumentCreatedResponse>>runCommand(
+                    replyTo -> new DocumentRegistry.CreateDocument(generateTestDocumentFromProducts(), replyTo)).reply().getValue().id);
+        }
+        var deletedId = ids.first();
+        documentRegistryTestKit.runCommand(replyTo -> new DocumentRegistry.DeleteDocument(deletedId, replyTo));
+
+        // The first page scans the deleted document and the next one
+        DocumentsPage firstPage = documentRegistryTestKit.<DocumentsPage>runCommand(
+                replyTo -> new DocumentRegistry.GetDocumentsPage(Optional.empty(), 2, replyTo)).reply();
+        assertEquals(List.of(ids.higher(deletedId)), firstPage.ids);
+        assertEquals(2, firstPage.scanned);
+        assertEquals(3, firstPage.totalDocuments);
+        assertTrue(firstPage.hasMore);
+
+        // The second page starts after the last id scanned
+        DocumentsPage secondPage = documentRegistryTestKit.<DocumentsPage>runCommand(
+                replyTo -> new DocumentRegistry.GetDocumentsPage(firstPage.lastId, 2, replyTo)).reply();
+        assertEquals(List.of(ids.last()), secondPage.ids);
+        assertFalse(secondPage.hasMore);
+    }
+
+    @Test
+    public void readDeltaSinceTimestamp() {
+        var state = new DocumentRegistry.State();
+        var since = Instant.parse("2021-07-01T10:00:00Z");
+        var ids = List.of("a", "b", "c", "d");
+        for (String id : ids) {
+            var document = generateTestDocumentFromPrices();
+            document.setId(id);
+            state.createDocument(document);
+        }
+
+        // b is indexed twice, only its last index counts
+        state.indexDocument("a", DataSource.PRICES, since.minusSeconds(1));
+        state.indexDocument("b", DataSource.PRICES, since);
+        state.indexDocument("c", DataSource.PRICES, since.plusSeconds(1));
+        state.indexDocument("b", DataSource.PRICES, since.plusSeconds(2));
+        state.indexDocument("d", DataSource.PROMOTIONS, since.plusSeconds(3));
+
+        var firstPage = state.getDelta(DataSource.PRICES, since, Optional.empty(), 1);
+        assertEquals(List.of("c"), firstPage.documents.stream().map(document -> document.id).collect(Collectors.toList()));
+        assertTrue(firstPage.hasMore);
+
+        var secondPage = state.getDelta(DataSource.PRICES, firstPage.lastTimestamp.get(), firstPage.lastId, 1);
+        assertEquals(List.of("b"), secondPage.documents.stream().map(document -> document.id).collect(Collectors.toList()));
+        assertFalse(secondPage.hasMore);
+    }
+
+    @Test
+    public void readDeletedDocumentsAsTombstones() {
+        var state = new DocumentRegistry.State();
+        var since = Instant.parse("2021-07-01T10:00:00Z");
+        var document = generateTestDocumentFromPrices();
+        document.setId("a");
+        state.createDocument(document);
+        state.indexDocument("a", DataSource.PRICES, since);
+
+        var page = state.getDelta(DataSource.PRICES, since.minusSeconds(1), Optional.empty(), 10);
+        var copy = page.documents.get(0);
+        assertFalse(copy.isTombstone());
+        assertEquals(document.getPrice(), copy.price);
+
+        // The deletion moves the document after the ones reading since it was indexed
+        state.deleteDocument("a", Optional.of(since.plusSeconds(5)));
+        assertEquals(DocumentState.INDEXED, copy.state);
+        var tombstone = state.getDelta(DataSource.PRICES, since, Optional.of("a"), 10).documents.get(0);
+        assertTrue(tombstone.isTombstone());
+        assertEquals("a", tombstone.id);
+        assertEquals(since.plusSeconds(5), tombstone.timestamp);
+        assertNull(tombstone.price);
+    }
+
+    @Test
+    public void hydrateBodiesLazily() {
+        var state = new DocumentRegistry.State(new TreeMap<>(), new IdempotencyKeys(), new DocumentBodies());
+        var document = generateTestDocumentFromProducts();
+        document.setId("a");
+
+        // Recovered documents only keep their body events
+        state.createDocument(document, Optional.empty(), Instant.now(), 1, false);
+        state.updateDocument(withId("a", generateTestDocumentFromPrices()), 2);
+        assertFalse(state.isHydrated("a"));
+        assertNull(state.getDocument("a").getName());
+        assertEquals(DataSource.PRICES, state.getDocument("a").getDataSource());
+        assertArrayEquals(new long[]{1, 2}, state.bodyEvents(List.of("a")).get("a"));
+
+        // The body rebuilt from the events is hydrated
+        var body = generateTestDocumentFromProducts();
+        DocumentRegistry.State.mergeBody(body, generateTestDocumentFromPrices());
+        state.hydrate("a", body);
+        assertTrue(state.isHydrated("a"));
+        assertEquals("Test document", state.getDocument("a").getName());
+        assertEquals(10.25, state.getDocument("a").getPrice(), 0);
+
+        // The snapshots do not have bodies
+        assertNull(state.snapshotDocuments().get(0).getName());
+    }
+
+    private Document withId(String id, Document document) {
+        document.setId(id);
+        return document;
+    }
+
+    @Test
+    public void updateAndDeleteDocumentWithExpectedVersion() {
+        var createdResponse = documentRegistryTestKit.<StatusReply<DocumentCreatedResponse>>runCommand(
+                replyTo -> new DocumentRegistry.CreateDocument(generateTestDocumentFromProducts(), replyTo)).reply().getValue();
+        assertTrue(createdResponse.version > 0);
+
+        // Another version is expected, nothing is persisted
+        var staleUpdate = documentRegistryTestKit.<StatusReply<DocumentUpdatedResponse>>runCommand(
+                replyTo -> new DocumentRegistry.UpdateDocument(createdResponse.id, generateTestDocumentFromPrices(), Set.of(createdResponse.version + 1), replyTo));
+        assertTrue(staleUpdate.reply().isError());
+        assertTrue(staleUpdate.reply().getError() instanceof PreconditionFailedException);
+        assertTrue(staleUpdate.hasNoEvents());
+
+        var update = documentRegistryTestKit.<StatusReply<DocumentUpdatedResponse>>runCommand(
+                replyTo -> new DocumentRegistry.UpdateDocument(createdResponse.id, generateTestDocumentFromPrices(), Set.of(createdResponse.version), replyTo));
+        assertTrue(update.reply().isSuccess());
+        var updatedVersion = update.reply().getValue().version;
+        assertTrue(updatedVersion > createdResponse.version);
+
+        // The version created is no longer the current one
+        var staleDelete = documentRegistryTestKit.<StatusReply<Done>>runCommand(
+                replyTo -> new DocumentRegistry.DeleteDocument(createdResponse.id, Set.of(createdResponse.version), replyTo));
+        assertTrue(staleDelete.reply().getError() instanceof PreconditionFailedException);
+
+        var delete = documentRegistryTestKit.<StatusReply<Done>>runCommand(
+                replyTo -> new DocumentRegistry.DeleteDocument(createdResponse.id, Set.of(updatedVersion), replyTo));
+        assertTrue(delete.reply().isSuccess());
+        assertTrue(delete.state().getDocument(createdResponse.id).getVersion() > updatedVersion);
+
+        // The versions are the same after a recovery
+        var versionBeforeRestart = delete.state().getDocument(createdResponse.id).getVersion();
+        assertEquals(versionBeforeRestart, documentRegistryTestKit.restart().state().getDocument(createdResponse.id).getVersion());
+    }
+
+    @Test
+    public void promotionRemovedOnceExpired() {
+        var createdResponse = documentRegistryTestKit.<StatusReply<DocumentCreatedResponse>>runCommand(
+                replyTo -> new DocumentRegistry.CreateDocument(generateTestDocumentFromProducts(), replyTo)).reply().getValue();
+
+        var promotion = generateTestDocumentFromPromotions();
+        promotion.setPromotionValidUntil(Optional.of(Instant.now().plusMillis(500)));
+        var promoted = documentRegistryTestKit.<StatusReply<DocumentUpdatedResponse>>runCommand(
+                replyTo -> new DocumentRegistry.UpdateDocument(createdResponse.id, promotion, replyTo));
+        assertEquals("Black Friday", promoted.reply().getValue().promotion);
+
+        // The wheel advances every second by default
+        testkit.createTestProbe().awaitAssert(Duration.ofSeconds(5), () -> {
+            var document = documentRegistryTestKit.getState().getDocument(createdResponse.id);
+            assertNull(document.getPromotion());
+            assertTrue(document.getPromotionValidUntil().isEmpty());
+            assertTrue(document.getVersion() > promoted.reply().getValue().version);
+            return null;
+        });
+    }
+
+    @Test
+    public void indexedUpToTheOldestDocumentWaiting() {
+        var state = new DocumentRegistry.State();
+        state.createDocument(withId("a", generateTestDocumentFromProducts()), Optional.empty(), Instant.now(), 1, true);
+        state.createDocument(withId("b", generateTestDocumentFromProducts()), Optional.empty(), Instant.now(), 2, true);
+        assertEquals(0, state.indexedUpTo(2));
+
+        state.indexDocument("a", DataSource.PRODUCTS, Instant.now());
+        state.indexDocument("b", DataSource.PRODUCTS, Instant.now());
+        assertEquals(4, state.indexedUpTo(4));
+
+        state.setDocumentToDelete("b", 5);
+        state.updateDocument(withId("a", generateTestDocumentFromPrices()), 6);
+        assertEquals(4, state.indexedUpTo(6));
+    }
+
+    @Test
+    public void imageUrlsSharedByTheDocuments() {
+        var state = new DocumentRegistry.State();
+        state.createDocument(withId("a", generateTestDocumentFromProducts()));
+        state.createDocument(withId("b", generateTestDocumentFromProducts()));
+        assertEquals(2, state.imageUrls.size());
+
+        // Only the URLs not there yet are added, in order
+        state.updateDocument(withId("a", new Document(null, null, List.of("http://www.google.com", "http://www.example.org/1.png"), null, null, DataSource.PRODUCTS)));
+        assertEquals(List.of("http://www.example.org", "http://www.google.com", "http://www.example.org/1.png"), state.getDocument("a").getImagesUrls());
+        assertEquals(3, state.imageUrls.size());
+
+        // The snapshots have the URLs in their own table
+        var snapshot = state.snapshotDocuments();
+        assertNull(snapshot.get(0).getImagesUrls());
+        var recovered = new DocumentRegistry.State(snapshot, new IdempotencyKeys(), null, state.snapshotImageUrls());
+        assertEquals(state.getDocument("a").getImagesUrls(), recovered.getDocument("a").getImagesUrls());
+        assertEquals(generateTestDocumentFromProducts().getImagesUrls(), recovered.getDocument("b").getImagesUrls());
+
+        // The URLs no document has are removed
+        state.deleteDocument("a");
+        assertEquals(2, state.imageUrls.size());
+    }
+
     private Document generateTestDocumentFromProducts() {
         return new Document("Test document", "Document used for testing", List.of(
                 "http://www.example.org",
@@ -0,0 +1,92 @@
+package com.search.engine;
+
+import com.search.engine.models.Document;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class ImageUrlsTest {
+
+    @Test
+    public void urlsInternedOnce() {
+        var imageUrls = new ImageUrls();
+        var first = imageUrls.intern(List.of("https://cdn.example.org/a/1.png", "https://cdn.example.org/a/2.png", "https://cdn.example.org/a/1.png"));
+        var second = imageUrls.intern(List.of("https://cdn.example.org/a/2.png", "https://cdn.example.org/b/3.png"));
+
+        assertEquals(List.of("https://cdn.example.org/a/1.png", "https://cdn.example.org/a/2.png"), first);
+        assertEquals(List.of("https://cdn.example.org/a/2.png", "https://cdn.example.org/b/3.png"), second);
+        assertEquals(3, imageUrls.size());
+        assertEquals(2, imageUrls.prefixes());
+        assertNull(imageUrls.intern(null));
+    }
+
+    @Test
+    public void mergeAddsTheUrlsNotStored() {
+        var imageUrls = new ImageUrls();
+        var stored = imageUrls.intern(List.of("https://cdn.example.org/1.png", "https://cdn.example.org/2.png"));
+        var merged = imageUrls.merge(stored, List.of("https://cdn.example.org/2.png", "https://cdn.example.org/3.png", "https://cdn.example.org/3.png"));
+
+        assertEquals(List.of("https://cdn.example.org/1.png", "https://cdn.example.org/2.png", "https://cdn.example.org/3.png"), merged);
+        assertEquals(stored, imageUrls.merge(stored, null));
+
+        // The references of the stored list moved to the merged one
+        imageUrls.release(merged);
+        assertEquals(0, imageUrls.size());
+        assertEquals(0, imageUrls.prefixes());
+    }
+
+    @Test
+    public void urlsRemovedOnceNotReferenced() {
+        var imageUrls = new ImageUrls();
+        var first = imageUrls.intern(List.of("https://cdn.example.org/1.png", "https://cdn.example.org/2.png"));
+        var second = imageUrls.intern(List.of("https://cdn.example.org/2.png"));
+
+        imageUrls.release(first);
+        assertEquals(1, imageUrls.size());
+        assertEquals(List.of("https://cdn.example.org/2.png"), second);
+
+        imageUrls.release(second);
+        assertEquals(0, imageUrls.size());
+    }
+
+    @Test
+    public void urlsFoundAfterRemovals() {
+        var imageUrls = new ImageUrls();
+        var lists = new ArrayList<List<String>>();
+        for (int i = 0; i < 1000; i++) {
+            lists.add(imageUrls.intern(List.of("https://cdn.example.org/" + i % 7 + "/" + i + ".png")));
+        }
+
+        // Every other entry is removed, the rest must still be found through their probes
+        for (int i = 0; i < 1000; i += 2) {
+            imageUrls.release(lists.get(i));
+        }
+        assertEquals(500, imageUrls.size());
+        for (int i = 1; i < 1000; i += 2) {
+            var url = "https://cdn.example.org/" + i % 7 + "/" + i + ".png";
+            imageUrls.merge(lists.get(i), List.of(url));
+            assertEquals(500, imageUrls.size());
+        }
+    }
+
+    @Test
+    public void tableHasEveryUrlOnce() {
+        var a = new Document(null, null, List.of("https://cdn.example.org/1.png", "https://cdn.example.org/2.png"), null, null, null);
+        a.setId("a");
+        var b = new Document(null, null, List.of("https://cdn.example.org/2.png"), null, null, null);
+        b.setId("b");
+        var c = new Document(null, null, null, null, null, null);
+        c.setId("c");
+
+        var table = ImageUrls.Table.of(List.of(a, b, c));
+
+        assertEquals(List.of("https://cdn.example.org/"), table.prefixes);
+        assertEquals(List.of("1.png", "2.png"), table.urlSuffixes);
+        assertEquals(a.getImagesUrls(), table.urls("a"));
+        assertEquals(b.getImagesUrls(), table.urls("b"));
+        assertNull(table.urls("c"));
+    }
+}
@@ -0,0 +1,166 @@
+package com.search.engine;
+
+import akka.actor.testkit.typed.javadsl.ActorTestKit;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.search.engine.models.DataSource;
+import com.search.engine.models.Document;
+import com.search.engine.solr.SearchDocument;
+import com.typesafe.config.ConfigFactory;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.util.List;
+import java.util.Optional;
+
+import static org.junit.Assert.*;
+
+public class SearchDocumentsTest {
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+
+    @Rule
+    public final TemporaryFolder folder = new TemporaryFolder();
+
+    private static Document document(String id, long version) {
+        var document = new Document("Shoes", "Running shoes", List.of("https://cdn.example.org/1.png"), 42.5, null, DataSource.PRODUCTS);
+        document.setId(id);
+        document.setVersion(version);
+        return document;
+    }
+
+    private static String json(SearchDocuments searchDocuments, String id) throws Exception {
+        // Parsed, so it is valid JSON
+        return MAPPER.readTree(searchDocuments.get(id, DocumentIndexer.UNVERSIONED).orElseThrow().toString()).toString();
+    }
+
+    @Test
+    public void builtWithTheFieldsWithValue() throws Exception {
+        var searchDocuments = new SearchDocuments(SearchDocuments.DEFAULT_MAX_BYTES, MAPPER);
+        searchDocuments.created(document("1", 1));
+
+        assertEquals("{\"id\":\"1\",\"version\":1,\"dataSource\":\"PRODUCTS\",\"name\":\"Shoes\",\"description\":\"Running shoes\","
+                + "\"imagesUrls\":[\"https://cdn.example.org/1.png\"],\"price\":42.5}", json(searchDocuments, "1"));
+    }
+
+    @Test
+    public void updateSerializesOnlyItsSections() throws Exception {
+        var searchDocuments = new SearchDocuments(SearchDocuments.DEFAULT_MAX_BYTES, MAPPER);
+        var document = document("1", 1);
+        searchDocuments.created(document);
+
+        // Changed behind the back of the search documents, a price update does not serialize the products again
+        document.setName("Boots");
+        document.setPrice(30.0);
+        document.setDataSource(DataSource.PRICES);
+        document.setVersion(2);
+        searchDocuments.updated(document, new Document(null, null, null, 30.0, null, DataSource.PRICES));
+
+        assertEquals("{\"id\":\"1\",\"version\":2,\"dataSource\":\"PRICES\",\"name\":\"Shoes\",\"description\":\"Running shoes\","
+                + "\"imagesUrls\":[\"https://cdn.example.org/1.png\"],\"price\":30.0}", json(searchDocuments, "1"));
+
+        document.setPricesIndexedTimestamp(Optional.of(Instant.parse("2021-06-01T10:00:00Z")));
+        searchDocuments.indexed(document);
+        assertTrue(json(searchDocuments, "1").endsWith("\"price\":30.0,\"pricesIndexedTimestamp\":\"2021-06-01T10:00:00Z\"}"));
+    }
+
+    @Test
+    public void onlyAsNewAsTheVersionAsked() {
+        var searchDocuments = new SearchDocuments(SearchDocuments.DEFAULT_MAX_BYTES, MAPPER);
+        searchDocuments.created(document("1", 5));
+
+        assertTrue(searchDocuments.get("1", 4).isPresent());
+        assertTrue(searchDocuments.get("1", 5).isPresent());
+        assertFalse(searchDocuments.get("1", 6).isPresent());
+        assertFalse(searchDocuments.get("2", DocumentIndexer.UNVERSIONED).isPresent());
+
+        searchDocuments.removed("1");
+        assertFalse(searchDocuments.get("1", DocumentIndexer.UNVERSIONED).isPresent());
+        assertEquals(0, searchDocuments.bytes());
+    }
+
+    @Test
+    public void indexWithoutOneBuildsIt() throws Exception {
+        var searchDocuments = new SearchDocuments(SearchDocuments.DEFAULT_MAX_BYTES, MAPPER);
+        var document = document("1", 1);
+        document.setProductsIndexedTimestamp(Optional.of(Instant.parse("2021-06-01T10:00:00Z")));
+        // E.g. after a restart, the index was by id
+        searchDocuments.indexed(document);
+
+        assertEquals(1, searchDocuments.size());
+        assertTrue(json(searchDocuments, "1").startsWith("{\"id\":\"1\",\"version\":1,\"dataSource\":\"PRODUCTS\",\"name\":\"Shoes\""));
+        assertTrue(json(searchDocuments, "1").endsWith("\"productsIndexedTimestamp\":\"2021-06-01T10:00:00Z\"}"));
+    }
+
+    @Test
+    public void leastRecentlyUsedForgottenFirst() {
+        var searchDocuments = new SearchDocuments(SearchDocuments.DEFAULT_MAX_BYTES, MAPPER);
+        searchDocuments.created(document("1", 1));
+        var size = searchDocuments.bytes();
+
+        var bounded = new SearchDocuments(size * 2, MAPPER);
+        bounded.created(document("1", 1));
+        bounded.created(document("2", 1));
+        bounded.get("1", DocumentIndexer.UNVERSIONED);
+        bounded.created(document("3", 1));
+
+        assertEquals(2, bounded.size());
+        assertEquals(size * 2, bounded.bytes());
+        assertTrue(bounded.get("1", DocumentIndexer.UNVERSIONED).isPresent());
+        assertFalse(bounded.get("2", DocumentIndexer.UNVERSIONED).isPresent());
+
+        var disabled = new SearchDocuments(0, MAPPER);
+        disabled.created(document("1", 1));
+        assertEquals(0, disabled.size());
+    }
+
+    @Test
+    public void batchWrittenAsAJsonArray() throws Exception {
+        var searchDocuments = new SearchDocuments(SearchDocuments.DEFAULT_MAX_BYTES, MAPPER);
+        searchDocuments.created(document("1", 1));
+        searchDocuments.created(document("2", 1));
+        var batch = List.of(searchDocuments.get("1", 1).orElseThrow(), searchDocuments.get("2", 1).orElseThrow());
+
+        var file = folder.newFile().toPath();
+        long written;
+        try (var channel = FileChannel.open(file, StandardOpenOption.WRITE)) {
+            written = SearchDocument.writeBatch(channel, batch);
+        }
+
+        var array = MAPPER.readTree(Files.readAllBytes(file));
+        assertEquals(Files.size(file), written);
+        assertEquals(2, array.size());
+        assertEquals("2", array.get(1).get("id").asText());
+        // The buffers of the search documents are left as they were
+        assertEquals(batch.get(0).size(), batch.get(0).toString().length());
+    }
+
+    @Test
+    public void everyTenantWithItsOwnMaximumBytes() {
+        var testKit = ActorTestKit.create(ConfigFactory.parseString(
+                        "case-search-engine-index.tenants {\n"
+                                + "  ids = [\"eu\", \"us\"]\n"
+                                + "  default.search-documents.max-bytes = 1\n"
+                                + "  overrides.us.search-documents.max-bytes = 1MiB\n"
+                                + "}")
+                .withFallback(ConfigFactory.load()));
+        try {
+            var eu = SearchDocuments.get(testKit.system(), "eu");
+            var us = SearchDocuments.get(testKit.system(), "us");
+            assertSame(eu, SearchDocuments.get(testKit.system(), "eu"));
+
+            eu.created(document("1", 1));
+            us.created(document("1", 1));
+
+            // Too big for the limit of its tenant
+            assertEquals(0, eu.size());
+            assertEquals(1, us.size());
+            assertEquals(0, SearchDocuments.get(testKit.system()).size());
+        } finally {
+            testKit.shutdownTestKit();
+        }
+    }
+}
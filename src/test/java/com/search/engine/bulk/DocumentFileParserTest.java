@@ -0,0 +1,59 @@
+package com.search.engine.bulk;
+
+import com.search.engine.models.DataSource;
+import com.search.engine.models.Document;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class DocumentFileParserTest {
+
+    @Test
+    public void readLinesLongerThanTheChunk() throws Exception {
+        var file = Files.createTempFile("documents", ".csv");
+        Files.writeString(file, "first line\r\n\nsecond, a longer line\nthird");
+
+        var lines = new ArrayList<String>();
+        var lineCount = ChunkedLineReader.forEachLine(file, 4, (bytes, offset, length, lineNumber) ->
+                lines.add(lineNumber + ":" + new String(bytes, offset, length, StandardCharsets.UTF_8)));
+
+        assertEquals(List.of("1:first line", "3:second, a longer line", "4:third"), lines);
+        assertEquals(4, lineCount);
+        Files.delete(file);
+    }
+
+    @Test
+    public void parseCsvDocuments() throws Exception {
+        var parser = DocumentFileParser.csv("dataSource,name,description,imagesUrls,price,promotion");
+        var line = "PRODUCTS,\"Chair, oak\",\"The \"\"best\"\" chair\",http://www.example.org/1|http://www.example.org/2,12.5,";
+        var bytes = line.getBytes(StandardCharsets.UTF_8);
+
+        Document document = parser.parse(bytes, 0, bytes.length);
+
+        assertEquals(DataSource.PRODUCTS, document.getDataSource());
+        assertEquals("Chair, oak", document.getName());
+        assertEquals("The \"best\" chair", document.getDescription());
+        assertEquals(List.of("http://www.example.org/1", "http://www.example.org/2"), document.getImagesUrls());
+        assertEquals(12.5, document.getPrice(), 0);
+        assertNull(document.getPromotion());
+    }
+
+    @Test
+    public void rejectInvalidCsvValues() {
+        var parser = DocumentFileParser.csv("name,price,dataSource");
+        var bytes = "Chair,cheap,PRODUCTS".getBytes(StandardCharsets.UTF_8);
+
+        try {
+            parser.parse(bytes, 0, bytes.length);
+            fail("The price is not a number");
+        } catch (IOException ex) {
+            assertTrue(ex.getMessage().startsWith("Invalid value"));
+        }
+    }
+}
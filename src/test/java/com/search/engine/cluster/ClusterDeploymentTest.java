@@ -0,0 +1,133 @@
+package com.search.engine.cluster;
+
+import akka.Done;
+import akka.actor.testkit.typed.javadsl.ActorTestKit;
+import akka.actor.testkit.typed.javadsl.TestProbe;
+import akka.actor.typed.ActorRef;
+import akka.actor.typed.javadsl.AskPattern;
+import akka.actor.typed.javadsl.Behaviors;
+import akka.cluster.MemberStatus;
+import akka.cluster.typed.Cluster;
+import akka.cluster.typed.Join;
+import akka.pattern.StatusReply;
+import akka.persistence.testkit.PersistenceTestKitPlugin;
+import akka.persistence.testkit.PersistenceTestKitSnapshotPlugin;
+import akka.persistence.typed.PersistenceId;
+import com.search.engine.DocumentIndexer;
+import com.search.engine.DocumentRegistry;
+import com.search.engine.TestSolrIndexer;
+import com.search.engine.models.DataSource;
+import com.search.engine.models.DeltaPage;
+import com.search.engine.models.Document;
+import com.search.engine.models.DocumentCreatedResponse;
+import com.typesafe.config.Config;
+import com.typesafe.config.ConfigFactory;
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Two nodes of a cluster in the same JVM, on loopback ports
+ */
+public class ClusterDeploymentTest {
+    private static final Duration TIMEOUT = Duration.ofSeconds(10);
+    private static final Config CONFIG = ConfigFactory.parseString(
+            "akka.actor.provider = cluster\n"
+                    + "akka.remote.artery.canonical.hostname = \"127.0.0.1\"\n"
+                    + "akka.remote.artery.canonical.port = 0\n"
+                    + "akka.cluster.jmx.multi-mbeans-in-same-jvm = on\n"
+                    + "akka.cluster.sharding.passivate-idle-entity-after = off\n"
+                    + "akka.persistence.journal.auto-start-journals = []\n"
+                    + "akka.persistence.snapshot-store.auto-start-snapshot-stores = []\n"
+                    + "case-search-engine-index.registry.lazy-hydration.enabled = false\n")
+            .withFallback(PersistenceTestKitPlugin.config())
+            .withFallback(PersistenceTestKitSnapshotPlugin.config())
+            .withFallback(ConfigFactory.load());
+
+    private static ActorTestKit firstNode;
+    private static ActorTestKit secondNode;
+    private static ActorRef<DocumentRegistry.Command> firstRegistry;
+    private static ActorRef<DocumentRegistry.Command> secondRegistry;
+
+    @BeforeClass
+    public static void beforeClass() {
+        firstNode = ActorTestKit.create("ClusterDeploymentTest", CONFIG);
+        secondNode = ActorTestKit.create("ClusterDeploymentTest", CONFIG);
+
+        var address = Cluster.get(firstNode.system()).selfMember().address();
+        Cluster.get(firstNode.system()).manager().tell(Join.create(address));
+        Cluster.get(secondNode.system()).manager().tell(Join.create(address));
+
+        var probe = firstNode.<Boolean>createTestProbe();
+        probe.awaitAssert(TIMEOUT, () -> {
+            for (var node : List.of(firstNode, secondNode)) {
+                assertEquals(MemberStatus.up(), Cluster.get(node.system()).selfMember().status());
+            }
+            return null;
+        });
+
+        firstRegistry = startNode(firstNode);
+        secondRegistry = startNode(secondNode);
+    }
+
+    @AfterClass
+    public static void afterClass() {
+        secondNode.shutdownTestKit();
+        firstNode.shutdownTestKit();
+    }
+
+    private static ActorRef<DocumentRegistry.Command> startNode(ActorTestKit node) {
+        TestProbe<ActorRef<DocumentRegistry.Command>> probe = node.createTestProbe();
+        var persistenceId = PersistenceId.ofUniqueId("ClusterDeploymentTest");
+
+        node.spawn(Behaviors.setup(context -> {
+            var deployment = Deployment.cluster(context);
+            var indexer = context.spawn(DocumentIndexer.create(new TestSolrIndexer()), "DocumentIndexer");
+            var indexers = deployment.indexers(indexer);
+            probe.ref().tell(deployment.registry(persistenceId, DocumentRegistry.create(persistenceId, indexers)));
+            return Behaviors.empty();
+        }));
+
+        return probe.receiveMessage(TIMEOUT);
+    }
+
+    @Test
+    public void documentCreatedInOneNodeIsIndexedAndReadFromTheOther() throws Exception {
+        var document = new Document("name", "description", List.of("https://images/1.png"), 10.0, null, DataSource.PRODUCTS);
+
+        StatusReply<DocumentCreatedResponse> created = AskPattern.<DocumentRegistry.Command, StatusReply<DocumentCreatedResponse>>ask(
+                        secondRegistry, ref -> new DocumentRegistry.CreateDocument(document, Optional.empty(), ref), TIMEOUT, secondNode.scheduler())
+                .toCompletableFuture().get(TIMEOUT.toSeconds(), TimeUnit.SECONDS);
+        assertTrue(created.isSuccess());
+        var id = created.getValue().id;
+
+        // Indexed by the indexer of one of the nodes, and read through the registry from the other one
+        var probe = firstNode.<StatusReply<DeltaPage>>createTestProbe();
+        probe.awaitAssert(TIMEOUT, () -> {
+            firstRegistry.tell(new DocumentRegistry.GetDelta(DataSource.PRODUCTS, Instant.EPOCH, Optional.empty(), 10, probe.ref()));
+            var delta = probe.receiveMessage(Duration.ofSeconds(1)).getValue();
+            assertTrue(delta.documents.stream().anyMatch(indexed -> indexed.id.equals(id)));
+            return null;
+        });
+    }
+
+    @Test
+    public void splitBatchAcknowledgedOnceEveryDocumentIs() {
+        var ackProbe = firstNode.<Done>createTestProbe();
+        var acknowledgeAll = firstNode.spawn(ClusterDeployment.acknowledgeAll(2, ackProbe.ref(), TIMEOUT));
+
+        acknowledgeAll.tell(Done.getInstance());
+        ackProbe.expectNoMessage(Duration.ofMillis(200));
+        acknowledgeAll.tell(Done.getInstance());
+        ackProbe.expectMessage(Done.getInstance());
+    }
+}
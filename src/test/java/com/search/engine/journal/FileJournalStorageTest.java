@@ -0,0 +1,160 @@
+package com.search.engine.journal;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.stream.Collectors;
+import java.util.stream.LongStream;
+
+import static org.junit.Assert.*;
+
+public class FileJournalStorageTest {
+
+    @Rule
+    public final TemporaryFolder folder = new TemporaryFolder();
+
+    private FileJournalStorage open(long segmentSize) throws IOException {
+        return FileJournalStorage.open(folder.getRoot().toPath(), segmentSize, 100, true);
+    }
+
+    private static FileJournalStorage.Frame events(String persistenceId, long from, long to) {
+        return FileJournalStorage.Frame.events(persistenceId, LongStream.rangeClosed(from, to)
+                .mapToObj(sequenceNr -> new FileJournalStorage.StoredEvent(persistenceId, sequenceNr, sequenceNr * 10, ("event-" + sequenceNr).getBytes()))
+                .collect(Collectors.toList()));
+    }
+
+    private static List<String> read(FileJournalStorage storage, String persistenceId, long from, long to, long max) {
+        return storage.read(persistenceId, from, to, max).stream()
+                .map(event -> new String(event.payload) + "@" + event.timestamp)
+                .collect(Collectors.toList());
+    }
+
+    private List<Path> segments() throws IOException {
+        try (var files = Files.list(folder.getRoot().toPath())) {
+            return files.sorted().collect(Collectors.toList());
+        }
+    }
+
+    private Path lastSegment() throws IOException {
+        var segments = segments();
+        return segments.get(segments.size() - 1);
+    }
+
+    @Test
+    public void readTheEventsWritten() throws Exception {
+        try (var storage = open(1 << 20)) {
+            storage.write(List.of(events("a", 1, 3), events("b", 1, 1))).get();
+            storage.write(List.of(events("a", 4, 4))).get();
+
+            assertEquals(List.of("event-2@20", "event-3@30", "event-4@40"), read(storage, "a", 2, Long.MAX_VALUE, Long.MAX_VALUE));
+            assertEquals(List.of("event-1@10", "event-2@20"), read(storage, "a", 1, 3, 2));
+            assertEquals(List.of("event-1@10"), read(storage, "b", 0, Long.MAX_VALUE, Long.MAX_VALUE));
+            assertEquals(4, storage.highestSequenceNr("a"));
+            assertEquals(0, storage.highestSequenceNr("c"));
+        }
+    }
+
+    @Test
+    public void indexRebuiltOnStart() throws Exception {
+        try (var storage = open(256)) {
+            for (int i = 1; i <= 20; i++) storage.write(List.of(events("a", i, i))).get();
+        }
+
+        try (var storage = open(256)) {
+            assertTrue(segments().size() > 1);
+            assertEquals(20, storage.highestSequenceNr("a"));
+            assertEquals(20, read(storage, "a", 1, Long.MAX_VALUE, Long.MAX_VALUE).size());
+            // Appends to the last segment
+            storage.write(List.of(events("a", 21, 21))).get();
+            assertEquals(List.of("event-21@210"), read(storage, "a", 21, 21, 1));
+        }
+    }
+
+    @Test
+    public void incompleteWriteTruncatedOnStart() throws Exception {
+        try (var storage = open(1 << 20)) {
+            storage.write(List.of(events("a", 1, 2))).get();
+        }
+        var segment = lastSegment();
+        var length = Files.size(segment);
+        // A crash in the middle of the next frame
+        Files.write(segment, new byte[]{0, 0, 0, 42, 1, 2, 3}, StandardOpenOption.APPEND);
+
+        try (var storage = open(1 << 20)) {
+            assertEquals(length, Files.size(segment));
+            assertEquals(2, storage.highestSequenceNr("a"));
+            storage.write(List.of(events("a", 3, 3))).get();
+        }
+        try (var storage = open(1 << 20)) {
+            assertEquals(3, read(storage, "a", 1, Long.MAX_VALUE, Long.MAX_VALUE).size());
+        }
+    }
+
+    @Test
+    public void frameWithWrongCrcDropped() throws Exception {
+        try (var storage = open(1 << 20)) {
+            storage.write(List.of(events("a", 1, 1))).get();
+            storage.write(List.of(events("a", 2, 2))).get();
+        }
+        var segment = lastSegment();
+        var bytes = Files.readAllBytes(segment);
+        bytes[bytes.length - 1] ^= 1;
+        Files.write(segment, bytes);
+
+        try (var storage = open(1 << 20)) {
+            assertEquals(List.of("event-1@10"), read(storage, "a", 1, Long.MAX_VALUE, Long.MAX_VALUE));
+        }
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void corruptedSegmentBeforeTheLastOne() throws Exception {
+        try (var storage = open(64)) {
+            for (int i = 1; i <= 5; i++) storage.write(List.of(events("a", i, i))).get();
+        }
+        var first = segments().get(0);
+        var bytes = Files.readAllBytes(first);
+        bytes[bytes.length - 1] ^= 1;
+        Files.write(first, bytes);
+
+        open(64);
+    }
+
+    @Test
+    public void deletedEventsKeepTheHighestSequenceNr() throws Exception {
+        try (var storage = open(1 << 20)) {
+            storage.write(List.of(events("a", 1, 5))).get();
+            storage.deleteTo("a", 3).get();
+            assertEquals(List.of("event-4@40", "event-5@50"), read(storage, "a", 1, Long.MAX_VALUE, Long.MAX_VALUE));
+
+            storage.deleteTo("a", Long.MAX_VALUE).get();
+            assertTrue(read(storage, "a", 1, Long.MAX_VALUE, Long.MAX_VALUE).isEmpty());
+            assertEquals(5, storage.highestSequenceNr("a"));
+        }
+
+        try (var storage = open(1 << 20)) {
+            assertTrue(read(storage, "a", 1, Long.MAX_VALUE, Long.MAX_VALUE).isEmpty());
+            assertEquals(5, storage.highestSequenceNr("a"));
+        }
+    }
+
+    @Test
+    public void concurrentWritesShareTheSyncs() throws Exception {
+        try (var storage = open(1 << 20)) {
+            var writes = new ArrayList<CompletableFuture<Void>>();
+            for (int i = 1; i <= 1000; i++) writes.add(storage.write(List.of(events("a" + i % 10, i, i))));
+            for (var write : writes) write.get();
+
+            assertEquals(1000, storage.writes());
+            assertTrue(storage.syncs() <= storage.writes());
+            assertEquals(100, read(storage, "a3", 1, Long.MAX_VALUE, Long.MAX_VALUE).size());
+        }
+    }
+}
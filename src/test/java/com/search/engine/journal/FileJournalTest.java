@@ -0,0 +1,90 @@
+package com.search.engine.journal;
+
+import akka.Done;
+import akka.actor.testkit.typed.javadsl.TestKitJunitResource;
+import akka.persistence.query.EventEnvelope;
+import akka.persistence.query.PersistenceQuery;
+import akka.persistence.query.javadsl.CurrentEventsByPersistenceIdQuery;
+import akka.persistence.typed.PersistenceId;
+import akka.stream.javadsl.Sink;
+import com.search.engine.outbox.OutboxOffsetStore;
+import com.typesafe.config.ConfigFactory;
+import org.junit.ClassRule;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+import static org.junit.Assert.assertEquals;
+
+public class FileJournalTest {
+    private static final Path DIRECTORY = temporaryDirectory();
+
+    @ClassRule
+    public static final TestKitJunitResource testkit =
+            new TestKitJunitResource(
+                    ConfigFactory.parseString(
+                            "akka.actor.serialization-bindings {\n"
+                                    + "  \"com.search.engine.JacksonSerializable\" = jackson-json\n"
+                                    + "}\n"
+                                    + "akka.persistence.journal { plugin = file-journal, auto-start-journals = [] }\n"
+                                    + "akka.persistence.snapshot-store { plugin = file-snapshot-store, auto-start-snapshot-stores = [] }\n"
+                                    + "file-journal.directory = \"" + DIRECTORY.resolve("journal") + "\"\n"
+                                    + "file-journal.segment-size = 4KiB\n"
+                                    + "file-snapshot-store.directory = \"" + DIRECTORY.resolve("snapshots") + "\"")
+                            .withFallback(ConfigFactory.load()));
+
+    private static Path temporaryDirectory() {
+        try {
+            return Files.createTempDirectory("FileJournalTest");
+        } catch (IOException ex) {
+            throw new UncheckedIOException(ex);
+        }
+    }
+
+    @Test
+    public void recoverFromTheSnapshotAndTheEvents() {
+        var persistenceId = PersistenceId.ofUniqueId("FileJournalTest-recover");
+        var store = testkit.spawn(OutboxOffsetStore.create(persistenceId));
+        var stored = testkit.<Done>createTestProbe();
+        // A snapshot every 100 events, the events before it are deleted
+        for (long offset = 1; offset <= 250; offset++) {
+            store.tell(new OutboxOffsetStore.StoreOffset(offset, stored.getRef()));
+            stored.expectMessage(Done.getInstance());
+        }
+        testkit.stop(store);
+
+        var restarted = testkit.spawn(OutboxOffsetStore.create(persistenceId));
+        var offset = testkit.<Long>createTestProbe();
+        restarted.tell(new OutboxOffsetStore.GetOffset(offset.getRef()));
+        offset.expectMessage(250L);
+    }
+
+    @Test
+    public void readTheEventsOfAPersistenceId() throws Exception {
+        var persistenceId = PersistenceId.ofUniqueId("FileJournalTest-read");
+        var store = testkit.spawn(OutboxOffsetStore.create(persistenceId));
+        var stored = testkit.<Done>createTestProbe();
+        for (long offset = 1; offset <= 3; offset++) {
+            store.tell(new OutboxOffsetStore.StoreOffset(offset * 10, stored.getRef()));
+            stored.expectMessage(Done.getInstance());
+        }
+
+        var events = PersistenceQuery.get(testkit.system())
+                .getReadJournalFor(CurrentEventsByPersistenceIdQuery.class, FileReadJournal.IDENTIFIER)
+                .currentEventsByPersistenceId(persistenceId.id(), 2, Long.MAX_VALUE)
+                .runWith(Sink.seq(), testkit.system())
+                .toCompletableFuture()
+                .get(5, TimeUnit.SECONDS);
+
+        assertEquals(2, events.size());
+        assertEquals(3, events.get(1).sequenceNr());
+        assertEquals(30L, ((OutboxOffsetStore.OffsetStored) events.get(1).event()).offset);
+        assertEquals(List.of(2L, 3L), events.stream().map(EventEnvelope::sequenceNr).collect(Collectors.toList()));
+    }
+}
@@ -0,0 +1,41 @@
+package com.search.engine.journal;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class JournalPartitionsTest {
+
+    @Test
+    public void parseRangeBound() {
+        var partition = JournalPartitions.Partition.parse("event_journal_registry_1000000", "FOR VALUES FROM ('1000000') TO ('2000000')");
+
+        assertTrue(partition.isPresent());
+        assertEquals("event_journal_registry_1000000", partition.get().name);
+        assertEquals(1000000, partition.get().from);
+        assertEquals(2000000, partition.get().to);
+    }
+
+    @Test
+    public void parseUnquotedRangeBound() {
+        var partition = JournalPartitions.Partition.parse("event_journal_registry_0", "FOR VALUES FROM (0) TO (1000000)");
+
+        assertTrue(partition.isPresent());
+        assertEquals(0, partition.get().from);
+        assertEquals(1000000, partition.get().to);
+    }
+
+    @Test
+    public void ignoreOtherBounds() {
+        assertTrue(JournalPartitions.Partition.parse("event_journal_default", "DEFAULT").isEmpty());
+    }
+
+    @Test
+    public void partitionEndsBeforeSequenceNumber() {
+        var partition = new JournalPartitions.Partition("event_journal_registry_0", 0, 1000);
+
+        assertTrue(partition.endsBefore(999));
+        assertTrue(partition.endsBefore(1500));
+        assertFalse(partition.endsBefore(998));
+    }
+}
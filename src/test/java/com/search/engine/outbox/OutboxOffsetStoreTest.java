@@ -0,0 +1,57 @@
+package com.search.engine.outbox;
+
+import akka.Done;
+import akka.actor.testkit.typed.javadsl.TestKitJunitResource;
+import akka.persistence.testkit.javadsl.EventSourcedBehaviorTestKit;
+import akka.persistence.typed.PersistenceId;
+import com.typesafe.config.ConfigFactory;
+import org.junit.Before;
+import org.junit.ClassRule;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class OutboxOffsetStoreTest {
+
+    @ClassRule
+    public static final TestKitJunitResource testkit =
+            new TestKitJunitResource(
+                    ConfigFactory.parseString(
+                            "akka.actor.serialization-bindings {\n"
+                                    + "  \"com.search.engine.JacksonSerializable\" = jackson-json\n"
+                                    + "}")
+                            .withFallback(EventSourcedBehaviorTestKit.config()));
+
+    private final EventSourcedBehaviorTestKit<OutboxOffsetStore.Command, OutboxOffsetStore.Event, OutboxOffsetStore.State>
+            offsetStoreTestKit =
+            EventSourcedBehaviorTestKit.create(
+                    testkit.system(), OutboxOffsetStore.create(PersistenceId.ofUniqueId("OutboxOffsetStoreTest")));
+
+    @Before
+    public void beforeEach() {
+        offsetStoreTestKit.clear();
+    }
+
+    @Test
+    public void storeOffsetAndRestart() {
+        assertEquals(Long.valueOf(OutboxOffsetStore.NO_OFFSET), offsetStoreTestKit.<Long>runCommand(OutboxOffsetStore.GetOffset::new).reply());
+
+        var stored = offsetStoreTestKit.<Done>runCommand(replyTo -> new OutboxOffsetStore.StoreOffset(42L, replyTo));
+        assertEquals(Done.getInstance(), stored.reply());
+        assertEquals(42L, stored.eventOfType(OutboxOffsetStore.OffsetStored.class).offset);
+
+        // The offset survives a restart
+        var restarted = offsetStoreTestKit.restart();
+        assertEquals(42L, restarted.state().offset);
+    }
+
+    @Test
+    public void offsetOnlyMovesForward() {
+        offsetStoreTestKit.<Done>runCommand(replyTo -> new OutboxOffsetStore.StoreOffset(10L, replyTo));
+
+        var stale = offsetStoreTestKit.<Done>runCommand(replyTo -> new OutboxOffsetStore.StoreOffset(5L, replyTo));
+        assertTrue(stale.hasNoEvents());
+        assertEquals(10L, stale.state().offset);
+    }
+}
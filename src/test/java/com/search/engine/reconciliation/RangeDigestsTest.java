@@ -0,0 +1,62 @@
+package com.search.engine.reconciliation;
+
+import org.junit.Test;
+
+import java.time.Instant;
+import java.util.List;
+import java.util.Optional;
+
+import static org.junit.Assert.*;
+
+public class RangeDigestsTest {
+    private static final String FIRST_ID = "0a1b2c3d-0000-4000-8000-000000000001";
+    private static final String SECOND_ID = "0a1f2c3d-0000-4000-8000-000000000002";
+    private static final String THIRD_ID = "f0000000-0000-4000-8000-000000000003";
+
+    @Test
+    public void digestsDoNotDependOnOrder() {
+        var fingerprints = List.of(
+                Fingerprints.of(FIRST_ID, Optional.empty()),
+                Fingerprints.of(SECOND_ID, Optional.of(Instant.ofEpochSecond(10))),
+                Fingerprints.of(THIRD_ID, Optional.of(Instant.ofEpochSecond(20))));
+
+        var digests = new RangeDigests();
+        digests.update(THIRD_ID, Fingerprints.ABSENT, fingerprints.get(2));
+        digests.update(FIRST_ID, Fingerprints.ABSENT, fingerprints.get(0));
+        digests.update(SECOND_ID, Fingerprints.ABSENT, fingerprints.get(1));
+
+        assertEquals(Fingerprints.digest(fingerprints), digests.digest(""));
+        assertEquals(Fingerprints.digest(fingerprints.subList(0, 2)), digests.digest("0"));
+        assertEquals(fingerprints.get(0), (Long) digests.digest("0a1"));
+        assertEquals(0L, digests.digest("1"));
+    }
+
+    @Test
+    public void fingerprintChangesWithIndexTime() {
+        var indexed = Fingerprints.of(FIRST_ID, Optional.of(Instant.ofEpochSecond(10)));
+        var reindexed = Fingerprints.of(FIRST_ID, Optional.of(Instant.ofEpochSecond(10, 1)));
+        assertNotEquals(indexed, reindexed);
+
+        var digests = new RangeDigests();
+        digests.update(FIRST_ID, Fingerprints.ABSENT, indexed);
+        var copy = digests.copy();
+        digests.update(FIRST_ID, indexed, reindexed);
+
+        assertEquals(reindexed, digests.digest("0a"));
+        assertEquals(indexed, copy.digest("0a"));
+
+        // Removed documents do not count
+        digests.update(FIRST_ID, reindexed, Fingerprints.ABSENT);
+        assertEquals(0L, digests.digest(""));
+    }
+
+    @Test
+    public void childrenCoverTheRange() {
+        var children = RangeDigests.children("0a");
+        assertEquals(16, children.size());
+        assertEquals("0a0", children.get(0));
+        assertEquals("0af", children.get(15));
+        assertTrue(RangeDigests.isLeaf("0af"));
+        assertTrue(FIRST_ID.compareTo(RangeDigests.upperBound("0a1")) < 0);
+    }
+}
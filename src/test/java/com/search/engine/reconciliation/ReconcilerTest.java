@@ -0,0 +1,102 @@
+package com.search.engine.reconciliation;
+
+import akka.actor.testkit.typed.javadsl.TestKitJunitResource;
+import akka.actor.testkit.typed.javadsl.TestProbe;
+import com.search.engine.DocumentIndexer;
+import com.search.engine.DocumentRegistry;
+import com.search.engine.models.DataSource;
+import com.search.engine.solr.FingerprintStore;
+import com.typesafe.config.ConfigFactory;
+import org.junit.ClassRule;
+import org.junit.Test;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentSkipListMap;
+
+import static org.junit.Assert.*;
+
+public class ReconcilerTest {
+    @ClassRule
+    public static final TestKitJunitResource testkit = new TestKitJunitResource(
+            ConfigFactory.parseString(
+                            "case-search-engine-index.reconciliation.initial-delay = 10ms\n"
+                                    + "case-search-engine-index.reconciliation.interval = 1h\n")
+                    .withFallback(ConfigFactory.load()));
+
+    private static final String INDEXED_ID = "0a1b2c3d-0000-4000-8000-000000000001";
+    private static final String DELETED_ID = "f0000000-0000-4000-8000-000000000002";
+    private static final String UNKNOWN_ID = "f0000000-0000-4000-8000-000000000003";
+
+    private final TestProbe<DocumentRegistry.Command> registry = testkit.createTestProbe();
+    private final TestProbe<DocumentIndexer.Command> indexer = testkit.createTestProbe();
+    private final InMemoryFingerprintStore fingerprintStore = new InMemoryFingerprintStore();
+
+    @Test
+    public void indexWithTheVersionOfTheRegistry() {
+        var fingerprint = Fingerprints.of(INDEXED_ID, Optional.of(Instant.ofEpochSecond(10)));
+        var digests = new RangeDigests();
+        digests.update(INDEXED_ID, Fingerprints.ABSENT, fingerprint);
+
+        // Missing in the search engine
+        testkit.spawn(Reconciler.create(registry.ref(), indexer.ref(), fingerprintStore));
+        registry.expectMessageClass(DocumentRegistry.GetRangeDigests.class).replyTo.tell(digests);
+
+        var leaf = registry.expectMessageClass(DocumentRegistry.GetRangeFingerprints.class);
+        assertEquals("0a1", leaf.prefix);
+        leaf.replyTo.tell(new RangeFingerprints(Map.of(INDEXED_ID, fingerprint), Map.of(INDEXED_ID, DataSource.PRICES), Map.of(INDEXED_ID, 3L)));
+
+        var indexed = indexer.expectMessageClass(DocumentIndexer.IndexDocument.class);
+        assertEquals(INDEXED_ID, indexed.id);
+        assertEquals(DataSource.PRICES, indexed.dataSource);
+        assertEquals(3, indexed.version);
+        registry.expectNoMessage(Duration.ofMillis(300));
+    }
+
+    @Test
+    public void deleteWithTheVersionOfTheRegistry() {
+        var digests = new RangeDigests();
+        fingerprintStore.fingerprints.put(DELETED_ID, Fingerprints.of(DELETED_ID, Optional.of(Instant.ofEpochSecond(5))));
+        fingerprintStore.fingerprints.put(UNKNOWN_ID, Fingerprints.of(UNKNOWN_ID, Optional.of(Instant.ofEpochSecond(5))));
+
+        testkit.spawn(Reconciler.create(registry.ref(), indexer.ref(), fingerprintStore));
+        registry.expectMessageClass(DocumentRegistry.GetRangeDigests.class).replyTo.tell(digests);
+        registry.expectMessageClass(DocumentRegistry.GetRangeFingerprints.class).replyTo
+                .tell(new RangeFingerprints(Map.of(), Map.of(), Map.of(DELETED_ID, 5L)));
+
+        var first = indexer.expectMessageClass(DocumentIndexer.DeleteDocument.class);
+        var second = indexer.expectMessageClass(DocumentIndexer.DeleteDocument.class);
+        var versions = Map.of(first.id, first.version, second.id, second.version);
+        assertEquals((Long) 5L, versions.get(DELETED_ID));
+        // The registry does not have it
+        assertEquals((Long) DocumentIndexer.UNVERSIONED, versions.get(UNKNOWN_ID));
+    }
+
+    @Test
+    public void nothingRepairedWhenTheDigestsAreEqual() {
+        var fingerprint = Fingerprints.of(INDEXED_ID, Optional.of(Instant.ofEpochSecond(10)));
+        var digests = new RangeDigests();
+        digests.update(INDEXED_ID, Fingerprints.ABSENT, fingerprint);
+        fingerprintStore.fingerprints.put(INDEXED_ID, fingerprint);
+
+        testkit.spawn(Reconciler.create(registry.ref(), indexer.ref(), fingerprintStore));
+        registry.expectMessageClass(DocumentRegistry.GetRangeDigests.class).replyTo.tell(digests);
+
+        registry.expectNoMessage(Duration.ofMillis(300));
+        indexer.expectNoMessage(Duration.ofMillis(100));
+    }
+
+    /**
+     * Keeps the fingerprints in memory, as the search engine stores them
+     */
+    private static final class InMemoryFingerprintStore implements FingerprintStore {
+        private final ConcurrentSkipListMap<String, Long> fingerprints = new ConcurrentSkipListMap<>();
+
+        @Override
+        public Map<String, Long> fingerprints(String idPrefix) {
+            return Map.copyOf(fingerprints.subMap(idPrefix, true, RangeDigests.upperBound(idPrefix), false));
+        }
+    }
+}
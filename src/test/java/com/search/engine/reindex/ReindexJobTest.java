@@ -0,0 +1,132 @@
+package com.search.engine.reindex;
+
+import akka.Done;
+import akka.actor.testkit.typed.javadsl.TestKitJunitResource;
+import akka.actor.testkit.typed.javadsl.TestProbe;
+import akka.pattern.StatusReply;
+import akka.persistence.testkit.javadsl.EventSourcedBehaviorTestKit;
+import akka.persistence.typed.PersistenceId;
+import com.search.engine.DocumentIndexer;
+import com.search.engine.DocumentRegistry;
+import com.search.engine.models.DataSource;
+import com.search.engine.models.DocumentsPage;
+import com.search.engine.models.ReindexProgress;
+import com.typesafe.config.ConfigFactory;
+import org.junit.ClassRule;
+import org.junit.Test;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Optional;
+import java.util.UUID;
+
+import static org.junit.Assert.*;
+
+public class ReindexJobTest {
+
+    @ClassRule
+    public static final TestKitJunitResource testkit =
+            new TestKitJunitResource(
+                    ConfigFactory.parseString(
+                            "akka.actor.serialization-bindings {\n"
+                                    + "  \"com.search.engine.JacksonSerializable\" = jackson-json\n"
+                                    + "}\n"
+                                    + "case-search-engine-index.reindex.page-size = 2\n")
+                            .withFallback(EventSourcedBehaviorTestKit.config()));
+
+    private static final Duration TIMEOUT = Duration.ofSeconds(3);
+
+    // Every test has its own journal, the job resumes the reindex it finds running when it starts
+    private final TestProbe<DocumentRegistry.Command> registry = testkit.createTestProbe();
+    private final TestProbe<DocumentIndexer.Command> indexers = testkit.createTestProbe();
+    private final EventSourcedBehaviorTestKit<ReindexJob.Command, ReindexJob.Event, ReindexJob.State>
+            reindexTestKit =
+            EventSourcedBehaviorTestKit.create(
+                    testkit.system(), ReindexJob.create(PersistenceId.ofUniqueId("ReindexJobTest-" + UUID.randomUUID()), registry.ref(), indexers.ref()));
+
+    @Test
+    public void indexDocumentsThroughTheIndexersWithTheirVersion() {
+        var started = reindexTestKit.<StatusReply<ReindexProgress>>runCommand(ReindexJob.Start::new);
+        assertTrue(started.reply().isSuccess());
+        assertEquals("RUNNING", started.reply().getValue().status);
+
+        replyPage(Optional.empty(), List.of(new DocumentsPage.Entry("a", DataSource.PRICES, 3), new DocumentsPage.Entry("b", DataSource.PRODUCTS, 1)), "b", false);
+
+        var first = indexers.expectMessageClass(DocumentIndexer.IndexDocument.class);
+        var second = indexers.expectMessageClass(DocumentIndexer.IndexDocument.class);
+        assertEquals("a", first.id);
+        assertEquals(DataSource.PRICES, first.dataSource);
+        assertEquals(3, first.version);
+        assertEquals(registry.ref(), first.respondTo);
+        assertEquals("b", second.id);
+        assertEquals(1, second.version);
+        first.ackTo.get().tell(Done.getInstance());
+        second.ackTo.get().tell(Done.getInstance());
+
+        registry.awaitAssert(TIMEOUT, () -> {
+            var state = reindexTestKit.getState();
+            assertEquals(ReindexJob.Status.COMPLETED, state.status);
+            assertEquals(Optional.of("b"), state.checkpoint);
+            assertEquals(2, state.indexed);
+            return null;
+        });
+    }
+
+    @Test
+    public void pageNotAcknowledgedIsNotCheckpointed() {
+        reindexTestKit.<StatusReply<ReindexProgress>>runCommand(ReindexJob.Start::new);
+        replyPage(Optional.empty(), List.of(new DocumentsPage.Entry("a", DataSource.PRICES, 3)), "a", true);
+
+        // The indexer has not acknowledged it, e.g. the search engine is failing
+        indexers.expectMessageClass(DocumentIndexer.IndexDocument.class);
+        indexers.expectNoMessage(Duration.ofMillis(300));
+        assertEquals(Optional.empty(), reindexTestKit.getState().checkpoint);
+    }
+
+    @Test
+    public void startOnlyOnce() {
+        reindexTestKit.<StatusReply<ReindexProgress>>runCommand(ReindexJob.Start::new);
+
+        var again = reindexTestKit.<StatusReply<ReindexProgress>>runCommand(ReindexJob.Start::new);
+        assertTrue(again.reply().isError());
+        assertTrue(again.hasNoEvents());
+    }
+
+    @Test
+    public void cancel() {
+        reindexTestKit.<StatusReply<ReindexProgress>>runCommand(ReindexJob.Start::new);
+        registry.expectMessageClass(DocumentRegistry.GetDocumentsPage.class);
+
+        var cancelled = reindexTestKit.<StatusReply<ReindexProgress>>runCommand(ReindexJob.Cancel::new);
+        assertTrue(cancelled.reply().isSuccess());
+        assertEquals(ReindexJob.Status.CANCELLED, cancelled.state().status);
+
+        var nothingRunning = reindexTestKit.<StatusReply<ReindexProgress>>runCommand(ReindexJob.Cancel::new);
+        assertTrue(nothingRunning.reply().isError());
+    }
+
+    @Test
+    public void resumeFromTheCheckpointAfterRestart() {
+        reindexTestKit.<StatusReply<ReindexProgress>>runCommand(ReindexJob.Start::new);
+        replyPage(Optional.empty(), List.of(new DocumentsPage.Entry("a", DataSource.PRICES, 3), new DocumentsPage.Entry("b", DataSource.PRICES, 2)), "b", true);
+        indexers.expectMessageClass(DocumentIndexer.IndexDocument.class).ackTo.get().tell(Done.getInstance());
+        indexers.expectMessageClass(DocumentIndexer.IndexDocument.class).ackTo.get().tell(Done.getInstance());
+
+        // The next page is requested, the job stops before it is read
+        assertEquals(Optional.of("b"), registry.expectMessageClass(DocumentRegistry.GetDocumentsPage.class).afterId);
+        registry.awaitAssert(TIMEOUT, () -> {
+            assertEquals(Optional.of("b"), reindexTestKit.getState().checkpoint);
+            return null;
+        });
+
+        var restarted = reindexTestKit.restart();
+        assertEquals(ReindexJob.Status.RUNNING, restarted.state().status);
+        assertEquals(Optional.of("b"), registry.expectMessageClass(DocumentRegistry.GetDocumentsPage.class).afterId);
+    }
+
+    private void replyPage(Optional<String> afterId, List<DocumentsPage.Entry> documents, String lastId, boolean hasMore) {
+        var request = registry.expectMessageClass(DocumentRegistry.GetDocumentsPage.class);
+        assertEquals(afterId, request.afterId);
+        request.replyTo.tell(new DocumentsPage(documents, Optional.of(lastId), hasMore, documents.size(), 10));
+    }
+}
@@ -0,0 +1,94 @@
+package com.search.engine.routes;
+
+import akka.actor.testkit.typed.javadsl.TestKitJunitResource;
+import com.search.engine.exceptions.ServiceUnavailableException;
+import com.typesafe.config.ConfigFactory;
+import org.junit.Before;
+import org.junit.ClassRule;
+import org.junit.Test;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+public class AdmissionControlTest {
+    @ClassRule
+    public static TestKitJunitResource testkit = new TestKitJunitResource();
+
+    private AdmissionControl admissionControl;
+
+    @Before
+    public void beforeEach() {
+        admissionControl = new AdmissionControl(testkit.system(), ConfigFactory.parseString(
+                "max-in-flight = 1\n"
+                        + "max-queued = 1\n"
+                        + "max-queue-time = 200ms\n"
+                        + "retry-after = 2s"));
+    }
+
+    @Test
+    public void queuedRequestRunsWhenSlotIsReleased() throws Exception {
+        var first = new CompletableFuture<String>();
+        var admittedFirst = admissionControl.admit(() -> first);
+        var admittedSecond = admissionControl.admit(() -> CompletableFuture.completedFuture("second"));
+
+        assertEquals(1, admissionControl.inFlight());
+        assertEquals(1, admissionControl.queued());
+
+        first.complete("first");
+
+        assertEquals("first", admittedFirst.toCompletableFuture().get(1, TimeUnit.SECONDS));
+        assertEquals("second", admittedSecond.toCompletableFuture().get(1, TimeUnit.SECONDS));
+        assertEquals(0, admissionControl.inFlight());
+        assertEquals(0, admissionControl.queued());
+    }
+
+    @Test
+    public void requestRejectedWhenQueueIsFull() throws Exception {
+        admissionControl.admit(CompletableFuture<String>::new);
+        admissionControl.admit(CompletableFuture<String>::new);
+
+        var rejected = admissionControl.admit(() -> CompletableFuture.completedFuture("rejected"));
+
+        assertRejected(rejected.toCompletableFuture());
+    }
+
+    @Test
+    public void queuedRequestRejectedAfterDeadline() throws Exception {
+        admissionControl.admit(CompletableFuture<String>::new);
+
+        var expired = admissionControl.admit(() -> CompletableFuture.completedFuture("expired"));
+
+        assertRejected(expired.toCompletableFuture());
+        assertEquals(0, admissionControl.queued());
+    }
+
+    @Test
+    public void closeRejectsQueuedAndNewRequests() throws Exception {
+        var first = new CompletableFuture<String>();
+        var admittedFirst = admissionControl.admit(() -> first);
+        var queued = admissionControl.admit(() -> CompletableFuture.completedFuture("queued"));
+
+        admissionControl.close();
+
+        assertRejected(queued.toCompletableFuture());
+        assertRejected(admissionControl.admit(() -> CompletableFuture.completedFuture("new")).toCompletableFuture());
+
+        // The request in flight still completes
+        first.complete("first");
+        assertEquals("first", admittedFirst.toCompletableFuture().get(1, TimeUnit.SECONDS));
+        assertEquals(0, admissionControl.queued());
+    }
+
+    private void assertRejected(CompletableFuture<String> future) throws Exception {
+        try {
+            future.get(1, TimeUnit.SECONDS);
+            fail("The request should have been rejected");
+        } catch (ExecutionException ex) {
+            assertTrue(ex.getCause() instanceof ServiceUnavailableException);
+            assertEquals(2, ((ServiceUnavailableException) ex.getCause()).getRetryAfter().toSeconds());
+        }
+    }
+}
@@ -0,0 +1,179 @@
+package com.search.engine.routes;
+
+import akka.actor.testkit.typed.javadsl.TestKitJunitResource;
+import akka.http.javadsl.model.HttpRequest;
+import akka.http.javadsl.model.MediaRanges;
+import akka.http.javadsl.model.StatusCodes;
+import akka.http.javadsl.model.headers.Accept;
+import akka.http.javadsl.model.headers.RawHeader;
+import akka.http.javadsl.testkit.JUnitRouteTest;
+import akka.http.javadsl.testkit.TestRoute;
+import akka.http.javadsl.testkit.TestRouteResult;
+import akka.persistence.testkit.PersistenceTestKitPlugin;
+import akka.persistence.testkit.javadsl.PersistenceTestKit;
+import akka.persistence.testkit.query.javadsl.PersistenceTestKitReadJournal;
+import akka.persistence.typed.PersistenceId;
+import akka.stream.javadsl.Framing;
+import akka.stream.javadsl.FramingTruncation;
+import akka.stream.javadsl.Sink;
+import akka.stream.testkit.javadsl.TestSink;
+import akka.util.ByteString;
+import com.search.engine.DocumentRegistry;
+import com.search.engine.models.DataSource;
+import com.search.engine.models.DocumentChange;
+import com.typesafe.config.ConfigFactory;
+import org.junit.Before;
+import org.junit.ClassRule;
+import org.junit.Test;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class ChangeFeedRoutesTest extends JUnitRouteTest {
+    @ClassRule
+    public static TestKitJunitResource testkit = new TestKitJunitResource(
+            ConfigFactory.parseString(
+                            "akka.persistence.journal.auto-start-journals = []\n"
+                                    + "akka.persistence.snapshot-store.auto-start-snapshot-stores = []\n"
+                                    + "case-search-engine-index.change-feed.read-journal = \"" + PersistenceTestKitReadJournal.Identifier() + "\"\n"
+                                    + "case-search-engine-index.change-feed.buffer-size = 2\n")
+                    .withFallback(PersistenceTestKitPlugin.config())
+                    .withFallback(ConfigFactory.load()));
+
+    private static final Duration TIMEOUT = Duration.ofSeconds(3);
+
+    // The feed of every test reads its own journal
+    private final PersistenceId registryPersistenceId = PersistenceId.ofUniqueId("ChangeFeedRoutesTest-" + UUID.randomUUID());
+    private ChangeFeedRoutes changeFeedRoutes;
+    private TestRoute appRoute;
+
+    @Before
+    public void beforeEach() {
+        var events = new ArrayList<Object>();
+        for (int i = 1; i <= 10; i++) {
+            events.add(i % 2 == 0
+                    ? new DocumentRegistry.DocumentDeleted("document-" + i)
+                    : new DocumentRegistry.DocumentIndexed("document-" + i, DataSource.PRODUCTS, Instant.ofEpochSecond(i)));
+        }
+        PersistenceTestKit.create(testkit.system()).persistForRecovery(registryPersistenceId.id(), events);
+
+        changeFeedRoutes = new ChangeFeedRoutes(testkit.system(), registryPersistenceId);
+        appRoute = testRoute(changeFeedRoutes.changeFeedRoutes());
+    }
+
+    @Test
+    public void serverSentEventsByDefault() throws Exception {
+        var result = appRoute.run(HttpRequest.GET("/documents/changes"))
+                .assertStatusCode(StatusCodes.OK)
+                .assertMediaType("text/event-stream");
+
+        assertEquals(List.of("id:1", "id:2"), lines(result, "id:", 2));
+    }
+
+    @Test
+    public void ndjsonWhenAccepted() throws Exception {
+        var result = appRoute.run(HttpRequest.GET("/documents/changes")
+                        .addHeader(Accept.create(MediaRanges.create(JsonMarshalling.APPLICATION_NDJSON))))
+                .assertStatusCode(StatusCodes.OK)
+                .assertMediaType(JsonMarshalling.APPLICATION_NDJSON);
+
+        var changes = lines(result, "{", 2);
+        assertTrue(changes.get(0).contains("\"offset\":1"));
+        assertTrue(changes.get(0).contains("\"state\":\"INDEXED\""));
+        assertTrue(changes.get(1).contains("\"offset\":2"));
+        assertTrue(changes.get(1).contains("\"state\":\"DELETED\""));
+    }
+
+    @Test
+    public void resumeAfterTheOffset() throws Exception {
+        var result = appRoute.run(HttpRequest.GET("/documents/changes?offset=7"))
+                .assertStatusCode(StatusCodes.OK);
+
+        assertEquals(List.of("id:8", "id:9"), lines(result, "id:", 2));
+    }
+
+    @Test
+    public void resumeAfterTheLastEventId() throws Exception {
+        // The header of the reconnecting SSE clients wins over the query parameter
+        var result = appRoute.run(HttpRequest.GET("/documents/changes?offset=1")
+                        .addHeader(RawHeader.create("Last-Event-ID", "4")))
+                .assertStatusCode(StatusCodes.OK);
+
+        assertEquals(List.of("id:5", "id:6"), lines(result, "id:", 2));
+    }
+
+    @Test
+    public void invalidOffset() {
+        for (String offset : List.of("abc", "-1", "1.5", "1234567890123456789", "")) {
+            appRoute.run(HttpRequest.GET("/documents/changes?offset=" + offset))
+                    .assertStatusCode(StatusCodes.BAD_REQUEST);
+        }
+
+        appRoute.run(HttpRequest.GET("/documents/changes")
+                        .addHeader(RawHeader.create("Last-Event-ID", "abc")))
+                .assertStatusCode(StatusCodes.BAD_REQUEST);
+    }
+
+    @Test
+    public void resumeAfterAnArchivedOffset() throws Exception {
+        // The changes up to the offset 10 are archived
+        var journal = PersistenceTestKit.create(testkit.system());
+        journal.clearByIdPreservingSeqNumbers(registryPersistenceId.id());
+        journal.persistForRecovery(registryPersistenceId.id(), List.of(new DocumentRegistry.DocumentDeleted("document-11")));
+
+        appRoute.run(HttpRequest.GET("/documents/changes?offset=3"))
+                .assertStatusCode(StatusCodes.GONE);
+        appRoute.run(HttpRequest.GET("/documents/changes")
+                        .addHeader(RawHeader.create("Last-Event-ID", "9")))
+                .assertStatusCode(StatusCodes.GONE);
+
+        var resumed = appRoute.run(HttpRequest.GET("/documents/changes?offset=10"))
+                .assertStatusCode(StatusCodes.OK);
+        assertEquals(List.of("id:11"), lines(resumed, "id:", 1));
+        // Without offset the feed starts at the oldest change available
+        var started = appRoute.run(HttpRequest.GET("/documents/changes"))
+                .assertStatusCode(StatusCodes.OK);
+        assertEquals(List.of("id:11"), lines(started, "id:", 1));
+    }
+
+    @Test
+    public void changesOnlyReadAsFastAsTheClientConsumes() {
+        var client = changeFeedRoutes.changes(0)
+                .runWith(TestSink.probe(testkit.system().classicSystem()), testkit.system());
+
+        client.request(1);
+        assertEquals(1, client.expectNext().offset);
+        // Nothing is sent without demand, and nothing is dropped while the client does not read
+        client.expectNoMessage(Duration.ofMillis(300));
+
+        client.request(9);
+        var offsets = new ArrayList<Long>();
+        for (int i = 0; i < 9; i++) {
+            DocumentChange change = client.expectNext();
+            offsets.add(change.offset);
+        }
+        assertEquals(List.of(2L, 3L, 4L, 5L, 6L, 7L, 8L, 9L, 10L), offsets);
+        client.cancel();
+    }
+
+    /**
+     * Reads the first lines of the stream starting with the prefix, the feed never completes
+     */
+    private List<String> lines(TestRouteResult result, String prefix, int count) throws Exception {
+        return result.response().entity().getDataBytes()
+                .via(Framing.delimiter(ByteString.fromString("\n"), 64 * 1024, FramingTruncation.ALLOW))
+                .map(ByteString::utf8String)
+                .filter(line -> line.startsWith(prefix))
+                .take(count)
+                .runWith(Sink.seq(), testkit.system())
+                .toCompletableFuture()
+                .get(TIMEOUT.toMillis(), TimeUnit.MILLISECONDS);
+    }
+}
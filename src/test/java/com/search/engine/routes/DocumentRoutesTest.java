@@ -5,6 +5,9 @@ import akka.actor.typed.ActorRef;
 import akka.http.javadsl.model.HttpRequest;
 import akka.http.javadsl.model.MediaTypes;
 import akka.http.javadsl.model.StatusCodes;
+import akka.http.javadsl.model.headers.ETag;
+import akka.http.javadsl.model.headers.Location;
+import akka.http.javadsl.model.headers.RawHeader;
 import akka.http.javadsl.testkit.JUnitRouteTest;
 import akka.http.javadsl.testkit.TestRoute;
 import akka.persistence.typed.PersistenceId;
@@ -18,6 +21,12 @@ import org.junit.Before;
 import org.junit.ClassRule;
 import org.junit.Test;
 
+import java.util.UUID;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertTrue;
+
 public class DocumentRoutesTest extends JUnitRouteTest {
     @ClassRule
     public static TestKitJunitResource testkit = new TestKitJunitResource();
@@ -30,8 +39,10 @@ public class DocumentRoutesTest extends JUnitRouteTest {
 
     @Before
     public void beforeEach() {
-        DocumentRoutes documentRoutes = new DocumentRoutes(testkit.system(), documentRegistry, validator);
-        appRoute = testRoute(documentRoutes.documentRoutes());
+        OperationStore operations = new OperationStore(testkit.system());
+        DocumentRoutes documentRoutes = new DocumentRoutes(testkit.system(), documentRegistry, validator, operations);
+        OperationRoutes operationRoutes = new OperationRoutes(testkit.system(), operations);
+        appRoute = testRoute(concat(operationRoutes.operationRoutes(), documentRoutes.documentRoutes()));
     }
 
     @Test
@@ -52,4 +63,76 @@ public class DocumentRoutesTest extends JUnitRouteTest {
         appRoute.run(HttpRequest.DELETE("/documents/" + id))
                 .assertStatusCode(StatusCodes.NO_CONTENT);
     }
-}
\ No newline at end of file
+
+    @Test
+    public void updateDocumentIfMatch() {
+        var created = appRoute.run(HttpRequest.POST("/documents")
+                .withEntity(MediaTypes.APPLICATION_JSON.toContentType(), "{\"name\": \"Test\", \"description\": \"Test\", \"dataSource\": \"PRODUCTS\"}"))
+                .assertStatusCode(StatusCodes.CREATED);
+        var id = created.entityString().substring(7, created.entityString().length() - 2);
+        var createdTag = created.header(ETag.class).get().etag().tag();
+
+        var updated = appRoute.run(HttpRequest.PATCH("/documents/" + id)
+                .addHeader(RawHeader.create("If-Match", "\"" + createdTag + "\""))
+                .withEntity(MediaTypes.APPLICATION_JSON.toContentType(), "{\"dataSource\": \"PRICES\", \"price\": \"10.25\"}"))
+                .assertStatusCode(StatusCodes.OK);
+        var updatedTag = updated.header(ETag.class).get().etag().tag();
+        assertNotEquals(createdTag, updatedTag);
+        // The version is only in the ETag
+        assertFalse(updated.entityString().contains("\"version\""));
+
+        // The version in the body is not the one of the document
+        var forged = appRoute.run(HttpRequest.PATCH("/documents/" + id)
+                .addHeader(RawHeader.create("If-Match", "\"" + updatedTag + "\""))
+                .withEntity(MediaTypes.APPLICATION_JSON.toContentType(), "{\"dataSource\": \"PRICES\", \"price\": \"10.50\", \"version\": 1}"))
+                .assertStatusCode(StatusCodes.OK);
+        assertNotEquals("1", forged.header(ETag.class).get().etag().tag());
+        updatedTag = forged.header(ETag.class).get().etag().tag();
+
+        // The version read before the update is stale
+        appRoute.run(HttpRequest.PATCH("/documents/" + id)
+                .addHeader(RawHeader.create("If-Match", "\"" + createdTag + "\""))
+                .withEntity(MediaTypes.APPLICATION_JSON.toContentType(), "{\"dataSource\": \"PRICES\", \"price\": \"11.50\"}"))
+                .assertStatusCode(StatusCodes.PRECONDITION_FAILED);
+
+        // A weak entity tag never matches
+        appRoute.run(HttpRequest.DELETE("/documents/" + id)
+                .addHeader(RawHeader.create("If-Match", "W/\"" + updatedTag + "\"")))
+                .assertStatusCode(StatusCodes.PRECONDITION_FAILED);
+
+        // One of the listed entity tags matches
+        appRoute.run(HttpRequest.DELETE("/documents/" + id)
+                .addHeader(RawHeader.create("If-Match", "\"" + createdTag + "\", \"" + updatedTag + "\"")))
+                .assertStatusCode(StatusCodes.NO_CONTENT);
+    }
+
+    @Test
+    public void createDocumentAsynchronously() {
+        var accepted = appRoute.run(HttpRequest.POST("/documents")
+                .addHeader(RawHeader.create("Prefer", "respond-async"))
+                .withEntity(MediaTypes.APPLICATION_JSON.toContentType(), "{\"name\": \"Test\", \"description\": \"Test\", \"dataSource\": \"PRODUCTS\"}"))
+                .assertStatusCode(StatusCodes.ACCEPTED)
+                .assertHeaderExists("Preference-Applied", "respond-async");
+
+        var location = accepted.header(Location.class).get().getUri().path();
+        assertTrue(accepted.entityString().contains("\"state\":\"PENDING\""));
+
+        testkit.createTestProbe().awaitAssert(() -> {
+            var status = appRoute.run(HttpRequest.GET(location)).assertStatusCode(StatusCodes.OK).entityString();
+            assertTrue(status.contains("\"state\":\"SUCCEEDED\""));
+            assertTrue(status.contains("\"documentId\""));
+            return null;
+        });
+
+        var operationId = location.substring("/operations/".length());
+        appRoute.run(HttpRequest.GET("/operations?ids=" + operationId + ",unknown"))
+                .assertStatusCode(StatusCodes.OK)
+                .assertEntity("[" + appRoute.run(HttpRequest.GET(location)).entityString() + "]");
+    }
+
+    @Test
+    public void unknownOperationNotFound() {
+        appRoute.run(HttpRequest.GET("/operations/" + UUID.randomUUID()))
+                .assertStatusCode(StatusCodes.NOT_FOUND);
+    }
+}
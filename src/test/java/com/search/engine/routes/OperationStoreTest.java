@@ -0,0 +1,76 @@
+package com.search.engine.routes;
+
+import com.search.engine.models.OperationState;
+import org.junit.Test;
+
+import java.time.Duration;
+import java.util.Optional;
+
+import static org.junit.Assert.*;
+
+public class OperationStoreTest {
+
+    @Test
+    public void operationSucceeds() {
+        var operations = new OperationStore(10, Duration.ofMinutes(1));
+        var started = operations.start(Optional.empty());
+
+        assertEquals(OperationState.PENDING, started.state);
+        assertNull(started.documentId);
+
+        operations.succeed(started.id, "document");
+
+        var status = operations.status(started.id).get();
+        assertEquals(OperationState.SUCCEEDED, status.state);
+        assertEquals("document", status.documentId);
+    }
+
+    @Test
+    public void operationFails() {
+        var operations = new OperationStore(10, Duration.ofMinutes(1));
+        var started = operations.start(Optional.of("document"));
+
+        operations.fail(started.id, "Document was not updated");
+
+        var status = operations.status(started.id).get();
+        assertEquals(OperationState.FAILED, status.state);
+        assertEquals("document", status.documentId);
+        assertEquals("Document was not updated", status.error);
+    }
+
+    @Test
+    public void operationOutcomeUnknown() {
+        var operations = new OperationStore(10, Duration.ofMinutes(1));
+        var started = operations.start(Optional.of("document"));
+
+        operations.unknown(started.id, "The request timed out waiting for the registry");
+
+        var status = operations.status(started.id).get();
+        assertEquals(OperationState.UNKNOWN, status.state);
+        assertEquals("The request timed out waiting for the registry", status.error);
+    }
+
+    @Test
+    public void oldestOperationsEvictedWhenFull() {
+        var operations = new OperationStore(2, Duration.ofMinutes(1));
+        var first = operations.start(Optional.empty());
+        var second = operations.start(Optional.empty());
+        var third = operations.start(Optional.empty());
+
+        assertEquals(2, operations.size());
+        assertTrue(operations.status(first.id).isEmpty());
+        assertTrue(operations.status(second.id).isPresent());
+        assertTrue(operations.status(third.id).isPresent());
+    }
+
+    @Test
+    public void expiredOperationsForgotten() throws InterruptedException {
+        var operations = new OperationStore(10, Duration.ofMillis(50));
+        var started = operations.start(Optional.empty());
+
+        Thread.sleep(100);
+
+        assertTrue(operations.status(started.id).isEmpty());
+        assertTrue(operations.status("not-an-operation-id").isEmpty());
+    }
+}
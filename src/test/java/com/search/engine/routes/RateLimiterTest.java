@@ -0,0 +1,103 @@
+package com.search.engine.routes;
+
+import com.search.engine.exceptions.TooManyRequestsException;
+import com.search.engine.models.DataSource;
+import com.typesafe.config.ConfigFactory;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class RateLimiterTest {
+    private long now;
+    private RateLimiter rateLimiter;
+
+    @Before
+    public void beforeEach() {
+        now = 0L;
+        rateLimiter = new RateLimiter(ConfigFactory.parseString(
+                "enabled = true\n"
+                        + "client-header = \"X-Api-Key\"\n"
+                        + "clients {\n"
+                        + "  default { rate = 10, burst = 2 }\n"
+                        + "  overrides { \"feed.prices\" { rate = 10, burst = 5 } }\n"
+                        + "}\n"
+                        + "data-sources {\n"
+                        + "  PRICES { rate = 1, burst = 3 }\n"
+                        + "}"), () -> now);
+    }
+
+    @Test
+    public void clientLimitedAfterBurst() {
+        rateLimiter.acquire("client", DataSource.PRODUCTS);
+        rateLimiter.acquire("client", DataSource.PRODUCTS);
+
+        var exception = expectRejected(() -> rateLimiter.acquire("client", DataSource.PRODUCTS));
+        assertEquals(100, exception.getRetryAfter().toMillis());
+
+        // Other clients have their own bucket
+        rateLimiter.acquire("other-client", DataSource.PRODUCTS);
+
+        // A token is added every 100ms
+        now += 100_000_000L;
+        rateLimiter.acquire("client", DataSource.PRODUCTS);
+    }
+
+    @Test
+    public void clientOverridesAndAnonymousClients() {
+        for (int i = 0; i < 5; i++) rateLimiter.acquire("feed.prices", null);
+        expectRejected(() -> rateLimiter.acquire("feed.prices", null));
+
+        rateLimiter.acquire(null, null);
+        rateLimiter.acquire(null, null);
+        expectRejected(() -> rateLimiter.acquire(null, null));
+    }
+
+    @Test
+    public void dataSourceLimitedAcrossClients() {
+        rateLimiter.acquire("client-1", DataSource.PRICES);
+        rateLimiter.acquire("client-2", DataSource.PRICES);
+        rateLimiter.acquire("client-3", DataSource.PRICES);
+
+        var exception = expectRejected(() -> rateLimiter.acquire("client-4", DataSource.PRICES));
+        assertEquals(1, exception.getRetryAfter().toSeconds());
+
+        // Data sources without limits are not affected
+        rateLimiter.acquire("client-4", DataSource.PROMOTIONS);
+    }
+
+    @Test
+    public void clientNotChargedWhenTheDataSourceRejects() {
+        for (int i = 0; i < 3; i++) rateLimiter.acquire("client-" + i, DataSource.PRICES);
+
+        // Its burst is 2, the rejected requests do not take its tokens
+        for (int i = 0; i < 3; i++) {
+            expectRejected(() -> rateLimiter.acquire("client", DataSource.PRICES));
+        }
+        rateLimiter.acquire("client", DataSource.PRODUCTS);
+        rateLimiter.acquire("client", DataSource.PRODUCTS);
+    }
+
+    @Test
+    public void idleClientsEvicted() {
+        rateLimiter.acquire("client", null);
+        rateLimiter.acquire("client", null);
+
+        now += 1_000_000_000L;
+        rateLimiter.evictIdleClients();
+
+        rateLimiter.acquire("client", null);
+        rateLimiter.acquire("client", null);
+    }
+
+    private TooManyRequestsException expectRejected(Runnable request) {
+        try {
+            request.run();
+        } catch (TooManyRequestsException ex) {
+            return ex;
+        }
+
+        fail("The request should have been rejected");
+        return null;
+    }
+}
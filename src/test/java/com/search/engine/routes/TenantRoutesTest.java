@@ -0,0 +1,88 @@
+package com.search.engine.routes;
+
+import akka.actor.testkit.typed.javadsl.TestKitJunitResource;
+import akka.http.javadsl.model.HttpRequest;
+import akka.http.javadsl.model.MediaTypes;
+import akka.http.javadsl.model.StatusCodes;
+import akka.http.javadsl.testkit.JUnitRouteTest;
+import akka.http.javadsl.testkit.TestRoute;
+import akka.persistence.typed.PersistenceId;
+import com.search.engine.DocumentIndexer;
+import com.search.engine.DocumentRegistry;
+import com.search.engine.TestSolrIndexer;
+import com.search.engine.reindex.ReindexJob;
+import com.search.engine.tenants.Tenants;
+import com.search.engine.validators.DocumentRequestValidator;
+import com.typesafe.config.ConfigFactory;
+import org.junit.Before;
+import org.junit.ClassRule;
+import org.junit.Test;
+
+import static org.junit.Assert.assertTrue;
+
+public class TenantRoutesTest extends JUnitRouteTest {
+    @ClassRule
+    public static TestKitJunitResource testkit = new TestKitJunitResource(
+            ConfigFactory.parseString("case-search-engine-index.tenants.ids = [\"eu\", \"us\"]")
+                    .withFallback(ConfigFactory.load()));
+
+    private TestRoute appRoute;
+
+    @Before
+    public void beforeEach() {
+        var tenantRoutes = new TenantRoutes(testkit.system(), new DocumentRequestValidator(), new OperationStore(testkit.system()));
+        for (String tenant : Tenants.get(testkit.system()).ids()) {
+            var indexer = testkit.spawn(DocumentIndexer.create(new TestSolrIndexer()));
+            var registry = testkit.spawn(DocumentRegistry.create(Tenants.registryPersistenceId(tenant + "-" + System.nanoTime()), indexer));
+            var reindexJob = testkit.spawn(ReindexJob.create(PersistenceId.ofUniqueId("DocumentReindex-" + tenant + "-" + System.nanoTime()), registry, indexer));
+            tenantRoutes.add(tenant, registry, reindexJob);
+        }
+        appRoute = testRoute(tenantRoutes.tenantRoutes());
+    }
+
+    @Test
+    public void documentsOfEveryTenantInItsOwnRegistry() {
+        var created = appRoute.run(HttpRequest.POST("/tenants/eu/documents")
+                        .withEntity(MediaTypes.APPLICATION_JSON.toContentType(), "{\"name\": \"Test\", \"description\": \"Test\", \"dataSource\": \"PRODUCTS\"}"))
+                .assertStatusCode(StatusCodes.CREATED);
+        var id = created.entityString().substring(7, created.entityString().length() - 2);
+
+        appRoute.run(HttpRequest.PATCH("/tenants/eu/documents/" + id)
+                        .withEntity(MediaTypes.APPLICATION_JSON.toContentType(), "{\"dataSource\": \"PRICES\", \"price\": \"10.25\"}"))
+                .assertStatusCode(StatusCodes.OK);
+        // Not in the registry of another tenant
+        appRoute.run(HttpRequest.PATCH("/tenants/us/documents/" + id)
+                        .withEntity(MediaTypes.APPLICATION_JSON.toContentType(), "{\"dataSource\": \"PRICES\", \"price\": \"10.25\"}"))
+                .assertStatusCode(StatusCodes.BAD_REQUEST);
+    }
+
+    @Test
+    public void metricsOfTheTenant() {
+        appRoute.run(HttpRequest.POST("/tenants/us/documents")
+                        .withEntity(MediaTypes.APPLICATION_JSON.toContentType(), "{\"name\": \"Test\", \"description\": \"Test\", \"dataSource\": \"PRODUCTS\"}"))
+                .assertStatusCode(StatusCodes.CREATED);
+
+        var metrics = appRoute.run(HttpRequest.GET("/tenants/us/metrics"))
+                .assertStatusCode(StatusCodes.OK)
+                .entityString();
+        assertTrue(metrics.contains("\"requestsSucceeded\""));
+        assertTrue(metrics.contains("\"requestsInFlight\":0"));
+    }
+
+    @Test
+    public void reindexOfTheTenant() {
+        appRoute.run(HttpRequest.POST("/tenants/eu/admin/reindex"))
+                .assertStatusCode(StatusCodes.ACCEPTED);
+        // The reindex of another tenant is not running
+        appRoute.run(HttpRequest.DELETE("/tenants/us/admin/reindex"))
+                .assertStatusCode(StatusCodes.CONFLICT);
+    }
+
+    @Test
+    public void unknownTenant() {
+        appRoute.run(HttpRequest.GET("/tenants/asia/metrics"))
+                .assertStatusCode(StatusCodes.NOT_FOUND)
+                .assertMediaType("application/json")
+                .assertEntity("{\"errors\":[{\"field\":\"tenant\",\"message\":\"The tenant asia does not exist\"}]}");
+    }
+}
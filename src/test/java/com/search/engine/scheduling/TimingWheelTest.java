@@ -0,0 +1,65 @@
+package com.search.engine.scheduling;
+
+import org.junit.Test;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class TimingWheelTest {
+    private final Instant start = Instant.parse("2026-01-01T00:00:00Z");
+
+    @Test
+    public void itemReturnedOnceItsDeadlinePasses() {
+        var wheel = new TimingWheel<String>(Duration.ofSeconds(1), 4, start);
+        wheel.schedule("a", start.plusMillis(2500));
+
+        assertTrue(wheel.advance(start.plusSeconds(2)).isEmpty());
+        assertEquals(List.of("a"), wheel.advance(start.plusSeconds(3)));
+        assertTrue(wheel.advance(start.plusSeconds(4)).isEmpty());
+        assertEquals(0, wheel.size());
+    }
+
+    @Test
+    public void itemsBeyondTheFirstLevelAreCascaded() {
+        var wheel = new TimingWheel<Integer>(Duration.ofSeconds(1), 4, start);
+        // 4 buckets per level, the deadlines span four levels
+        var deadlines = List.of(1, 3, 4, 5, 15, 16, 17, 63, 64, 100);
+        deadlines.forEach(seconds -> wheel.schedule(seconds, start.plusSeconds(seconds)));
+        assertEquals(deadlines.size(), wheel.size());
+
+        var returned = new ArrayList<Integer>();
+        for (int second = 1; second <= 100; second++) {
+            for (Integer item : wheel.advance(start.plusSeconds(second))) {
+                assertEquals(second, item.intValue());
+                returned.add(item);
+            }
+        }
+
+        assertEquals(deadlines, returned);
+        assertEquals(0, wheel.size());
+    }
+
+    @Test
+    public void itemsDueWhileNotAdvancedAreReturnedTogether() {
+        var wheel = new TimingWheel<String>(Duration.ofSeconds(1), 8, start);
+        wheel.schedule("a", start.plusSeconds(5));
+        wheel.schedule("b", start.plusSeconds(70));
+        wheel.schedule("c", start.plusSeconds(700));
+
+        assertEquals(List.of("a", "b"), wheel.advance(start.plusSeconds(100)));
+        assertEquals(List.of("c"), wheel.advance(start.plusSeconds(1000)));
+    }
+
+    @Test
+    public void pastDeadlineReturnedByNextAdvance() {
+        var wheel = new TimingWheel<String>(Duration.ofSeconds(1), 8, start);
+        wheel.advance(start.plusSeconds(10));
+        wheel.schedule("late", start);
+
+        assertEquals(List.of("late"), wheel.advance(start.plusSeconds(10)));
+    }
+}
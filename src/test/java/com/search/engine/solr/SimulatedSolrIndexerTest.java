@@ -0,0 +1,121 @@
+package com.search.engine.solr;
+
+import com.typesafe.config.Config;
+import com.typesafe.config.ConfigFactory;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+import static org.junit.Assert.*;
+
+public class SimulatedSolrIndexerTest {
+    @Rule
+    public final TemporaryFolder folder = new TemporaryFolder();
+
+    private static Config config(String settings) {
+        return ConfigFactory.parseString(settings).withFallback(ConfigFactory.parseString(
+                "seed = 7, clock = virtual, latency { median = 1ms, p99 = 10ms }, failure-rate = 0.2, partial-batch-failure-rate = 0, phases = []"));
+    }
+
+    private static SimulatedSolrIndexer simulator(String settings) {
+        return new SimulatedSolrIndexer(config(settings));
+    }
+
+    private static List<Boolean> outcomes(SimulatedSolrIndexer simulator, int requests) {
+        var outcomes = new ArrayList<Boolean>();
+        for (int i = 0; i < requests; i++) {
+            outcomes.add(simulator.indexDocument("document-" + i));
+        }
+        return outcomes;
+    }
+
+    @Test
+    public void sameSeedSameOutcomes() {
+        var first = simulator("");
+        var second = simulator("");
+
+        assertEquals(outcomes(first, 1000), outcomes(second, 1000));
+        assertEquals(first.now(), second.now());
+        assertNotEquals(outcomes(simulator("seed = 8"), 1000), outcomes(simulator(""), 1000));
+    }
+
+    @Test
+    public void virtualClockAdvancesWithTheLatency() {
+        var simulator = simulator("latency { median = 2ms, p99 = 2ms }");
+
+        outcomes(simulator, 10);
+        assertEquals(Duration.ofMillis(20), simulator.now());
+
+        simulator.advanceTo(Duration.ofSeconds(1));
+        assertEquals(Duration.ofSeconds(1), simulator.now());
+        simulator.advanceTo(Duration.ofMillis(500));
+        assertEquals(Duration.ofSeconds(1), simulator.now());
+    }
+
+    @Test
+    public void everyRequestFailsDuringAnOutage() {
+        var simulator = simulator("failure-rate = 0, latency { median = 1ms, p99 = 1ms }, phases = [{ start = 1s, duration = 1s, failure-rate = 1 }]");
+
+        assertFalse(outcomes(simulator, 1000).contains(false));
+        assertFalse(outcomes(simulator, 1000).contains(true));
+        assertFalse(outcomes(simulator, 1000).contains(false));
+        assertEquals(1000, simulator.failures());
+    }
+
+    @Test
+    public void recoveryGoesBackToTheBaseline() {
+        var simulator = simulator("failure-rate = 0, latency { median = 1ms, p99 = 1ms }, phases = [{ start = 0s, duration = 10s, failure-rate = 1, recovery = true }]");
+
+        var failedAtStart = outcomes(simulator, 1000).stream().filter(indexed -> !indexed).count();
+        simulator.advanceTo(Duration.ofSeconds(9));
+        var failedAtEnd = outcomes(simulator, 1000).stream().filter(indexed -> !indexed).count();
+
+        assertTrue(failedAtStart > 900);
+        assertTrue(failedAtEnd < 100);
+    }
+
+    @Test
+    public void partOfABatchFails() {
+        var simulator = simulator("failure-rate = 0, partial-batch-failure-rate = 0.5");
+        var batch = new LinkedHashMap<String, Long>();
+        for (int i = 0; i < 100; i++) batch.put("document-" + i, (long) i);
+
+        assertFalse(simulator.indexDocuments(batch));
+        var indexed = simulator.fingerprints("document-").size();
+        assertTrue(indexed > 0 && indexed < 100);
+    }
+
+    @Test
+    public void prebuiltSearchDocumentsWrittenToTheRequest() throws Exception {
+        var prebuilt = new SearchDocument("1", 3, new ByteBuffer[]{SearchDocument.readOnly("{\"id\":\"1\""), SearchDocument.readOnly(",\"name\":\"Shoes\"}")});
+        var batch = new LinkedHashMap<String, Long>();
+        batch.put("1", 1L);
+        batch.put("2", 2L);
+
+        var file = folder.newFile().toPath();
+        SimulatedSolrIndexer simulator;
+        try (var wire = FileChannel.open(file, StandardOpenOption.WRITE)) {
+            simulator = new SimulatedSolrIndexer(config("failure-rate = 0"), wire);
+            assertTrue(simulator.indexDocuments(batch, Map.of("1", prebuilt)));
+            assertTrue(simulator.indexDocument("1", 1L, Optional.of(prebuilt)));
+        }
+
+        // The one without a prebuilt search document is sent by id
+        assertEquals("[{\"id\":\"1\",\"name\":\"Shoes\"},{\"id\":\"2\"}][{\"id\":\"1\",\"name\":\"Shoes\"}]",
+                Files.readString(file, StandardCharsets.UTF_8));
+        assertEquals(Files.size(file), simulator.bytesSent());
+        assertEquals(2, simulator.fingerprints("").size());
+    }
+}
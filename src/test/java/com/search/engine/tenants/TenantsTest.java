@@ -0,0 +1,58 @@
+package com.search.engine.tenants;
+
+import com.typesafe.config.ConfigFactory;
+import org.junit.Test;
+
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class TenantsTest {
+
+    private static Tenants tenants(String config) {
+        return new Tenants(ConfigFactory.parseString(config)
+                .withFallback(ConfigFactory.parseString("default { admission { max-in-flight = 64, max-queued = 256 } }, overrides {}")));
+    }
+
+    @Test
+    public void overridesOverTheDefaultLimits() {
+        var tenants = tenants("ids = [\"storefront-eu\", \"storefront-us\"], overrides { \"storefront-eu\" { admission.max-in-flight = 128 } }");
+
+        assertEquals(List.of("storefront-eu", "storefront-us"), tenants.ids());
+        assertEquals(128, tenants.limits("storefront-eu").getInt("admission.max-in-flight"));
+        assertEquals(256, tenants.limits("storefront-eu").getInt("admission.max-queued"));
+        assertEquals(64, tenants.limits("storefront-us").getInt("admission.max-in-flight"));
+        assertTrue(tenants.exists("storefront-us"));
+        assertFalse(tenants.exists("storefront-asia"));
+    }
+
+    @Test
+    public void ownPersistenceIdAndMetrics() {
+        var tenants = tenants("ids = [\"eu\", \"us\"]");
+
+        assertEquals("DocumentRegistry-eu", Tenants.registryPersistenceId("eu").id());
+        assertSame(tenants.metrics("eu"), tenants.metrics("eu"));
+
+        tenants.metrics("eu").responded(201);
+        tenants.metrics("eu").responded(429);
+        tenants.metrics("eu").indexed(10, true);
+        var eu = tenants.metrics("eu").snapshot(3, 1);
+        var us = tenants.metrics("us").snapshot(0, 0);
+        assertEquals(1, eu.requestsSucceeded);
+        assertEquals(1, eu.requestsRateLimited);
+        assertEquals(10, eu.documentsIndexed);
+        assertEquals(3, eu.requestsInFlight);
+        assertEquals(0, us.requestsSucceeded);
+        assertEquals(0, us.documentsIndexed);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void tenantIdsUsableInNames() {
+        tenants("ids = [\"Storefront EU\"]");
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void tenantConfiguredOnce() {
+        tenants("ids = [\"eu\", \"eu\"]");
+    }
+}
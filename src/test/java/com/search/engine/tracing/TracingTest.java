@@ -0,0 +1,72 @@
+package com.search.engine.tracing;
+
+import org.junit.Test;
+
+import java.util.Map;
+import java.util.Optional;
+
+import static org.junit.Assert.*;
+
+public class TracingTest {
+
+    @Test
+    public void requestsNotSampledRecordNothing() {
+        var exporter = new InMemorySpanExporter(100);
+        var tracing = new Tracing(0, 100, exporter);
+
+        var trace = tracing.sample();
+        assertTrue(trace.isEmpty());
+        assertTrue(tracing.record(trace, "validation", Tracing.now(), Map.of()).isEmpty());
+        tracing.finish(trace, "POST /documents", Map.of());
+
+        tracing.flush();
+        assertTrue(exporter.spans().isEmpty());
+    }
+
+    @Test
+    public void spansAreChildrenOfTheirContext() {
+        var exporter = new InMemorySpanExporter(100);
+        var tracing = new Tracing(1, 100, exporter);
+
+        var root = tracing.sample();
+        assertTrue(root.isPresent());
+        var persist = tracing.record(root, "registry.persist", Tracing.now(), Map.of("id", "a"));
+        tracing.recordWait(persist.map(TraceContext::sent), "indexer.queue", Map.of());
+        tracing.finish(root, "POST /documents", Map.of("outcome", "ok"));
+        tracing.flush();
+
+        var spans = exporter.trace(root.get().traceId);
+        assertEquals(3, spans.size());
+        assertEquals(root.get().spanId, spans.get(0).parentSpanId);
+        assertEquals("a", spans.get(0).attributes.get("id"));
+        assertEquals(persist.get().spanId, spans.get(1).parentSpanId);
+        assertEquals(root.get().spanId, spans.get(2).spanId);
+        assertNull(spans.get(2).parentSpanId);
+        assertTrue(spans.get(2).duration >= 0);
+    }
+
+    @Test
+    public void spansDroppedWhenTheQueueIsFull() {
+        var exporter = new InMemorySpanExporter(100);
+        var tracing = new Tracing(1, 2, exporter);
+
+        var root = tracing.sample();
+        for (int i = 0; i < 5; i++) {
+            tracing.record(root, "solr.index", Tracing.now(), Map.of());
+        }
+        tracing.flush();
+
+        assertEquals(2, exporter.spans().size());
+        assertEquals(3, tracing.dropped());
+    }
+
+    @Test
+    public void traceparentOfTheContext() {
+        var context = new TraceContext("4bf92f3577b34da6a3ce929d0e0e4736", "00f067aa0ba902b7", 0);
+
+        assertEquals("00-4bf92f3577b34da6a3ce929d0e0e4736-00f067aa0ba902b7-01", context.traceparent());
+        var root = new Tracing(1, 1, spans -> {}).sample();
+        assertEquals(55, root.map(TraceContext::traceparent).orElse("").length());
+        assertEquals(Optional.empty(), new Tracing(1, 1, spans -> {}).record(Optional.empty(), "validation", 0, Map.of()));
+    }
+}
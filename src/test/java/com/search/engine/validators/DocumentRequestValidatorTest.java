@@ -0,0 +1,95 @@
+package com.search.engine.validators;
+
+import com.search.engine.exceptions.ValidationException;
+import com.search.engine.models.DataSource;
+import com.search.engine.models.Document;
+import org.junit.Test;
+
+import java.util.List;
+import java.util.Optional;
+import java.util.UUID;
+
+import static org.junit.Assert.*;
+
+public class DocumentRequestValidatorTest {
+    private final DocumentRequestValidator validator = new DocumentRequestValidator();
+
+    @Test
+    public void validPostEntity() {
+        var document = new Document("Test document", "Document used for testing", List.of(
+                "http://www.example.org",
+                "https://cdn.example.org:8443/images/1.png?size=large#top"
+        ), null, null, DataSource.PRODUCTS);
+
+        assertTrue(validator.postEntityViolations(document).isEmpty());
+        validator.validatePostEntity(document);
+    }
+
+    @Test
+    public void allViolationsCollected() {
+        var document = new Document(null, "a".repeat(201), List.of("www.example.org"), null, null, null);
+
+        var violations = validator.postEntityViolations(document);
+
+        assertEquals(4, violations.size());
+        assertEquals("name", violations.get(0).field);
+        assertEquals("dataSource", violations.get(1).field);
+        assertEquals("description", violations.get(2).field);
+        assertEquals("imagesUrls", violations.get(3).field);
+    }
+
+    @Test
+    public void validateThrowsWithViolations() {
+        var document = new Document(null, null, null, null, null, null);
+
+        try {
+            validator.validatePatchEntity(document);
+            fail("The document should not be valid");
+        } catch (ValidationException ex) {
+            assertEquals(1, ex.getViolations().size());
+            assertEquals("The field dataSource is mandatory", ex.getMessage());
+        }
+    }
+
+    @Test
+    public void violationsOfTheWholeRequestCollected() {
+        try {
+            validator.validatePatch("not-an-id", new Document(null, null, null, null, null, null));
+            fail("The request should not be valid");
+        } catch (ValidationException ex) {
+            assertEquals(2, ex.getViolations().size());
+            assertEquals("id", ex.getViolations().get(0).field);
+            assertEquals("dataSource", ex.getViolations().get(1).field);
+        }
+
+        try {
+            validator.validatePost(new Document(null, "Test", null, null, null, DataSource.PRODUCTS), Optional.of(""));
+            fail("The request should not be valid");
+        } catch (ValidationException ex) {
+            assertEquals(2, ex.getViolations().size());
+            assertEquals("name", ex.getViolations().get(0).field);
+        }
+    }
+
+    @Test
+    public void imagesUrlsFormat() {
+        assertTrue(Scanners.isHttpUrl("HTTP://example.org"));
+        assertTrue(Scanners.isHttpUrl("http://user:password@[::1]:8080"));
+        assertFalse(Scanners.isHttpUrl("http://"));
+        assertFalse(Scanners.isHttpUrl("http:///images/1.png"));
+        assertFalse(Scanners.isHttpUrl("ftp://example.org/1.png"));
+        assertFalse(Scanners.isHttpUrl("http://example org/1.png"));
+        assertFalse(Scanners.isHttpUrl("http://example.org/1 .png"));
+        assertFalse(Scanners.isHttpUrl(null));
+    }
+
+    @Test
+    public void idFormat() {
+        assertTrue(validator.idViolations(UUID.randomUUID().toString()).isEmpty());
+        assertTrue(validator.idViolations("F65D620A-F10A-4549-B77B-D9F68F7AC029").isEmpty());
+        assertEquals(1, validator.idViolations("f65d620a-f10a-4549-b77b-d9f68f7ac02").size());
+        assertEquals(1, validator.idViolations("f65d620a+f10a-4549-b77b-d9f68f7ac029").size());
+        assertEquals(1, validator.idViolations("g65d620a-f10a-4549-b77b-d9f68f7ac029").size());
+        assertEquals(1, validator.idViolations("1-1-1-1-1").size());
+    }
+}